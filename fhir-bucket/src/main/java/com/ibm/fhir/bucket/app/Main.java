@@ -191,6 +191,13 @@ public class Main {
     // How many reindex calls should we run in parallel
     private int reindexConcurrentRequests = 1;
 
+    // Optionally limit the reindex to a resource type
+    private String reindexResourceType;
+
+    // Optional logical resource id range used to partition the reindex across threads
+    private Long reindexFromLogicalResourceId;
+    private Long reindexToLogicalResourceId;
+
     /**
      * Parse command line arguments
      * @param args
@@ -200,7 +207,7 @@ public class Main {
             String arg = args[i];
             switch (arg) {
             case "--db-type":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.dbType = DbType.from(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --db-type");
@@ -210,147 +217,147 @@ public class Main {
                 this.createSchema = true;
                 break;
             case "--cos-properties":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     loadCosProperties(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --cos-properties");
                 }
                 break;
             case "--db-properties":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     loadDbProperties(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --db-properties");
                 }
                 break;
             case "--db-prop":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     addDbProperty(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --db-properties");
                 }
                 break;
             case "--fhir-properties":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     loadFhirClientProperties(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --fhir-properties");
                 }
                 break;
             case "--bucket":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.cosBucketList.add(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --bucket");
                 }
                 break;
             case "--file-type":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.fileTypes.add(FileType.valueOf(args[++i]));
                 } else {
                     throw new IllegalArgumentException("missing value for --file-type");
                 }
                 break;
             case "--cos-scan-interval-ms":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.cosScanIntervalMs = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --cos-scan-interval-ms");
                 }
                 break;
             case "--recycle-seconds":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.recycleSeconds = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --recycle-seconds");
                 }
                 break;
             case "--max-concurrent-fhir-requests":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.maxConcurrentFhirRequests = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --max-concurrent-fhir-requests");
                 }
                 break;
             case "--max-concurrent-json-files":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.maxConcurrentJsonFiles = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --max-concurrent-json-files");
                 }
                 break;
             case "--max-concurrent-ndjson-files":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.maxConcurrentNdJsonFiles = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --max-concurrent-ndjson-files");
                 }
                 break;
             case "--connection-pool-size":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.connectionPoolSize = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --connection-pool-size");
                 }
                 break;
             case "--concurrent-payer-requests":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.concurrentPayerRequests = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --concurrent-payer-requests");
                 }
                 break;
             case "--pool-shutdown-timeout-seconds":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.poolShutdownTimeoutSeconds = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --resource-pool-shutdown-timeout-seconds");
                 }
                 break;
             case "--bundle-cost-factor":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.bundleCostFactor = Double.parseDouble(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --bundle-cost-factor");
                 }
                 break;
             case "--tenant-name":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.tenantName = args[++i];
                 } else {
                     throw new IllegalArgumentException("missing value for --tenant-name");
                 }
                 break;
             case "--path-prefix":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.pathPrefix = args[++i];
                 } else {
                     throw new IllegalArgumentException("missing value for --path-prefix");
                 }
                 break;
             case "--target-bucket":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.targetBucket = args[++i];
                 } else {
                     throw new IllegalArgumentException("missing value for --target-bucket");
                 }
                 break;
             case "--target-prefix":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.targetPrefix = args[++i];
                 } else {
                     throw new IllegalArgumentException("missing value for --target-prefix");
                 }
                 break;
             case "--bucket-path":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     addBucketPath(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --bucket-path");
                 }
                 break;
             case "--max-resources-per-bundle":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.maxResourcesPerBundle = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --max-resources-per-bundle");
@@ -366,26 +373,47 @@ public class Main {
                 this.runScanner = false;
                 break;
             case "--reindex-tstamp":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.reindexTstampParam = args[++i];
                 } else {
                     throw new IllegalArgumentException("missing value for --reindex-tstamp");
                 }
                 break;
             case "--reindex-resource-count":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.reindexResourceCount = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --reindex-resource-count");
                 }
                 break;
             case "--reindex-concurrent-requests":
-                if (i < args.length + 1) {
+                if (i + 1 < args.length) {
                     this.reindexConcurrentRequests = Integer.parseInt(args[++i]);
                 } else {
                     throw new IllegalArgumentException("missing value for --reindex-concurrent-requests");
                 }
                 break;
+            case "--reindex-resource-type":
+                if (i + 1 < args.length) {
+                    this.reindexResourceType = args[++i];
+                } else {
+                    throw new IllegalArgumentException("missing value for --reindex-resource-type");
+                }
+                break;
+            case "--reindex-from-logical-resource-id":
+                if (i + 1 < args.length) {
+                    this.reindexFromLogicalResourceId = Long.parseLong(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --reindex-from-logical-resource-id");
+                }
+                break;
+            case "--reindex-to-logical-resource-id":
+                if (i + 1 < args.length) {
+                    this.reindexToLogicalResourceId = Long.parseLong(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --reindex-to-logical-resource-id");
+                }
+                break;
             default:
                 throw new IllegalArgumentException("Bad arg: " + arg);
             }
@@ -831,7 +859,8 @@ public class Main {
 
         // Optionally start the $reindex loops
         if (this.reindexTstampParam != null) {
-            this.driveReindexOperation = new DriveReindexOperation(fhirClient, reindexConcurrentRequests, reindexTstampParam, reindexResourceCount);
+            this.driveReindexOperation = new DriveReindexOperation(fhirClient, reindexConcurrentRequests, reindexTstampParam, reindexResourceCount,
+                reindexResourceType, reindexFromLogicalResourceId, reindexToLogicalResourceId);
             this.driveReindexOperation.init();
         }
 
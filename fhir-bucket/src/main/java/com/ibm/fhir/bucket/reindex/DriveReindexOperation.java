@@ -1,18 +1,24 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.bucket.reindex;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.http.HttpStatus;
 
@@ -30,6 +36,9 @@ import com.ibm.fhir.database.utils.api.DataAccessException;
 /**
  * Drives the $reindex custom operation in parallel. Each thread keeps running
  * until the OperationOutcome indicates that no work remains to be processed.
+ * When a logical resource id range is given, the range is split into one
+ * partition per thread so that each thread reindexes a disjoint slice of the
+ * database and finishes independently of the others.
  */
 public class DriveReindexOperation {
     private static final Logger logger = Logger.getLogger(DriveReindexOperation.class.getName());
@@ -52,8 +61,28 @@ public class DriveReindexOperation {
 
     private final String url = "$reindex";
 
-    // The serialized Parameters resource sent with each POST
-    private final String requestBody;
+    // Value returned by callOnce if the call fails
+    private static final int CALL_FAILED = -1;
+
+    // the summary issue reporting the number of resources processed by a call
+    private static final Pattern REINDEXED_PATTERN = Pattern.compile("Reindexed (\\d+) resources");
+
+    // the summary issue reporting the number of deleted resources skipped by a call
+    private static final Pattern SKIPPED_PATTERN = Pattern.compile("Skipped (\\d+) deleted resources");
+
+    // The serialized Parameters resource sent with each POST, one per partition
+    private final List<String> requestBodies = new ArrayList<>();
+
+    // True if each thread works on its own partition
+    private final boolean partitioned;
+
+    // The partitions which have been completely reindexed
+    private final Set<Integer> completedPartitions = ConcurrentHashMap.newKeySet();
+
+    // Progress metrics
+    private final AtomicLong totalProcessed = new AtomicLong();
+    private final AtomicLong totalCalls = new AtomicLong();
+    private long startTime;
 
     private Thread monitorThread;
 
@@ -63,20 +92,75 @@ public class DriveReindexOperation {
      * @param maxConcurrentRequests the number of threads to spin up
      */
     public DriveReindexOperation(FHIRBucketClient fhirClient, int maxConcurrentRequests, String tstampParam, int resourceCountParam) {
+        this(fhirClient, maxConcurrentRequests, tstampParam, resourceCountParam, null, null, null);
+    }
+
+    /**
+     * Public constructor supporting partitioned reindex
+     * @param client the FHIR client
+     * @param maxConcurrentRequests the number of threads to spin up
+     * @param tstampParam
+     * @param resourceCountParam
+     * @param resourceTypeParam optional resource type to limit the reindex to
+     * @param fromLogicalResourceId optional inclusive lower bound of the logical resource id range
+     * @param toLogicalResourceId optional exclusive upper bound of the logical resource id range
+     */
+    public DriveReindexOperation(FHIRBucketClient fhirClient, int maxConcurrentRequests, String tstampParam, int resourceCountParam,
+        String resourceTypeParam, Long fromLogicalResourceId, Long toLogicalResourceId) {
         this.fhirClient = fhirClient;
         this.maxConcurrentRequests = maxConcurrentRequests;
 
-        Parameters parameters = Parameters.builder()
+        if (fromLogicalResourceId != null && toLogicalResourceId != null) {
+            // Split the range into one disjoint partition per thread
+            this.partitioned = true;
+            long span = toLogicalResourceId - fromLogicalResourceId;
+            if (span <= 0) {
+                throw new IllegalArgumentException("Invalid logical resource id range: " + fromLogicalResourceId + " >= " + toLogicalResourceId);
+            }
+            int partitionCount = (int)Math.min(maxConcurrentRequests, span);
+            long partitionSize = (span + partitionCount - 1) / partitionCount;
+            for (long lo=fromLogicalResourceId; lo < toLogicalResourceId; lo += partitionSize) {
+                long hi = Math.min(lo + partitionSize, toLogicalResourceId);
+                this.requestBodies.add(buildRequestBody(tstampParam, resourceCountParam, resourceTypeParam, lo, hi));
+            }
+        } else {
+            // All the threads share the same request
+            this.partitioned = false;
+            this.requestBodies.add(buildRequestBody(tstampParam, resourceCountParam, resourceTypeParam, fromLogicalResourceId, toLogicalResourceId));
+        }
+    }
+
+    /**
+     * Build the serialized Parameters resource for a $reindex request
+     * @param tstampParam
+     * @param resourceCountParam
+     * @param resourceTypeParam
+     * @param fromLogicalResourceId
+     * @param toLogicalResourceId
+     * @return
+     */
+    private static String buildRequestBody(String tstampParam, int resourceCountParam, String resourceTypeParam, Long fromLogicalResourceId, Long toLogicalResourceId) {
+        Parameters.Builder parameters = Parameters.builder()
                 .parameter(Parameter.builder().name(str("tstamp")).value(str(tstampParam)).build())
-                .parameter(Parameter.builder().name(str("resourceCount")).value(intValue(resourceCountParam)).build())
-                .build();
+                .parameter(Parameter.builder().name(str("resourceCount")).value(intValue(resourceCountParam)).build());
 
-        // Serialize into the requestBody string used by all the threads
-        this.requestBody = FHIRBucketClientUtil.resourceToString(parameters);
+        if (resourceTypeParam != null) {
+            parameters.parameter(Parameter.builder().name(str("resourceLogicalId")).value(str(resourceTypeParam)).build());
+        }
+        if (fromLogicalResourceId != null) {
+            parameters.parameter(Parameter.builder().name(str("fromLogicalResourceId")).value(str(Long.toString(fromLogicalResourceId))).build());
+        }
+        if (toLogicalResourceId != null) {
+            parameters.parameter(Parameter.builder().name(str("toLogicalResourceId")).value(str(Long.toString(toLogicalResourceId))).build());
+        }
+
+        // Serialize into the requestBody string used by the thread(s)
+        String requestBody = FHIRBucketClientUtil.resourceToString(parameters.build());
 
         if (logger.isLoggable(Level.FINE)) {
             logger.fine("Reindex request parameters: " + requestBody);
         }
+        return requestBody;
     }
 
     /**
@@ -103,6 +187,7 @@ public class DriveReindexOperation {
         // Initiate the monitorThread. This will fill the pool
         // with worker threads, and monitor for completion or failure
         logger.info("Starting monitor thread");
+        this.startTime = System.nanoTime();
         this.monitorThread = new Thread(() -> monitorLoop());
         this.monitorThread.start();
     }
@@ -119,14 +204,19 @@ public class DriveReindexOperation {
                 if (currentThreadCount == 0) {
                     // Nothing currently running, so make one test call to verify things are working
                     logger.info("monitor probe - checking reindex operation");
-                    if (callOnce() && this.running) {
+                    if (probe() && this.running) {
                         // should be OK now to fill the pool with workers
                         logger.info("Test probe successful - filling worker pool");
                         this.active = true;
 
                         for (int i=0; i<this.maxConcurrentRequests && this.running && this.active; i++) {
+                            final int partition = this.partitioned ? i : 0;
+                            if (this.partitioned && (partition >= requestBodies.size() || completedPartitions.contains(partition))) {
+                                // no work left for this thread
+                                continue;
+                            }
                             this.currentlyRunning.addAndGet(1);
-                            pool.execute(() -> callReindexOperation());
+                            pool.execute(() -> callReindexOperation(partition));
 
                             // Slow down the ramp-up so we don't hit a new server with
                             // hundreds of requests in one go
@@ -146,7 +236,66 @@ public class DriveReindexOperation {
             } else { // active
                 // worker threads are active, so sleep for a bit before we check again
                 safeSleep(5000);
+                logProgress();
+            }
+        }
+    }
+
+    /**
+     * Make a single call to check the reindex operation is working. The probe
+     * uses the first partition not yet completed.
+     * @return true if the call was successful
+     */
+    private boolean probe() {
+        int partition = 0;
+        while (this.partitioned && completedPartitions.contains(partition) && partition < requestBodies.size()) {
+            partition++;
+        }
+
+        if (partition < requestBodies.size()) {
+            int processed = callOnce(partition);
+            if (processed == 0) {
+                markComplete(partition);
             }
+            return processed != CALL_FAILED;
+        } else {
+            // nothing left to do
+            this.running = false;
+            return false;
+        }
+    }
+
+    /**
+     * Log the progress and throughput of the reindex so far
+     */
+    private void logProgress() {
+        double elapsed = (System.nanoTime() - this.startTime) / 1e9;
+        long processed = this.totalProcessed.get();
+        double rate = elapsed > 0 ? processed / elapsed : 0;
+        if (this.partitioned) {
+            logger.info(String.format("Reindex progress: %d resources in %d calls [%7.1f resources/s], partitions complete %d/%d",
+                processed, this.totalCalls.get(), rate, completedPartitions.size(), requestBodies.size()));
+        } else {
+            logger.info(String.format("Reindex progress: %d resources in %d calls [%7.1f resources/s]",
+                processed, this.totalCalls.get(), rate));
+        }
+    }
+
+    /**
+     * Record that the given partition has been fully reindexed. When all partitions are
+     * complete, tell all the running threads they can stop now
+     * @param partition
+     */
+    private void markComplete(int partition) {
+        if (this.partitioned) {
+            completedPartitions.add(partition);
+            if (completedPartitions.size() == requestBodies.size()) {
+                logger.info("Reindex - all partitions done");
+                this.running = false;
+            }
+        } else {
+            logger.info("Reindex - all done");
+            this.running = false;
         }
     }
 
@@ -198,12 +347,19 @@ public class DriveReindexOperation {
     /**
      * Thread to repeatedly call the $reindex operation until the response
      * indicates all the work is complete.
+     * @param partition the index of the request body to use
      */
-    private void callReindexOperation() {
-        while (this.running && this.active) {
+    private void callReindexOperation(int partition) {
+        boolean partitionComplete = false;
+        while (this.running && this.active && !partitionComplete) {
             boolean ok = false;
             try {
-                ok = callOnce();
+                int processed = callOnce(partition);
+                ok = processed != CALL_FAILED;
+                if (processed == 0) {
+                    partitionComplete = true;
+                    markComplete(partition);
+                }
             } catch (DataAccessException x) {
                 // allow active be set to false.  This will notify monitorLoop something is wrong.
                 // Probably all threads will encounter the same exception and monitorLoop will
@@ -225,14 +381,16 @@ public class DriveReindexOperation {
 
     /**
      * Make one call to the FHIR server $reindex operation
-     * @return true if the call was successful (200 OK)
+     * @param partition the index of the request body to use
+     * @return the number of resources processed, 0 if the reindex is complete
+     *         or CALL_FAILED if the call was not successful (200 OK)
      */
-    private boolean callOnce() {
-        boolean result = false;
+    private int callOnce(int partition) {
+        int result = CALL_FAILED;
 
         // tell the FHIR Server to reindex a number of resources
         long start = System.nanoTime();
-        FhirServerResponse response = fhirClient.post(url, requestBody);
+        FhirServerResponse response = fhirClient.post(url, requestBodies.get(partition));
         long end = System.nanoTime();
 
         double elapsed = (end - start) / 1e9;
@@ -243,8 +401,9 @@ public class DriveReindexOperation {
             if (resource != null) {
                 if (resource.is(OperationOutcome.class)) {
                     // check the result to see if we should stop running
-                    checkResult((OperationOutcome)resource);
-                    result = true;
+                    result = checkResult((OperationOutcome)resource);
+                    this.totalCalls.incrementAndGet();
+                    this.totalProcessed.addAndGet(result);
                 } else {
                     logger.severe("FHIR Server reindex response is not an OperationOutcome: " + response.getStatusCode() + " " + response.getStatusMessage());
                     logger.severe("Actual response: " + FHIRBucketClientUtil.resourceToString(resource));
@@ -264,17 +423,31 @@ public class DriveReindexOperation {
     /**
      * Check the result to see if the server is telling us it's done
      * @param result
+     * @return the number of resources processed, or 0 if the reindex is complete
      */
-    private void checkResult(OperationOutcome result) {
-        List<Issue> issues = result.getIssue();
-        if (issues.size() == 1) {
-            Issue one = issues.get(0);
-            if ("Reindex complete".equals(one.getDiagnostics().getValue())) {
-                logger.info("Reindex - all done");
-
-                // tell all the running threads they can stop now
-                this.running = false;
+    private int checkResult(OperationOutcome result) {
+        // Servers which summarize the batch report the count in a single issue. Otherwise,
+        // fall back to counting the per-resource issues plus any summary of skipped resources
+        int processed = 0;
+        for (Issue issue: result.getIssue()) {
+            if (issue.getDiagnostics() == null || issue.getDiagnostics().getValue() == null) {
+                continue;
+            }
+            String diag = issue.getDiagnostics().getValue();
+            Matcher reindexed = REINDEXED_PATTERN.matcher(diag);
+            if ("Reindex complete".equals(diag)) {
+                return 0;
+            } else if (reindexed.matches()) {
+                return Integer.parseInt(reindexed.group(1));
+            } else {
+                Matcher skipped = SKIPPED_PATTERN.matcher(diag);
+                if (skipped.matches()) {
+                    processed += Integer.parseInt(skipped.group(1));
+                } else {
+                    processed++;
+                }
             }
         }
+        return processed;
     }
 }
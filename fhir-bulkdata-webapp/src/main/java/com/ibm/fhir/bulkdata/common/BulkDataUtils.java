@@ -6,15 +6,17 @@
 
 package com.ibm.fhir.bulkdata.common;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,11 +47,9 @@ import com.ibm.cloud.objectstorage.services.s3.model.S3Object;
 import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectInputStream;
 import com.ibm.cloud.objectstorage.services.s3.model.UploadPartRequest;
 import com.ibm.cloud.objectstorage.services.s3.model.UploadPartResult;
+import com.ibm.fhir.bulkdata.jbatch.export.data.ExportTransientUserData;
 import com.ibm.fhir.bulkdata.jbatch.load.data.ImportTransientUserData;
 import com.ibm.fhir.exception.FHIROperationException;
-import com.ibm.fhir.model.format.Format;
-import com.ibm.fhir.model.parser.FHIRParser;
-import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.FHIRUtil;
@@ -142,109 +142,94 @@ public class BulkDataUtils {
     }
 
     /**
-     * @param resReader - the buffer reader to read FHIR resource from.
-     * @param numOfProcessedLines - number of the already processed lines.
+     * Opens an input at a byte offset
+     */
+    @FunctionalInterface
+    private interface RangeOpener {
+        InputStream open(long position) throws Exception;
+    }
+
+    /**
+     * Read the next batch of FHIR resources of the partition's range, resuming at the byte offset of the transient
+     * user data and advancing it past the lines read. The input is opened on the first read and kept open in the
+     * transient user data for the following reads; if reading fails, it is re-opened at the same offset.
+     *
+     * @param dataSource - the name of the input, for logging.
+     * @param opener - opens the input at a given byte offset.
      * @param fhirResources - List holds the FHIR resources.
-     * @param isSkipProcessed - if need to skip the processed lines before read.
-     * @return - the number of parsing failures.
+     * @param transientUserData - transient user data for the chunk.
+     * @return - number of parsing failures.
      * @throws Exception
      */
-    private static int getFhirResourceFromBufferReader(BufferedReader resReader, int numOfProcessedLines, List<Resource> fhirResources,
-            boolean isSkipProcessed, String dataSource) throws Exception {
-        int exported = 0;
-        int lineRed = 0;
-        int parseFailures = 0;
-
-        String resLine = null;
+    private static int readFhirResources(String dataSource, RangeOpener opener, List<Resource> fhirResources,
+            ImportTransientUserData transientUserData) throws Exception {
+        int retryTimes = IMPORT_RETRY_TIMES;
         do {
-            resLine = resReader.readLine();
-            if (resLine != null) {
-                lineRed++;
-                if (isSkipProcessed && lineRed <= numOfProcessedLines) {
-                    continue;
+            try {
+                if (transientUserData.getBatchReader() == null) {
+                    long offset = transientUserData.getImportFileOffset();
+                    InputStream inputStream = opener.open(RangeLineReader.openPosition(offset));
+                    transientUserData.setInputStream(inputStream);
+                    RangeLineReader lineReader = new RangeLineReader(inputStream, offset, transientUserData.getImportRangeEnd());
+                    transientUserData.setBatchReader(new ResourceBatchReader(lineReader, adapter.getImportNumberOfFhirResourcesPerRead(null),
+                            dataSource, transientUserData.getNumOfProcessedResources()));
                 }
-                try {
-                    fhirResources.add(FHIRParser.parser(Format.JSON).parse(new StringReader(resLine)));
-                    exported++;
-
-                    // Per Code Review, this could be a trap if always compare ==.
-                    if (exported >= adapter.getImportNumberOfFhirResourcesPerRead(null)) {
-                        break;
-                    }
-                } catch (FHIRParserException e) {
-                    // Log and skip the invalid FHIR resource.
-                    parseFailures++;
-                    logger.log(Level.INFO, "getFhirResourceFromBufferReader: " + "Failed to parse line "
-                            + (numOfProcessedLines + exported + parseFailures) + " of [" + dataSource + "].", e);
-                    continue;
+                ResourceBatchReader.Batch batch = transientUserData.getBatchReader().next();
+                fhirResources.addAll(batch.getResources());
+                transientUserData.setImportFileOffset(batch.getEndPosition());
+                return batch.getParseFailures();
+            } catch (Exception ex) {
+                // Prepare for retry; the input is re-opened at the offset after the last batch which was handed out.
+                cleanupTransientUserData(transientUserData, true);
+                logger.warning("readFhirResources: Error proccesing file [" + dataSource + "] - " + ex.getMessage());
+                if ((retryTimes--) > 0) {
+                    logger.warning("readFhirResources: Retry ...");
+                } else {
+                    // Throw exception to fail the job, the job can be continued from the current checkpoint after the problem is solved.
+                    throw ex;
                 }
             }
-        } while (resLine != null);
-        return parseFailures;
+        } while (true);
     }
 
     public static void cleanupTransientUserData(ImportTransientUserData transientUserData, boolean isAbort) throws Exception {
+        if (isAbort && transientUserData.getInputStream() instanceof S3ObjectInputStream) {
+            // For S3 input stream, if the read is not finished successfully, we have to abort it first.
+            ((S3ObjectInputStream)transientUserData.getInputStream()).abort();
+        }
+
+        if (transientUserData.getBatchReader() != null) {
+            transientUserData.getBatchReader().close();
+            transientUserData.setBatchReader(null);
+        }
+
         if (transientUserData.getInputStream() != null) {
-            if (isAbort && transientUserData.getInputStream() instanceof S3ObjectInputStream) {
-                // For S3 input stream, if the read is not finished successfully, we have to abort it first.
-                ((S3ObjectInputStream)transientUserData.getInputStream()).abort();
-            }
             transientUserData.getInputStream().close();
             transientUserData.setInputStream(null);
         }
-
-        if (transientUserData.getBufferReader() != null) {
-            transientUserData.getBufferReader().close();
-            transientUserData.setBufferReader(null);
-        }
     }
 
     /**
      * @param cosClient - COS/S3 client.
      * @param bucketName - COS/S3 bucket name to read from.
      * @param itemName - COS/S3 object name to read from.
-     * @param numOfLinesToSkip - number of lines to skip before read.
      * @param fhirResources - List holds the FHIR resources.
      * @param transientUserData - transient user data for the chunk.
      * @return - number of parsing failures.
      * @throws Exception
      */
     public static int readFhirResourceFromObjectStore(AmazonS3 cosClient, String bucketName, String itemName,
-           int numOfLinesToSkip, List<Resource> fhirResources, ImportTransientUserData transientUserData) throws Exception {
-        int parseFailures = 0;
-        int retryTimes = IMPORT_RETRY_TIMES;
-        do {
-            try {
-                if (transientUserData.getBufferReader() == null) {
-                    S3Object item = cosClient.getObject(new GetObjectRequest(bucketName, itemName));
-                    S3ObjectInputStream s3InStream = item.getObjectContent();
-                    transientUserData.setInputStream(s3InStream);
-                    BufferedReader resReader = new BufferedReader(new InputStreamReader(s3InStream));
-                    transientUserData.setBufferReader(resReader);
-                    // Skip the already processed lines after opening the input stream for first read.
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, itemName);
-                } else {
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, itemName);
-                }
-                break;
-            } catch (Exception ex) {
-                // Prepare for retry, skip all the processed lines in previous batches and this batch.
-                numOfLinesToSkip = numOfLinesToSkip + fhirResources.size() + parseFailures;
-                cleanupTransientUserData(transientUserData, true);
-                logger.warning("readFhirResourceFromObjectStore: Error proccesing file [" + itemName + "] - " + ex.getMessage());
-                if ((retryTimes--) > 0) {
-                    logger.warning("readFhirResourceFromObjectStore: Retry ...");
-                } else {
-                    // Throw exception to fail the job, the job can be continued from the current checkpoint after the problem is solved.
-                    throw ex;
-                }
+           List<Resource> fhirResources, ImportTransientUserData transientUserData) throws Exception {
+        return readFhirResources(itemName, position -> {
+            // A ranged GET, so resuming does not download the lines which were already processed
+            GetObjectRequest request = new GetObjectRequest(bucketName, itemName);
+            if (position > 0) {
+                request.setRange(position);
             }
-        } while (retryTimes > 0);
-
-        return parseFailures;
+            return cosClient.getObject(request).getObjectContent();
+        }, fhirResources, transientUserData);
     }
 
-
     public static long getCosFileSize(AmazonS3 cosClient, String bucketName, String itemName) throws Exception {
             S3Object item = cosClient.getObject(new GetObjectRequest(bucketName, itemName));
             return item.getObjectMetadata().getContentLength();
@@ -252,77 +237,52 @@ public class BulkDataUtils {
 
     /**
      * @param filePath - file path to the ndjson file.
-     * @param numOfLinesToSkip - number of lines to skip before read.
      * @param fhirResources - List holds the FHIR resources.
      * @param transientUserData - transient user data for the chunk.
      * @return - number of parsing failures.
      * @throws Exception
      */
-    public static int readFhirResourceFromLocalFile(String filePath, int numOfLinesToSkip, List<Resource> fhirResources,
+    public static int readFhirResourceFromLocalFile(String filePath, List<Resource> fhirResources,
             ImportTransientUserData transientUserData) throws Exception {
-        int parseFailures = 0;
-
-        try {
-            if (transientUserData.getBufferReader() == null) {
-                BufferedReader resReader = Files.newBufferedReader(Paths.get(filePath));
-                transientUserData.setBufferReader(resReader);
-                // Skip the already processed lines after opening the input stream for first read.
-                parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, filePath);
-            } else {
-                parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, filePath);
-            }
-        } catch (Exception ex) {
-            // Clean up.
-            fhirResources.clear();
-            cleanupTransientUserData(transientUserData, true);
-            // Log the error and throw exception to fail the job, the job can be continued from the current checkpoint after the problem is solved.
-            logger.warning("readFhirResourceFromLocalFile: Error proccesing file [" + filePath + "] - " + ex.getMessage());
-            throw ex;
-        }
-
-        return parseFailures;
+        return readFhirResources(filePath, position -> {
+            FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+            channel.position(position);
+            return Channels.newInputStream(channel);
+        }, fhirResources, transientUserData);
     }
 
     /**
      * @param dataUrl - URL to the ndjson file.
-     * @param numOfLinesToSkip - number of lines to skip before read.
      * @param fhirResources - List holds the FHIR resources.
      * @param transientUserData - transient user data for the chunk.
      * @return - number of parsing failures.
      * @throws Exception
      */
-    public static int readFhirResourceFromHttps(String dataUrl, int numOfLinesToSkip, List<Resource> fhirResources,
+    public static int readFhirResourceFromHttps(String dataUrl, List<Resource> fhirResources,
             ImportTransientUserData transientUserData) throws Exception {
-        int parseFailures = 0;
-        int retryTimes = IMPORT_RETRY_TIMES;
-        do {
-            try {
-                if (transientUserData.getBufferReader() == null) {
-                    InputStream inputStream = new URL(dataUrl).openConnection().getInputStream();
-                    transientUserData.setInputStream(inputStream);
-                    BufferedReader resReader = new BufferedReader(new InputStreamReader(inputStream));
-                    transientUserData.setBufferReader(resReader);
-                    // Skip the already processed lines after opening the input stream for first read.
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, dataUrl);
-                } else {
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, dataUrl);
-                }
-                break;
-            } catch (Exception ex) {
-                // Prepare for retry, skip all the processed lines in previous batches and this batch.
-                numOfLinesToSkip = numOfLinesToSkip + fhirResources.size() + parseFailures;
-                cleanupTransientUserData(transientUserData, true);
-                logger.warning("readFhirResourceFromHttps: Error proccesing file [" + dataUrl + "] - " + ex.getMessage());
-                if ((retryTimes--) > 0) {
-                    logger.warning("readFhirResourceFromHttps: Retry ...");
-                } else {
-                    // Throw exception to fail the job, the job can be continued from the current checkpoint after the problem is solved.
-                    throw ex;
+        return readFhirResources(dataUrl, position -> {
+            URLConnection connection = new URL(dataUrl).openConnection();
+            if (position > 0) {
+                connection.setRequestProperty("Range", "bytes=" + position + "-");
+            }
+            InputStream inputStream = connection.getInputStream();
+            if (position > 0 && !(connection instanceof HttpURLConnection
+                    && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_PARTIAL)) {
+                // The server ignored the range, so skip to the position without parsing the lines before it
+                long skipped = 0;
+                while (skipped < position) {
+                    long n = inputStream.skip(position - skipped);
+                    if (n <= 0) {
+                        if (inputStream.read() < 0) {
+                            break;
+                        }
+                        n = 1;
+                    }
+                    skipped += n;
                 }
             }
-        } while (retryTimes > 0);
-
-        return parseFailures;
+            return inputStream;
+        }, fhirResources, transientUserData);
     }
 
     /**
@@ -384,6 +344,33 @@ public class BulkDataUtils {
         return searchParametersForResoureTypes;
     }
 
+    /**
+     * Get the duplicate filter of an export partition which checks for duplicates: the one saved by the
+     * checkpoint, when the partition is restarted, or a new one of the configured type.
+     *
+     * @param chunkData the transient data restored from the checkpoint, or null
+     * @param adapter
+     * @return the filter, which is also set on the chunkData
+     */
+    public static DuplicateFilter openDuplicateFilter(ExportTransientUserData chunkData, ConfigurationAdapter adapter) {
+        if (chunkData != null && chunkData.getDuplicateFilter() != null) {
+            return chunkData.getDuplicateFilter();
+        }
+        if (chunkData != null && chunkData.getDuplicateFilterRef() != null) {
+            DuplicateFilterStore.Loaded loaded = DuplicateFilterStore.load(chunkData.getDuplicateFilterRef());
+            if (loaded != null) {
+                chunkData.setDuplicateFilterStore(loaded.getStore());
+                chunkData.setDuplicateFilter(loaded.getFilter());
+                return loaded.getFilter();
+            }
+        }
+        DuplicateFilter duplicateFilter = DuplicateFilter.create(adapter.getDuplicateCheckType(), adapter.getDuplicateCheckFalsePositiveRate());
+        if (chunkData != null) {
+            chunkData.setDuplicateFilter(duplicateFilter);
+        }
+        return duplicateFilter;
+    }
+
     public static JsonArray getDataSourcesFromJobInput(String dataSourcesInfo) {
         try (JsonReader reader =
                 Json.createReader(new StringReader(
@@ -0,0 +1,231 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
+import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+
+/**
+ * Uploads the parts of S3/COS multi-part uploads in the background, so the caller can
+ * carry on serializing the next part while the previous ones are sent. At most
+ * maxConcurrentParts parts are in flight for each uploader; {@link #submit} blocks
+ * until one finishes when that limit is reached, which bounds the memory held by
+ * parts waiting to be uploaded.
+ *
+ * <p>Each part carries a caller-defined tag (e.g. the read position it covers).
+ * Completed parts are handed back in submission order, and only once every earlier
+ * part has completed, so the caller can safely checkpoint the tag of the last one.
+ *
+ * <p>Each uploader has its own upload threads, which are shut down by {@link #close}.
+ *
+ * <p>Not thread-safe; one uploader is used by a single writer.
+ *
+ * @param <T> the type of the tag
+ */
+public class ConcurrentPartUploader<T> implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ConcurrentPartUploader.class.getName());
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final Semaphore permits;
+
+    // Uploads the parts; the number of busy threads is bounded by the permits
+    private final ExecutorService executor;
+
+    // The parts which have not been handed back yet, in submission order
+    private final Deque<PendingPart<T>> pending = new ArrayDeque<>();
+
+    /**
+     * Public constructor
+     *
+     * @param client the S3 client
+     * @param bucketName the target bucket
+     * @param maxConcurrentParts the maximum number of parts to upload at once
+     */
+    public ConcurrentPartUploader(AmazonS3 client, String bucketName, int maxConcurrentParts) {
+        if (maxConcurrentParts < 1) {
+            throw new IllegalArgumentException("maxConcurrentParts must be at least 1");
+        }
+        this.client = client;
+        this.bucketName = bucketName;
+        this.permits = new Semaphore(maxConcurrentParts);
+        this.executor = Executors.newFixedThreadPool(maxConcurrentParts, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bulkdata-part-upload-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Start uploading the given part, waiting for a free slot if the maximum number of
+     * parts are already in flight. The part is closed once it has been uploaded.
+     *
+     * @param itemName the key of the object being uploaded
+     * @param uploadId the id of the multi-part upload
+     * @param partNum the number of this part within the upload
+     * @param part the content of the part
+     * @param tag the value to hand back with the part when it completes
+     * @throws InterruptedException
+     */
+    public void submit(String itemName, String uploadId, int partNum, SegmentedBuffer.Part part, T tag) throws InterruptedException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            part.close();
+            throw e;
+        }
+
+        Future<PartETag> future;
+        try {
+            future = executor.submit(() -> {
+                try (InputStream in = part.newInputStream()) {
+                    return BulkDataUtils.multiPartUpload(client, bucketName, itemName, uploadId, in, part.size(), partNum);
+                } finally {
+                    part.close();
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            part.close();
+            permits.release();
+            throw e;
+        }
+
+        pending.add(new PendingPart<>(future, partNum, tag));
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Submitted part " + partNum + " of '" + itemName + "' (" + part.size() + " bytes); " + pending.size() + " pending");
+        }
+    }
+
+    /**
+     * Hand back the parts which have completed, without waiting, stopping at the first
+     * part which is still in flight.
+     *
+     * @return the completed parts, in submission order
+     * @throws Exception if the upload of a part failed
+     */
+    public List<CompletedPart<T>> drainCompleted() throws Exception {
+        List<CompletedPart<T>> result = new ArrayList<>();
+        while (!pending.isEmpty() && pending.peek().future.isDone()) {
+            result.add(complete(pending.poll()));
+        }
+        return result;
+    }
+
+    /**
+     * Wait for all the submitted parts to complete and hand them back.
+     *
+     * @return the completed parts, in submission order
+     * @throws Exception if the upload of a part failed
+     */
+    public List<CompletedPart<T>> awaitAll() throws Exception {
+        List<CompletedPart<T>> result = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            result.add(complete(pending.poll()));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of parts submitted but not handed back yet
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Shut down the upload threads. Parts which have not been handed back yet are
+     * abandoned, and any uploads still in flight are interrupted.
+     */
+    @Override
+    public void close() {
+        if (!pending.isEmpty()) {
+            logger.warning("Closing the uploader with " + pending.size() + " parts pending");
+            pending.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    private CompletedPart<T> complete(PendingPart<T> p) throws Exception {
+        try {
+            return new CompletedPart<>(p.future.get(), p.tag);
+        } catch (ExecutionException e) {
+            // The failed upload has been aborted, so the parts after it are of no use
+            pending.clear();
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A part which was uploaded, with the tag it was submitted with
+     */
+    public static class CompletedPart<T> {
+        private final PartETag partETag;
+        private final T tag;
+
+        private CompletedPart(PartETag partETag, T tag) {
+            this.partETag = partETag;
+            this.tag = tag;
+        }
+
+        /**
+         * @return the entity tag of the uploaded part, needed to finish the upload
+         */
+        public PartETag getPartETag() {
+            return partETag;
+        }
+
+        /**
+         * @return the tag the part was submitted with
+         */
+        public T getTag() {
+            return tag;
+        }
+    }
+
+    private static class PendingPart<T> {
+        private final Future<PartETag> future;
+        private final int partNum;
+        private final T tag;
+
+        private PendingPart(Future<PartETag> future, int partNum, T tag) {
+            this.future = future;
+            this.partNum = partNum;
+            this.tag = tag;
+        }
+
+        @Override
+        public String toString() {
+            return "PendingPart [partNum=" + partNum + "]";
+        }
+    }
+}
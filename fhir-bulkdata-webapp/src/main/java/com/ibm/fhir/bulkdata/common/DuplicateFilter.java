@@ -0,0 +1,222 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Drops the resources which were already exported, when the searches of an export can return
+ * the same resource more than once, e.g. with multiple _typeFilters for a resource type.
+ *
+ * <p>The ids of the resources which have been written are kept either exactly, in a set, or in a
+ * {@link ScalableBloomFilter}, which bounds the memory used at the cost of occasionally dropping
+ * a resource which was not exported. This part of the filter is saved by a {@link DuplicateFilterStore}
+ * whose reference goes in the export checkpoint, so a restarted export does not export a resource twice.
+ *
+ * <p>The writer can lag behind the reader, so the ids of the resources which have been read but not
+ * written yet are kept apart and are never checkpointed; otherwise a restart, which reads them again,
+ * would drop them. The reader {@link #add(String) adds} the ids, the writer {@link #mark() marks} the
+ * ids read so far when it hands them off, and {@link #commit(long) commits} the mark once they have
+ * been written.
+ *
+ * <p>Not thread-safe.
+ */
+public class DuplicateFilter {
+    private static final Logger logger = Logger.getLogger(DuplicateFilter.class.getName());
+
+    public static final String TYPE_EXACT = "exact";
+    public static final String TYPE_BLOOM = "bloom";
+
+    // The number of ids the first stage of a Bloom filter is sized for; about 256KB at a rate of 1.0E-9
+    private static final long BLOOM_INITIAL_CAPACITY = 1 << 16;
+
+    // The ids of the resources which were written; exactly one of these is set
+    private final Set<String> written;
+    private final ScalableBloomFilter writtenBloom;
+    // The ids written since the filter was last saved
+    private List<String> unsaved = new ArrayList<>();
+
+    // The ids read since the last mark
+    private Set<String> current;
+    // The ids read before each mark which is not yet committed, oldest first
+    private ArrayDeque<MarkedIds> marked;
+    private long lastMark;
+
+    private DuplicateFilter(Set<String> written, ScalableBloomFilter writtenBloom) {
+        this.written = written;
+        this.writtenBloom = writtenBloom;
+        initPending();
+    }
+
+    /**
+     * @param type {@link #TYPE_EXACT} or {@link #TYPE_BLOOM}; anything else is treated as exact
+     * @param falsePositiveRate the false positive probability of a Bloom filter
+     * @return a new, empty, filter
+     */
+    public static DuplicateFilter create(String type, double falsePositiveRate) {
+        if (TYPE_BLOOM.equalsIgnoreCase(type)) {
+            return new DuplicateFilter(null, new ScalableBloomFilter(BLOOM_INITIAL_CAPACITY, falsePositiveRate));
+        }
+        if (!TYPE_EXACT.equalsIgnoreCase(type)) {
+            logger.warning("Unknown duplicate check type '" + type + "', using '" + TYPE_EXACT + "'");
+        }
+        return new DuplicateFilter(new HashSet<>(), null);
+    }
+
+    /**
+     * Add the id of a resource which was read.
+     *
+     * @param id
+     * @return false if the resource was already read, and must be dropped; true otherwise
+     */
+    public boolean add(String id) {
+        if (current.contains(id) || isWritten(id)) {
+            return false;
+        }
+        for (MarkedIds ids : marked) {
+            if (ids.ids.contains(id)) {
+                return false;
+            }
+        }
+        current.add(id);
+        return true;
+    }
+
+    /**
+     * Mark the ids added so far, as they are handed off to be written.
+     *
+     * @return the mark to {@link #commit(long) commit} once they have been written
+     */
+    public long mark() {
+        if (!current.isEmpty()) {
+            marked.add(new MarkedIds(++lastMark, current));
+            current = new HashSet<>();
+        }
+        return lastMark;
+    }
+
+    /**
+     * Record that the ids added before a mark, and before every earlier mark, have been written.
+     *
+     * @param mark
+     */
+    public void commit(long mark) {
+        while (!marked.isEmpty() && marked.peek().mark <= mark) {
+            for (String id : marked.poll().ids) {
+                addWritten(id);
+                unsaved.add(id);
+            }
+        }
+    }
+
+    /**
+     * Record that every id added so far has been written.
+     */
+    public void commitAll() {
+        commit(mark());
+    }
+
+    /**
+     * @return the number of ids which have been written
+     */
+    public long size() {
+        return written != null ? written.size() : writtenBloom.size();
+    }
+
+    /**
+     * Write the ids which have been written, and not the pending ones.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        if (written != null) {
+            out.writeUTF(TYPE_EXACT);
+            out.writeInt(written.size());
+            for (String id : written) {
+                out.writeUTF(id);
+            }
+        } else {
+            out.writeUTF(TYPE_BLOOM);
+            writtenBloom.writeTo(out);
+        }
+    }
+
+    /**
+     * Read a filter written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in
+     * @return the filter, with no pending ids
+     * @throws IOException
+     */
+    public static DuplicateFilter readFrom(DataInput in) throws IOException {
+        String type = in.readUTF();
+        if (TYPE_BLOOM.equals(type)) {
+            return new DuplicateFilter(null, ScalableBloomFilter.readFrom(in));
+        }
+        int count = in.readInt();
+        Set<String> written = new HashSet<>(Math.max(16, (int) (count / 0.75f) + 1));
+        for (int i = 0; i < count; i++) {
+            written.add(in.readUTF());
+        }
+        return new DuplicateFilter(written, null);
+    }
+
+    /**
+     * @return the ids written since the last call, which the caller is to save
+     */
+    public List<String> takeUnsaved() {
+        List<String> result = unsaved;
+        unsaved = new ArrayList<>();
+        return result;
+    }
+
+    /**
+     * Record a resource as written, when the filter is restored.
+     */
+    void addWritten(String id) {
+        if (written != null) {
+            written.add(id);
+        } else {
+            writtenBloom.add(id);
+        }
+    }
+
+    private boolean isWritten(String id) {
+        return written != null ? written.contains(id) : writtenBloom.mightContain(id);
+    }
+
+    private void initPending() {
+        current = new HashSet<>();
+        marked = new ArrayDeque<>();
+        lastMark = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateFilter [type=" + (written != null ? TYPE_EXACT : TYPE_BLOOM) + ", written=" + size()
+                + ", pending=" + (current.size() + marked.stream().mapToInt(m -> m.ids.size()).sum()) + "]";
+    }
+
+    private static class MarkedIds {
+        private final long mark;
+        private final Set<String> ids;
+
+        private MarkedIds(long mark, Set<String> ids) {
+            this.mark = mark;
+            this.ids = ids;
+        }
+    }
+}
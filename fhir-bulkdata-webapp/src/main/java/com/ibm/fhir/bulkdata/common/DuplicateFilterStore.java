@@ -0,0 +1,257 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Saves the written ids of a {@link DuplicateFilter} in a working directory, so that the export
+ * checkpoint holds a small {@link Reference} instead of the whole filter.
+ *
+ * <p>The directory holds a snapshot of the filter and a log of the ids written since the snapshot.
+ * Each save appends the newly written ids to the log; once the log is larger than the snapshot, a
+ * new snapshot is written and the log starts again. The bytes written therefore grow linearly with
+ * the number of ids, no matter how often the export is checkpointed.
+ *
+ * <p>A checkpoint which is rolled back still refers to the previous snapshot and to a shorter log,
+ * so the previous snapshot is kept until the next one replaces it, and the log is cut back to the
+ * length in the reference when the filter is loaded.
+ *
+ * <p>Not thread-safe.
+ */
+public class DuplicateFilterStore {
+    private static final Logger logger = Logger.getLogger(DuplicateFilterStore.class.getName());
+
+    private static final String DIRECTORY_PREFIX = "export-duplicates-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String LOG_SUFFIX = ".log";
+
+    // The log grows to at least this size before it is folded into a new snapshot
+    private static final long MIN_LOG_BYTES = 1 << 20;
+
+    private final Path directory;
+
+    // The generation of the current snapshot, or 0 before the first one
+    private long generation;
+    private long snapshotBytes;
+    private long logBytes;
+
+    // Set when a save failed part way through, and the log can no longer be trusted
+    private boolean snapshotNext = false;
+
+    private DuplicateFilterStore(Path directory, long generation, long snapshotBytes, long logBytes) {
+        this.directory = directory;
+        this.generation = generation;
+        this.snapshotBytes = snapshotBytes;
+        this.logBytes = logBytes;
+    }
+
+    /**
+     * Create a store in a new directory.
+     *
+     * @param workDirectory the directory in which to create it
+     * @return the store
+     * @throws IOException
+     */
+    public static DuplicateFilterStore create(String workDirectory) throws IOException {
+        Path parent = Paths.get(workDirectory);
+        Files.createDirectories(parent);
+        return new DuplicateFilterStore(Files.createTempDirectory(parent, DIRECTORY_PREFIX), 0, 0, 0);
+    }
+
+    /**
+     * Load the filter saved by a checkpoint, when a partition is restarted.
+     *
+     * @param reference the reference in the checkpoint
+     * @return the store, positioned to continue from the checkpoint, and the filter it holds;
+     *         or null if the files were lost, e.g. when the partition is restarted on another server
+     */
+    public static Loaded load(Reference reference) {
+        Path directory = Paths.get(reference.directory);
+        Path snapshot = directory.resolve(reference.generation + SNAPSHOT_SUFFIX);
+        Path log = directory.resolve(reference.generation + LOG_SUFFIX);
+        try {
+            DuplicateFilter filter;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                filter = DuplicateFilter.readFrom(in);
+            }
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                // Drop anything appended after the checkpoint, which was rolled back
+                channel.truncate(reference.logBytes);
+            }
+            try (InputStream logIn = Files.newInputStream(log);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(logIn))) {
+                long remaining = reference.logBytes;
+                while (remaining > 0) {
+                    String id = in.readUTF();
+                    filter.addWritten(id);
+                    remaining -= utfLength(id);
+                }
+            }
+            DuplicateFilterStore store = new DuplicateFilterStore(directory, reference.generation, Files.size(snapshot), reference.logBytes);
+            return new Loaded(store, filter);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to load the duplicate filter from '" + directory
+                    + "'; resources exported before the restart can be exported again", e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the ids which were written since the last save.
+     *
+     * @param filter
+     * @return the reference to put in the checkpoint
+     * @throws IOException
+     */
+    public Reference save(DuplicateFilter filter) throws IOException {
+        List<String> ids = filter.takeUnsaved();
+        try {
+            if (generation == 0 || snapshotNext || logBytes > Math.max(snapshotBytes, MIN_LOG_BYTES)) {
+                writeSnapshot(filter);
+            } else if (!ids.isEmpty()) {
+                logBytes += appendLog(ids);
+            }
+        } catch (IOException e) {
+            // The ids are in the filter, so the next snapshot saves them
+            snapshotNext = true;
+            throw e;
+        }
+        return new Reference(directory.toString(), generation, logBytes);
+    }
+
+    /**
+     * Delete the directory, once the partition is complete.
+     */
+    public void delete() {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to delete '" + directory + "'", e);
+        }
+    }
+
+    private void writeSnapshot(DuplicateFilter filter) throws IOException {
+        long next = generation + 1;
+        Path snapshot = directory.resolve(next + SNAPSHOT_SUFFIX);
+        Path tmp = directory.resolve(next + SNAPSHOT_SUFFIX + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            filter.writeTo(out);
+            out.flush();
+            fos.getChannel().force(true);
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.write(directory.resolve(next + LOG_SUFFIX), new byte[0]);
+
+        // The last checkpoint may still be rolled back to the current generation, but no longer to the one before
+        Files.deleteIfExists(directory.resolve((generation - 1) + SNAPSHOT_SUFFIX));
+        Files.deleteIfExists(directory.resolve((generation - 1) + LOG_SUFFIX));
+
+        generation = next;
+        snapshotBytes = Files.size(snapshot);
+        logBytes = 0;
+        snapshotNext = false;
+    }
+
+    private long appendLog(List<String> ids) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(directory.resolve(generation + LOG_SUFFIX).toFile(), true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            for (String id : ids) {
+                out.writeUTF(id);
+            }
+            out.flush();
+            fos.getChannel().force(true);
+            return out.size();
+        }
+    }
+
+    /**
+     * The number of bytes DataOutput.writeUTF writes for a value
+     */
+    private static long utfLength(String value) {
+        long length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateFilterStore [directory=" + directory + ", generation=" + generation + ", snapshotBytes=" + snapshotBytes
+                + ", logBytes=" + logBytes + "]";
+    }
+
+    /**
+     * Identifies a saved filter: the directory, the snapshot and how much of the log belongs to it.
+     */
+    public static class Reference implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String directory;
+        private final long generation;
+        private final long logBytes;
+
+        private Reference(String directory, long generation, long logBytes) {
+            this.directory = directory;
+            this.generation = generation;
+            this.logBytes = logBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Reference [directory=" + directory + ", generation=" + generation + ", logBytes=" + logBytes + "]";
+        }
+    }
+
+    /**
+     * A store and the filter loaded from it
+     */
+    public static class Loaded {
+        private final DuplicateFilterStore store;
+        private final DuplicateFilter filter;
+
+        private Loaded(DuplicateFilterStore store, DuplicateFilter filter) {
+            this.store = store;
+            this.filter = filter;
+        }
+
+        public DuplicateFilterStore getStore() {
+            return store;
+        }
+
+        public DuplicateFilter getFilter() {
+            return filter;
+        }
+    }
+}
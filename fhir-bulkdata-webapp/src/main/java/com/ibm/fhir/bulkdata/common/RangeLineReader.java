@@ -0,0 +1,162 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of an NDJSON byte range, keeping track of the byte offset of the next line
+ * so that a reader can checkpoint its position and later resume with a direct seek.
+ *
+ * <p>A range [start, end) owns every line which starts at an offset within it, so consecutive
+ * ranges split on arbitrary byte boundaries cover every line of the input exactly once. To find
+ * the first line it owns, the reader is opened one byte before the start of its range
+ * (see {@link #openPosition(long)}) and discards everything up to and including the first
+ * newline. When the start is already the start of a line, only the preceding newline is
+ * discarded, so the same rule also resumes from a checkpointed offset.
+ *
+ * <p>Not thread-safe.
+ */
+public class RangeLineReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final InputStream in;
+    private final long end;
+
+    // The offset of the next unread byte in the buffer, from the start of the input
+    private long position;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos = 0;
+    private int bufferLen = 0;
+    private boolean eof = false;
+
+    private byte[] line = new byte[1024];
+
+    /**
+     * Public constructor
+     *
+     * @param in a stream positioned at {@link #openPosition(long) openPosition(start)}
+     * @param start the offset of the first byte of the range
+     * @param end the offset after the last byte at which a line of the range may start, or -1 to read to the end of the input
+     * @throws IOException
+     */
+    public RangeLineReader(InputStream in, long start, long end) throws IOException {
+        this.in = in;
+        this.end = end;
+        this.position = openPosition(start);
+        if (start > 0) {
+            // Discard the tail of the line which belongs to the previous range
+            while (fill()) {
+                int i = indexOfNewline();
+                if (i >= 0) {
+                    consume(i + 1 - bufferPos);
+                    break;
+                }
+                consume(bufferLen - bufferPos);
+            }
+        }
+    }
+
+    /**
+     * @param start the offset of the first byte of a range
+     * @return the offset at which to open the input for a range which begins at start
+     */
+    public static long openPosition(long start) {
+        return start > 0 ? start - 1 : 0;
+    }
+
+    /**
+     * @return the byte offset of the next line to be read; a position to checkpoint
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true if there are no more lines to read in the range
+     * @throws IOException
+     */
+    public boolean isExhausted() throws IOException {
+        return (end >= 0 && position >= end) || !fill();
+    }
+
+    /**
+     * Read the next line of the range, without the line terminator.
+     *
+     * @return the line, or null if there are no more lines in the range
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        if (isExhausted()) {
+            return null;
+        }
+        int length = 0;
+        while (fill()) {
+            int i = indexOfNewline();
+            int n = (i >= 0 ? i : bufferLen) - bufferPos;
+            if (length + n > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length + n));
+            }
+            System.arraycopy(buffer, bufferPos, line, length, n);
+            length += n;
+            if (i >= 0) {
+                consume(n + 1);
+                break;
+            }
+            consume(n);
+        }
+        if (length > 0 && line[length - 1] == CARRIAGE_RETURN) {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Make sure the buffer holds at least one unread byte
+     *
+     * @return false if the end of the input was reached
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        while (bufferPos >= bufferLen && !eof) {
+            int n = in.read(buffer, 0, buffer.length);
+            if (n < 0) {
+                eof = true;
+            } else {
+                bufferPos = 0;
+                bufferLen = n;
+            }
+        }
+        return bufferPos < bufferLen;
+    }
+
+    private int indexOfNewline() {
+        for (int i = bufferPos; i < bufferLen; i++) {
+            if (buffer[i] == NEWLINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void consume(int n) {
+        bufferPos += n;
+        position += n;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * Reads batches of FHIR resources from the lines of an NDJSON range. The lines of each batch
+ * are parsed in parallel on the reader's worker pool and, once a batch has been handed out, the
+ * next one is read and parsed in the background, so it is ready by the time the ChunkWriter
+ * has written the previous one. The threads are shut down when the reader is closed, which
+ * happens when its partition ends.
+ *
+ * <p>Each batch carries the byte offset just past its last line, which is the position to
+ * checkpoint once the batch has been written. A prefetched batch is never checkpointed; after
+ * a restart it is simply read again from the checkpointed offset.
+ *
+ * <p>Not thread-safe; one reader is used by a single partition.
+ */
+public class ResourceBatchReader implements Closeable {
+    private static final Logger logger = Logger.getLogger(ResourceBatchReader.class.getName());
+
+    private static final int PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Parses lines
+    private final ExecutorService parsePool = Executors.newFixedThreadPool(PARSE_THREADS, daemonThreadFactory("bulkdata-import-parse-"));
+
+    // Runs the prefetch, which reads the lines and waits for them to be parsed
+    private final ExecutorService prefetchPool = Executors.newSingleThreadExecutor(daemonThreadFactory("bulkdata-import-read-"));
+
+    private final RangeLineReader lineReader;
+    private final int batchSize;
+    private final String dataSource;
+
+    // The number of the last line read, for logging
+    private long lineNumber;
+
+    private Future<Batch> prefetch = null;
+
+    /**
+     * Public constructor
+     *
+     * @param lineReader the lines to read
+     * @param batchSize the number of resources to read in each batch
+     * @param dataSource a description of the input, for logging
+     * @param numOfProcessedLines the number of lines of the range which were processed before the reader's position
+     */
+    public ResourceBatchReader(RangeLineReader lineReader, int batchSize, String dataSource, long numOfProcessedLines) {
+        this.lineReader = lineReader;
+        this.batchSize = batchSize;
+        this.dataSource = dataSource;
+        this.lineNumber = numOfProcessedLines;
+    }
+
+    /**
+     * Hand out the next batch, reading it now unless it was already prefetched, and start
+     * prefetching the one after it.
+     *
+     * @return the batch; it holds no resources if the range has been read completely
+     * @throws Exception
+     */
+    public Batch next() throws Exception {
+        Batch batch;
+        if (prefetch != null) {
+            try {
+                batch = prefetch.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            } finally {
+                prefetch = null;
+            }
+        } else {
+            batch = read();
+        }
+
+        if (!batch.isLast()) {
+            prefetch = prefetchPool.submit(this::read);
+        }
+        return batch;
+    }
+
+    /**
+     * Read and parse lines until the batch has batchSize resources or the range is exhausted.
+     * Lines which fail to parse are logged and skipped.
+     */
+    private Batch read() throws Exception {
+        List<Resource> resources = new ArrayList<>(batchSize);
+        int parseFailures = 0;
+        while (resources.size() < batchSize && !lineReader.isExhausted()) {
+            List<String> lines = new ArrayList<>(batchSize - resources.size());
+            String line;
+            while (lines.size() < batchSize - resources.size() && (line = lineReader.readLine()) != null) {
+                lines.add(line);
+            }
+
+            List<Future<Resource>> parsed = new ArrayList<>(lines.size());
+            for (String l : lines) {
+                parsed.add(parsePool.submit(() -> FHIRParser.parser(Format.JSON).parse(new StringReader(l))));
+            }
+            for (Future<Resource> future : parsed) {
+                lineNumber++;
+                try {
+                    resources.add(future.get());
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof FHIRParserException)) {
+                        throw e;
+                    }
+                    // Log and skip the invalid FHIR resource.
+                    parseFailures++;
+                    logger.log(Level.INFO, "read: " + "Failed to parse line " + lineNumber + " of [" + dataSource + "].", e.getCause());
+                }
+            }
+        }
+        return new Batch(resources, parseFailures, lineReader.getPosition(), lineReader.isExhausted());
+    }
+
+    /**
+     * Stop reading, close the underlying input and shut down the reader's threads
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (prefetch != null) {
+                // Let the prefetch finish with the input before closing it
+                try {
+                    prefetch.get();
+                } catch (Exception e) {
+                    logger.log(Level.FINE, "Discarding the prefetched batch of [" + dataSource + "]", e);
+                }
+                prefetch = null;
+            }
+            lineReader.close();
+        } finally {
+            prefetchPool.shutdownNow();
+            parsePool.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * A batch of resources read from the range
+     */
+    public static class Batch {
+        private final List<Resource> resources;
+        private final int parseFailures;
+        private final long endPosition;
+        private final boolean last;
+
+        private Batch(List<Resource> resources, int parseFailures, long endPosition, boolean last) {
+            this.resources = resources;
+            this.parseFailures = parseFailures;
+            this.endPosition = endPosition;
+            this.last = last;
+        }
+
+        /**
+         * @return the resources, in the order of their lines
+         */
+        public List<Resource> getResources() {
+            return resources;
+        }
+
+        /**
+         * @return the number of lines of the batch which could not be parsed
+         */
+        public int getParseFailures() {
+            return parseFailures;
+        }
+
+        /**
+         * @return the byte offset just past the last line of the batch
+         */
+        public long getEndPosition() {
+            return endPosition;
+        }
+
+        /**
+         * @return true if there are no more lines after this batch
+         */
+        public boolean isLast() {
+            return last;
+        }
+    }
+}
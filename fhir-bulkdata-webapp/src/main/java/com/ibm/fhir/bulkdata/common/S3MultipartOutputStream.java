@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
+import com.ibm.cloud.objectstorage.services.s3.model.AbortMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+
+/**
+ * An {@link OutputStream} which writes a single object to S3/COS using a multi-part upload.
+ * Data is buffered until a part is full and then uploaded, so at most one part is held in
+ * memory. The upload is completed when the stream is closed, so the object only becomes
+ * visible once all the data has been written. A writer which fails part way through
+ * must call {@link #abort()} instead of closing the stream, otherwise the truncated
+ * object would be published.
+ *
+ * <p>Not thread-safe.
+ */
+public class S3MultipartOutputStream extends OutputStream {
+    private static final Logger logger = Logger.getLogger(S3MultipartOutputStream.class.getName());
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String itemName;
+    private final boolean isPublicAccess;
+    private final int partSize;
+
+    private final PartBuffer buffer;
+    private final List<PartETag> dataPacks = new ArrayList<>();
+    private String uploadId = null;
+    private boolean closed = false;
+
+    /**
+     * Public constructor
+     *
+     * @param client the S3 client
+     * @param bucketName the target bucket
+     * @param itemName the key of the object to write
+     * @param isPublicAccess whether the object is given public read access
+     * @param partSize the size of each uploaded part; at least the minimum part size of the object store
+     */
+    public S3MultipartOutputStream(AmazonS3 client, String bucketName, String itemName, boolean isPublicAccess, int partSize) {
+        this.client = client;
+        this.bucketName = bucketName;
+        this.itemName = itemName;
+        this.isPublicAccess = isPublicAccess;
+        this.partSize = partSize;
+        this.buffer = new PartBuffer(partSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer.write(b);
+        if (buffer.size() >= partSize) {
+            uploadPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            final int n = Math.min(len, partSize - buffer.size());
+            buffer.write(b, off, n);
+            off += n;
+            len -= n;
+            if (buffer.size() >= partSize) {
+                uploadPart();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed for '" + itemName + "'");
+        }
+    }
+
+    /**
+     * Upload the buffered data as the next part. If the upload fails, the whole
+     * multi-part upload is aborted and the stream can no longer be used
+     */
+    private void uploadPart() throws IOException {
+        try {
+            if (uploadId == null) {
+                uploadId = BulkDataUtils.startPartUpload(client, bucketName, itemName, isPublicAccess);
+            }
+            dataPacks.add(BulkDataUtils.multiPartUpload(client, bucketName, itemName, uploadId,
+                buffer.toInputStream(), buffer.size(), dataPacks.size() + 1));
+            buffer.reset();
+        } catch (Exception e) {
+            // BulkDataUtils has already aborted the upload if the part failed
+            closed = true;
+            buffer.reset();
+            throw new IOException("Failed to upload part " + (dataPacks.size() + 1) + " of '" + itemName + "'", e);
+        }
+    }
+
+    /**
+     * @return the number of bytes uploaded or buffered so far
+     */
+    public long getSize() {
+        return (long) dataPacks.size() * partSize + buffer.size();
+    }
+
+    /**
+     * Complete the upload, publishing the object. Does nothing if the stream has
+     * already been closed or aborted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        // The last part may be smaller than the minimum part size
+        if (buffer.size() > 0 || dataPacks.isEmpty()) {
+            uploadPart();
+        }
+
+        if (uploadId == null) {
+            // Nothing was started, so there is nothing to complete or abort
+            closed = true;
+            throw new IOException("No upload to finish for '" + itemName + "'");
+        }
+
+        try {
+            // finishMultiPartUpload aborts the upload itself if it fails
+            closed = true;
+            BulkDataUtils.finishMultiPartUpload(client, bucketName, itemName, uploadId, dataPacks);
+        } catch (Exception e) {
+            throw new IOException("Failed to finish the upload of '" + itemName + "'", e);
+        }
+    }
+
+    /**
+     * Abort the upload, discarding the parts uploaded so far, so that nothing is
+     * published. Does nothing if the stream has already been closed or aborted.
+     * Failures are logged rather than thrown, because the caller is already
+     * handling an earlier error.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.reset();
+
+        if (uploadId != null) {
+            try {
+                client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, itemName, uploadId));
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to abort the upload of '" + itemName + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Exposes the buffered bytes for the upload without copying them
+     */
+    private static class PartBuffer extends ByteArrayOutputStream {
+        PartBuffer(int size) {
+            super(size);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
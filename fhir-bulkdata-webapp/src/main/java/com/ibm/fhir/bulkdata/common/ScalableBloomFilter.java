@@ -0,0 +1,240 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bloom filter of strings which grows with the number of strings added to it, while keeping
+ * the overall false positive probability within a fixed budget.
+ *
+ * <p>The filter is a chain of plain Bloom filters. Once a filter holds as many strings as it was
+ * sized for, a new filter with twice the capacity and half the false positive probability is
+ * added to the chain. The probabilities form a geometric series, so the probability of the whole
+ * chain stays below the budget no matter how many filters are added, and the memory used grows
+ * linearly with the number of strings: about 1.44 * log2(1/p) bits per string.
+ *
+ * <p>Not thread-safe.
+ */
+public class ScalableBloomFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+    private static final double LN2 = Math.log(2);
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    // The capacity and false positive probability of the next stage
+    private long nextCapacity;
+    private double nextFalsePositiveRate;
+
+    /**
+     * Public constructor
+     *
+     * @param initialCapacity the number of strings the first filter is sized for
+     * @param falsePositiveRate the probability, between 0 and 1, that {@link #mightContain(String)} returns true
+     *            for a string which was not added
+     */
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        this.nextCapacity = initialCapacity;
+        // The stages' probabilities sum to at most p0 / (1 - r)
+        this.nextFalsePositiveRate = falsePositiveRate * (1 - TIGHTENING_RATIO);
+    }
+
+    private ScalableBloomFilter() {
+        // for readFrom
+    }
+
+    /**
+     * @param value
+     * @return false if the value was definitely not added; true if it probably was
+     */
+    public boolean mightContain(String value) {
+        long h1 = hash(value, 0x9E3779B97F4A7C15L);
+        long h2 = hash(value, 0xC2B2AE3D27D4EB4FL);
+        for (Stage stage : stages) {
+            if (stage.mightContain(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a value to the filter.
+     *
+     * @param value
+     * @return false if the value was probably added before; true if it is new
+     */
+    public boolean add(String value) {
+        long h1 = hash(value, 0x9E3779B97F4A7C15L);
+        long h2 = hash(value, 0xC2B2AE3D27D4EB4FL);
+        for (Stage stage : stages) {
+            if (stage.mightContain(h1, h2)) {
+                return false;
+            }
+        }
+        Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+        if (last == null || last.count >= last.capacity) {
+            last = new Stage(nextCapacity, nextFalsePositiveRate);
+            stages.add(last);
+            nextCapacity *= GROWTH_FACTOR;
+            nextFalsePositiveRate *= TIGHTENING_RATIO;
+        }
+        last.add(h1, h2);
+        return true;
+    }
+
+    /**
+     * @return the number of values added
+     */
+    public long size() {
+        long size = 0;
+        for (Stage stage : stages) {
+            size += stage.count;
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes used by the bit sets of the filter
+     */
+    public long getSizeInBytes() {
+        long bytes = 0;
+        for (Stage stage : stages) {
+            bytes += 8l * stage.bits.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the filter in a compact binary form: its bit sets and little else.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(nextCapacity);
+        out.writeDouble(nextFalsePositiveRate);
+        out.writeInt(stages.size());
+        for (Stage stage : stages) {
+            out.writeLong(stage.capacity);
+            out.writeInt(stage.numHashes);
+            out.writeLong(stage.count);
+            out.writeInt(stage.bits.length);
+            for (long word : stage.bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Read a filter written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in
+     * @return the filter
+     * @throws IOException
+     */
+    public static ScalableBloomFilter readFrom(DataInput in) throws IOException {
+        ScalableBloomFilter filter = new ScalableBloomFilter();
+        filter.nextCapacity = in.readLong();
+        filter.nextFalsePositiveRate = in.readDouble();
+        int numStages = in.readInt();
+        for (int i = 0; i < numStages; i++) {
+            long capacity = in.readLong();
+            int numHashes = in.readInt();
+            long count = in.readLong();
+            long[] bits = new long[in.readInt()];
+            for (int j = 0; j < bits.length; j++) {
+                bits[j] = in.readLong();
+            }
+            filter.stages.add(new Stage(capacity, numHashes, bits, count));
+        }
+        return filter;
+    }
+
+    /**
+     * A 64-bit hash of the characters of the value, finished with the MurmurHash3 mix so that
+     * similar ids, which differ in a few trailing characters, are spread over the whole range.
+     */
+    private static long hash(String value, long seed) {
+        long h = seed ^ value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * A plain Bloom filter, indexed by double hashing
+     */
+    private static class Stage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long capacity;
+        private final long numBits;
+        private final int numHashes;
+        private final long[] bits;
+        private long count = 0;
+
+        private Stage(long capacity, double falsePositiveRate) {
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+            // Round up to whole words
+            long words = Math.max(1, (m + 63) / 64);
+            if (words > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Bloom filter stage for " + capacity + " values is too large");
+            }
+            this.capacity = capacity;
+            this.bits = new long[(int) words];
+            this.numBits = words * 64;
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * LN2));
+        }
+
+        private Stage(long capacity, int numHashes, long[] bits, long count) {
+            this.capacity = capacity;
+            this.bits = bits;
+            this.numBits = 64l * bits.length;
+            this.numHashes = numHashes;
+            this.count = count;
+        }
+
+        private boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < numHashes; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, numBits);
+                if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(long h1, long h2) {
+            for (int i = 0; i < numHashes; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, numBits);
+                bits[(int) (index >>> 6)] |= 1L << index;
+            }
+            count++;
+        }
+    }
+}
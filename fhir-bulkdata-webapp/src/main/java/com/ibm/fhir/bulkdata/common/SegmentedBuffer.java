@@ -0,0 +1,274 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory {@link OutputStream} made of fixed-size segments taken from a shared pool.
+ * Unlike a ByteArrayOutputStream, the buffer never grows by copying, and its content can be
+ * {@link #detach() detached} as a {@link Part} and read back as an InputStream without copying,
+ * which lets a multi-part upload send the bytes the generator wrote directly. Segments are
+ * returned to the pool when the buffer is reset or the detached part is closed.
+ *
+ * <p>Not thread-safe, but a detached part may be read and closed by another thread.
+ */
+public class SegmentedBuffer extends OutputStream {
+    // The size of each segment
+    public static final int SEGMENT_SIZE = 64 * 1024;
+
+    // The pool keeps at most this many free segments (64 MiB) for reuse
+    private static final int MAX_POOLED_SEGMENTS = 1024;
+
+    private static final SegmentPool POOL = new SegmentPool(MAX_POOLED_SEGMENTS);
+
+    private List<byte[]> segments = new ArrayList<>();
+    private int size = 0;
+
+    @Override
+    public void write(int b) {
+        final int offset = size % SEGMENT_SIZE;
+        if (offset == 0) {
+            segments.add(POOL.acquire());
+        }
+        segments.get(segments.size() - 1)[offset] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            final int offset = size % SEGMENT_SIZE;
+            if (offset == 0) {
+                segments.add(POOL.acquire());
+            }
+            final int n = Math.min(len, SEGMENT_SIZE - offset);
+            System.arraycopy(b, off, segments.get(segments.size() - 1), offset, n);
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    /**
+     * @return the number of bytes in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Write the content of the buffer to the given stream
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        int remaining = size;
+        for (byte[] segment : segments) {
+            final int n = Math.min(remaining, SEGMENT_SIZE);
+            out.write(segment, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Empty the buffer, returning its segments to the pool
+     */
+    public void reset() {
+        for (byte[] segment : segments) {
+            POOL.release(segment);
+        }
+        segments.clear();
+        size = 0;
+    }
+
+    /**
+     * Move the content of the buffer to a new part, leaving this buffer empty. The segments are
+     * returned to the pool when the part is closed.
+     *
+     * @return the detached part
+     */
+    public Part detach() {
+        Part part = new Part(segments, size);
+        segments = new ArrayList<>();
+        size = 0;
+        return part;
+    }
+
+    /**
+     * @return the number of free segments currently held by the pool
+     */
+    public static int getPooledSegmentCount() {
+        return POOL.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentedBuffer [size=" + size + ", segments=" + segments.size() + "]";
+    }
+
+    /**
+     * The content of a buffer after it was detached, for example a part waiting to be uploaded
+     */
+    public static class Part implements AutoCloseable {
+        private final List<byte[]> segments;
+        private final int size;
+        private boolean closed = false;
+
+        private Part(List<byte[]> segments, int size) {
+            this.segments = Collections.unmodifiableList(segments);
+            this.size = size;
+        }
+
+        /**
+         * @return the number of bytes in the part
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return a new stream which reads the content of the part, without copying it
+         */
+        public InputStream newInputStream() {
+            return new SegmentInputStream(segments, size);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                for (byte[] segment : segments) {
+                    POOL.release(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a list of segments as one stream
+     */
+    private static class SegmentInputStream extends InputStream {
+        private final List<byte[]> segments;
+        private final int size;
+        private int pos = 0;
+        private int mark = 0;
+
+        SegmentInputStream(List<byte[]> segments, int size) {
+            this.segments = segments;
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (pos >= size) {
+                return -1;
+            }
+            final int b = segments.get(pos / SEGMENT_SIZE)[pos % SEGMENT_SIZE] & 0xff;
+            pos++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (off < 0 || len < 0 || off + len > b.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= size) {
+                return -1;
+            }
+            int total = 0;
+            while (len > 0 && pos < size) {
+                final int offset = pos % SEGMENT_SIZE;
+                final int n = Math.min(len, Math.min(SEGMENT_SIZE - offset, size - pos));
+                System.arraycopy(segments.get(pos / SEGMENT_SIZE), offset, b, off, n);
+                off += n;
+                len -= n;
+                pos += n;
+                total += n;
+            }
+            return total;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0, Math.min(n, size - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return size - pos;
+        }
+
+        // The S3 client marks and resets the stream to retry a failed request
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = pos;
+        }
+
+        @Override
+        public synchronized void reset() {
+            pos = mark;
+        }
+    }
+
+    /**
+     * A bounded pool of free segments, shared by all buffers
+     */
+    private static class SegmentPool {
+        private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger count = new AtomicInteger();
+        private final int maxSegments;
+
+        SegmentPool(int maxSegments) {
+            this.maxSegments = maxSegments;
+        }
+
+        byte[] acquire() {
+            byte[] segment = free.poll();
+            if (segment != null) {
+                count.decrementAndGet();
+                return segment;
+            }
+            return new byte[SEGMENT_SIZE];
+        }
+
+        void release(byte[] segment) {
+            // Let the garbage collector have any segments beyond the limit
+            if (count.incrementAndGet() <= maxSegments) {
+                free.offer(segment);
+            } else {
+                count.decrementAndGet();
+            }
+        }
+
+        int size() {
+            return count.get();
+        }
+    }
+}
@@ -6,22 +6,25 @@
 
 package com.ibm.fhir.bulkdata.export.patient.resource;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.ws.rs.core.Response;
 
 import com.ibm.fhir.bulkdata.audit.BulkAuditLogger;
+import com.ibm.fhir.bulkdata.common.DuplicateFilter;
+import com.ibm.fhir.bulkdata.common.SegmentedBuffer;
 import com.ibm.fhir.bulkdata.export.system.resource.SystemExportResourceHandler;
 import com.ibm.fhir.bulkdata.jbatch.export.data.ExportTransientUserData;
+import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.operation.bulkdata.model.type.BulkDataContext;
@@ -43,11 +46,6 @@ public class PatientResourceHandler extends SystemExportResourceHandler {
 
     private BulkAuditLogger auditLogger = new BulkAuditLogger();
 
-    // Used to prevent the same resource from being exported multiple times when multiple _typeFilter for the same
-    // resource type are used, which leads to multiple search requests which can have overlaps of resources,
-    // loadedResourceIds and isDoDuplicationCheck are always reset when moving to the next resource type.
-    Set<String> loadedResourceIds = new HashSet<>();
-
     private ExportTransientUserData chunkData;
     private BulkDataContext ctx;
     private FHIRPersistence fhirPersistence;
@@ -72,26 +70,123 @@ public class PatientResourceHandler extends SystemExportResourceHandler {
         this.provider = provider;
     }
 
+    /**
+     * @param exportFormat
+     * @return true if the resources are exported by copying their stored payloads, rather than by
+     *         building the resources and generating their JSON again; i.e. for NDJSON, when supported
+     *         by the persistence layer
+     */
+    public boolean isPayloadExport(String exportFormat) {
+        return FHIRMediaType.APPLICATION_NDJSON.equals(exportFormat) && fhirPersistence.isSearchPayloadsSupported();
+    }
+
     /**
      * @param patientIds the patient ids to use to scope the search
      * @throws Exception
      */
     public List<Resource> executeSearch(List<String> patientIds) throws Exception {
-        List<Map<String, List<String>>> typeFilters = searchParametersForResoureTypes.get(resourceType);
-        boolean isDoDuplicationCheck = typeFilters != null && typeFilters.size() > 1 ?
-                true : adapter.shouldStorageProviderCheckDuplicate(ctx.getSource());
-        int indexOfCurrentTypeFilter = 0;
-        int compartmentPageNum = 1;
-        FHIRSearchContext searchContext;
-
         List<Resource> results = new ArrayList<>();
+        DuplicateFilter duplicateFilter = getDuplicateFilter();
+
+        search(patientIds, (searchContext, queryParameters) -> {
+            FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+
+            Date startTime = new Date(System.currentTimeMillis());
+            List<Resource> resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
+            int resultSize = resources.size();
+
+            if (duplicateFilter != null) {
+                resources = resources.stream()
+                        // the add returns false if the id already exists, which filters it out of the collection
+                        .filter(r -> duplicateFilter.add(r.getId()))
+                        .collect(Collectors.toList());
+            }
+            results.addAll(resources);
+
+            if (auditLogger.shouldLog() && resources != null) {
+                Date endTime = new Date(System.currentTimeMillis());
+                auditLogger.logSearchOnExport(ctx.getPartitionResourceType(), queryParameters, resources.size(), startTime, endTime,
+                        Response.Status.OK, "StorageProvider@" + provider, "BulkDataOperator");
+            }
+            return resultSize;
+        });
+
+        return results;
+    }
+
+    /**
+     * Export the resources in the compartments of the patients by copying their stored payloads straight
+     * into the chunk data buffer, without building the resources. This is the NDJSON counterpart of
+     * {@link #executeSearch(List)} followed by {@link #fillChunkData(String, ExportTransientUserData, List)}.
+     *
+     * @param patientIds the patient ids to use to scope the search
+     * @throws Exception
+     */
+    public void exportPayloads(List<String> patientIds) throws Exception {
+        DuplicateFilter duplicateFilter = getDuplicateFilter();
+        SegmentedBuffer buffer = chunkData.getBufferStream();
+        byte[] delimiter = adapter.getEndOfFileDelimiter(null);
+        int[] resSubTotal = { 0 };
+
+        search(patientIds, (searchContext, queryParameters) -> {
+            FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+
+            Date startTime = new Date(System.currentTimeMillis());
+            int pageSubTotal = resSubTotal[0];
+            int resultSize = fhirPersistence.searchPayloads(persistenceContext, resourceType, payload -> {
+                // drop the resources which were already exported
+                if (duplicateFilter == null || duplicateFilter.add(payload.getLogicalId())) {
+                    try {
+                        payload.transferTo(buffer);
+                        buffer.write(delimiter);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    resSubTotal[0]++;
+                }
+                return true;
+            });
 
+            if (auditLogger.shouldLog()) {
+                Date endTime = new Date(System.currentTimeMillis());
+                auditLogger.logSearchOnExport(ctx.getPartitionResourceType(), queryParameters, resSubTotal[0] - pageSubTotal, startTime, endTime,
+                        Response.Status.OK, "StorageProvider@" + provider, "BulkDataOperator");
+            }
+            return resultSize;
+        });
+
+        chunkData.addCurrentUploadResourceNum(resSubTotal[0]);
+        chunkData.addCurrentUploadSize(buffer.size());
+        chunkData.addTotalResourcesNum(resSubTotal[0]);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("exportPayloads: Processed resources - " + resSubTotal[0] + "; Bufferred data size - " + buffer.size());
+        }
+    }
+
+    private DuplicateFilter getDuplicateFilter() throws Exception {
         if (chunkData == null) {
             String msg = "fillChunkDataBuffer: chunkData is null, this should never happen!";
             logger.warning(msg);
             throw new Exception(msg);
         }
 
+        // Used to prevent the same resource from being exported multiple times when multiple _typeFilter for the same
+        // resource type are used, or when a resource is in the compartments of patients of different pages.
+        // Set by the ChunkReader when duplicates are checked, and saved with the checkpoint.
+        return chunkData.getDuplicateFilter();
+    }
+
+    /**
+     * Run the search for each typeFilter of the resource type, reading every page of its matches by keyset.
+     *
+     * @param patientIds the patient ids to use to scope the search
+     * @param pageReader reads a page of matches
+     * @throws Exception
+     */
+    private void search(List<String> patientIds, PageReader pageReader) throws Exception {
+        int indexOfCurrentTypeFilter = 0;
+        FHIRSearchContext searchContext;
+
         do {
             Map<String, List<String>> queryParameters = new HashMap<>();
             // Add the search parameters from the current typeFilter for current resource type.
@@ -110,8 +205,6 @@ public class PatientResourceHandler extends SystemExportResourceHandler {
             if (!searchCriteria.isEmpty()) {
                 queryParameters.put(SearchConstants.LAST_UPDATED, searchCriteria);
             }
-            queryParameters.put(SearchConstants.SORT, Arrays.asList(SearchConstants.LAST_UPDATED));
-
             if (Patient.class.isAssignableFrom(resourceType)) {
                 queryParameters.put(SearchConstants.ID, patientIds);
                 searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
@@ -121,35 +214,30 @@ public class PatientResourceHandler extends SystemExportResourceHandler {
                 searchContext.getSearchParameters().add(0, inclusionCriteria);
             }
             searchContext.setPageSize(pageSize);
+            searchContext.setKeysetPaging(true);
 
+            // Read the compartment resources by keyset; the persistence layer advances the seek key after each page
+            int resultSize;
             do {
-                searchContext.setPageNumber(compartmentPageNum);
-                FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
-
-                Date startTime = new Date(System.currentTimeMillis());
-                List<Resource> resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
-
-                if (isDoDuplicationCheck) {
-                    resources = resources.stream()
-                            // the add returns false if the id already exists, which filters it out of the collection
-                            .filter(r -> loadedResourceIds.add(r.getId()))
-                            .collect(Collectors.toList());
-                }
-                results.addAll(resources);
-
-                if (auditLogger.shouldLog() && resources != null) {
-                    Date endTime = new Date(System.currentTimeMillis());
-                    auditLogger.logSearchOnExport(ctx.getPartitionResourceType(), queryParameters, resources.size(), startTime, endTime,
-                            Response.Status.OK, "StorageProvider@" + provider, "BulkDataOperator");
-                }
-                compartmentPageNum++;
-            } while (compartmentPageNum <= searchContext.getLastPageNumber());
-            compartmentPageNum = 1;
+                resultSize = pageReader.read(searchContext, queryParameters);
+            } while (resultSize >= pageSize);
 
             indexOfCurrentTypeFilter++;
         } while (searchParametersForResoureTypes.get(resourceType) != null
                 && indexOfCurrentTypeFilter < searchParametersForResoureTypes.get(resourceType).size());
+    }
 
-        return results;
+    /**
+     * Reads a page of the matches of a search
+     */
+    @FunctionalInterface
+    private interface PageReader {
+        /**
+         * @param searchContext the search, positioned at the page to read
+         * @param queryParameters the query parameters of the search, for auditing
+         * @return the number of matches in the page, including any duplicates which were dropped
+         * @throws Exception
+         */
+        int read(FHIRSearchContext searchContext, Map<String, List<String>> queryParameters) throws Exception;
     }
 }
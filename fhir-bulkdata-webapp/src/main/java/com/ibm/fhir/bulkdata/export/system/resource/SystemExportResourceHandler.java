@@ -45,8 +45,8 @@ public class SystemExportResourceHandler {
 
         for (Resource res : resources) {
             try {
-                // No need to fill buffer for parquet because we're letting spark write to COS;
-                // we don't need to control the Multi-part upload like in the NDJSON case
+                // No need to fill buffer for parquet because the provider writes the resources
+                // through the parquet writer, which streams its own multi-part upload
                 if (!FHIRMediaType.APPLICATION_PARQUET.equals(exportFormat)) {
                     FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
                     chunkData.getBufferStream().write(adapter.getEndOfFileDelimiter(null));
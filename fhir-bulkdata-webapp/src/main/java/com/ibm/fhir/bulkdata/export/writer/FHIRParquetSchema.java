@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.export.writer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Type.Repetition;
+import org.apache.parquet.schema.Types;
+import org.apache.parquet.schema.Types.GroupBuilder;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+
+/**
+ * Derives the Parquet schema for a FHIR resource type from the element metadata in {@link ModelSupport}.
+ * The schema only depends on the resource type, so every file written for a given type has exactly
+ * the same schema regardless of which elements happen to be present in the data.
+ *
+ * <p>The mapping follows the FHIR JSON representation of the resource:
+ * <ul>
+ * <li>each element becomes a field with the same name as the JSON property; repeating elements
+ * are repeated fields and choice elements have a field per choice type (e.g. deceasedBoolean)</li>
+ * <li>boolean becomes BOOLEAN and integer (including positiveInt and unsignedInt) becomes INT32.
+ * All other primitives, including decimal (to preserve precision), are UTF8 strings</li>
+ * <li>complex data types and backbone elements become groups</li>
+ * <li>elements which would make the schema recursive or unbounded are written as JSON strings.
+ * This covers extensions, contained resources and any data type which already appears on the
+ * path from the root (e.g. Reference.identifier.assigner)</li>
+ * <li>the id and extensions of a primitive element (the "_element" JSON property) are written
+ * as a JSON string in an optional field of the same name. For a repeating element this is the
+ * whole JSON array; entries which only have extensions (a null in the value array) are left out
+ * of the value field, so readers must use the "_element" array to line the values up with their
+ * extensions when it contains nulls</li>
+ * </ul>
+ */
+public class FHIRParquetSchema {
+
+    // Cache of the schema for each resource type
+    private static final Map<Class<? extends Resource>, MessageType> SCHEMA_CACHE = new ConcurrentHashMap<>();
+
+    public static final String RESOURCE_TYPE = "resourceType";
+
+    private FHIRParquetSchema() {
+        // No Operation
+    }
+
+    /**
+     * Get the schema for the given resource type
+     * @param resourceType
+     * @return
+     */
+    public static MessageType getSchema(Class<? extends Resource> resourceType) {
+        return SCHEMA_CACHE.computeIfAbsent(resourceType, FHIRParquetSchema::buildSchema);
+    }
+
+    private static MessageType buildSchema(Class<? extends Resource> resourceType) {
+        Types.MessageTypeBuilder builder = Types.buildMessage();
+        builder.required(PrimitiveTypeName.BINARY).as(OriginalType.UTF8).named(RESOURCE_TYPE);
+
+        Deque<Class<?>> path = new ArrayDeque<>();
+        path.push(resourceType);
+        for (ElementInfo elementInfo : ModelSupport.getElementInfo(resourceType)) {
+            addElement(builder, elementInfo, path);
+        }
+
+        return builder.named(resourceType.getSimpleName());
+    }
+
+    /**
+     * Add the field(s) for the given element to the group being built
+     */
+    private static void addElement(GroupBuilder<?> builder, ElementInfo elementInfo, Deque<Class<?>> path) {
+        final Repetition repetition = elementInfo.isRepeating() ? Repetition.REPEATED : Repetition.OPTIONAL;
+        if (elementInfo.isChoice()) {
+            for (Class<?> choiceType : elementInfo.getChoiceTypes()) {
+                addField(builder, ModelSupport.getChoiceElementName(elementInfo.getName(), choiceType), choiceType, repetition, path);
+            }
+        } else {
+            addField(builder, elementInfo.getName(), elementInfo.getType(), repetition, path);
+        }
+    }
+
+    /**
+     * Add the field for an element with the given name and type, plus the "_element" field
+     * holding the id and extensions if it is a primitive
+     */
+    private static void addField(GroupBuilder<?> builder, String name, Class<?> elementType, Repetition repetition, Deque<Class<?>> path) {
+        builder.addField(buildField(name, elementType, repetition, path));
+        if (ModelSupport.isPrimitiveType(ModelSupport.getConcreteType(elementType))) {
+            builder.addField(Types.primitive(PrimitiveTypeName.BINARY, Repetition.OPTIONAL).as(OriginalType.JSON).named("_" + name));
+        }
+    }
+
+    /**
+     * Build the field for an element with the given name and type
+     */
+    private static Type buildField(String name, Class<?> elementType, Repetition repetition, Deque<Class<?>> path) {
+        final Class<?> type = ModelSupport.getConcreteType(elementType);
+
+        if (String.class.equals(type)) {
+            // Element.id and Resource.id
+            return Types.primitive(PrimitiveTypeName.BINARY, repetition).as(OriginalType.UTF8).named(name);
+        } else if (com.ibm.fhir.model.type.Boolean.class.equals(type)) {
+            return Types.primitive(PrimitiveTypeName.BOOLEAN, repetition).named(name);
+        } else if (com.ibm.fhir.model.type.Integer.class.isAssignableFrom(type)) {
+            return Types.primitive(PrimitiveTypeName.INT32, repetition).named(name);
+        } else if (ModelSupport.isPrimitiveType(type)) {
+            return Types.primitive(PrimitiveTypeName.BINARY, repetition).as(OriginalType.UTF8).named(name);
+        } else if (Extension.class.equals(type) || Resource.class.isAssignableFrom(type) || path.contains(type)) {
+            return Types.primitive(PrimitiveTypeName.BINARY, repetition).as(OriginalType.JSON).named(name);
+        }
+
+        // A complex type or backbone element
+        GroupBuilder<GroupType> group = Types.buildGroup(repetition);
+        path.push(type);
+        for (ElementInfo elementInfo : ModelSupport.getElementInfo(type)) {
+            addElement(group, elementInfo, path);
+        }
+        path.pop();
+        return group.named(name);
+    }
+}
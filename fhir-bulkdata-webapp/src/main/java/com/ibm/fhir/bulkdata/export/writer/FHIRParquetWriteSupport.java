@@ -0,0 +1,123 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.export.writer;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Writes the FHIR JSON representation of a resource as a Parquet record, using a schema
+ * from {@link FHIRParquetSchema}. The schema drives the traversal, so fields are always written
+ * in schema order and JSON properties which are not part of the schema are ignored.
+ */
+class FHIRParquetWriteSupport extends WriteSupport<JsonObject> {
+    private final MessageType schema;
+    private RecordConsumer recordConsumer;
+
+    /**
+     * @param schema the schema of the resource type being written
+     */
+    FHIRParquetWriteSupport(MessageType schema) {
+        this.schema = schema;
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        return new WriteContext(schema, new HashMap<>(Collections.singletonMap("writer.model.name", "fhir")));
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(JsonObject record) {
+        recordConsumer.startMessage();
+        writeFields(schema, record);
+        recordConsumer.endMessage();
+    }
+
+    /**
+     * Write the fields of the group which have a value in the given JSON object
+     */
+    private void writeFields(GroupType groupType, JsonObject jsonObject) {
+        for (int index = 0; index < groupType.getFieldCount(); index++) {
+            final Type field = groupType.getType(index);
+            final JsonValue value = jsonObject.get(field.getName());
+            if (value == null || value.getValueType() == ValueType.NULL) {
+                continue;
+            }
+
+            if (field.isRepetition(Type.Repetition.REPEATED) && value.getValueType() == ValueType.ARRAY) {
+                // Null entries are placeholders for primitive extensions, which are kept in the "_element" field
+                final JsonArray array = value.asJsonArray();
+                if (array.stream().allMatch(v -> v.getValueType() == ValueType.NULL)) {
+                    continue;
+                }
+                recordConsumer.startField(field.getName(), index);
+                for (JsonValue item : array) {
+                    if (item.getValueType() != ValueType.NULL) {
+                        writeValue(field, item);
+                    }
+                }
+                recordConsumer.endField(field.getName(), index);
+            } else {
+                recordConsumer.startField(field.getName(), index);
+                writeValue(field, value);
+                recordConsumer.endField(field.getName(), index);
+            }
+        }
+    }
+
+    /**
+     * Write a single value of the given field
+     */
+    private void writeValue(Type field, JsonValue value) {
+        if (!field.isPrimitive()) {
+            recordConsumer.startGroup();
+            writeFields(field.asGroupType(), value.asJsonObject());
+            recordConsumer.endGroup();
+            return;
+        }
+
+        final PrimitiveType primitiveType = field.asPrimitiveType();
+        switch (primitiveType.getPrimitiveTypeName()) {
+        case BOOLEAN:
+            recordConsumer.addBoolean(value.getValueType() == ValueType.TRUE);
+            break;
+        case INT32:
+            recordConsumer.addInteger(((JsonNumber) value).intValueExact());
+            break;
+        default:
+            if (primitiveType.getOriginalType() == OriginalType.JSON || value.getValueType() != ValueType.STRING) {
+                // JSON columns and decimal values, which keep their original text
+                recordConsumer.addBinary(Binary.fromString(value.toString()));
+            } else {
+                recordConsumer.addBinary(Binary.fromString(((JsonString) value).getString()));
+            }
+            break;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.export.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.json.JsonObject;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.schema.MessageType;
+
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.JsonSupport;
+
+/**
+ * Writes resources of a single resource type to one Parquet file, using the schema
+ * derived for that type by {@link FHIRParquetSchema}. Rows are buffered by the Parquet
+ * writer until a row group is full, so memory use is bounded by the row group size
+ * rather than the number of resources written.
+ *
+ * <p>Not thread-safe.
+ */
+public class FHIRParquetWriter implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(FHIRParquetWriter.class.getName());
+
+    // The default row group size; large enough for efficient reads, small enough to keep in memory
+    public static final int DEFAULT_ROW_GROUP_SIZE = 32 * 1024 * 1024;
+
+    private final Class<? extends Resource> resourceType;
+    private final ParquetWriter<JsonObject> writer;
+    private long count = 0;
+
+    /**
+     * Create a writer for the given resource type which writes to the given output file
+     *
+     * @param resourceType the type of resource being written
+     * @param outputFile where to write the Parquet file
+     * @param rowGroupSize the maximum size (in bytes) of each row group
+     * @throws IOException
+     */
+    public FHIRParquetWriter(Class<? extends Resource> resourceType, OutputFile outputFile, int rowGroupSize) throws IOException {
+        this.resourceType = resourceType;
+        this.writer = new Builder(outputFile, FHIRParquetSchema.getSchema(resourceType))
+                .withRowGroupSize(rowGroupSize)
+                .withCompressionCodec(CompressionCodecName.SNAPPY)
+                .withDictionaryEncoding(true)
+                .build();
+    }
+
+    /**
+     * Create a writer for the given resource type which writes to the given stream
+     *
+     * @param resourceType the type of resource being written
+     * @param out the stream to write; closed when this writer is closed
+     * @throws IOException
+     */
+    public FHIRParquetWriter(Class<? extends Resource> resourceType, OutputStream out) throws IOException {
+        this(resourceType, new StreamOutputFile(out), DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Create a writer for the given resource type which writes to a local file
+     *
+     * @param resourceType the type of resource being written
+     * @param file the file to create (or overwrite)
+     * @throws IOException
+     */
+    public FHIRParquetWriter(Class<? extends Resource> resourceType, Path file) throws IOException {
+        this(resourceType, new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+
+    /**
+     * Write the given resource
+     *
+     * @param resource a resource of the type this writer was created for
+     * @throws FHIRGeneratorException
+     * @throws IOException
+     */
+    public void write(Resource resource) throws FHIRGeneratorException, IOException {
+        if (!resourceType.equals(resource.getClass())) {
+            throw new IllegalArgumentException("Expected resource of type '" + resourceType.getSimpleName()
+                + "' but got '" + resource.getClass().getSimpleName() + "'");
+        }
+        write(JsonSupport.toJsonObject(resource));
+    }
+
+    /**
+     * Write the given resource from its FHIR JSON representation. This avoids
+     * parsing the resource when the stored payload is already JSON.
+     *
+     * @param resource the JSON object of a resource of the type this writer was created for
+     * @throws IOException
+     */
+    public void write(JsonObject resource) throws IOException {
+        writer.write(resource);
+        count++;
+    }
+
+    /**
+     * @return the number of resources written so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Parquet file written for '" + resourceType.getSimpleName() + "' with " + count + " resources");
+        }
+    }
+
+    /**
+     * Builder for the Parquet writer using our {@link WriteSupport}
+     */
+    private static class Builder extends ParquetWriter.Builder<JsonObject, Builder> {
+        private final MessageType schema;
+
+        Builder(OutputFile outputFile, MessageType schema) {
+            super(outputFile);
+            this.schema = schema;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<JsonObject> getWriteSupport(Configuration conf) {
+            return new FHIRParquetWriteSupport(schema);
+        }
+    }
+}
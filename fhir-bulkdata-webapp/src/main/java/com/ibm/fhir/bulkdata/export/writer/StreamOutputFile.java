@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.export.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+/**
+ * A Parquet {@link OutputFile} which writes to an {@link OutputStream}, such as a local
+ * file or a multi-part upload to object storage. Parquet files are written sequentially
+ * (the footer goes last), so no seeking is required. The stream is closed when the
+ * Parquet writer is closed.
+ */
+public class StreamOutputFile implements OutputFile {
+    private final OutputStream out;
+
+    /**
+     * Public constructor
+     * @param out the stream to write the Parquet file to
+     */
+    public StreamOutputFile(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) throws IOException {
+        return new CountingPositionOutputStream(out);
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+        return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+
+    /**
+     * Tracks the position by counting the bytes written to the delegate stream
+     */
+    private static class CountingPositionOutputStream extends PositionOutputStream {
+        private final OutputStream delegate;
+        private long pos = 0;
+
+        CountingPositionOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long getPos() throws IOException {
+            return pos;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            pos++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            pos += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -46,6 +46,15 @@ public class BatchContextAdapter {
     }
 
 
+    public BulkDataContext getStepContextForFastExportPartitionMapper() {
+        BulkDataContext ctx = new BulkDataContext();
+        context(ctx);
+        source(ctx);
+        search(ctx);
+        ctx.setFhirResourceTypes(props.getProperty(OperationFields.FHIR_RESOURCE_TYPES));
+        return ctx;
+    }
+
     public BulkDataContext getStepContextForSystemChunkReader() {
         BulkDataContext ctx = new BulkDataContext();
         context(ctx);
@@ -150,6 +159,7 @@ public class BatchContextAdapter {
         audit(ctx);
         source(ctx);
         datasourceInfo(ctx);
+        ctx.setDataSourceStorageType(props.getProperty(OperationFields.FHIR_IMPORT_STORAGE_TYPE));
         return ctx;
     }
 
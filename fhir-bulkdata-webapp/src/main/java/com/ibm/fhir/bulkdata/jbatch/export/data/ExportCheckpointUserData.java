@@ -9,6 +9,8 @@ package com.ibm.fhir.bulkdata.jbatch.export.data;
 import java.util.List;
 
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.fhir.bulkdata.common.DuplicateFilterStore;
+import com.ibm.fhir.search.context.SeekKey;
 
 /**
  * Bulk Export Job Checkpoint data.
@@ -32,6 +34,11 @@ public class ExportCheckpointUserData implements java.io.Serializable {
     // Used to mark the complete of the partition.
     private boolean isMoreToExport = true;
     protected int lastWrittenPageNum;
+    // Keyset position of the last resource read, and of the last resource written, for the current typeFilter
+    protected SeekKey seekKey = null;
+    protected SeekKey lastWrittenSeekKey = null;
+    // Where the ids of the resources written so far are saved, when duplicates must be dropped; null otherwise
+    protected DuplicateFilterStore.Reference duplicateFilterRef = null;
 
     protected ExportCheckpointUserData() {
         super();
@@ -51,6 +58,9 @@ public class ExportCheckpointUserData implements java.io.Serializable {
             .uploadCount(userData.uploadCount)
             .lastPageNum(userData.lastPageNum)
             .lastWrittenPageNum(userData.lastWrittenPageNum)
+            .seekKey(userData.seekKey)
+            .lastWrittenSeekKey(userData.lastWrittenSeekKey)
+            .duplicateFilterRef(userData.duplicateFilterRef)
             .build();
     }
 
@@ -67,6 +77,9 @@ public class ExportCheckpointUserData implements java.io.Serializable {
         protected int indexOfCurrentTypeFilter;
         protected String resourceTypeSummary = null;
         protected int lastWritePageNum;
+        protected SeekKey seekKey;
+        protected SeekKey lastWrittenSeekKey;
+        protected DuplicateFilterStore.Reference duplicateFilterRef;
 
         public Builder() {
             super();
@@ -136,6 +149,21 @@ public class ExportCheckpointUserData implements java.io.Serializable {
             return this;
         }
 
+        public Builder seekKey(SeekKey seekKey) {
+            this.seekKey = seekKey;
+            return this;
+        }
+
+        public Builder lastWrittenSeekKey(SeekKey lastWrittenSeekKey) {
+            this.lastWrittenSeekKey = lastWrittenSeekKey;
+            return this;
+        }
+
+        public Builder duplicateFilterRef(DuplicateFilterStore.Reference duplicateFilterRef) {
+            this.duplicateFilterRef = duplicateFilterRef;
+            return this;
+        }
+
         public ExportCheckpointUserData build(){
             ExportCheckpointUserData checkPointUserData = new ExportCheckpointUserData();
             checkPointUserData.pageNum  = this.pageNum;
@@ -150,6 +178,9 @@ public class ExportCheckpointUserData implements java.io.Serializable {
             checkPointUserData.indexOfCurrentTypeFilter = this.indexOfCurrentTypeFilter;
             checkPointUserData.resourceTypeSummary = this.resourceTypeSummary;
             checkPointUserData.lastWrittenPageNum = this.lastWritePageNum;
+            checkPointUserData.seekKey = this.seekKey;
+            checkPointUserData.lastWrittenSeekKey = this.lastWrittenSeekKey;
+            checkPointUserData.duplicateFilterRef = this.duplicateFilterRef;
 
             return checkPointUserData;
         }
@@ -279,13 +310,47 @@ public class ExportCheckpointUserData implements java.io.Serializable {
         this.lastWrittenPageNum = lastWritePageNum;
     }
 
+    public SeekKey getSeekKey() {
+        return seekKey;
+    }
+
+    /**
+     * @param seekKey the keyset position of the last resource read
+     */
+    public void setSeekKey(SeekKey seekKey) {
+        this.seekKey = seekKey;
+    }
+
+    public SeekKey getLastWrittenSeekKey() {
+        return lastWrittenSeekKey;
+    }
+
+    /**
+     * @param lastWrittenSeekKey the keyset position of the last resource that was exported
+     */
+    public void setLastWrittenSeekKey(SeekKey lastWrittenSeekKey) {
+        this.lastWrittenSeekKey = lastWrittenSeekKey;
+    }
+
+    public DuplicateFilterStore.Reference getDuplicateFilterRef() {
+        return duplicateFilterRef;
+    }
+
+    /**
+     * @param duplicateFilterRef where the ids of the resources which were exported are saved, or null if duplicates are not checked
+     */
+    public void setDuplicateFilterRef(DuplicateFilterStore.Reference duplicateFilterRef) {
+        this.duplicateFilterRef = duplicateFilterRef;
+    }
+
     @Override
     public String toString() {
         return "CheckPointUserData [pageNum=" + pageNum + ", lastPageNum=" + lastPageNum + ", partNum=" + partNum + ", uploadId=" + uploadId + ", uploadCount="
                 + uploadCount + ", cosDataPacks=" + cosDataPacks + ", currentUploadResourceNum=" + currentUploadResourceNum + ", currentUploadSize="
                 + currentUploadSize + ", isFinishCurrentUpload=" + isFinishCurrentUpload + ", totalResourcesNum=" + totalResourcesNum
                 + ", indexOfCurrentTypeFilter=" + indexOfCurrentTypeFilter + ", resourceTypeSummary=" + resourceTypeSummary + ", isMoreToExport="
-                + isMoreToExport + ", lastWritePageNum=" + lastWrittenPageNum + "]";
+                + isMoreToExport + ", lastWritePageNum=" + lastWrittenPageNum + ", seekKey=" + seekKey + ", lastWrittenSeekKey=" + lastWrittenSeekKey
+                + ", duplicateFilterRef=" + duplicateFilterRef + "]";
     }
 
 }
@@ -6,10 +6,16 @@
 
 package com.ibm.fhir.bulkdata.jbatch.export.data;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.fhir.bulkdata.common.DuplicateFilter;
+import com.ibm.fhir.bulkdata.common.DuplicateFilterStore;
+import com.ibm.fhir.bulkdata.common.SegmentedBuffer;
+import com.ibm.fhir.search.context.SeekKey;
 
 /**
  * Bulk Export Job Transient data
@@ -17,8 +23,14 @@ import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
  */
 public class ExportTransientUserData extends ExportCheckpointUserData {
     private static final long serialVersionUID = -5892726731783560418L;
+    private static final Logger logger = Logger.getLogger(ExportTransientUserData.class.getName());
 
-    private ByteArrayOutputStream bufferStream = new ByteArrayOutputStream(2 ^ 16); // 2 ^ 20 = 1 MiB
+    // Grows by pooled, fixed-size segments rather than by copying
+    private SegmentedBuffer bufferStream = new SegmentedBuffer();
+
+    // The ids of the resources read and written so far, when duplicates must be dropped, and where they are saved
+    private transient DuplicateFilter duplicateFilter = null;
+    private transient DuplicateFilterStore duplicateFilterStore = null;
 
     protected ExportTransientUserData() {
         super();
@@ -38,14 +50,100 @@ public class ExportTransientUserData extends ExportCheckpointUserData {
             .uploadCount(checkPointData.uploadCount)
             .lastPageNum(checkPointData.lastPageNum)
             .lastWrittenPageNum(checkPointData.lastWrittenPageNum)
+            .seekKey(checkPointData.seekKey)
+            .lastWrittenSeekKey(checkPointData.lastWrittenSeekKey)
+            .duplicateFilterRef(checkPointData.duplicateFilterRef)
             .build();
     }
 
-    public ByteArrayOutputStream getBufferStream() {
+    public SegmentedBuffer getBufferStream() {
         return bufferStream;
     }
 
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+
+    public void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    public DuplicateFilterStore getDuplicateFilterStore() {
+        return duplicateFilterStore;
+    }
+
+    public void setDuplicateFilterStore(DuplicateFilterStore duplicateFilterStore) {
+        this.duplicateFilterStore = duplicateFilterStore;
+    }
+
+    /**
+     * Save the ids of the resources written since the last checkpoint, and refer to them from the next one.
+     * If they can't be saved, the next checkpoint keeps the previous reference, and a restart from it can
+     * export those resources again.
+     *
+     * @param workDirectory where to create the store of the filter, when it has none yet
+     */
+    public void saveDuplicateFilter(String workDirectory) {
+        if (duplicateFilter == null) {
+            return;
+        }
+        try {
+            if (duplicateFilterStore == null) {
+                duplicateFilterStore = DuplicateFilterStore.create(workDirectory);
+            }
+            duplicateFilterRef = duplicateFilterStore.save(duplicateFilter);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to save the duplicate filter in " + (duplicateFilterStore != null ? duplicateFilterStore : workDirectory), e);
+            if (duplicateFilterStore == null) {
+                // Nowhere to save them
+                duplicateFilter.takeUnsaved();
+            }
+        }
+    }
+
+    /**
+     * Delete the saved ids, once the partition is complete.
+     */
+    public void deleteDuplicateFilter() {
+        if (duplicateFilterStore != null) {
+            duplicateFilterStore.delete();
+            duplicateFilterStore = null;
+        }
+        duplicateFilterRef = null;
+    }
+
+    /**
+     * Mark the resources read so far, as the buffer holding them is handed off to be written.
+     *
+     * @return the mark to pass to {@link #commitRead(long)} once they have been written
+     */
+    public long markRead() {
+        return duplicateFilter == null ? 0 : duplicateFilter.mark();
+    }
+
+    /**
+     * Record that the resources read before the mark have been written, so that a restart drops
+     * them as duplicates.
+     *
+     * @param mark
+     */
+    public void commitRead(long mark) {
+        if (duplicateFilter != null) {
+            duplicateFilter.commit(mark);
+        }
+    }
+
+    /**
+     * Record that every resource read so far has been written.
+     */
+    public void commitAllRead() {
+        if (duplicateFilter != null) {
+            duplicateFilter.commitAll();
+        }
+    }
+
     public static class Builder extends ExportCheckpointUserData.Builder {
+        private DuplicateFilter duplicateFilter;
 
         public static Builder builder() {
             return new Builder();
@@ -111,6 +209,26 @@ public class ExportTransientUserData extends ExportCheckpointUserData {
             return (Builder) super.lastWrittenPageNum(lastWritePageNum);
         }
 
+        @Override
+        public Builder seekKey(SeekKey seekKey) {
+            return (Builder) super.seekKey(seekKey);
+        }
+
+        @Override
+        public Builder lastWrittenSeekKey(SeekKey lastWrittenSeekKey) {
+            return (Builder) super.lastWrittenSeekKey(lastWrittenSeekKey);
+        }
+
+        @Override
+        public Builder duplicateFilterRef(DuplicateFilterStore.Reference duplicateFilterRef) {
+            return (Builder) super.duplicateFilterRef(duplicateFilterRef);
+        }
+
+        public Builder duplicateFilter(DuplicateFilter duplicateFilter) {
+            this.duplicateFilter = duplicateFilter;
+            return this;
+        }
+
         @Override
         public ExportTransientUserData build(){
             ExportTransientUserData transientUserData = new ExportTransientUserData();
@@ -126,6 +244,10 @@ public class ExportTransientUserData extends ExportCheckpointUserData {
             transientUserData.indexOfCurrentTypeFilter = this.indexOfCurrentTypeFilter;
             transientUserData.resourceTypeSummary = this.resourceTypeSummary;
             transientUserData.lastWrittenPageNum = this.lastWritePageNum;
+            transientUserData.seekKey = this.seekKey;
+            transientUserData.lastWrittenSeekKey = this.lastWrittenSeekKey;
+            transientUserData.duplicateFilterRef = this.duplicateFilterRef;
+            transientUserData.duplicateFilter = this.duplicateFilter;
             return transientUserData;
         }
     }
@@ -136,6 +258,7 @@ public class ExportTransientUserData extends ExportCheckpointUserData {
                 + ", uploadId=" + uploadId + ", uploadCount=" + uploadCount + ", cosDataPacks=" + cosDataPacks + ", currentUploadResourceNum="
                 + currentUploadResourceNum + ", currentUploadSize=" + currentUploadSize + ", totalResourcesNum=" + totalResourcesNum
                 + ", indexOfCurrentTypeFilter=" + indexOfCurrentTypeFilter + ", resourceTypeSummary=" + resourceTypeSummary + ", lastWritePageNum="
-                + lastWrittenPageNum + "]";
+                + lastWrittenPageNum + ", seekKey=" + seekKey + ", lastWrittenSeekKey=" + lastWrittenSeekKey
+                + ", duplicateFilter=" + duplicateFilter + ", duplicateFilterRef=" + duplicateFilterRef + "]";
     }
 }
\ No newline at end of file
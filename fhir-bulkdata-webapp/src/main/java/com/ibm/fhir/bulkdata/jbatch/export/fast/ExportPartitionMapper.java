@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.jbatch.export.fast;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+
+import com.ibm.fhir.bulkdata.jbatch.context.BatchContextAdapter;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.operation.bulkdata.config.ConfigurationAdapter;
+import com.ibm.fhir.operation.bulkdata.config.ConfigurationFactory;
+import com.ibm.fhir.operation.bulkdata.model.type.BulkDataContext;
+import com.ibm.fhir.operation.bulkdata.model.type.OperationFields;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
+import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+import com.ibm.fhir.search.date.DateTimeHandler;
+
+/**
+ * Generates the {@link PartitionPlan} describing how the fast system export work is
+ * broken into pieces. Each resource type is allocated to a partition, except that a large
+ * resource type is split into disjoint ranges of lastUpdated, each allocated to its own
+ * partition, so that one resource type does not bound the time taken by the whole export.
+ *
+ * The plan is kept with the step, so a restarted export resumes the same ranges.
+ */
+@Dependent
+public class ExportPartitionMapper implements PartitionMapper {
+    private static final Logger logger = Logger.getLogger(ExportPartitionMapper.class.getName());
+
+    @Inject
+    StepContext stepCtx;
+
+    @Inject
+    JobContext jobCtx;
+
+    public ExportPartitionMapper() {
+        // No Operation
+    }
+
+    @Override
+    public PartitionPlan mapPartitions() throws Exception {
+        ConfigurationAdapter adapter = ConfigurationFactory.getInstance();
+
+        Properties[] partitionProps = (Properties[]) stepCtx.getPersistentUserData();
+        if (partitionProps == null) {
+            JobExecution jobExecution = BatchRuntime.getJobOperator().getJobExecution(jobCtx.getExecutionId());
+            BatchContextAdapter ctxAdapter = new BatchContextAdapter(jobExecution.getJobParameters());
+            BulkDataContext ctx = ctxAdapter.getStepContextForFastExportPartitionMapper();
+
+            // Register the context to get the right configuration.
+            adapter.registerRequestContext(ctx.getTenantId(), ctx.getDatastoreId(), ctx.getIncomingUrl());
+
+            partitionProps = planPartitions(ctx, adapter);
+            stepCtx.setPersistentUserData(partitionProps);
+        }
+
+        PartitionPlanImpl pp = new PartitionPlanImpl();
+        pp.setPartitions(partitionProps.length);
+        pp.setThreads(Math.min(adapter.getCoreMaxPartitions(), partitionProps.length));
+        pp.setPartitionProperties(partitionProps);
+        return pp;
+    }
+
+    /**
+     * Plan a partition for each resource type, or for each range of a resource type which is split
+     *
+     * @param ctx
+     * @param adapter
+     * @return
+     * @throws Exception
+     */
+    private Properties[] planPartitions(BulkDataContext ctx, ConfigurationAdapter adapter) throws Exception {
+        Instant fromLastModified = null;
+        if (ctx.getFhirSearchFromDate() != null) {
+            fromLastModified = DateTimeHandler.generateValue(DateTimeHandler.parse(ctx.getFhirSearchFromDate()));
+        }
+        Instant toLastModified = null;
+        if (ctx.getFhirSearchToDate() != null) {
+            toLastModified = DateTimeHandler.generateValue(DateTimeHandler.parse(ctx.getFhirSearchToDate()));
+        }
+
+        long rangeSize = adapter.getFastExportRangeSize();
+        FHIRPersistence fhirPersistence = null;
+        if (rangeSize > 0) {
+            FHIRPersistenceHelper fhirPersistenceHelper = new FHIRPersistenceHelper();
+            fhirPersistence = fhirPersistenceHelper.getFHIRPersistenceImplementation();
+        }
+
+        // We know these are real resource types.
+        List<String> resourceTypes = Arrays.asList(ctx.getFhirResourceTypes().split("\\s*,\\s*"));
+        List<Properties> partitionProps = new ArrayList<>();
+        for (String resourceType : resourceTypes) {
+            List<Instant> boundaries = Collections.emptyList();
+            if (fhirPersistence != null) {
+                FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+                txn.begin();
+                try {
+                    boundaries = fhirPersistence.splitResourcePayloads(ModelSupport.getResourceType(resourceType),
+                        fromLastModified, toLastModified, rangeSize, adapter.getCoreMaxPartitions());
+                } finally {
+                    txn.end();
+                }
+            }
+
+            if (boundaries.isEmpty()) {
+                Properties p = new Properties();
+                p.setProperty(OperationFields.PARTITION_RESOURCETYPE, resourceType);
+                partitionProps.add(p);
+                continue;
+            }
+
+            // Range i runs from boundary i-1 to boundary i, the first and last ranges being open-ended
+            for (int range = 0; range <= boundaries.size(); range++) {
+                Properties p = new Properties();
+                p.setProperty(OperationFields.PARTITION_RESOURCETYPE, resourceType);
+                p.setProperty(OperationFields.PARTITION_RANGE, Integer.toString(range + 1));
+                if (range > 0) {
+                    p.setProperty(OperationFields.PARTITION_FROM_LASTUPDATED, boundaries.get(range - 1).toString());
+                }
+                if (range < boundaries.size()) {
+                    p.setProperty(OperationFields.PARTITION_TO_LASTUPDATED, boundaries.get(range).toString());
+                }
+                partitionProps.add(p);
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Export of '" + resourceType + "' is split into " + (boundaries.size() + 1) + " ranges: " + boundaries);
+            }
+        }
+        return partitionProps.toArray(new Properties[partitionProps.size()]);
+    }
+}
@@ -10,6 +10,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.Date;
@@ -180,6 +181,26 @@ public class ResourcePayloadReader extends AbstractItemReader {
     @BatchProperty(name = OperationFields.PARTITION_RESOURCETYPE)
     private String resourceTypeStr;
 
+    // The range of the resource type exported by this partition, when the resource type is split into ranges
+    @Inject
+    @Any
+    @BatchProperty(name = OperationFields.PARTITION_RANGE)
+    private String rangeStr;
+
+    // The lastUpdated range boundaries, inclusive and exclusive respectively; null for the first and last range
+    @Inject
+    @Any
+    @BatchProperty(name = OperationFields.PARTITION_FROM_LASTUPDATED)
+    private String rangeFromLastUpdated;
+
+    @Inject
+    @Any
+    @BatchProperty(name = OperationFields.PARTITION_TO_LASTUPDATED)
+    private String rangeToLastUpdated;
+
+    // The range number, or 0 if the resource type is not split
+    private int range = 0;
+
     /**
      * Public constructor
      */
@@ -240,6 +261,19 @@ public class ResourcePayloadReader extends AbstractItemReader {
             logger.fine(logPrefix() + " toLastModified = " + fhirSearchToDate + "(" + toLastModified + ")");
         }
 
+        // Narrow the scan to the range planned by the ExportPartitionMapper. The boundaries lie within the
+        // window above, and are at microsecond precision, so the range ends just before the next one starts
+        if (rangeStr != null && !rangeStr.isEmpty()) {
+            this.range = Integer.parseInt(rangeStr);
+            if (rangeFromLastUpdated != null && !rangeFromLastUpdated.isEmpty()) {
+                this.fromLastModified = Instant.parse(rangeFromLastUpdated);
+            }
+            if (rangeToLastUpdated != null && !rangeToLastUpdated.isEmpty()) {
+                this.toLastModified = Instant.parse(rangeToLastUpdated).minus(1, ChronoUnit.MICROS);
+            }
+            logger.fine(logPrefix() + " range " + range + " = " + fromLastModified + " to " + toLastModified);
+        }
+
         // Start tracking the resources occurring for the most recent timestamp
         this.resourcesForLastTimestamp.clear();
         this.lastTimestamp = this.fromLastModified;
@@ -351,6 +385,7 @@ public class ResourcePayloadReader extends AbstractItemReader {
             TransientUserData tud = (TransientUserData)stepCtx.getTransientUserData();
             tud.setCompleted(true);
             tud.setResourceType(this.fhirResourceType);
+            tud.setRange(this.range);
             tud.setResourceCounts(this.resourceCounts);
         }
 
@@ -444,11 +479,12 @@ public class ResourcePayloadReader extends AbstractItemReader {
     private void uploadWhenReady() throws Exception {
         // Initiate the upload if we don't have one active
         if (this.uploadId == null) {
-            // Start a new upload
+            // Start a new upload; the objects of each range of a resource type are numbered on their own
+            String objectName = fhirResourceType + (range > 0 ? "_" + range : "") + "_" + this.currentUploadNumber + ".ndjson";
             if (cosBucketPathPrefix != null && cosBucketPathPrefix.trim().length() > 0) {
-                this.currentObjectName = cosBucketPathPrefix + "/" + fhirResourceType + "_" + this.currentUploadNumber + ".ndjson";
+                this.currentObjectName = cosBucketPathPrefix + "/" + objectName;
             } else {
-                this.currentObjectName = "job" + jobContext.getExecutionId() + "/" + fhirResourceType + "_" + this.currentUploadNumber + ".ndjson";
+                this.currentObjectName = "job" + jobContext.getExecutionId() + "/" + objectName;
             }
             uploadId = BulkDataUtils.startPartUpload(cosClient, cosBucketName, this.currentObjectName, isExportPublic);
 
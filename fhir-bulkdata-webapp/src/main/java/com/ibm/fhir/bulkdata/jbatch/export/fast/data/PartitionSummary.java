@@ -25,6 +25,9 @@ public class PartitionSummary implements Serializable {
     // The resource type name associated with the partition
     private String resourceType;
 
+    // The range of the resource type exported by the partition, or 0 if the resource type is not split
+    private int range;
+
     // A list of how many resources were stored per file
     private List<Integer> resourceCounts = new ArrayList<>();
 
@@ -38,6 +41,7 @@ public class PartitionSummary implements Serializable {
         PartitionSummary result = new PartitionSummary();
         result.resourceCounts.addAll(tud.getResourceCounts());
         result.resourceType = tud.getResourceType();
+        result.range = tud.getRange();
         return result;
     }
 
@@ -45,15 +49,21 @@ public class PartitionSummary implements Serializable {
         return this.resourceType;
     }
 
+    public int getRange() {
+        return this.range;
+    }
+
     public List<Integer> getResourceCounts() {
         return Collections.unmodifiableList(this.resourceCounts);
     }
 
     /**
-     * Compute the resource type summary needed by the {@link ExportPartitionAnalyzer}
+     * Compute the resource type summary needed by the {@link ExportPartitionAnalyzer}.
+     * The summary of a range of a resource type names the range, e.g. Observation_2[1000,200],
+     * matching the names of its files.
      * @return the resourceTypeSummary
      */
     public String getResourceTypeSummary() {
-        return this.resourceType + "[" + resourceCounts.stream().map(v -> v.toString()).collect(Collectors.joining(",")) + "]";
+        return this.resourceType + (range > 0 ? "_" + range : "") + "[" + resourceCounts.stream().map(v -> v.toString()).collect(Collectors.joining(",")) + "]";
     }
 }
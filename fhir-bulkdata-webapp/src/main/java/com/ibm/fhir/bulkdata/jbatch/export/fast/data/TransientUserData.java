@@ -26,6 +26,9 @@ public class TransientUserData implements Serializable {
     // The resource type name associated with the partition
     private String resourceType;
 
+    // The range of the resource type exported by the partition, or 0 if the resource type is not split
+    private int range;
+
     // A list of how many resources were stored per file
     private List<Integer> resourceCounts = new ArrayList<>();
 
@@ -57,6 +60,20 @@ public class TransientUserData implements Serializable {
         this.resourceType = resourceType;
     }
 
+    /**
+     * @return the range
+     */
+    public int getRange() {
+        return range;
+    }
+
+    /**
+     * @param range the range to set
+     */
+    public void setRange(int range) {
+        this.range = range;
+    }
+
     /**
      * Get an immutable list of the resource counts for each file processed so far
      * @return
@@ -6,10 +6,14 @@
 
 package com.ibm.fhir.bulkdata.jbatch.export.group;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.batch.api.BatchProperty;
@@ -24,6 +28,8 @@ import javax.enterprise.inject.Any;
 import javax.inject.Inject;
 
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.fhir.bulkdata.common.DuplicateFilter;
+import com.ibm.fhir.bulkdata.common.SegmentedBuffer;
 import com.ibm.fhir.bulkdata.dto.ReadResultDTO;
 import com.ibm.fhir.bulkdata.export.group.resource.GroupHandler;
 import com.ibm.fhir.bulkdata.export.patient.resource.PatientResourceHandler;
@@ -37,6 +43,9 @@ import com.ibm.fhir.operation.bulkdata.config.ConfigurationAdapter;
 import com.ibm.fhir.operation.bulkdata.config.ConfigurationFactory;
 import com.ibm.fhir.operation.bulkdata.model.type.BulkDataContext;
 import com.ibm.fhir.operation.bulkdata.model.type.OperationFields;
+import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+import com.ibm.fhir.search.context.SeekKey;
+import com.ibm.fhir.search.date.DateTimeHandler;
 import com.ibm.fhir.search.util.ReferenceUtil;
 import com.ibm.fhir.search.util.ReferenceValue;
 import com.ibm.fhir.search.util.ReferenceValue.ReferenceType;
@@ -52,6 +61,9 @@ public class ChunkReader extends com.ibm.fhir.bulkdata.jbatch.export.patient.Chu
     private PatientResourceHandler patientHandler = new PatientResourceHandler();
     private BulkDataContext ctx = null;
 
+    // The group and the groups nested in it, when the member payloads are exported
+    private List<String> groupIds = null;
+
     @Inject
     @Any
     @BatchProperty(name = OperationFields.PARTITION_RESOURCETYPE)
@@ -97,6 +109,10 @@ public class ChunkReader extends com.ibm.fhir.bulkdata.jbatch.export.patient.Chu
         ConfigurationAdapter adapter = ConfigurationFactory.getInstance();
         adapter.registerRequestContext(ctx.getTenantId(), ctx.getDatastoreId(), ctx.getIncomingUrl());
 
+        if (isMemberPayloadExport()) {
+            return readMemberPayloads(chunkData, adapter);
+        }
+
         // We don't want to recreate the persistence layer, we want to reuse it.
         groupHandler.register(getPersistence(), ctx.getSource());
         groupHandler.process(ctx.getGroupId());
@@ -118,6 +134,7 @@ public class ChunkReader extends com.ibm.fhir.bulkdata.jbatch.export.patient.Chu
                 .uploadCount(1)
                 .lastPageNum((pageOfMembers.size() + pageSize -1)/pageSize)
                 .lastWrittenPageNum(1)
+                .duplicateFilter(duplicateFilter)
                 .build();
         } else {
             chunkData.setPageNum(pageNum);
@@ -148,11 +165,16 @@ public class ChunkReader extends com.ibm.fhir.bulkdata.jbatch.export.patient.Chu
             if (!patientIds.isEmpty()) {
                 patientHandler.register(chunkData, ctx, getPersistence(), pageSize, resourceType, searchParametersForResoureTypes, ctx.getSource());
 
-                List<Resource> resources = patientHandler.executeSearch(new ArrayList<>(patientIds));
-                if (FHIRMediaType.APPLICATION_PARQUET.equals(ctx.getFhirExportFormat())) {
-                    dto.setResources(resources);
+                if (patientHandler.isPayloadExport(ctx.getFhirExportFormat())) {
+                    // Copy the stored payloads of the members' resources, rather than parsing and regenerating them
+                    patientHandler.exportPayloads(new ArrayList<>(patientIds));
+                } else {
+                    List<Resource> resources = patientHandler.executeSearch(new ArrayList<>(patientIds));
+                    if (FHIRMediaType.APPLICATION_PARQUET.equals(ctx.getFhirExportFormat())) {
+                        dto.setResources(resources);
+                    }
+                    patientHandler.fillChunkData(ctx.getFhirExportFormat(), chunkData, resources);
                 }
-                patientHandler.fillChunkData(ctx.getFhirExportFormat(), chunkData, resources);
             }
         } else {
             logger.fine("readItem: End of reading!");
@@ -161,4 +183,109 @@ public class ChunkReader extends com.ibm.fhir.bulkdata.jbatch.export.patient.Chu
         stepCtx.setTransientUserData(chunkData);
         return dto;
     }
+
+    /**
+     * The resources of the members can be matched to the group in the database, rather than by
+     * searching the compartments of a page of members at a time, when they are exported as stored
+     * and no typeFilter applies to them.
+     *
+     * @return
+     */
+    private boolean isMemberPayloadExport() {
+        return FHIRMediaType.APPLICATION_NDJSON.equals(ctx.getFhirExportFormat())
+                && getPersistence().isGroupMemberPayloadsSupported()
+                && searchParametersForResoureTypes.get(resourceType) == null;
+    }
+
+    /**
+     * Reads a page of the resources in the compartments of all the members of the group, and of its
+     * nested groups, with a single query. The page is read by keyset, so the cost of a page doesn't
+     * depend on the size of the group, and a restart resumes after the last page written.
+     *
+     * @param chunkData
+     * @param adapter
+     * @return
+     * @throws Exception
+     */
+    private Object readMemberPayloads(ExportTransientUserData chunkData, ConfigurationAdapter adapter) throws Exception {
+        Instant fromLastModified = null;
+        if (ctx.getFhirSearchFromDate() != null) {
+            fromLastModified = DateTimeHandler.generateValue(DateTimeHandler.parse(ctx.getFhirSearchFromDate()));
+        }
+        Instant toLastModified = null;
+        if (ctx.getFhirSearchToDate() != null) {
+            toLastModified = DateTimeHandler.generateValue(DateTimeHandler.parse(ctx.getFhirSearchToDate()));
+        }
+
+        if (chunkData == null) {
+            chunkData = ExportTransientUserData.Builder.builder()
+                .pageNum(pageNum)
+                .uploadId(null)
+                .cosDataPacks(new ArrayList<PartETag>())
+                .partNum(1)
+                .indexOfCurrentTypeFilter(0)
+                .resourceTypeSummary(null)
+                .totalResourcesNum(0)
+                .currentUploadResourceNum(0)
+                .currentUploadSize(0)
+                .uploadCount(1)
+                .lastPageNum(pageNum)
+                .lastWrittenPageNum(1)
+                .duplicateFilter(duplicateFilter)
+                .build();
+        } else {
+            chunkData.setPageNum(pageNum);
+        }
+
+        DuplicateFilter filter = chunkData.getDuplicateFilter();
+        SegmentedBuffer buffer = chunkData.getBufferStream();
+        byte[] delimiter = adapter.getEndOfFileDelimiter(null);
+        int[] read = { 0 };
+        int[] exported = { 0 };
+
+        // Note we're already running inside a transaction (started by the Javabatch framework)
+        // so this txn will just wrap it...the commit won't happen until the checkpoint
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getPersistence().getTransaction());
+        txn.begin();
+        try {
+            if (groupIds == null) {
+                // Expand the nested groups once for the partition, not for every page
+                groupIds = getPersistence().expandGroup(ctx.getGroupId());
+            }
+            SeekKey last = getPersistence().fetchGroupMemberPayloads(resourceType, groupIds, fromLastModified, toLastModified,
+                seekKey, pageSize, payload -> {
+                    read[0]++;
+                    // drop the resources which were already exported
+                    if (filter == null || filter.add(payload.getLogicalId())) {
+                        try {
+                            payload.transferTo(buffer);
+                            buffer.write(delimiter);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        exported[0]++;
+                    }
+                    return true;
+                });
+            if (last != null) {
+                seekKey = last;
+            }
+        } finally {
+            txn.end();
+        }
+
+        // A full page means there may be more to read
+        chunkData.setLastPageNum(read[0] >= pageSize ? pageNum + 1 : pageNum);
+        chunkData.setSeekKey(seekKey);
+        chunkData.addCurrentUploadResourceNum(exported[0]);
+        chunkData.addCurrentUploadSize(buffer.size());
+        chunkData.addTotalResourcesNum(exported[0]);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("readMemberPayloads[" + ctx.getPartitionResourceType() + "]: Processed resources - " + exported[0]
+                    + "; Bufferred data size - " + buffer.size());
+        }
+
+        stepCtx.setTransientUserData(chunkData);
+        return new ReadResultDTO();
+    }
 }
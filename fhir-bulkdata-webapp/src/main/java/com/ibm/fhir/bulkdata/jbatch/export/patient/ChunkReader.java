@@ -8,14 +8,11 @@ package com.ibm.fhir.bulkdata.jbatch.export.patient;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -36,6 +33,7 @@ import javax.ws.rs.core.Response;
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
 import com.ibm.fhir.bulkdata.audit.BulkAuditLogger;
 import com.ibm.fhir.bulkdata.common.BulkDataUtils;
+import com.ibm.fhir.bulkdata.common.DuplicateFilter;
 import com.ibm.fhir.bulkdata.dto.ReadResultDTO;
 import com.ibm.fhir.bulkdata.export.patient.resource.PatientResourceHandler;
 import com.ibm.fhir.bulkdata.jbatch.context.BatchContextAdapter;
@@ -57,11 +55,13 @@ import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SearchConstants.Prefix;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.SeekKey;
 import com.ibm.fhir.search.util.SearchUtil;
 
 /**
  * Bulk Export for Patient - ChunkReader.
- * Processes a Page of Patients at a Time Per Read
+ * Processes a Page of Patients at a Time Per Read. Patients are read by keyset, in
+ * (lastUpdated, logicalResourceId) order, and a restart resumes after the last page written.
  */
 @Dependent
 public class ChunkReader extends AbstractItemReader {
@@ -78,6 +78,9 @@ public class ChunkReader extends AbstractItemReader {
     // Control the number of records to read in each "item".
     protected int pageSize;
 
+    // The keyset position of the last patient read, or null to start from the beginning.
+    protected SeekKey seekKey = null;
+
     protected Class<? extends Resource> resourceType;
 
     // Search parameters for resource types gotten from fhir.typeFilters job parameter.
@@ -87,12 +90,10 @@ public class ChunkReader extends AbstractItemReader {
 
     private FHIRPersistence fhirPersistence = null;
 
-    boolean isDoDuplicationCheck = false;
-
     // Used to prevent the same resource from being exported multiple times when multiple _typeFilter for the same
-    // resource type are used, which leads to multiple search requests which can have overlaps of resources,
-    // loadedResourceIds and isDoDuplicationCheck are always reset when moving to the next resource type.
-    Set<String> loadedPatientIds = new HashSet<>();
+    // resource type are used, which leads to multiple search requests which can have overlaps of resources.
+    // Null when duplicates are not checked; saved at each checkpoint, so it is kept across restarts.
+    protected DuplicateFilter duplicateFilter = null;
 
     @Inject
     @Any
@@ -122,6 +123,7 @@ public class ChunkReader extends AbstractItemReader {
         if (checkpoint != null) {
             ExportCheckpointUserData checkPointData = (ExportCheckpointUserData) checkpoint;
             pageNum = checkPointData.getLastWrittenPageNum();
+            seekKey = checkPointData.getLastWrittenSeekKey();
             stepCtx.setTransientUserData(ExportTransientUserData.fromCheckPointUserData(checkPointData));
         }
 
@@ -138,8 +140,11 @@ public class ChunkReader extends AbstractItemReader {
         fhirPersistence = fhirPersistenceHelper.getFHIRPersistenceImplementation();
 
         List<Map<String, List<String>>> typeFilters = searchParametersForResoureTypes.get(resourceType);
-        isDoDuplicationCheck = typeFilters != null && typeFilters.size() > 1 ?
+        boolean isDoDuplicationCheck = typeFilters != null && typeFilters.size() > 1 ?
                 true : adapter.shouldStorageProviderCheckDuplicate(ctx.getSource());
+        if (isDoDuplicationCheck) {
+            duplicateFilter = BulkDataUtils.openDuplicateFilter((ExportTransientUserData) stepCtx.getTransientUserData(), adapter);
+        }
     }
 
     @Override
@@ -149,7 +154,9 @@ public class ChunkReader extends AbstractItemReader {
 
     @Override
     public Serializable checkpointInfo() throws Exception {
-        ExportCheckpointUserData chunkData = ExportCheckpointUserData.fromTransientUserData((ExportTransientUserData) stepCtx.getTransientUserData());
+        ExportTransientUserData transientData = (ExportTransientUserData) stepCtx.getTransientUserData();
+        transientData.saveDuplicateFilter(ConfigurationFactory.getInstance().getDuplicateCheckWorkDirectory());
+        ExportCheckpointUserData chunkData = ExportCheckpointUserData.fromTransientUserData(transientData);
         return chunkData;
     }
 
@@ -183,8 +190,6 @@ public class ChunkReader extends AbstractItemReader {
             queryParameters.put(SearchConstants.LAST_UPDATED, lastUpdatedCriteria);
         }
 
-        queryParameters.put(SearchConstants.SORT, Arrays.asList(SearchConstants.LAST_UPDATED));
-
         if (!Patient.class.isAssignableFrom(resourceType)) {
             // optimization to avoid reading the full resources since we only need their ids
             queryParameters.put(SearchConstants.ELEMENTS, Collections.singletonList("id"));
@@ -192,7 +197,8 @@ public class ChunkReader extends AbstractItemReader {
 
         FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Patient.class, queryParameters);
         searchContext.setPageSize(pageSize);
-        searchContext.setPageNumber(pageNum);
+        searchContext.setKeysetPaging(true);
+        searchContext.setSeekKey(seekKey);
 
         ReadResultDTO dto = new ReadResultDTO();
 
@@ -204,9 +210,15 @@ public class ChunkReader extends AbstractItemReader {
             FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
             Date startTime = new Date(System.currentTimeMillis());
             List<Resource> patientResources = fhirPersistence.search(persistenceContext, Patient.class).getResource();
-            if (isDoDuplicationCheck) {
+            seekKey = searchContext.getSeekKey();
+
+            // A full page means there may be more to read
+            int lastPageNum = patientResources.size() >= pageSize ? pageNum + 1 : pageNum;
+            // The patients are only exported themselves for the Patient partition; the other partitions
+            // check the compartment resources instead, whose ids may collide with the patients' ids
+            if (duplicateFilter != null && Patient.class.isAssignableFrom(resourceType)) {
                 patientResources = patientResources.stream()
-                        .filter(r -> loadedPatientIds.add(r.getId()))
+                        .filter(r -> duplicateFilter.add(r.getId()))
                         .collect(Collectors.toList());
             }
 
@@ -227,13 +239,15 @@ public class ChunkReader extends AbstractItemReader {
                         .currentUploadResourceNum(0)
                         .currentUploadSize(0)
                         .uploadCount(1)
-                        .lastPageNum(searchContext.getLastPageNumber())
+                        .lastPageNum(lastPageNum)
                         .lastWrittenPageNum(1)
+                        .seekKey(seekKey)
+                        .duplicateFilter(duplicateFilter)
                         .build();
             } else {
                 chunkData.setPageNum(pageNum);
-                // do we want to support extending the last page number mid-export?
-//                chunkData.setLastPageNum(searchContext.getLastPageNumber());
+                chunkData.setLastPageNum(lastPageNum);
+                chunkData.setSeekKey(seekKey);
             }
 
             if (patientResources != null && !patientResources.isEmpty()) {
@@ -248,12 +262,17 @@ public class ChunkReader extends AbstractItemReader {
                 if (!patientIds.isEmpty()) {
                     handler.register(chunkData, ctx, fhirPersistence, pageSize, resourceType, searchParametersForResoureTypes, ctx.getSource());
 
-                    List<Resource> resources = Patient.class.isAssignableFrom(resourceType) ?
-                            patientResources : handler.executeSearch(patientIds);
-                    if (FHIRMediaType.APPLICATION_PARQUET.equals(ctx.getFhirExportFormat())) {
-                        dto.setResources(resources);
+                    if (!Patient.class.isAssignableFrom(resourceType) && handler.isPayloadExport(ctx.getFhirExportFormat())) {
+                        // Copy the stored payloads of the compartment resources, rather than parsing and regenerating them
+                        handler.exportPayloads(patientIds);
+                    } else {
+                        List<Resource> resources = Patient.class.isAssignableFrom(resourceType) ?
+                                patientResources : handler.executeSearch(patientIds);
+                        if (FHIRMediaType.APPLICATION_PARQUET.equals(ctx.getFhirExportFormat())) {
+                            dto.setResources(resources);
+                        }
+                        handler.fillChunkData(ctx.getFhirExportFormat(), chunkData, resources);
                     }
-                    handler.fillChunkData(ctx.getFhirExportFormat(), chunkData, resources);
                 }
             } else {
                 logger.fine("readItem: End of reading!");
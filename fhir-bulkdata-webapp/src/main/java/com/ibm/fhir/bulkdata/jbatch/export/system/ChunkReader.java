@@ -8,13 +8,10 @@ package com.ibm.fhir.bulkdata.jbatch.export.system;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -35,6 +32,7 @@ import javax.ws.rs.core.Response;
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
 import com.ibm.fhir.bulkdata.audit.BulkAuditLogger;
 import com.ibm.fhir.bulkdata.common.BulkDataUtils;
+import com.ibm.fhir.bulkdata.common.DuplicateFilter;
 import com.ibm.fhir.bulkdata.dto.ReadResultDTO;
 import com.ibm.fhir.bulkdata.export.system.resource.SystemExportResourceHandler;
 import com.ibm.fhir.bulkdata.jbatch.context.BatchContextAdapter;
@@ -54,11 +52,14 @@ import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.SeekKey;
 import com.ibm.fhir.search.util.SearchUtil;
 
 /**
  * Bulk Export for System - ChunkReader.
- * Processes a Page at a Time Per Read per ResourceType.
+ * Processes a Page at a Time Per Read per ResourceType. Pages are read by keyset, in
+ * (lastUpdated, logicalResourceId) order, so each read costs the same no matter how far
+ * into the export it is, and a restart resumes after the last resource written.
  */
 @Dependent
 public class ChunkReader extends AbstractItemReader {
@@ -86,12 +87,13 @@ public class ChunkReader extends AbstractItemReader {
 
     int indexOfCurrentTypeFilter = 0;
 
-    boolean isDoDuplicationCheck = false;
+    // The keyset position of the last resource read for the current typeFilter, or null to start from the beginning.
+    SeekKey seekKey = null;
 
     // Used to prevent the same resource from being exported multiple times when multiple _typeFilter for the same
-    // resource type are used, which leads to multiple search requests which can have overlaps of resources,
-    // loadedResourceIds and isDoDuplicationCheck are always reset when moving to the next resource type.
-    Set<String> loadedResourceIds = new HashSet<>();
+    // resource type are used, which leads to multiple search requests which can have overlaps of resources.
+    // Null when duplicates are not checked; saved at each checkpoint, so it is kept across restarts.
+    DuplicateFilter duplicateFilter = null;
 
     private long executionId = -1;
 
@@ -126,6 +128,7 @@ public class ChunkReader extends AbstractItemReader {
         if (checkpoint != null) {
             ExportCheckpointUserData checkPointData = (ExportCheckpointUserData) checkpoint;
             pageNum = checkPointData.getLastWrittenPageNum();
+            seekKey = checkPointData.getLastWrittenSeekKey();
             indexOfCurrentTypeFilter = checkPointData.getIndexOfCurrentTypeFilter();
 
             // We use setTransient from checkpoint when we have just uploaded to COS.
@@ -143,8 +146,11 @@ public class ChunkReader extends AbstractItemReader {
         fhirPersistence = fhirPersistenceHelper.getFHIRPersistenceImplementation();
 
         List<Map<String, List<String>>> typeFilters = searchParametersForResoureTypes.get(resourceType);
-        isDoDuplicationCheck = typeFilters != null && typeFilters.size() > 1 ?
+        boolean isDoDuplicationCheck = typeFilters != null && typeFilters.size() > 1 ?
                 true : adapter.shouldStorageProviderCheckDuplicate(ctx.getSource());
+        if (isDoDuplicationCheck) {
+            duplicateFilter = BulkDataUtils.openDuplicateFilter((ExportTransientUserData) stepCtx.getTransientUserData(), adapter);
+        }
     }
 
     @Override
@@ -154,7 +160,9 @@ public class ChunkReader extends AbstractItemReader {
 
     @Override
     public Serializable checkpointInfo() throws Exception {
-        return ExportCheckpointUserData.fromTransientUserData((ExportTransientUserData) stepCtx.getTransientUserData());
+        ExportTransientUserData chunkData = (ExportTransientUserData) stepCtx.getTransientUserData();
+        chunkData.saveDuplicateFilter(ConfigurationFactory.getInstance().getDuplicateCheckWorkDirectory());
+        return ExportCheckpointUserData.fromTransientUserData(chunkData);
     }
 
     @Override
@@ -176,9 +184,10 @@ public class ChunkReader extends AbstractItemReader {
                 chunkData.setMoreToExport(false);
                 return null;
             } else {
-                // If there is more typeFilter to process for current resource type, then reset pageNum only and move to
-                // the next typeFilter.
+                // If there is more typeFilter to process for current resource type, then reset pageNum and the seek key
+                // and move to the next typeFilter.
                 pageNum = 1;
+                seekKey = null;
                 indexOfCurrentTypeFilter++;
             }
         }
@@ -206,12 +215,12 @@ public class ChunkReader extends AbstractItemReader {
             queryParameters.put(SearchConstants.LAST_UPDATED, searchCriteria);
         }
 
-        queryParameters.put(SearchConstants.SORT, Arrays.asList(SearchConstants.LAST_UPDATED));
-
         FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
         searchContext.setPageSize(pageSize);
-        searchContext.setPageNumber(pageNum);
+        searchContext.setKeysetPaging(true);
+        searchContext.setSeekKey(seekKey);
         List<Resource> resources = null;
+        int lastPageNum = pageNum;
 
         ReadResultDTO dto = new ReadResultDTO();
 
@@ -224,10 +233,16 @@ public class ChunkReader extends AbstractItemReader {
             // Execute the search query to obtain the page of resources
             persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
             resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
-            if (isDoDuplicationCheck) {
+            seekKey = searchContext.getSeekKey();
+
+            // A full page means there may be more to read
+            if (resources.size() >= pageSize) {
+                lastPageNum = pageNum + 1;
+            }
+            if (duplicateFilter != null) {
                 resources = resources.stream()
                         // the add returns false if the id already exists, which filters it out of the collection
-                        .filter(r -> loadedResourceIds.add(r.getId()))
+                        .filter(r -> duplicateFilter.add(r.getId()))
                         .collect(Collectors.toList());
             }
         } finally {
@@ -251,13 +266,16 @@ public class ChunkReader extends AbstractItemReader {
                     .currentUploadResourceNum(0)
                     .currentUploadSize(0)
                     .uploadCount(1)
-                    .lastPageNum(searchContext.getLastPageNumber())
+                    .lastPageNum(lastPageNum)
                     .lastWrittenPageNum(1)
+                    .seekKey(seekKey)
+                    .duplicateFilter(duplicateFilter)
                     .build();
         } else {
             chunkData.setPageNum(pageNum);
             chunkData.setIndexOfCurrentTypeFilter(indexOfCurrentTypeFilter);
-            chunkData.setLastPageNum(searchContext.getLastPageNumber());
+            chunkData.setLastPageNum(lastPageNum);
+            chunkData.setSeekKey(seekKey);
         }
 
         if (resources != null && !resources.isEmpty()) {
@@ -46,6 +46,8 @@ public class ExportPartitionCollector implements PartitionCollector {
             return null;
         }
 
+        // The partition is complete, so it is never restarted and the ids of the exported resources can go
+        transientUserData.deleteDuplicateFilter();
         ExportCheckpointUserData partitionSummary = ExportCheckpointUserData.fromTransientUserData(transientUserData);
         return partitionSummary;
     }
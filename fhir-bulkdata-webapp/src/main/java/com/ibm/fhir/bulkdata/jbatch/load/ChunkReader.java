@@ -57,6 +57,17 @@ public class ChunkReader extends AbstractItemReader {
     @BatchProperty(name = OperationFields.PARTITION_RESOURCETYPE)
     private String resourceType;
 
+    // The byte range of the work item to import; not set when the work item is imported by a single partition
+    @Inject
+    @Any
+    @BatchProperty(name = OperationFields.PARTITION_RANGE_START)
+    private String rangeStart;
+
+    @Inject
+    @Any
+    @BatchProperty(name = OperationFields.PARTITION_RANGE_END)
+    private String rangeEnd;
+
     long numOfLinesToSkip = 0;
 
     private BulkDataContext ctx = null;
@@ -87,9 +98,13 @@ public class ChunkReader extends AbstractItemReader {
             checkPointData.setInFlyRateBeginMilliSeconds(System.currentTimeMillis());
             stepCtx.setTransientUserData(ImportTransientUserData.fromImportCheckPointData(checkPointData));
         } else {
+            long start = parseOffset(rangeStart, 0);
+            long end = parseOffset(rangeEnd, -1);
             ImportTransientUserData chunkData = ImportTransientUserData.Builder.builder()
                     .importPartitionWorkitem(ctx.getImportPartitionWorkitem())
                     .numOfProcessedResources(numOfLinesToSkip)
+                    .importFileOffset(start)
+                    .importRangeEnd(end)
                     .importPartitionResourceType(ctx.getPartitionResourceType())
                     // This naming pattern is used in bulkdata operation to generate file links for import
                     // OperationOutcomes.
@@ -105,12 +120,17 @@ public class ChunkReader extends AbstractItemReader {
 
             Provider wrapper = ProviderFactory.getSourceWrapper(ctx.getSource(), ctx.getDataSourceStorageType());
             long importFileSize = wrapper.getSize(workItem);
-            chunkData.setImportFileSize(importFileSize);
+            // Only count the partition's own range, so the sizes of the ranges of a work item add up to its size
+            chunkData.setImportFileSize(Math.max(0, (end < 0 ? importFileSize : Math.min(end, importFileSize)) - start));
             chunkData.setInFlyRateBeginMilliSeconds(System.currentTimeMillis());
             stepCtx.setTransientUserData(chunkData);
         }
     }
 
+    private static long parseOffset(String value, long defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+    }
+
     @Override
     public void close() throws Exception {
         // No Operation
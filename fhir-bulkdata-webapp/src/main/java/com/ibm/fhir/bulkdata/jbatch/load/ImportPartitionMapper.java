@@ -23,12 +23,15 @@ import javax.inject.Inject;
 
 import com.ibm.fhir.bulkdata.jbatch.context.BatchContextAdapter;
 import com.ibm.fhir.bulkdata.load.partition.transformer.PartitionSourceTransformerFactory;
+import com.ibm.fhir.bulkdata.provider.Provider;
+import com.ibm.fhir.bulkdata.provider.ProviderFactory;
 import com.ibm.fhir.exception.FHIRException;
 import com.ibm.fhir.operation.bulkdata.config.ConfigurationAdapter;
 import com.ibm.fhir.operation.bulkdata.config.ConfigurationFactory;
 import com.ibm.fhir.operation.bulkdata.model.type.BulkDataContext;
 import com.ibm.fhir.operation.bulkdata.model.type.BulkDataSource;
 import com.ibm.fhir.operation.bulkdata.model.type.OperationFields;
+import com.ibm.fhir.operation.bulkdata.model.type.StorageType;
 
 @Dependent
 public class ImportPartitionMapper implements PartitionMapper {
@@ -42,6 +45,20 @@ public class ImportPartitionMapper implements PartitionMapper {
         // No Operation
     }
 
+    /**
+     * @return true if the inputs can be read from an offset and are imported without collecting OperationOutcomes
+     */
+    private boolean isRangeSplittable(ConfigurationAdapter adapter, BulkDataContext ctx) {
+        StorageType sourceType = StorageType.from(ctx.getDataSourceStorageType());
+        if (!StorageType.FILE.equals(sourceType) && !StorageType.AWSS3.equals(sourceType) && !StorageType.IBMCOS.equals(sourceType)) {
+            return false;
+        }
+        StorageType outcomeType = adapter.getStorageProviderStorageType(ctx.getOutcome());
+        boolean collectImportOperationOutcomes = adapter.shouldStorageProviderCollectOperationOutcomes(ctx.getSource())
+                && (StorageType.AWSS3.equals(outcomeType) || StorageType.IBMCOS.equals(outcomeType));
+        return !collectImportOperationOutcomes;
+    }
+
     @Override
     public PartitionPlan mapPartitions() throws Exception {
         long executionId = -1;
@@ -60,19 +77,41 @@ public class ImportPartitionMapper implements PartitionMapper {
             List<BulkDataSource> bdSources = new ArrayList<>();
             bdSources = PartitionSourceTransformerFactory.transformToSources(ctx.getSource(), ctx.getDataSourcesInfo());
 
-            PartitionPlanImpl pp = new PartitionPlanImpl();
-            pp.setPartitions(bdSources.size());
-            pp.setThreads(Math.min(adapter.getCoreMaxPartitions(), bdSources.size()));
-            Properties[] partitionProps = new Properties[bdSources.size()];
+            // Large inputs which can be read from an offset are split into ranges, each imported by its own partition.
+            // The ranges are not split when the OperationOutcomes are collected, as those are written per input.
+            long rangeSize = adapter.getImportRangeSize();
+            if (rangeSize > 0 && !isRangeSplittable(adapter, ctx)) {
+                rangeSize = 0;
+            }
 
-            int propCount = 0;
+            List<Properties> partitionProps = new ArrayList<>();
             for (BulkDataSource fhirDataSource : bdSources) {
-                Properties p = new Properties();
-                p.setProperty(OperationFields.PARTITTION_WORKITEM, fhirDataSource.getUrl());
-                p.setProperty(OperationFields.PARTITION_RESOURCETYPE, fhirDataSource.getType());
-                partitionProps[propCount++] = p;
+                long numOfRanges = 1;
+                if (rangeSize > 0) {
+                    Provider wrapper = ProviderFactory.getSourceWrapper(ctx.getSource(), ctx.getDataSourceStorageType());
+                    long size = wrapper.getSize(fhirDataSource.getUrl());
+                    numOfRanges = Math.max(1, (size + rangeSize - 1) / rangeSize);
+                }
+                for (long range = 0; range < numOfRanges; range++) {
+                    Properties p = new Properties();
+                    p.setProperty(OperationFields.PARTITTION_WORKITEM, fhirDataSource.getUrl());
+                    p.setProperty(OperationFields.PARTITION_RESOURCETYPE, fhirDataSource.getType());
+                    if (numOfRanges > 1) {
+                        // The last range runs to the end of the input, even if it has grown since its size was read.
+                        p.setProperty(OperationFields.PARTITION_RANGE_START, Long.toString(range * rangeSize));
+                        p.setProperty(OperationFields.PARTITION_RANGE_END, range == numOfRanges - 1 ? "-1" : Long.toString((range + 1) * rangeSize));
+                    }
+                    partitionProps.add(p);
+                }
+                if (numOfRanges > 1 && logger.isLoggable(Level.FINE)) {
+                    logger.fine("Import of '" + fhirDataSource.getUrl() + "' is split into " + numOfRanges + " ranges");
+                }
             }
-            pp.setPartitionProperties(partitionProps);
+
+            PartitionPlanImpl pp = new PartitionPlanImpl();
+            pp.setPartitions(partitionProps.size());
+            pp.setThreads(Math.min(adapter.getCoreMaxPartitions(), partitionProps.size()));
+            pp.setPartitionProperties(partitionProps.toArray(new Properties[partitionProps.size()]));
             return pp;
         }catch (FHIRException e) {
             logger.log(Level.SEVERE, "Import PartitionMapper.mapPartitions during job[" + executionId + "] - " + e.getMessage(), e);
@@ -19,6 +19,11 @@ public class ImportCheckPointData implements Serializable {
     // URL or COS/S3 object name.
     protected String importPartitionWorkitem;
 
+    // Byte offset of the next line to read, so a restarted partition can seek directly to it.
+    protected long importFileOffset = 0;
+    // Byte offset at which the partition's range of the file ends, or -1 for the end of the file.
+    protected long importRangeEnd = -1;
+
     // Values for metrics calculation.
     protected long numOfProcessedResources = 0;
     protected long numOfImportedResources = 0;
@@ -76,6 +81,18 @@ public class ImportCheckPointData implements Serializable {
         this.numOfProcessedResources += numOfProcessedResources;
     }
 
+    public long getImportFileOffset() {
+        return importFileOffset;
+    }
+
+    public void setImportFileOffset(long importFileOffset) {
+        this.importFileOffset = importFileOffset;
+    }
+
+    public long getImportRangeEnd() {
+        return importRangeEnd;
+    }
+
     public long getNumOfImportedResources() {
         return numOfImportedResources;
     }
@@ -116,6 +133,8 @@ public class ImportCheckPointData implements Serializable {
         return ImportCheckPointData.Builder.builder()
                 .importPartitionWorkitem(userData.getImportPartitionWorkitem())
                 .numOfProcessedResources(userData.getNumOfProcessedResources())
+                .importFileOffset(userData.getImportFileOffset())
+                .importRangeEnd(userData.getImportRangeEnd())
                 .importPartitionResourceType(userData.getImportPartitionResourceType())
                 .numOfImportedResources(userData.getNumOfImportedResources())
                 .numOfImportFailures(userData.getNumOfImportFailures())
@@ -251,6 +270,8 @@ public class ImportCheckPointData implements Serializable {
 
         protected String importPartitionWorkitem;
         protected long numOfProcessedResources;
+        protected long importFileOffset;
+        protected long importRangeEnd = -1;
         protected String importPartitionResourceType;
         protected long numOfImportedResources;
         protected long numOfImportFailures;
@@ -286,6 +307,16 @@ public class ImportCheckPointData implements Serializable {
             return this;
         }
 
+        public Builder importFileOffset(long importFileOffset) {
+            this.importFileOffset = importFileOffset;
+            return this;
+        }
+
+        public Builder importRangeEnd(long importRangeEnd) {
+            this.importRangeEnd = importRangeEnd;
+            return this;
+        }
+
         public Builder importPartitionResourceType(String importPartitionResourceType) {
             this.importPartitionResourceType = importPartitionResourceType;
             return this;
@@ -370,6 +401,8 @@ public class ImportCheckPointData implements Serializable {
             ImportCheckPointData importCheckPointData = new ImportCheckPointData();
             importCheckPointData.importPartitionWorkitem = this.importPartitionWorkitem;
             importCheckPointData.numOfProcessedResources = this.numOfProcessedResources;
+            importCheckPointData.importFileOffset = this.importFileOffset;
+            importCheckPointData.importRangeEnd = this.importRangeEnd;
             importCheckPointData.importPartitionResourceType = this.importPartitionResourceType;
             importCheckPointData.numOfImportedResources = this.numOfImportedResources;
             importCheckPointData.numOfImportFailures = this.numOfImportFailures;
@@ -393,6 +426,7 @@ public class ImportCheckPointData implements Serializable {
     @Override
     public String toString() {
         return "ImportCheckPointData [importPartitionWorkitem=" + importPartitionWorkitem + ", numOfProcessedResources=" + numOfProcessedResources
+                + ", importFileOffset=" + importFileOffset + ", importRangeEnd=" + importRangeEnd
                 + ", numOfImportedResources=" + numOfImportedResources + ", numOfImportFailures=" + numOfImportFailures + ", totalReadMilliSeconds="
                 + totalReadMilliSeconds + ", totalWriteMilliSeconds=" + totalWriteMilliSeconds + ", totalValidationMilliSeconds=" + totalValidationMilliSeconds
                 + ", importFileSize=" + importFileSize + ", inFlyRateBeginMilliSeconds=" + inFlyRateBeginMilliSeconds + ", numOfToBeImported="
@@ -6,12 +6,12 @@
 
 package com.ibm.fhir.bulkdata.jbatch.load.data;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.List;
 
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.fhir.bulkdata.common.ResourceBatchReader;
 
 public class ImportTransientUserData extends ImportCheckPointData {
 
@@ -24,7 +24,7 @@ public class ImportTransientUserData extends ImportCheckPointData {
     private ByteArrayOutputStream bufferStreamForImport = new ByteArrayOutputStream();
 
     private InputStream inputStream = null;
-    private BufferedReader bufferReader = null;
+    private ResourceBatchReader batchReader = null;
 
     protected ImportTransientUserData() {
         super();
@@ -46,12 +46,12 @@ public class ImportTransientUserData extends ImportCheckPointData {
         this.inputStream = inputStream;
     }
 
-    public BufferedReader getBufferReader() {
-        return bufferReader;
+    public ResourceBatchReader getBatchReader() {
+        return batchReader;
     }
 
-    public void setBufferReader(BufferedReader bufferReader) {
-        this.bufferReader = bufferReader;
+    public void setBatchReader(ResourceBatchReader batchReader) {
+        this.batchReader = batchReader;
     }
 
     /**
@@ -64,6 +64,8 @@ public class ImportTransientUserData extends ImportCheckPointData {
         return ImportTransientUserData.Builder.builder()
                 .importPartitionWorkitem(importCheckPointData.importPartitionWorkitem)
                 .numOfProcessedResources(importCheckPointData.numOfProcessedResources)
+                .importFileOffset(importCheckPointData.importFileOffset)
+                .importRangeEnd(importCheckPointData.importRangeEnd)
                 .importPartitionResourceType(importCheckPointData.importPartitionResourceType)
                 .numOfImportedResources(importCheckPointData.numOfImportedResources)
                 .numOfImportFailures(importCheckPointData.numOfImportFailures)
@@ -99,6 +101,16 @@ public class ImportTransientUserData extends ImportCheckPointData {
             return (Builder) super.numOfProcessedResources(numOfProcessedResources);
         }
 
+        @Override
+        public Builder importFileOffset(long importFileOffset) {
+            return (Builder) super.importFileOffset(importFileOffset);
+        }
+
+        @Override
+        public Builder importRangeEnd(long importRangeEnd) {
+            return (Builder) super.importRangeEnd(importRangeEnd);
+        }
+
         @Override
         public Builder importPartitionResourceType(String importPartitionResourceType) {
             return (Builder) super.importPartitionResourceType(importPartitionResourceType);
@@ -184,6 +196,8 @@ public class ImportTransientUserData extends ImportCheckPointData {
             ImportTransientUserData importTransientUserData = new ImportTransientUserData();
             importTransientUserData.importPartitionWorkitem = this.importPartitionWorkitem;
             importTransientUserData.numOfProcessedResources = this.numOfProcessedResources;
+            importTransientUserData.importFileOffset = this.importFileOffset;
+            importTransientUserData.importRangeEnd = this.importRangeEnd;
             importTransientUserData.importPartitionResourceType = this.importPartitionResourceType;
             importTransientUserData.numOfImportedResources = this.numOfImportedResources;
             importTransientUserData.numOfImportFailures = this.numOfImportFailures;
@@ -207,8 +221,9 @@ public class ImportTransientUserData extends ImportCheckPointData {
     @Override
     public String toString() {
         return "ImportTransientUserData [bufferStreamForImportError=" + bufferStreamForImportError + ", bufferStreamForImport=" + bufferStreamForImport
-                + ", inputStream=" + inputStream + ", bufferReader=" + bufferReader + ", importPartitionWorkitem=" + importPartitionWorkitem
-                + ", numOfProcessedResources=" + numOfProcessedResources + ", numOfImportedResources=" + numOfImportedResources + ", numOfImportFailures="
+                + ", inputStream=" + inputStream + ", batchReader=" + batchReader + ", importPartitionWorkitem=" + importPartitionWorkitem
+                + ", numOfProcessedResources=" + numOfProcessedResources + ", importFileOffset=" + importFileOffset + ", importRangeEnd=" + importRangeEnd
+                + ", numOfImportedResources=" + numOfImportedResources + ", numOfImportFailures="
                 + numOfImportFailures + ", totalReadMilliSeconds=" + totalReadMilliSeconds + ", totalWriteMilliSeconds=" + totalWriteMilliSeconds
                 + ", totalValidationMilliSeconds=" + totalValidationMilliSeconds + ", importFileSize=" + importFileSize + ", inFlyRateBeginMilliSeconds="
                 + inFlyRateBeginMilliSeconds + ", numOfToBeImported=" + numOfToBeImported + ", numOfParseFailures=" + numOfParseFailures
@@ -44,7 +44,10 @@ public class ExitStatus {
             inputUrlSequenceMap.put(dSTypeInfo + ":" + dSDataLocationInfo, sequnceNum++);
         }
 
-        String resultInExitStatus[] = new String[sequnceNum];
+        // A large input may have been imported in ranges by several partitions, so add up their numbers.
+        long imported[] = new long[sequnceNum];
+        long failures[] = new long[sequnceNum];
+        boolean reported[] = new boolean[sequnceNum];
         for (ImportCheckPointData partitionSummary : partitionSummaries) {
             String key = partitionSummary.getImportPartitionResourceType() + ":" + partitionSummary.getImportPartitionWorkitem();
             if (!inputUrlSequenceMap.containsKey(key)) {
@@ -53,7 +56,16 @@ public class ExitStatus {
                 logger.warning("Partition Key is incorrect '" + key + "'");
             }
             int index = inputUrlSequenceMap.get(partitionSummary.getImportPartitionResourceType() + ":" + partitionSummary.getImportPartitionWorkitem());
-            resultInExitStatus[index] = partitionSummary.getNumOfImportedResources() + ":" + partitionSummary.getNumOfImportFailures();
+            imported[index] += partitionSummary.getNumOfImportedResources();
+            failures[index] += partitionSummary.getNumOfImportFailures();
+            reported[index] = true;
+        }
+
+        String resultInExitStatus[] = new String[sequnceNum];
+        for (int i = 0; i < sequnceNum; i++) {
+            if (reported[i]) {
+                resultInExitStatus[i] = imported[i] + ":" + failures[i];
+            }
         }
         return Arrays.toString(resultInExitStatus);
     }
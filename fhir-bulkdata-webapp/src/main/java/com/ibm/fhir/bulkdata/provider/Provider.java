@@ -28,9 +28,9 @@ public interface Provider {
     long getSize(String workItem) throws FHIRException;
 
     /**
-     * reads from a given workitem (or file) in a source
-     * and skips a certain noumber of lines
-     * @param numOfLinesToSkip
+     * reads the next batch of resources from a given workitem (or file) in a source,
+     * resuming at the byte offset held by the registered transient user data
+     * @param numOfLinesToSkip the number of lines already processed, used to number the lines in the log
      * @param workItem
      * @throws FHIRException
      */
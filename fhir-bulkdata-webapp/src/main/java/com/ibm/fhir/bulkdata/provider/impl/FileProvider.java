@@ -6,29 +6,24 @@
 
 package com.ibm.fhir.bulkdata.provider.impl;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.bulkdata.common.BulkDataUtils;
 import com.ibm.fhir.bulkdata.dto.ReadResultDTO;
 import com.ibm.fhir.bulkdata.jbatch.export.data.ExportTransientUserData;
 import com.ibm.fhir.bulkdata.jbatch.load.data.ImportTransientUserData;
 import com.ibm.fhir.bulkdata.provider.Provider;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIRException;
-import com.ibm.fhir.model.format.Format;
-import com.ibm.fhir.model.parser.FHIRParser;
-import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.operation.bulkdata.config.ConfigurationAdapter;
 import com.ibm.fhir.operation.bulkdata.config.ConfigurationFactory;
@@ -42,7 +37,6 @@ public class FileProvider implements Provider {
 
     private String source = null;
     private long parseFailures = 0l;
-    @SuppressWarnings("unused")
     private ImportTransientUserData transientUserData = null;
     private List<Resource> resources = new ArrayList<>();
     private String fhirResourceType = null;
@@ -52,7 +46,6 @@ public class FileProvider implements Provider {
     private ExportTransientUserData chunkData = null;
 
     private OutputStream out = null;
-    private BufferedReader br = null;
 
     private ConfigurationAdapter configuration = ConfigurationFactory.getInstance();
 
@@ -78,38 +71,7 @@ public class FileProvider implements Provider {
     public void readResources(long numOfLinesToSkip, String workItem) throws FHIRException {
         resources = new ArrayList<>();
         try {
-            long line = 0;
-            try {
-                if (br == null) {
-                    br = Files.newBufferedReader(Paths.get(getFilePath(workItem)));
-                }
-                // Imports must only skip lines if the size is higher, not equal to
-                // otherwise we start skipping the last line to skip.
-                for (int i = 0; i < numOfLinesToSkip; i++) {
-                    line++;
-                    br.readLine(); // We know the file has at least this number.
-                }
-
-                String resourceStr = br.readLine();
-                int chunkRead = 0;
-                int maxRead = configuration.getImportNumberOfFhirResourcesPerRead(null);
-                while (resourceStr != null && chunkRead <= maxRead) {
-                    line++;
-                    chunkRead++;
-                    try {
-                        resources.add(FHIRParser.parser(Format.JSON).parse(new StringReader(resourceStr)));
-                    } catch (FHIRParserException e) {
-                        // Log and skip the invalid FHIR resource.
-                        parseFailures++;
-                        logger.log(Level.INFO, "readResources: " + "Failed to parse line " + line + " of [" + source + "].", e);
-                    }
-                    resourceStr = br.readLine();
-                }
-            } finally {
-                if (br != null) {
-                    br.close();
-                }
-            }
+            parseFailures = BulkDataUtils.readFhirResourceFromLocalFile(getFilePath(workItem), resources, transientUserData);
         } catch (Exception e) {
             throw new FHIRException("Unable to read from Local File", e);
         }
@@ -161,9 +123,11 @@ public class FileProvider implements Provider {
         if (!FHIRMediaType.APPLICATION_NDJSON.equals(mediaType)) {
             throw new UnsupportedOperationException("FileProvider does not support writing files of type " + mediaType);
         }
-        if (chunkData.getBufferStream().size() == 0) {
+        if (chunkData.getBufferStream().size() == 0 && !(chunkData.isFinishCurrentUpload() && out != null)) {
             // Early exit condition:  nothing to write so just set the latWrittenPageNum and return
             chunkData.setLastWrittenPageNum(chunkData.getPageNum());
+            chunkData.setLastWrittenSeekKey(chunkData.getSeekKey());
+            chunkData.commitAllRead();
             return;
         }
 
@@ -215,5 +179,7 @@ public class FileProvider implements Provider {
         }
 
         chunkData.setLastWrittenPageNum(chunkData.getPageNum());
+        chunkData.setLastWrittenSeekKey(chunkData.getSeekKey());
+        chunkData.commitAllRead();
     }
 }
\ No newline at end of file
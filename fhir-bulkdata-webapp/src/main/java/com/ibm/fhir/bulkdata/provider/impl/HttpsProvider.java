@@ -73,7 +73,7 @@ public class HttpsProvider implements Provider {
     @Override
     public void readResources(long numOfLinesToSkip, String workItem) throws FHIRException {
         try {
-            parseFailures = BulkDataUtils.readFhirResourceFromHttps(workItem, (int) numOfLinesToSkip, resources, transientUserData);
+            parseFailures = BulkDataUtils.readFhirResourceFromHttps(workItem, resources, transientUserData);
         } catch (Exception e) {
             throw new FHIRException("Unable to read from Https File", e);
         }
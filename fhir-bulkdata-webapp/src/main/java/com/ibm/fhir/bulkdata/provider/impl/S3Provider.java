@@ -7,7 +7,6 @@
 package com.ibm.fhir.bulkdata.provider.impl;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -28,22 +27,26 @@ import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3ClientBuilder;
 import com.ibm.cloud.objectstorage.services.s3.model.Bucket;
 import com.ibm.cloud.objectstorage.services.s3.model.CreateBucketRequest;
-import com.ibm.cloud.objectstorage.services.s3.model.GetObjectRequest;
 import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Request;
 import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Result;
-import com.ibm.cloud.objectstorage.services.s3.model.S3Object;
 import com.ibm.fhir.bulkdata.common.BulkDataUtils;
+import com.ibm.fhir.bulkdata.common.ConcurrentPartUploader;
+import com.ibm.fhir.bulkdata.common.ConcurrentPartUploader.CompletedPart;
+import com.ibm.fhir.bulkdata.common.S3MultipartOutputStream;
+import com.ibm.fhir.bulkdata.common.SegmentedBuffer;
 import com.ibm.fhir.bulkdata.dto.ReadResultDTO;
-import com.ibm.fhir.bulkdata.export.writer.SparkParquetWriter;
+import com.ibm.fhir.bulkdata.export.writer.FHIRParquetWriter;
 import com.ibm.fhir.bulkdata.jbatch.export.data.ExportTransientUserData;
 import com.ibm.fhir.bulkdata.jbatch.load.data.ImportTransientUserData;
 import com.ibm.fhir.bulkdata.provider.Provider;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIRException;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.operation.bulkdata.client.HttpWrapper;
 import com.ibm.fhir.operation.bulkdata.config.ConfigurationAdapter;
 import com.ibm.fhir.operation.bulkdata.config.ConfigurationFactory;
+import com.ibm.fhir.search.context.SeekKey;
 
 /**
  * S3Provider for ibm-cos and aws-s3
@@ -61,7 +64,7 @@ public class S3Provider implements Provider {
 
     private List<Resource> resources = new ArrayList<>();
     private AmazonS3 client = null;
-    private SparkParquetWriter parquetWriter = null;
+    private boolean parquetEnabled = false;
 
     private String bucketName = null;
 
@@ -73,6 +76,9 @@ public class S3Provider implements Provider {
     private String cosBucketPathPrefix = null;
     private String fhirResourceType = null;
 
+    // Uploads the parts of NDJSON exports in the background
+    private ConcurrentPartUploader<ReadPosition> uploader = null;
+
     public S3Provider(String source) throws FHIRException {
         ConfigurationAdapter adapter = ConfigurationFactory.getInstance();
 
@@ -127,10 +133,10 @@ public class S3Provider implements Provider {
 
         if (adapter.isStorageProviderParquetEnabled(source)) {
             try {
-                Class.forName("org.apache.spark.sql.SparkSession");
-                parquetWriter = new SparkParquetWriter(adapter.isStorageProviderAuthTypeIam(source), cosEndpointUrl, apiKey, resourceId);
+                Class.forName("org.apache.parquet.hadoop.ParquetWriter");
+                parquetEnabled = true;
             } catch (ClassNotFoundException e) {
-                logger.info("No SparkSession in classpath; skipping SparkParquetWriter initialization");
+                logger.info("No ParquetWriter in classpath; parquet export is not available");
             }
         }
     }
@@ -213,8 +219,8 @@ public class S3Provider implements Provider {
     @Override
     public long getSize(String workItem) throws FHIRException {
         try {
-            S3Object item = client.getObject(new GetObjectRequest(bucketName, workItem));
-            return item.getObjectMetadata().getContentLength();
+            // A HEAD request, so no content stream is opened
+            return client.getObjectMetadata(bucketName, workItem).getContentLength();
         } catch (Exception e) {
             throw new FHIRException("Error Getting File Size '" + bucketName + "/" + workItem + "'", e);
         }
@@ -243,7 +249,7 @@ public class S3Provider implements Provider {
     @Override
     public void readResources(long numOfLinesToSkip, String workItem) throws FHIRException {
         try {
-            parseFailures = BulkDataUtils.readFhirResourceFromObjectStore(client, bucketName, workItem, (int) numOfLinesToSkip, resources, transientUserData);
+            parseFailures = BulkDataUtils.readFhirResourceFromObjectStore(client, bucketName, workItem, resources, transientUserData);
         } catch (Exception e) {
             throw new FHIRException("Unable to read from S3 File", e);
         }
@@ -317,15 +323,19 @@ public class S3Provider implements Provider {
         return client;
     }
 
-    public SparkParquetWriter getParquetWriter() {
-        return parquetWriter;
+    /**
+     * @return whether parquet export is enabled and the parquet writer is available
+     */
+    public boolean isParquetEnabled() {
+        return parquetEnabled;
     }
 
     @Override
     public void close() throws Exception {
         logger.fine("closing the S3Wrapper");
-        if (parquetWriter != null) {
-            parquetWriter.close();
+        if (uploader != null) {
+            uploader.close();
+            uploader = null;
         }
     }
 
@@ -340,13 +350,16 @@ public class S3Provider implements Provider {
         case FHIRMediaType.APPLICATION_NDJSON:
         default:
             // Only if we're greater than zero, otherwise there is nothing to upload.
-            if (chunkData.getBufferStream().size() > 0) {
-                // TODO try PipedOutputStream -> PipedInputStream instead?  Or maybe a ByteBuffer with a flip instead?
-                pushFhirJsonsToCos(new ByteArrayInputStream(chunkData.getBufferStream().toByteArray()), chunkData.getBufferStream().size());
-            }
+            pushFhirJsonsToCos();
             break;
         }
-        chunkData.setLastWrittenPageNum(chunkData.getPageNum());
+
+        // Parts still in flight are not written yet, so a restart must read them again
+        if (uploader == null || uploader.getPendingCount() == 0) {
+            chunkData.setLastWrittenPageNum(chunkData.getPageNum());
+            chunkData.setLastWrittenSeekKey(chunkData.getSeekKey());
+            chunkData.commitAllRead();
+        }
     }
 
     @Override
@@ -364,7 +377,13 @@ public class S3Provider implements Provider {
         this.isExportPublic = isExportPublic;
     }
 
-    private void pushFhirJsonsToCos(InputStream in, int dataLength) throws Exception {
+    /**
+     * Hand the buffered data to the uploader as the next part of the current object, and
+     * finish the object if requested. The part is uploaded in the background; its entity tag
+     * and read position are recorded in the chunk data once it (and every part before it)
+     * has been uploaded.
+     */
+    private void pushFhirJsonsToCos() throws Exception {
         String itemName;
         if (cosBucketPathPrefix != null && cosBucketPathPrefix.trim().length() > 0) {
             itemName = cosBucketPathPrefix + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".ndjson";
@@ -372,19 +391,41 @@ public class S3Provider implements Provider {
             itemName = "system_export_" + executionId + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".ndjson";
         }
 
+        if (uploader == null) {
+            uploader = new ConcurrentPartUploader<>(client, bucketName, ConfigurationFactory.getInstance().getCoreCosMaxConcurrentPartUploads());
+        }
+
         String uploadId = chunkData.getUploadId();
-        if (uploadId == null) {
-            uploadId = BulkDataUtils.startPartUpload(client, bucketName, itemName, isExportPublic);
-            chunkData.setUploadId(uploadId);
+        SegmentedBuffer buffer = chunkData.getBufferStream();
+        if (buffer.size() > 0) {
+            if (uploadId == null) {
+                uploadId = BulkDataUtils.startPartUpload(client, bucketName, itemName, isExportPublic);
+                chunkData.setUploadId(uploadId);
+            }
+
+            int dataLength = buffer.size();
+            ReadPosition position = new ReadPosition(chunkData.getPageNum(), chunkData.getSeekKey(), chunkData.markRead());
+            // Blocks while the maximum number of parts are in flight
+            uploader.submit(itemName, uploadId, chunkData.getPartNum(), buffer.detach(), position);
+            logger.info("pushFhirJsonsToCos: '" + dataLength + "' bytes were queued as part " + chunkData.getPartNum()
+                    + " of COS object - '" + itemName + "' uploadId='" + uploadId + "'");
+            chunkData.setPartNum(chunkData.getPartNum() + 1);
         }
 
-        chunkData.getCosDataPacks().add(BulkDataUtils.multiPartUpload(client, bucketName, itemName, uploadId, in, dataLength, chunkData.getPartNum()));
-        logger.info("pushFhirJsonsToCos: '" + dataLength + "' bytes were successfully appended to COS object - '" + itemName + "' uploadId='" + uploadId + "'");
-        chunkData.setPartNum(chunkData.getPartNum() + 1);
-        chunkData.getBufferStream().reset();
+        if (!chunkData.isFinishCurrentUpload()) {
+            recordUploadedParts(uploader.drainCompleted());
+            return;
+        }
 
         // Close it out...
-        if (chunkData.isFinishCurrentUpload()) {
+        recordUploadedParts(uploader.awaitAll());
+        if (uploadId == null) {
+            // Nothing left to write, e.g. the last page was empty, but the summary must still be closed
+            if (chunkData.getResourceTypeSummary() != null && !chunkData.getResourceTypeSummary().endsWith("]")
+                    && chunkData.getPageNum() >= chunkData.getLastPageNum()) {
+                chunkData.setResourceTypeSummary(chunkData.getResourceTypeSummary() + "]");
+            }
+        } else {
             BulkDataUtils.finishMultiPartUpload(client, bucketName, itemName, uploadId, chunkData.getCosDataPacks());
             // Partition status for the exported resources, e.g, Patient[1000,1000,200]
             if (chunkData.getResourceTypeSummary() == null) {
@@ -411,21 +452,52 @@ public class S3Provider implements Provider {
         }
     }
 
+    /**
+     * Record the parts which have been uploaded, and the read position they cover
+     */
+    private void recordUploadedParts(List<CompletedPart<ReadPosition>> parts) {
+        for (CompletedPart<ReadPosition> part : parts) {
+            chunkData.getCosDataPacks().add(part.getPartETag());
+            chunkData.setLastWrittenPageNum(part.getTag().pageNum);
+            chunkData.setLastWrittenSeekKey(part.getTag().seekKey);
+            chunkData.commitRead(part.getTag().readMark);
+        }
+    }
+
     private void pushFhirParquetToCos(List<Resource> resources) throws Exception {
         if (chunkData == null) {
             logger.warning("pushFhirParquetToCos: chunkData is null, this should never happen!");
             throw new Exception("pushFhirParquetToCos: chunkData is null, this should never happen!");
         }
 
+        if (!parquetEnabled) {
+            throw new FHIRException("Export to parquet is not enabled for this storage provider");
+        }
+
         String itemName;
         if (cosBucketPathPrefix != null && cosBucketPathPrefix.trim().length() > 0) {
-            itemName = "cos://" + bucketName + ".fhir/" + cosBucketPathPrefix + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".parquet";
+            itemName = cosBucketPathPrefix + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".parquet";
         } else {
-            itemName = "cos://" + bucketName + ".fhir/job" + executionId + "/" + fhirResourceType + "_" + chunkData.getUploadCount()
-                    + ".parquet";
+            itemName = "job" + executionId + "/" + fhirResourceType + "_" + chunkData.getUploadCount() + ".parquet";
         }
 
-        parquetWriter.writeParquet(resources, itemName);
+        // Stream the file straight into a multi-part upload, so we only buffer a row group and an upload part
+        // The upload is only completed when the writer closes the stream after the footer has been written.
+        // Any failure aborts it instead, so a truncated file is never published
+        S3MultipartOutputStream out = new S3MultipartOutputStream(client, bucketName, itemName, isExportPublic, (int) COS_PART_MINIMALSIZE);
+        try {
+            FHIRParquetWriter writer = new FHIRParquetWriter(ModelSupport.getResourceType(fhirResourceType), out);
+            for (Resource resource : resources) {
+                writer.write(resource);
+            }
+            writer.close();
+        } catch (Throwable t) {
+            out.abort();
+            throw t;
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("pushFhirParquetToCos: '" + out.getSize() + "' bytes were successfully written to COS object - '" + itemName + "'");
+        }
 
         // Partition status for the exported resources, e.g, Patient[1000,1000,200]
         if (chunkData.getResourceTypeSummary() == null) {
@@ -449,4 +521,20 @@ public class S3Provider implements Provider {
             chunkData.setUploadCount(chunkData.getUploadCount() + 1);
         }
     }
+
+    /**
+     * The read position covered by a part: the page and seek key of the last resource in it,
+     * and the mark of the resource ids read up to it
+     */
+    private static class ReadPosition {
+        private final int pageNum;
+        private final SeekKey seekKey;
+        private final long readMark;
+
+        private ReadPosition(int pageNum, SeekKey seekKey, long readMark) {
+            this.pageNum = pageNum;
+            this.seekKey = seekKey;
+            this.readMark = readMark;
+        }
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.testng.annotations.Test;
+
+import com.ibm.cloud.objectstorage.SdkClientException;
+import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.fhir.bulkdata.common.BulkDataUtils;
+import com.ibm.fhir.bulkdata.common.ConcurrentPartUploader;
+import com.ibm.fhir.bulkdata.common.ConcurrentPartUploader.CompletedPart;
+import com.ibm.fhir.bulkdata.common.SegmentedBuffer;
+
+public class ConcurrentPartUploaderTest {
+    private static final String BUCKET = "bucket";
+
+    private static SegmentedBuffer.Part part(SegmentedBuffer buffer, ByteArrayOutputStream expected, int partNum) throws IOException {
+        byte[] data = new byte[SegmentedBuffer.SEGMENT_SIZE + partNum];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (partNum + i);
+        }
+        buffer.write(data);
+        expected.write(data);
+        return buffer.detach();
+    }
+
+    @Test
+    public void testUploadInOrderWithinLimit() throws Exception {
+        LocalS3 s3 = new LocalS3();
+        s3.setPartDelay(50);
+        String uploadId = BulkDataUtils.startPartUpload(s3.getClient(), BUCKET, "ordered.ndjson", false);
+
+        ConcurrentPartUploader<Integer> uploader = new ConcurrentPartUploader<>(s3.getClient(), BUCKET, 2);
+        SegmentedBuffer buffer = new SegmentedBuffer();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        List<PartETag> partETags = new ArrayList<>();
+        int lastTag = 0;
+        for (int partNum = 1; partNum <= 6; partNum++) {
+            uploader.submit("ordered.ndjson", uploadId, partNum, part(buffer, expected, partNum), partNum * 10);
+            for (CompletedPart<Integer> completed : uploader.drainCompleted()) {
+                partETags.add(completed.getPartETag());
+                // Parts are handed back in submission order, without gaps
+                assertEquals(completed.getTag().intValue(), lastTag + 10);
+                lastTag = completed.getTag();
+            }
+        }
+        for (CompletedPart<Integer> completed : uploader.awaitAll()) {
+            partETags.add(completed.getPartETag());
+            assertEquals(completed.getTag().intValue(), lastTag + 10);
+            lastTag = completed.getTag();
+        }
+        assertEquals(lastTag, 60);
+        assertEquals(uploader.getPendingCount(), 0);
+        assertTrue(s3.getMaxInFlight() <= 2, "in flight: " + s3.getMaxInFlight());
+
+        BulkDataUtils.finishMultiPartUpload(s3.getClient(), BUCKET, "ordered.ndjson", uploadId, partETags);
+        assertEquals(s3.getObject(BUCKET, "ordered.ndjson"), expected.toByteArray());
+    }
+
+    @Test
+    public void testDrainStopsAtPartInFlight() throws Exception {
+        LocalS3 s3 = new LocalS3();
+        s3.setPartDelay(500);
+        String uploadId = BulkDataUtils.startPartUpload(s3.getClient(), BUCKET, "slow.ndjson", false);
+
+        ConcurrentPartUploader<String> uploader = new ConcurrentPartUploader<>(s3.getClient(), BUCKET, 4);
+        SegmentedBuffer buffer = new SegmentedBuffer();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        uploader.submit("slow.ndjson", uploadId, 1, part(buffer, expected, 1), "first");
+        uploader.submit("slow.ndjson", uploadId, 2, part(buffer, expected, 2), "second");
+
+        // Neither part has finished yet, so nothing may be checkpointed
+        assertTrue(uploader.drainCompleted().isEmpty());
+        assertEquals(uploader.getPendingCount(), 2);
+
+        List<CompletedPart<String>> completed = uploader.awaitAll();
+        assertEquals(completed.size(), 2);
+        assertEquals(completed.get(0).getTag(), "first");
+        assertEquals(completed.get(1).getTag(), "second");
+    }
+
+    @Test
+    public void testFailurePropagates() throws Exception {
+        LocalS3 s3 = new LocalS3();
+        s3.setPartDelay(200);
+        // Part 3 only fails once parts 1, 2 and 4 are uploading alongside it
+        s3.setFailPartNum(3, 3);
+        String uploadId = BulkDataUtils.startPartUpload(s3.getClient(), BUCKET, "failed.ndjson", false);
+
+        try (ConcurrentPartUploader<Integer> uploader = new ConcurrentPartUploader<>(s3.getClient(), BUCKET, 4)) {
+            SegmentedBuffer buffer = new SegmentedBuffer();
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            for (int partNum = 1; partNum <= 4; partNum++) {
+                uploader.submit("failed.ndjson", uploadId, partNum, part(buffer, expected, partNum), partNum);
+            }
+            try {
+                uploader.awaitAll();
+                fail("expected the upload of part 3 to fail");
+            } catch (SdkClientException e) {
+                assertTrue(e.getMessage().contains("part 3"), e.getMessage());
+            }
+            assertEquals(uploader.getPendingCount(), 0);
+            assertEquals(s3.getMaxInFlight(), 4);
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        LocalS3 s3 = new LocalS3();
+        s3.setPartDelay(500);
+        String uploadId = BulkDataUtils.startPartUpload(s3.getClient(), BUCKET, "closed.ndjson", false);
+
+        ConcurrentPartUploader<Integer> uploader = new ConcurrentPartUploader<>(s3.getClient(), BUCKET, 2);
+        SegmentedBuffer buffer = new SegmentedBuffer();
+        uploader.submit("closed.ndjson", uploadId, 1, part(buffer, new ByteArrayOutputStream(), 1), 1);
+
+        // Closing abandons the part in flight and stops the upload threads
+        uploader.close();
+        assertEquals(uploader.getPendingCount(), 0);
+        try {
+            uploader.submit("closed.ndjson", uploadId, 2, part(buffer, new ByteArrayOutputStream(), 2), 2);
+            fail("expected the closed uploader to reject the part");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        new ConcurrentPartUploader<Integer>(new LocalS3().getClient(), BUCKET, 0);
+    }
+}
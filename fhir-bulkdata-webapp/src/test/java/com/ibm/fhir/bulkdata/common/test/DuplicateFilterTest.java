@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bulkdata.common.DuplicateFilter;
+import com.ibm.fhir.bulkdata.common.DuplicateFilterStore;
+import com.ibm.fhir.bulkdata.common.ScalableBloomFilter;
+
+public class DuplicateFilterTest {
+    private Path workDirectory;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        workDirectory = Files.createTempDirectory("DuplicateFilterTest");
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        for (File file : workDirectory.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.deleteIfExists(workDirectory);
+    }
+
+    @Test
+    public void testDropsDuplicates() {
+        for (String type : new String[] { DuplicateFilter.TYPE_EXACT, DuplicateFilter.TYPE_BLOOM }) {
+            DuplicateFilter filter = DuplicateFilter.create(type, 1.0E-9);
+            assertTrue(filter.add("a"), type);
+            assertFalse(filter.add("a"), type);
+            long mark = filter.mark();
+            assertFalse(filter.add("a"), type);
+            assertTrue(filter.add("b"), type);
+            filter.commit(mark);
+            assertFalse(filter.add("a"), type);
+            assertFalse(filter.add("b"), type);
+            assertEquals(filter.size(), 1, type);
+            filter.commitAll();
+            assertEquals(filter.size(), 2, type);
+        }
+    }
+
+    @Test
+    public void testCheckpointKeepsOnlyWrittenIds() throws Exception {
+        for (String type : new String[] { DuplicateFilter.TYPE_EXACT, DuplicateFilter.TYPE_BLOOM }) {
+            DuplicateFilter filter = DuplicateFilter.create(type, 1.0E-9);
+            filter.add("written");
+            long written = filter.mark();
+            filter.add("inFlight");
+            long inFlight = filter.mark();
+            filter.add("buffered");
+            filter.commit(written);
+
+            // A restart reads the resources which were not written again, so they must not be dropped
+            DuplicateFilterStore store = DuplicateFilterStore.create(workDirectory.toString());
+            DuplicateFilter restored = DuplicateFilterStore.load(store.save(filter)).getFilter();
+            assertFalse(restored.add("written"), type);
+            assertTrue(restored.add("inFlight"), type);
+            assertTrue(restored.add("buffered"), type);
+
+            // The original keeps checking the pending ids until they are written
+            assertFalse(filter.add("inFlight"), type);
+            assertFalse(filter.add("buffered"), type);
+            filter.commit(inFlight);
+            assertEquals(filter.size(), 2, type);
+            store.delete();
+        }
+    }
+
+    @Test
+    public void testStoreReplaysLogToCheckpoint() throws Exception {
+        for (String type : new String[] { DuplicateFilter.TYPE_EXACT, DuplicateFilter.TYPE_BLOOM }) {
+            DuplicateFilter filter = DuplicateFilter.create(type, 1.0E-9);
+            DuplicateFilterStore store = DuplicateFilterStore.create(workDirectory.toString());
+
+            // The first save writes a snapshot, the later ones append to the log
+            filter.add("a");
+            filter.commitAll();
+            store.save(filter);
+            filter.add("b");
+            filter.commitAll();
+            DuplicateFilterStore.Reference checkpoint = store.save(filter);
+            filter.add("c");
+            filter.commitAll();
+            store.save(filter);
+
+            // The last checkpoint was rolled back
+            DuplicateFilterStore.Loaded loaded = DuplicateFilterStore.load(checkpoint);
+            DuplicateFilter restored = loaded.getFilter();
+            assertEquals(restored.size(), 2, type);
+            assertFalse(restored.add("a"), type);
+            assertFalse(restored.add("b"), type);
+            assertTrue(restored.add("c"), type);
+
+            // Saving again continues from the checkpoint
+            restored.add("d");
+            restored.commitAll();
+            DuplicateFilter reloaded = DuplicateFilterStore.load(loaded.getStore().save(restored)).getFilter();
+            assertEquals(reloaded.size(), 4, type);
+            assertFalse(reloaded.add("c"), type);
+            assertFalse(reloaded.add("d"), type);
+
+            loaded.getStore().delete();
+            assertNull(DuplicateFilterStore.load(checkpoint), type);
+        }
+    }
+
+    @Test
+    public void testBloomFalsePositiveRate() {
+        double rate = 1.0E-3;
+        ScalableBloomFilter bloom = new ScalableBloomFilter(1000, rate);
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            bloom.add("Patient/" + i);
+        }
+        for (int i = 0; i < count; i++) {
+            assertTrue(bloom.mightContain("Patient/" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = count; i < 2 * count; i++) {
+            if (bloom.mightContain("Patient/" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives <= 2 * rate * count, "false positives: " + falsePositives);
+
+        // Far smaller than the ids themselves
+        assertTrue(bloom.getSizeInBytes() < 4 * count, "size: " + bloom.getSizeInBytes());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * (C) Copyright IBM Corp. 2020, 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bulkdata.export.writer.FHIRParquetSchema;
+import com.ibm.fhir.bulkdata.export.writer.FHIRParquetWriter;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Questionnaire;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.Narrative;
+import com.ibm.fhir.model.type.Xhtml;
+import com.ibm.fhir.model.type.code.NarrativeStatus;
+
+/**
+ * Tests for the {@link FHIRParquetWriter} and the schema it writes
+ */
+public class FHIRParquetWriterTest {
+
+    @Test
+    public void testSchema() {
+        MessageType schema = FHIRParquetSchema.getSchema(Patient.class);
+        assertSame(FHIRParquetSchema.getSchema(Patient.class), schema);
+
+        assertEquals(schema.getType("active").asPrimitiveType().getPrimitiveTypeName(), PrimitiveTypeName.BOOLEAN);
+        assertEquals(schema.getType("multipleBirthInteger").asPrimitiveType().getPrimitiveTypeName(), PrimitiveTypeName.INT32);
+        assertEquals(schema.getType("birthDate").getOriginalType(), OriginalType.UTF8);
+        assertTrue(schema.getType("name").isRepetition(Type.Repetition.REPEATED));
+        assertFalse(schema.getType("name").isPrimitive());
+        assertTrue(schema.containsField("deceasedBoolean"));
+        assertTrue(schema.containsField("deceasedDateTime"));
+
+        // The ids and extensions of primitives are kept as JSON
+        assertEquals(schema.getType("_birthDate").getOriginalType(), OriginalType.JSON);
+        assertEquals(schema.getType("_deceasedBoolean").getOriginalType(), OriginalType.JSON);
+        assertFalse(schema.containsField("_name"));
+
+        // Extensions and contained resources are kept as JSON
+        assertEquals(schema.getType("extension").getOriginalType(), OriginalType.JSON);
+        assertEquals(schema.getType("contained").getOriginalType(), OriginalType.JSON);
+
+        // Identifier.assigner is a Reference, which already appears on the path
+        Type assigner = schema.getType("managingOrganization").asGroupType()
+                .getType("identifier").asGroupType()
+                .getType("assigner");
+        assertEquals(assigner.getOriginalType(), OriginalType.JSON);
+
+        // Recursive backbone elements
+        Type nested = FHIRParquetSchema.getSchema(Questionnaire.class).getType("item").asGroupType().getType("item");
+        assertEquals(nested.getOriginalType(), OriginalType.JSON);
+    }
+
+    @Test
+    public void testWriteFile() throws Exception {
+        Path tmpDir = Files.createTempDirectory("FHIRParquetWriterTest");
+        Path file = tmpDir.resolve("Patient_1.parquet");
+
+        Patient patient = buildPatient();
+        Patient patient2 = patient.toBuilder()
+                .id("patient2")
+                // add an extension
+                .extension(Extension.builder()
+                    .url("http://examples.com/my-cool-extension")
+                    .value(string("test"))
+                    .build())
+                // change deceased[x] from a boolean to a datetime
+                .deceased(DateTime.of("2020-01-01"))
+                // give a primitive an id and extension
+                .birthDate(Date.builder()
+                    .id("birthDateId")
+                    .value("1970-01-01")
+                    .extension(Extension.builder()
+                        .url("http://examples.com/birth-time")
+                        .value(string("12:00"))
+                        .build())
+                    .build())
+                .build();
+
+        try (FHIRParquetWriter writer = new FHIRParquetWriter(Patient.class, file)) {
+            writer.write(patient);
+            writer.write(patient2);
+            assertEquals(writer.getCount(), 2);
+        }
+        assertTrue(Files.size(file) > 0);
+
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new org.apache.hadoop.fs.Path(file.toUri())).build()) {
+            Group first = reader.read();
+            assertEquals(first.getString("resourceType", 0), "Patient");
+            assertEquals(first.getString("id", 0), patient.getId());
+            assertTrue(first.getBoolean("active", 0));
+            assertEquals(first.getInteger("multipleBirthInteger", 0), 2);
+            assertFalse(first.getBoolean("deceasedBoolean", 0));
+            assertEquals(first.getGroup("meta", 0).getString("lastUpdated", 0), "2019-01-01T12:00:00Z");
+            Group name = first.getGroup("name", 0);
+            assertEquals(name.getFieldRepetitionCount("given"), 2);
+            assertEquals(name.getString("given", 1), "Jingle");
+            assertEquals(first.getFieldRepetitionCount("extension"), 0);
+            assertEquals(first.getFieldRepetitionCount("_birthDate"), 0);
+
+            Group second = reader.read();
+            assertEquals(second.getString("id", 0), "patient2");
+            assertEquals(second.getFieldRepetitionCount("deceasedBoolean"), 0);
+            assertEquals(second.getString("deceasedDateTime", 0), "2020-01-01");
+            assertTrue(second.getString("extension", 0).contains("my-cool-extension"));
+            assertEquals(second.getString("birthDate", 0), "1970-01-01");
+            assertTrue(second.getString("_birthDate", 0).contains("birthDateId"));
+            assertTrue(second.getString("_birthDate", 0).contains("birth-time"));
+
+            assertNull(reader.read());
+        }
+
+        Files.delete(file);
+        Files.delete(tmpDir);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testWrongResourceType() throws Exception {
+        Path file = Files.createTempFile("FHIRParquetWriterTest", ".parquet");
+        try (FHIRParquetWriter writer = new FHIRParquetWriter(Questionnaire.class, file)) {
+            writer.write(buildPatient());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Patient buildPatient() {
+        java.lang.String div = "<div xmlns=\"http://www.w3.org/1999/xhtml\"><p><b>Generated Narrative</b></p></div>";
+
+        java.lang.String id = "9aac1d9c-ea5f-4513-af9c-897ab21dd11d";
+
+        Meta meta = Meta.builder().versionId(Id.of("1"))
+                .lastUpdated(Instant.of("2019-01-01T12:00:00Z"))
+                .build();
+
+        HumanName name = HumanName.builder()
+                .id("someId")
+                .given(string("John"))
+                .given(string("Jingle"))
+                .family(string("Doe"))
+                .build();
+
+        Narrative text = Narrative.builder()
+                .status(NarrativeStatus.GENERATED)
+                .div(Xhtml.xhtml(div))
+                .build();
+
+        Patient patient = Patient.builder()
+                .id(id)
+                .text(text)
+                .active(com.ibm.fhir.model.type.Boolean.TRUE)
+                .multipleBirth(com.ibm.fhir.model.type.Integer.of(2))
+                .meta(meta)
+                .name(name)
+                .birthDate(Date.of("1970-01-01"))
+                .deceased(Boolean.FALSE)
+                .build();
+
+        return patient;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.cloud.objectstorage.SdkClientException;
+import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
+import com.ibm.cloud.objectstorage.services.s3.model.AbortMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.CompleteMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.CompleteMultipartUploadResult;
+import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadResult;
+import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.cloud.objectstorage.services.s3.model.UploadPartRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.UploadPartResult;
+
+/**
+ * An in-memory stand-in for the multi-part upload calls of an S3 service, for unit tests.
+ * Only the calls used by the bulk data multi-part uploads are implemented.
+ */
+public class LocalS3 {
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    // Milliseconds that each part upload takes
+    private volatile long partDelay = 0;
+
+    // The part number to fail, or 0
+    private volatile int failPartNum = 0;
+
+    // Counted down by each other part once it has started; the failing part waits for it
+    private volatile CountDownLatch failGate = null;
+
+    private final AmazonS3 client = (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(),
+        new Class<?>[] { AmazonS3.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "initiateMultipartUpload":
+                return initiate((InitiateMultipartUploadRequest) args[0]);
+            case "uploadPart":
+                return uploadPart((UploadPartRequest) args[0]);
+            case "completeMultipartUpload":
+                return complete((CompleteMultipartUploadRequest) args[0]);
+            case "abortMultipartUpload":
+                uploads.remove(((AbortMultipartUploadRequest) args[0]).getUploadId());
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+    /**
+     * @return the client to pass to the code being tested
+     */
+    public AmazonS3 getClient() {
+        return client;
+    }
+
+    public void setPartDelay(long partDelay) {
+        this.partDelay = partDelay;
+    }
+
+    public void setFailPartNum(int failPartNum) {
+        this.failPartNum = failPartNum;
+    }
+
+    /**
+     * Fail the given part, but only once the given number of other parts have started,
+     * so those parts are uploading while the failing one aborts the upload
+     */
+    public void setFailPartNum(int failPartNum, int otherParts) {
+        this.failGate = new CountDownLatch(otherParts);
+        this.failPartNum = failPartNum;
+    }
+
+    /**
+     * @return the content of a completed object, or null
+     */
+    public byte[] getObject(String bucketName, String key) {
+        return objects.get(bucketName + "/" + key);
+    }
+
+    /**
+     * @return the highest number of parts which were being uploaded at the same time
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    private InitiateMultipartUploadResult initiate(InitiateMultipartUploadRequest request) {
+        String uploadId = "upload-" + uploadCount.incrementAndGet();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    private UploadPartResult uploadPart(UploadPartRequest request) throws IOException, InterruptedException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+            if (parts == null) {
+                throw new IllegalStateException("No such upload: " + request.getUploadId());
+            }
+            CountDownLatch gate = failGate;
+            if (request.getPartNumber() == failPartNum) {
+                if (gate != null && !gate.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("The other parts did not start");
+                }
+                throw new SdkClientException("Injected failure for part " + failPartNum);
+            } else if (gate != null) {
+                gate.countDown();
+            }
+            byte[] data = readFully(request.getInputStream());
+            if (data.length != request.getPartSize()) {
+                throw new IllegalStateException("Expected " + request.getPartSize() + " bytes but got " + data.length);
+            }
+            Thread.sleep(partDelay);
+            parts.put(request.getPartNumber(), data);
+
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private CompleteMultipartUploadResult complete(CompleteMultipartUploadRequest request) throws IOException {
+        Map<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+        if (parts == null) {
+            throw new IllegalStateException("No such upload: " + request.getUploadId());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int last = 0;
+        for (PartETag partETag : request.getPartETags()) {
+            if (partETag.getPartNumber() <= last) {
+                throw new IllegalStateException("Parts must be listed in ascending order");
+            }
+            last = partETag.getPartNumber();
+            out.write(parts.get(partETag.getPartNumber()));
+        }
+        objects.put(request.getBucketName() + "/" + request.getKey(), out.toByteArray());
+
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        return result;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
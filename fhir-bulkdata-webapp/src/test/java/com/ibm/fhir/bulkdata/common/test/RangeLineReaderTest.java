@@ -0,0 +1,160 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bulkdata.common.RangeLineReader;
+import com.ibm.fhir.bulkdata.common.ResourceBatchReader;
+import com.ibm.fhir.model.resource.Resource;
+
+public class RangeLineReaderTest {
+
+    private static String ndjson(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            // Vary the line lengths and use a multi-byte character, so ranges split lines at varied places
+            sb.append("{\"resourceType\":\"Patient\",\"id\":\"p").append(i).append("\",\"name\":[{\"family\":\"Müller");
+            for (int j = 0; j < i % 7; j++) {
+                sb.append('x');
+            }
+            sb.append("\"}]}");
+            sb.append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        return sb.toString();
+    }
+
+    private static RangeLineReader open(byte[] data, long start, long end) throws Exception {
+        int position = (int) RangeLineReader.openPosition(start);
+        return new RangeLineReader(new ByteArrayInputStream(data, position, data.length - position), start, end);
+    }
+
+    private static List<String> readAll(RangeLineReader reader) throws Exception {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testRangesCoverEveryLineOnce() throws Exception {
+        String text = ndjson(50);
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        List<String> expected = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            expected.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+        }
+
+        for (int rangeSize = 1; rangeSize <= data.length + 1; rangeSize += 37) {
+            List<String> lines = new ArrayList<>();
+            for (long start = 0; start < data.length; start += rangeSize) {
+                long end = start + rangeSize >= data.length ? -1 : start + rangeSize;
+                try (RangeLineReader reader = open(data, start, end)) {
+                    lines.addAll(readAll(reader));
+                    assertTrue(reader.isExhausted());
+                }
+            }
+            assertEquals(lines, expected, "range size " + rangeSize);
+        }
+    }
+
+    @Test
+    public void testResumeFromPosition() throws Exception {
+        byte[] data = ndjson(10).getBytes(StandardCharsets.UTF_8);
+        List<String> expected;
+        try (RangeLineReader reader = open(data, 0, -1)) {
+            expected = readAll(reader);
+        }
+
+        try (RangeLineReader reader = open(data, 0, -1)) {
+            for (int i = 0; i < 4; i++) {
+                reader.readLine();
+            }
+            long checkpoint = reader.getPosition();
+
+            // Resuming at a checkpointed line start must not lose the line
+            try (RangeLineReader resumed = open(data, checkpoint, -1)) {
+                assertEquals(resumed.getPosition(), checkpoint);
+                assertEquals(readAll(resumed), expected.subList(4, expected.size()));
+            }
+        }
+    }
+
+    @Test
+    public void testLastLineWithoutNewline() throws Exception {
+        byte[] data = "a\nb\nc".getBytes(StandardCharsets.UTF_8);
+        try (RangeLineReader reader = open(data, 0, -1)) {
+            assertEquals(readAll(reader), java.util.Arrays.asList("a", "b", "c"));
+            assertEquals(reader.getPosition(), data.length);
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testBatchReader() throws Exception {
+        String text = ndjson(45) + "not json\n" + ndjson(1);
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+
+        List<Resource> resources = new ArrayList<>();
+        int parseFailures = 0;
+        long lastPosition = 0;
+        try (ResourceBatchReader reader = new ResourceBatchReader(open(data, 0, -1), 20, "test.ndjson", 0)) {
+            ResourceBatchReader.Batch batch;
+            do {
+                batch = reader.next();
+                assertTrue(batch.getResources().size() <= 20);
+                assertTrue(batch.getEndPosition() >= lastPosition);
+                lastPosition = batch.getEndPosition();
+                resources.addAll(batch.getResources());
+                parseFailures += batch.getParseFailures();
+            } while (!batch.getResources().isEmpty());
+            assertTrue(batch.isLast());
+        }
+
+        assertEquals(resources.size(), 46);
+        assertEquals(parseFailures, 1);
+        assertEquals(lastPosition, data.length);
+        // The resources are handed out in the order of their lines
+        for (int i = 0; i < 45; i++) {
+            assertEquals(resources.get(i).getId(), "p" + i);
+        }
+        assertEquals(resources.get(45).getId(), "p0");
+    }
+
+    @Test
+    public void testBatchReaderResume() throws Exception {
+        byte[] data = ndjson(30).getBytes(StandardCharsets.UTF_8);
+
+        long checkpoint;
+        try (ResourceBatchReader reader = new ResourceBatchReader(open(data, 0, -1), 20, "test.ndjson", 0)) {
+            ResourceBatchReader.Batch batch = reader.next();
+            assertEquals(batch.getResources().size(), 20);
+            assertFalse(batch.isLast());
+            checkpoint = batch.getEndPosition();
+        }
+
+        // A restarted partition seeks straight to the checkpointed offset
+        try (ResourceBatchReader reader = new ResourceBatchReader(open(data, checkpoint, -1), 20, "test.ndjson", 20)) {
+            ResourceBatchReader.Batch batch = reader.next();
+            assertEquals(batch.getResources().size(), 10);
+            assertEquals(batch.getResources().get(0).getId(), "p20");
+            assertTrue(batch.isLast());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.common.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bulkdata.common.SegmentedBuffer;
+
+public class SegmentedBufferTest {
+
+    private static byte[] data(int size) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) (i * 31);
+        }
+        return result;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1000];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testWriteAcrossSegments() throws Exception {
+        byte[] expected = data(SegmentedBuffer.SEGMENT_SIZE * 3 + 17);
+        SegmentedBuffer buffer = new SegmentedBuffer();
+        buffer.write(expected[0]);
+        buffer.write(expected, 1, expected.length - 1);
+        assertEquals(buffer.size(), expected.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        assertEquals(out.toByteArray(), expected);
+        buffer.reset();
+        assertEquals(buffer.size(), 0);
+    }
+
+    @Test
+    public void testDetach() throws Exception {
+        byte[] expected = data(SegmentedBuffer.SEGMENT_SIZE + 5);
+        SegmentedBuffer buffer = new SegmentedBuffer();
+        buffer.write(expected);
+
+        try (SegmentedBuffer.Part part = buffer.detach()) {
+            assertEquals(buffer.size(), 0);
+            assertEquals(part.size(), expected.length);
+
+            // The buffer can be reused while the part is still held
+            buffer.write(new byte[] { 1, 2, 3 });
+            assertEquals(buffer.size(), 3);
+
+            assertEquals(readAll(part.newInputStream()), expected);
+            // Each stream reads the part from the start
+            assertEquals(readAll(part.newInputStream()), expected);
+        }
+        buffer.reset();
+    }
+
+    @Test
+    public void testMarkReset() throws Exception {
+        byte[] expected = data(SegmentedBuffer.SEGMENT_SIZE * 2);
+        SegmentedBuffer buffer = new SegmentedBuffer();
+        buffer.write(expected);
+
+        try (SegmentedBuffer.Part part = buffer.detach(); InputStream in = part.newInputStream()) {
+            assertTrue(in.markSupported());
+            assertEquals(in.skip(10), 10);
+            in.mark(0);
+            byte[] first = readAll(in);
+            assertEquals(first.length, expected.length - 10);
+            assertEquals(in.available(), 0);
+
+            // A retried request reads the same bytes again
+            in.reset();
+            assertEquals(readAll(in), first);
+        }
+    }
+
+    @Test
+    public void testSegmentsReturnedToPool() throws Exception {
+        SegmentedBuffer buffer = new SegmentedBuffer();
+        buffer.write(data(SegmentedBuffer.SEGMENT_SIZE * 4));
+        SegmentedBuffer.Part part = buffer.detach();
+
+        int pooled = SegmentedBuffer.getPooledSegmentCount();
+        part.close();
+        assertEquals(SegmentedBuffer.getPooledSegmentCount(), pooled + 4);
+        // Closing twice must not release the segments twice
+        part.close();
+        assertEquals(SegmentedBuffer.getPooledSegmentCount(), pooled + 4);
+
+        // The next buffer reuses the pooled segments
+        buffer.write(data(SegmentedBuffer.SEGMENT_SIZE * 2));
+        assertEquals(SegmentedBuffer.getPooledSegmentCount(), pooled + 2);
+        buffer.reset();
+        assertEquals(SegmentedBuffer.getPooledSegmentCount(), pooled + 4);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkdata.export.fast;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bulkdata.jbatch.export.fast.data.PartitionSummary;
+import com.ibm.fhir.bulkdata.jbatch.export.fast.data.TransientUserData;
+
+/**
+ * Unit tests for the partition summaries which name the files of the fast export
+ */
+public class PartitionSummaryTest {
+
+    @Test
+    public void testResourceTypeSummary() {
+        TransientUserData tud = new TransientUserData();
+        tud.setResourceType("Patient");
+        tud.setResourceCounts(Arrays.asList(1000, 200));
+        assertEquals(PartitionSummary.from(tud).getResourceTypeSummary(), "Patient[1000,200]");
+    }
+
+    @Test
+    public void testRangeSummary() {
+        // Each range of a split resource type numbers its files on its own, e.g. Observation_2_1.ndjson
+        TransientUserData tud = new TransientUserData();
+        tud.setResourceType("Observation");
+        tud.setRange(2);
+        tud.setResourceCounts(Arrays.asList(1000, 300));
+        PartitionSummary summary = PartitionSummary.from(tud);
+        assertEquals(summary.getResourceType(), "Observation");
+        assertEquals(summary.getResourceTypeSummary(), "Observation_2[1000,300]");
+    }
+}
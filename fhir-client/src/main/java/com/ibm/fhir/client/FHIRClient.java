@@ -7,6 +7,7 @@
 package com.ibm.fhir.client;
 
 import java.security.KeyStore;
+import java.util.concurrent.CompletionStage;
 
 import javax.json.JsonObject;
 import javax.ws.rs.client.WebTarget;
@@ -126,6 +127,25 @@ public interface FHIRClient {
      */
     public static final String PROPNAME_TENANT_ID = "fhirclient.tenant.id";
 
+    /**
+     * The maximum number of requests issued through the async methods which may be in flight at the same time.
+     * Callers of the async methods block once this limit is reached until an earlier request completes, which
+     * bounds the memory and connections used by high-volume loaders. Defaults to 32.
+     */
+    public static final String PROPNAME_ASYNC_MAX_IN_FLIGHT = "fhirclient.async.maxInFlight";
+
+    /**
+     * The maximum number of pooled (keep-alive) connections used by the async methods.
+     * Defaults to the value of fhirclient.async.maxInFlight.
+     */
+    public static final String PROPNAME_ASYNC_MAX_CONNECTIONS = "fhirclient.async.maxConnections";
+
+    /**
+     * The amount of time, in milliseconds, that an idle pooled connection used by the async methods is kept open.
+     * Defaults to 60,000ms (60s)
+     */
+    public static final String PROPNAME_ASYNC_CONNECTION_MAX_IDLE = "fhirclient.async.connection.maxIdle";
+
     /**
      * Returns a JAX-RS 2.0 WebTarget object associated with the REST API endpoint.
      * @return a WebTarget instance that can be used to invoke REST APIs.
@@ -483,8 +503,79 @@ public interface FHIRClient {
      */
     FHIRResponse invoke(String resourceType, String operationName, String resourceId, String versionId, Resource resource, FHIRRequestHeader... headers) throws Exception;
 
+    /**
+     * Invokes the 'create' FHIR REST API operation asynchronously. The request is sent over a pooled connection
+     * and the returned CompletionStage completes when the response has been received. If the maximum number of
+     * async requests are already in flight, this method blocks until one of them completes.
+     * @param resource the FHIR resource to be created
+     * @param headers an optional list of request headers to be added to the request
+     * @return a CompletionStage for the FHIRResponse that contains the results of the 'create' operation
+     * @throws Exception
+     */
+    CompletionStage<FHIRResponse> createAsync(Resource resource, FHIRRequestHeader... headers) throws Exception;
+
+    /**
+     * Invokes the 'update' FHIR REST API operation asynchronously.
+     * @param resource the resource to be updated
+     * @param headers an optional list of request headers to be added to the request
+     * @return a CompletionStage for the FHIRResponse that contains the results of the 'update' operation
+     * @throws Exception
+     * @see #createAsync(Resource, FHIRRequestHeader...)
+     */
+    CompletionStage<FHIRResponse> updateAsync(Resource resource, FHIRRequestHeader... headers) throws Exception;
+
+    /**
+     * Invokes the 'read' FHIR REST API operation asynchronously.
+     * @param resourceType a string representing the name of the resource type
+     *                     to be retrieved (e.g. "Patient").
+     * @param resourceId the id of the resource to be retrieved.
+     * @param headers an optional list of request headers to be added to the request
+     * @return a CompletionStage for the FHIRResponse that contains the results of the 'read' operation
+     * @throws Exception
+     * @see #createAsync(Resource, FHIRRequestHeader...)
+     */
+    CompletionStage<FHIRResponse> readAsync(String resourceType, String resourceId, FHIRRequestHeader... headers) throws Exception;
+
+    /**
+     * Invokes the 'search' FHIR REST API operation asynchronously.
+     * @param resourceType a string representing the name of the resource type to search for (e.g. "Patient")
+     * @param parameters an optional collection of request parameters for the 'search' operation;
+     * may be specified as null if no parameters need to be passed to the 'search' operation;
+     * @param headers an optional list of request headers to be added to the request
+     * @return a CompletionStage for the FHIRResponse that contains the results of the 'search' operation
+     * @throws Exception
+     * @see #createAsync(Resource, FHIRRequestHeader...)
+     */
+    CompletionStage<FHIRResponse> searchAsync(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers) throws Exception;
+
+    /**
+     * Invokes the 'batch/transaction' FHIR REST API operation asynchronously for a request bundle of type 'batch'.
+     * @param bundle the Bundle containing the individual requests
+     * @param headers an optional list of request headers to be added to the request
+     * @return a CompletionStage for the FHIRResponse that contains the results of the 'batch/transaction' operation
+     * @throws Exception
+     * @see #createAsync(Resource, FHIRRequestHeader...)
+     */
+    CompletionStage<FHIRResponse> batchAsync(Bundle bundle, FHIRRequestHeader... headers) throws Exception;
+
+    /**
+     * Invokes the 'batch/transaction' FHIR REST API operation asynchronously for a request bundle of type 'transaction'.
+     * @param bundle the Bundle containing the individual requests
+     * @param headers an optional list of request headers to be added to the request
+     * @return a CompletionStage for the FHIRResponse that contains the results of the 'batch/transaction' operation
+     * @throws Exception
+     * @see #createAsync(Resource, FHIRRequestHeader...)
+     */
+    CompletionStage<FHIRResponse> transactionAsync(Bundle bundle, FHIRRequestHeader... headers) throws Exception;
+
     /**
      * Allow the client consumer to be able to get and reuse the same TrustStore if necessary.
      */
     public KeyStore getTrustStore();
+
+    /**
+     * Releases the resources held by the client, including the connection pool and CXF bus used
+     * by the async methods. The async methods must not be used after the client is closed.
+     */
+    void close();
 }
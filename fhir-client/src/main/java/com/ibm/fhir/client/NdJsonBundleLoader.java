@@ -0,0 +1,192 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.client;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Phaser;
+import java.util.function.BiConsumer;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.model.type.code.HTTPVerb;
+
+/**
+ * Loads resources from an NDJSON stream (one resource per line) by packing them into
+ * batch or transaction bundles which are submitted using the async methods of {@link FHIRClient}.
+ * Bundles are submitted as soon as they are filled, so several bundles are in flight at once
+ * while the remainder of the stream is being parsed. The number of concurrent requests is
+ * bounded by the client (see {@link FHIRClient#PROPNAME_ASYNC_MAX_IN_FLIGHT}).
+ *
+ * <p>Resources with an id are added as PUT (Type/id) entries, otherwise
+ * as POST (Type) entries.
+ */
+public class NdJsonBundleLoader {
+    private final FHIRClient client;
+    private final int bundleSize;
+    private final BundleType bundleType;
+
+    /**
+     * Public constructor
+     *
+     * @param client
+     *            the client used to submit the bundles
+     * @param bundleSize
+     *            the maximum number of entries in each bundle
+     * @param bundleType
+     *            BATCH or TRANSACTION
+     */
+    public NdJsonBundleLoader(FHIRClient client, int bundleSize, BundleType bundleType) {
+        if (client == null) {
+            throw new IllegalArgumentException("The 'client' argument is required but was null.");
+        }
+        if (bundleSize < 1) {
+            throw new IllegalArgumentException("The 'bundleSize' argument must be at least 1.");
+        }
+        if (bundleType != BundleType.BATCH && bundleType != BundleType.TRANSACTION) {
+            throw new IllegalArgumentException("The 'bundleType' argument must be BATCH or TRANSACTION.");
+        }
+        this.client = client;
+        this.bundleSize = bundleSize;
+        this.bundleType = bundleType;
+    }
+
+    /**
+     * Read the NDJSON stream and submit its resources as bundles. Blank lines are ignored.
+     * Returns only after the responses for all the submitted bundles have been received.
+     *
+     * @param reader
+     *            the NDJSON stream
+     * @param callback
+     *            called with the response (or failure) of each submitted bundle. May be
+     *            called concurrently from the async client threads
+     * @return the number of resources submitted
+     * @throws FHIRParserException
+     *             if a line cannot be parsed. Bundles already submitted are allowed to complete first
+     * @throws Exception
+     */
+    public long load(Reader reader, BiConsumer<FHIRResponse, Throwable> callback) throws Exception {
+        final Phaser outstanding = new Phaser(1);
+        final BufferedReader br = new BufferedReader(reader);
+        final List<Bundle.Entry> entries = new ArrayList<>(bundleSize);
+        long lineNumber = 0;
+        long count = 0;
+
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                entries.add(toEntry(parse(line, lineNumber)));
+                count++;
+                if (entries.size() == bundleSize) {
+                    submit(entries, outstanding, callback);
+                    entries.clear();
+                }
+            }
+
+            if (entries.size() > 0) {
+                submit(entries, outstanding, callback);
+            }
+        } finally {
+            // wait for everything we've submitted so far to complete
+            outstanding.arriveAndAwaitAdvance();
+        }
+
+        return count;
+    }
+
+    /**
+     * Parse a single line of the NDJSON stream
+     */
+    private Resource parse(String line, long lineNumber) throws FHIRParserException {
+        try {
+            return FHIRParser.parser(Format.JSON).parse(new StringReader(line));
+        } catch (FHIRParserException x) {
+            throw new FHIRParserException("Failed to parse resource at line " + lineNumber + ": " + x.getMessage(), x.getPath(), x);
+        }
+    }
+
+    /**
+     * Create the bundle entry for the given resource
+     */
+    private Bundle.Entry toEntry(Resource resource) {
+        final String resourceType = resource.getClass().getSimpleName();
+        final Bundle.Entry.Request request;
+        if (resource.getId() != null) {
+            request = Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.PUT)
+                    .url(Uri.of(resourceType + "/" + resource.getId()))
+                    .build();
+        } else {
+            request = Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.POST)
+                    .url(Uri.of(resourceType))
+                    .build();
+        }
+
+        return Bundle.Entry.builder()
+                .resource(resource)
+                .request(request)
+                .build();
+    }
+
+    /**
+     * Build a bundle from the given entries and submit it asynchronously
+     */
+    private void submit(List<Bundle.Entry> entries, Phaser outstanding, BiConsumer<FHIRResponse, Throwable> callback) throws Exception {
+        Bundle bundle = Bundle.builder()
+                .type(bundleType)
+                .entry(entries)
+                .build();
+
+        outstanding.register();
+        final CompletionStage<FHIRResponse> stage;
+        try {
+            if (bundleType == BundleType.TRANSACTION) {
+                stage = client.transactionAsync(bundle);
+            } else {
+                stage = client.batchAsync(bundle);
+            }
+        } catch (Exception x) {
+            outstanding.arriveAndDeregister();
+            throw x;
+        }
+
+        stage.whenComplete((response, t) -> {
+            try {
+                callback.accept(response, t);
+            } finally {
+                outstanding.arriveAndDeregister();
+            }
+        });
+    }
+
+    /**
+     * Convenience method to load NDJSON from an input stream using the UTF-8 charset
+     */
+    public long load(InputStream in, BiConsumer<FHIRResponse, Throwable> callback) throws Exception {
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return load(reader, callback);
+        }
+    }
+}
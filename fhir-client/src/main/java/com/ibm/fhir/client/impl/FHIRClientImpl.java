@@ -19,6 +19,9 @@ import java.security.cert.CertificateException;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
 
 import javax.json.JsonObject;
 import javax.net.ssl.HostnameVerifier;
@@ -34,7 +37,10 @@ import javax.ws.rs.core.Form;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
 import org.apache.cxf.feature.LoggingFeature;
+import org.apache.cxf.transport.http.asyncclient.AsyncHTTPConduitFactory;
 
 import com.ibm.fhir.client.FHIRClient;
 import com.ibm.fhir.client.FHIRParameters;
@@ -60,6 +66,10 @@ public class FHIRClientImpl implements FHIRClient {
 
     private static final String KEYSTORE_TYPE = "pkcs12";
 
+    // Defaults for the async properties, also used when the client is created without properties
+    private static final int DEFAULT_ASYNC_MAX_IN_FLIGHT = 32;
+    private static final int DEFAULT_ASYNC_CONNECTION_MAX_IDLE = 60000;
+
     private Client client = null;
     private Properties clientProperties = null;
     private String baseEndpointURL = null;
@@ -93,6 +103,20 @@ public class FHIRClientImpl implements FHIRClient {
     // The tenantId to pass with the X-FHIR-TENANT-ID header
     private String tenantId;
 
+    // The jax-rs Client used by the async methods, configured to use the pooled async http conduit
+    private Client asyncClient = null;
+
+    // The CXF bus owned by the async client. The async conduit pool belongs to the bus,
+    // so a private bus keeps our pool settings from affecting other CXF clients in the JVM
+    private Bus asyncBus = null;
+
+    // Limits the number of async requests in flight at any one time
+    private Semaphore asyncInFlight = new Semaphore(DEFAULT_ASYNC_MAX_IN_FLIGHT);
+
+    private int asyncMaxInFlight = DEFAULT_ASYNC_MAX_IN_FLIGHT;
+    private int asyncMaxConnections = DEFAULT_ASYNC_MAX_IN_FLIGHT;
+    private int asyncConnectionMaxIdle = DEFAULT_ASYNC_CONNECTION_MAX_IDLE;
+
     protected FHIRClientImpl() {
     }
 
@@ -679,6 +703,128 @@ public class FHIRClientImpl implements FHIRClient {
         return new FHIRResponseImpl(response);
     }
 
+    @Override
+    public CompletionStage<FHIRResponse> createAsync(Resource resource, FHIRRequestHeader... headers) throws Exception {
+        if (resource == null) {
+            throw new IllegalArgumentException("The 'resource' argument is required but was null.");
+        }
+        String resourceType = resource.getClass().getSimpleName();
+        WebTarget endpoint = getAsyncWebTarget();
+        Entity<Resource> entity = Entity.entity(resource, getDefaultMimeType());
+        Invocation.Builder builder = asyncRequest(endpoint.path(resourceType));
+        headers = addHttpPreferHeader(headers, getHttpReturnPref());
+        builder = addRequestHeaders(builder, headers);
+        return submitAsync(builder, "POST", entity);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> updateAsync(Resource resource, FHIRRequestHeader... headers) throws Exception {
+        if (resource == null) {
+            throw new IllegalArgumentException("The 'resource' argument is required but was null.");
+        }
+        String resourceType = resource.getClass().getSimpleName();
+        String resourceId = resource.getId();
+        if (resourceId == null || resourceId.isEmpty()) {
+            throw new IllegalArgumentException("Unable to retrieve the resource id from the resource.");
+        }
+        WebTarget endpoint = getAsyncWebTarget();
+        Entity<Resource> entity = Entity.entity(resource, getDefaultMimeType());
+        Invocation.Builder builder = asyncRequest(endpoint.path(resourceType).path(resourceId));
+        builder = addRequestHeaders(builder, headers);
+        return submitAsync(builder, "PUT", entity);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> readAsync(String resourceType, String resourceId, FHIRRequestHeader... headers) throws Exception {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        if (resourceId == null) {
+            throw new IllegalArgumentException("The 'resourceId' argument is required but was null.");
+        }
+        WebTarget endpoint = getAsyncWebTarget();
+        Invocation.Builder builder = asyncRequest(endpoint.path(resourceType).path(resourceId));
+        builder = addRequestHeaders(builder, headers);
+        return submitAsync(builder, "GET", null);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> searchAsync(String resourceType, FHIRParameters parameters, FHIRRequestHeader... headers) throws Exception {
+        if (resourceType == null) {
+            throw new IllegalArgumentException("The 'resourceType' argument is required but was null.");
+        }
+        WebTarget endpoint = getAsyncWebTarget();
+        endpoint = endpoint.path(resourceType);
+        endpoint = addParametersToWebTarget(endpoint, parameters);
+        Invocation.Builder builder = asyncRequest(endpoint);
+        builder = addRequestHeaders(builder, headers);
+        return submitAsync(builder, "GET", null);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> batchAsync(Bundle bundle, FHIRRequestHeader... headers) throws Exception {
+        if (bundle == null) {
+            throw new IllegalArgumentException("The 'bundle' argument is required but was null.");
+        }
+        return _bundleAsync(bundle, BundleType.BATCH, headers);
+    }
+
+    @Override
+    public CompletionStage<FHIRResponse> transactionAsync(Bundle bundle, FHIRRequestHeader... headers) throws Exception {
+        if (bundle == null) {
+            throw new IllegalArgumentException("The 'bundle' argument is required but was null.");
+        }
+        return _bundleAsync(bundle, BundleType.TRANSACTION, headers);
+    }
+
+    private CompletionStage<FHIRResponse> _bundleAsync(Bundle bundle, BundleType bundleType, FHIRRequestHeader... headers) throws Exception {
+        Bundle bundleNew = bundle.toBuilder().type(bundleType).build();
+
+        WebTarget endpoint = getAsyncWebTarget();
+        Entity<Bundle> entity = Entity.entity(bundleNew, getDefaultMimeType());
+        Invocation.Builder builder = asyncRequest(endpoint);
+        builder = addRequestHeaders(builder, headers);
+        return submitAsync(builder, "POST", entity);
+    }
+
+    /**
+     * Submit the request using the async http conduit. Blocks while the maximum number of
+     * async requests are already in flight, which provides backpressure to the caller.
+     *
+     * @param builder
+     *            the Invocation.Builder for the request
+     * @param method
+     *            the http method name
+     * @param entity
+     *            the request entity, or null if the request has no body
+     */
+    private CompletionStage<FHIRResponse> submitAsync(Invocation.Builder builder, String method, Entity<?> entity) throws Exception {
+        asyncInFlight.acquire();
+
+        CompletionStage<Response> stage;
+        try {
+            if (entity != null) {
+                stage = builder.rx().method(method, entity, Response.class);
+            } else {
+                stage = builder.rx().method(method, Response.class);
+            }
+        } catch (RuntimeException x) {
+            asyncInFlight.release();
+            throw x;
+        }
+
+        CompletableFuture<FHIRResponse> result = new CompletableFuture<>();
+        stage.whenComplete((response, t) -> {
+            asyncInFlight.release();
+            if (t != null) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete(new FHIRResponseImpl(response));
+            }
+        });
+        return result;
+    }
+
     /**
      * This function adds each of the parameters contained in the FHIRParameters object to the specified WebTarget as a
      * query parameter.
@@ -751,45 +897,7 @@ public class FHIRClientImpl implements FHIRClient {
      */
     protected synchronized Client getClient() throws Exception {
         if (client == null) {
-            ClientBuilder cb = ClientBuilder.newBuilder()
-                    .register(new FHIRProvider(RuntimeType.CLIENT))
-                    .register(new FHIRJsonProvider(RuntimeType.CLIENT))
-                    .register(new FHIRJsonPatchProvider(RuntimeType.CLIENT));
-
-            // Add support for basic auth if enabled.
-            if (isBasicAuthEnabled()) {
-                cb = cb.register(new FHIRBasicAuthenticator(getBasicAuthUsername(), getBasicAuthPassword()));
-            }
-
-            // Add support for OAuth 2.0 if enabled.
-            if (isOAuth2Enabled()) {
-                cb = cb.register(new FHIROAuth2Authenticator(getOAuth2AccessToken()));
-            }
-
-            // If using oAuth 2.0 or clientauth, then we need to attach our Keystore.
-            if (isOAuth2Enabled() || isClientAuthEnabled()) {
-                cb = cb.keyStore(getKeyStore(), getKeyStoreKeyPassword());
-            }
-
-            // If using oAuth 2.0 or clientauth or an https endpoint, then we need to attach our Truststore.
-            KeyStore ks = getTrustStore();
-            if (ks != null) {
-                cb = cb.trustStore(ks);
-            }
-
-            // Add a hostname verifier if we're using an ssl transport.
-            if (usingSSLTransport() && !isHostnameVerificationEnabled()) {
-                cb = cb.hostnameVerifier(new HostnameVerifier() {
-
-                    @Override
-                    public boolean verify(String s, SSLSession sslSession) {
-                        return true;
-                    }
-                });
-            }
-
-            // Set the http client's receive timeout setting
-            cb.property("http.receive.timeout", getHttpTimeout()); // defaults to 60s
+            ClientBuilder cb = newClientBuilder();
 
             // true: If need, tell Apache CXF to use the Async HTTP conduit for PATCH operation as the
             // default HTTP conduit does not support PATCH
@@ -798,22 +906,136 @@ public class FHIRClientImpl implements FHIRClient {
             // please set this to false.
             cb.property("use.async.http.conduit", false);
 
-            // Add request/response logging if enabled.
-            if (isLoggingEnabled()) {
-                cb.register(LoggingFeature.class);
-            }
-
             // Save off our cached Client instance.
             client = cb.build();
         }
         return client;
     }
 
+    /**
+     * Retrieves the jax-rs Client used by the async methods. The Client instance is created if necessary.
+     * This client always uses the Async HTTP conduit, which sends requests without tying up a thread per
+     * request and reuses keep-alive connections from a pool shared by all the async requests.
+     */
+    protected synchronized Client getAsyncClient() throws Exception {
+        if (asyncClient == null) {
+            // Make sure the JVM default bus exists first, so that our private bus never becomes the default
+            BusFactory.getDefaultBus();
+            Bus original = BusFactory.getThreadDefaultBus(false);
+            Bus bus = BusFactory.newInstance().createBus();
+            BusFactory.setThreadDefaultBus(original);
+
+            // The async conduit pool is configured from the properties of the bus
+            bus.setProperty(AsyncHTTPConduitFactory.MAX_CONNECTIONS, getAsyncMaxConnections());
+            bus.setProperty(AsyncHTTPConduitFactory.MAX_PER_HOST_CONNECTIONS, getAsyncMaxConnections());
+            bus.setProperty(AsyncHTTPConduitFactory.CONNECTION_MAX_IDLE, getAsyncConnectionMaxIdle());
+            bus.setProperty(AsyncHTTPConduitFactory.SO_KEEPALIVE, true);
+            asyncBus = bus;
+
+            ClientBuilder cb = newClientBuilder();
+            cb.property("use.async.http.conduit", true);
+            asyncClient = cb.build();
+        }
+        return asyncClient;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (asyncClient != null) {
+            asyncClient.close();
+            asyncClient = null;
+        }
+        if (asyncBus != null) {
+            // releases the async conduit pool and its I/O threads
+            asyncBus.shutdown(true);
+            asyncBus = null;
+        }
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    /**
+     * Create the request builder for an async request. CXF binds each request to the thread's default
+     * bus when the builder is created, so our private bus is made the default only for this call.
+     */
+    private Invocation.Builder asyncRequest(WebTarget target) throws Exception {
+        getAsyncClient();
+        Bus original = BusFactory.getThreadDefaultBus(false);
+        BusFactory.setThreadDefaultBus(asyncBus);
+        try {
+            return target.request(getDefaultMimeType());
+        } finally {
+            BusFactory.setThreadDefaultBus(original);
+        }
+    }
+
+    /**
+     * Create a new ClientBuilder configured with the providers, security and timeout
+     * settings common to both the sync and async clients
+     */
+    private ClientBuilder newClientBuilder() throws Exception {
+        ClientBuilder cb = ClientBuilder.newBuilder()
+                .register(new FHIRProvider(RuntimeType.CLIENT))
+                .register(new FHIRJsonProvider(RuntimeType.CLIENT))
+                .register(new FHIRJsonPatchProvider(RuntimeType.CLIENT));
+
+        // Add support for basic auth if enabled.
+        if (isBasicAuthEnabled()) {
+            cb = cb.register(new FHIRBasicAuthenticator(getBasicAuthUsername(), getBasicAuthPassword()));
+        }
+
+        // Add support for OAuth 2.0 if enabled.
+        if (isOAuth2Enabled()) {
+            cb = cb.register(new FHIROAuth2Authenticator(getOAuth2AccessToken()));
+        }
+
+        // If using oAuth 2.0 or clientauth, then we need to attach our Keystore.
+        if (isOAuth2Enabled() || isClientAuthEnabled()) {
+            cb = cb.keyStore(getKeyStore(), getKeyStoreKeyPassword());
+        }
+
+        // If using oAuth 2.0 or clientauth or an https endpoint, then we need to attach our Truststore.
+        KeyStore ks = getTrustStore();
+        if (ks != null) {
+            cb = cb.trustStore(ks);
+        }
+
+        // Add a hostname verifier if we're using an ssl transport.
+        if (usingSSLTransport() && !isHostnameVerificationEnabled()) {
+            cb = cb.hostnameVerifier(new HostnameVerifier() {
+
+                @Override
+                public boolean verify(String s, SSLSession sslSession) {
+                    return true;
+                }
+            });
+        }
+
+        // Set the http client's receive timeout setting
+        cb.property("http.receive.timeout", getHttpTimeout()); // defaults to 60s
+
+        // Add request/response logging if enabled.
+        if (isLoggingEnabled()) {
+            cb.register(LoggingFeature.class);
+        }
+
+        return cb;
+    }
+
     @Override
     public WebTarget getWebTarget() throws Exception {
         return getClient().target(getBaseEndpointURL());
     }
 
+    /**
+     * Returns a WebTarget for the REST API endpoint using the async client
+     */
+    private WebTarget getAsyncWebTarget() throws Exception {
+        return getAsyncClient().target(getBaseEndpointURL());
+    }
+
     @Override
     public WebTarget getWebTarget(String baseURL) throws Exception {
         ClientBuilder cb =
@@ -897,6 +1119,11 @@ public class FHIRClientImpl implements FHIRClient {
             setHttpTimeout(Integer.parseUnsignedInt(getProperty(PROPNAME_HTTP_TIMEOUT, "60000")));
 
             setTenantId(getProperty(PROPNAME_TENANT_ID, null));
+
+            setAsyncMaxInFlight(Integer.parseUnsignedInt(getProperty(PROPNAME_ASYNC_MAX_IN_FLIGHT, Integer.toString(DEFAULT_ASYNC_MAX_IN_FLIGHT))));
+            setAsyncMaxConnections(Integer.parseUnsignedInt(getProperty(PROPNAME_ASYNC_MAX_CONNECTIONS, Integer.toString(getAsyncMaxInFlight()))));
+            setAsyncConnectionMaxIdle(Integer.parseUnsignedInt(getProperty(PROPNAME_ASYNC_CONNECTION_MAX_IDLE, Integer.toString(DEFAULT_ASYNC_CONNECTION_MAX_IDLE))));
+            asyncInFlight = new Semaphore(getAsyncMaxInFlight());
         } catch (Throwable t) {
             throw new Exception("Unexpected error while processing client properties.", t);
         }
@@ -1126,6 +1353,33 @@ public class FHIRClientImpl implements FHIRClient {
         this.httpTimeout = httpTimeout;
     }
 
+    public int getAsyncMaxInFlight() {
+        return asyncMaxInFlight;
+    }
+
+    private void setAsyncMaxInFlight(int asyncMaxInFlight) {
+        if (asyncMaxInFlight < 1) {
+            throw new IllegalArgumentException("Property '" + PROPNAME_ASYNC_MAX_IN_FLIGHT + "' must be at least 1");
+        }
+        this.asyncMaxInFlight = asyncMaxInFlight;
+    }
+
+    public int getAsyncMaxConnections() {
+        return asyncMaxConnections;
+    }
+
+    private void setAsyncMaxConnections(int asyncMaxConnections) {
+        this.asyncMaxConnections = asyncMaxConnections;
+    }
+
+    public int getAsyncConnectionMaxIdle() {
+        return asyncConnectionMaxIdle;
+    }
+
+    private void setAsyncConnectionMaxIdle(int asyncConnectionMaxIdle) {
+        this.asyncConnectionMaxIdle = asyncConnectionMaxIdle;
+    }
+
     public HTTPReturnPreference getHttpReturnPref() {
         return httpReturnPref;
     }
@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.client.test.testng;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.client.FHIRClient;
+import com.ibm.fhir.client.FHIRResponse;
+import com.ibm.fhir.client.NdJsonBundleLoader;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.model.type.code.HTTPVerb;
+
+/**
+ * Tests for the NdJsonBundleLoader using a stub FHIRClient which captures the submitted bundles.
+ */
+public class NdJsonBundleLoaderTest {
+    private static final String NDJSON =
+            "{\"resourceType\":\"Patient\",\"id\":\"p1\"}\n"
+            + "{\"resourceType\":\"Patient\"}\n"
+            + "\n"
+            + "{\"resourceType\":\"Observation\",\"id\":\"o1\",\"status\":\"final\",\"code\":{\"text\":\"x\"}}\n";
+
+    /**
+     * Create a FHIRClient stub which records the bundles passed to batchAsync and transactionAsync
+     * and completes them on a separate thread
+     */
+    private FHIRClient stubClient(List<Bundle> bundles, String expectedMethod) {
+        return (FHIRClient) Proxy.newProxyInstance(FHIRClient.class.getClassLoader(), new Class<?>[] { FHIRClient.class },
+            (proxy, method, args) -> {
+                if (method.getName().equals(expectedMethod)) {
+                    bundles.add((Bundle) args[0]);
+                    return CompletableFuture.supplyAsync(() -> (FHIRResponse) null);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        List<Bundle> bundles = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger responses = new AtomicInteger();
+        NdJsonBundleLoader loader = new NdJsonBundleLoader(stubClient(bundles, "batchAsync"), 2, BundleType.BATCH);
+        long count = loader.load(new StringReader(NDJSON), (response, t) -> {
+            assertNull(t);
+            responses.incrementAndGet();
+        });
+
+        assertEquals(3, count);
+        assertEquals(2, responses.get());
+        assertEquals(2, bundles.size());
+
+        Bundle first = bundles.get(0);
+        assertEquals(BundleType.BATCH, first.getType());
+        assertEquals(2, first.getEntry().size());
+        assertEquals(HTTPVerb.PUT, first.getEntry().get(0).getRequest().getMethod());
+        assertEquals("Patient/p1", first.getEntry().get(0).getRequest().getUrl().getValue());
+        assertEquals(HTTPVerb.POST, first.getEntry().get(1).getRequest().getMethod());
+        assertEquals("Patient", first.getEntry().get(1).getRequest().getUrl().getValue());
+
+        Bundle second = bundles.get(1);
+        assertEquals(1, second.getEntry().size());
+        assertEquals("Observation/o1", second.getEntry().get(0).getRequest().getUrl().getValue());
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        List<Bundle> bundles = Collections.synchronizedList(new ArrayList<>());
+        NdJsonBundleLoader loader = new NdJsonBundleLoader(stubClient(bundles, "transactionAsync"), 10, BundleType.TRANSACTION);
+        long count = loader.load(new StringReader(NDJSON), (response, t) -> {});
+
+        assertEquals(3, count);
+        assertEquals(1, bundles.size());
+        assertEquals(BundleType.TRANSACTION, bundles.get(0).getType());
+        assertEquals(3, bundles.get(0).getEntry().size());
+    }
+
+    @Test(expectedExceptions = FHIRParserException.class)
+    public void testParseError() throws Exception {
+        List<Bundle> bundles = Collections.synchronizedList(new ArrayList<>());
+        NdJsonBundleLoader loader = new NdJsonBundleLoader(stubClient(bundles, "batchAsync"), 1, BundleType.BATCH);
+        loader.load(new StringReader("{\"resourceType\":\"Patient\"}\n{not json\n"), (response, t) -> {});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBundleType() throws Exception {
+        new NdJsonBundleLoader(stubClient(new ArrayList<>(), "batchAsync"), 1, BundleType.COLLECTION);
+    }
+}
@@ -37,11 +37,15 @@ public class FHIRConfiguration {
     public static final String PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION = "fhirServer/core/extendedCodeableConceptValidation";
     public static final String PROPERTY_DISABLED_OPERATIONS = "fhirServer/core/disabledOperations";
     public static final String PROPERTY_DEFAULT_PAGE_SIZE = "fhirServer/core/defaultPageSize";
+    public static final String PROPERTY_REGISTRY_SNAPSHOT_PATH = "fhirServer/core/registrySnapshotPath";
 
     // Terminology service properties
     public static final String PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_ENABLED = "fhirServer/term/graphTermServiceProvider/enabled";
     public static final String PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_TIME_LIMIT = "fhirServer/term/graphTermServiceProvider/timeLimit";
     public static final String PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_CONFIGURATION = "fhirServer/term/graphTermServiceProvider/configuration";
+    public static final String PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_CACHE_ENABLED = "fhirServer/term/graphTermServiceProvider/cacheEnabled";
+    public static final String PROPERTY_REGISTRY_TERM_SERVICE_PROVIDER_CONCEPT_STORE_PATH = "fhirServer/term/registryTermServiceProvider/conceptStorePath";
+    public static final String PROPERTY_EXPANSION_CACHE_PATH = "fhirServer/term/expansionCachePath";
 
     // Resources properties
     public static final String PROPERTY_RESOURCES = "fhirServer/resources";
@@ -53,8 +57,20 @@ public class FHIRConfiguration {
     public static final String PROPERTY_FIELD_RESOURCES_SEARCH_PARAMETER_COMBINATIONS = "searchParameterCombinations";
     public static final String PROPERTY_FIELD_RESOURCES_PROFILES = "profiles";
     public static final String PROPERTY_FIELD_RESOURCES_PROFILES_AT_LEAST_ONE = "atLeastOne";
+    public static final String PROPERTY_FIELD_RESOURCES_RETENTION = "retention";
+    public static final String PROPERTY_FIELD_RESOURCES_RETENTION_MAX_VERSIONS = "maxVersions";
+    public static final String PROPERTY_FIELD_RESOURCES_RETENTION_MAX_AGE = "maxAge";
     public static final String PROPERTY_USE_STORED_COMPARTMENT_PARAM = "fhirServer/search/useStoredCompartmentParam";
 
+    // Change feed properties
+    public static final String PROPERTY_CHANGE_FEED_ENABLED = "fhirServer/changeFeed/enabled";
+    public static final String PROPERTY_CHANGE_FEED_MAX_CONSUMERS = "fhirServer/changeFeed/maxConsumers";
+    public static final String PROPERTY_CHANGE_FEED_MAX_STREAM_DURATION_SECS = "fhirServer/changeFeed/maxStreamDurationSecs";
+    public static final String PROPERTY_CHANGE_FEED_POLL_INTERVAL_MS = "fhirServer/changeFeed/pollIntervalMs";
+    public static final String PROPERTY_CHANGE_FEED_SETTLE_TIME_MS = "fhirServer/changeFeed/settleTimeMs";
+    public static final String PROPERTY_CHANGE_FEED_BUFFER_SIZE = "fhirServer/changeFeed/bufferSize";
+    public static final String PROPERTY_CHANGE_FEED_RESCAN_RANGE = "fhirServer/changeFeed/rescanRange";
+
     // Auth and security properties
     public static final String PROPERTY_SECURITY_CORS = "fhirServer/security/cors";
     public static final String PROPERTY_SECURITY_BASIC_ENABLED = "fhirServer/security/basic/enabled";
@@ -103,6 +119,7 @@ public class FHIRConfiguration {
     @Deprecated
     public static final String PROPERTY_JDBC_ENABLE_PROXY_DATASOURCE = "fhirServer/persistence/jdbc/enableProxyDatasource";
     public static final String PROPERTY_JDBC_ENABLE_READ_ONLY_REPLICAS = "fhirServer/persistence/jdbc/enableReadOnlyReplicas";
+    public static final String PROPERTY_JDBC_READ_ONLY_REPLICA_PROBE_INTERVAL_MS = "fhirServer/persistence/jdbc/readOnlyReplicaProbeIntervalMs";
     public static final String PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE = "fhirServer/persistence/jdbc/enableCodeSystemsCache";
     public static final String PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE = "fhirServer/persistence/jdbc/enableParameterNamesCache";
     public static final String PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE = "fhirServer/persistence/jdbc/enableResourceTypesCache";
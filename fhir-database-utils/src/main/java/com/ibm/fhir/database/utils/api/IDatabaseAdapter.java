@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.function.Supplier;
 
 import com.ibm.fhir.database.utils.model.ColumnBase;
+import com.ibm.fhir.database.utils.model.HashPartitionDef;
 import com.ibm.fhir.database.utils.model.IdentityDef;
 import com.ibm.fhir.database.utils.model.OrderedColumnDef;
 import com.ibm.fhir.database.utils.model.PrimaryKeyDef;
@@ -77,6 +78,22 @@ public interface IDatabaseAdapter {
      */
     public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns,
             PrimaryKeyDef primaryKey, IdentityDef identity, String tablespaceName);
+
+    /**
+     * Build the create table DDL for a table which is hash partitioned if supported
+     * by the target, and a regular table otherwise
+     *
+     * @param schemaName
+     * @param name
+     * @param tenantColumnName optional column name to enable multi-tenancy
+     * @param columns
+     * @param primaryKey
+     * @param identity
+     * @param tablespaceName
+     * @param hashPartitionDef optional hash partitioning definition
+     */
+    public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns,
+            PrimaryKeyDef primaryKey, IdentityDef identity, String tablespaceName, HashPartitionDef hashPartitionDef);
     
     /**
      * Add a new column to an existing table
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -30,6 +30,7 @@ import com.ibm.fhir.database.utils.api.TenantStatus;
 import com.ibm.fhir.database.utils.api.UndefinedNameException;
 import com.ibm.fhir.database.utils.api.UniqueConstraintViolationException;
 import com.ibm.fhir.database.utils.model.ColumnBase;
+import com.ibm.fhir.database.utils.model.HashPartitionDef;
 import com.ibm.fhir.database.utils.model.IdentityDef;
 import com.ibm.fhir.database.utils.model.OrderedColumnDef;
 import com.ibm.fhir.database.utils.model.PrimaryKeyDef;
@@ -126,6 +127,13 @@ public abstract class CommonDatabaseAdapter implements IDatabaseAdapter, IDataba
         return result.toString();
     }
 
+    @Override
+    public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns, PrimaryKeyDef primaryKey,
+            IdentityDef identity, String tablespaceName, HashPartitionDef hashPartitionDef) {
+        // Hash partitioning is only supported by some targets, the rest create a regular table
+        createTable(schemaName, name, tenantColumnName, columns, primaryKey, identity, tablespaceName);
+    }
+
     /**
      * Generate a create table statement suitable for Derby
      *
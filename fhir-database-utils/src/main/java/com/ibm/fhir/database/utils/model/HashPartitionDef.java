@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.model;
+
+/**
+ * Hash partitioning configuration for a table. Rows are spread over a fixed
+ * number of partitions by the hash of the partition column. Only supported
+ * by PostgreSQL (11+), other targets create a regular table.
+ */
+public class HashPartitionDef {
+    private final String partitionColumn;
+    private final int partitionCount;
+
+    /**
+     * Public constructor
+     * @param partitionColumn
+     * @param partitionCount
+     */
+    public HashPartitionDef(String partitionColumn, int partitionCount) {
+        if (partitionCount < 2) {
+            throw new IllegalArgumentException("Invalid partition count: " + partitionCount);
+        }
+        this.partitionColumn = partitionColumn;
+        this.partitionCount = partitionCount;
+    }
+
+    public String getPartitionColumn() {
+        return partitionColumn;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * Get the name of the partition with the given remainder
+     * @param tableName
+     * @param remainder
+     * @return
+     */
+    public String getPartitionName(String tableName, int remainder) {
+        return tableName + "_P" + remainder;
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -445,6 +445,28 @@ public class PhysicalDataModel implements IDataModel {
         }
     }
 
+    /**
+     * Find the views in this model which depend on the given table, including
+     * the views which are members of an {@link ObjectGroup}
+     * @param table
+     * @return the views, in the order they were added to the model
+     */
+    public List<View> findDependentViews(Table table) {
+        List<View> result = new ArrayList<>();
+        for (IDatabaseObject obj: allObjects) {
+            obj.visit(member -> {
+                if (member instanceof View) {
+                    List<IDatabaseObject> deps = new ArrayList<>();
+                    member.fetchDependenciesTo(deps);
+                    if (deps.contains(table)) {
+                        result.add((View)member);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
     /**
      * Call the consumer for each object matching the given tag name/value tuple
      * @param tagName
@@ -9,6 +9,7 @@ package com.ibm.fhir.database.utils.model;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -47,6 +48,9 @@ public class Table extends BaseObject {
     // The column to use when making this table multi-tenant (if supported by the the target)
     private final String tenantColumnName;
 
+    // Hash partitioning of the table (if supported by the target)
+    private final HashPartitionDef hashPartitionDef;
+
     /**
      * Public constructor
      *
@@ -64,12 +68,42 @@ public class Table extends BaseObject {
      * @param dependencies
      * @param tags
      * @param privileges
+     * @param migrations
      */
     public Table(String schemaName, String name, int version, String tenantColumnName, Collection<ColumnBase> columns, PrimaryKeyDef pk,
             IdentityDef identity, Collection<IndexDef> indexes, Collection<ForeignKeyConstraint> fkConstraints,
             SessionVariableDef accessControlVar, Tablespace tablespace, List<IDatabaseObject> dependencies, Map<String,String> tags,
             Collection<GroupPrivilege> privileges, List<Migration> migrations) {
+        this(schemaName, name, version, tenantColumnName, columns, pk, identity, indexes, fkConstraints, accessControlVar, tablespace,
+            dependencies, tags, privileges, migrations, null);
+    }
+
+    /**
+     * Public constructor
+     *
+     * @param schemaName
+     * @param name
+     * @param version
+     * @param tenantColumnName
+     * @param columns
+     * @param pk
+     * @param identity
+     * @param indexes
+     * @param fkConstraints
+     * @param accessControlVar
+     * @param tablespace
+     * @param dependencies
+     * @param tags
+     * @param privileges
+     * @param migrations
+     * @param hashPartitionDef
+     */
+    public Table(String schemaName, String name, int version, String tenantColumnName, Collection<ColumnBase> columns, PrimaryKeyDef pk,
+            IdentityDef identity, Collection<IndexDef> indexes, Collection<ForeignKeyConstraint> fkConstraints,
+            SessionVariableDef accessControlVar, Tablespace tablespace, List<IDatabaseObject> dependencies, Map<String,String> tags,
+            Collection<GroupPrivilege> privileges, List<Migration> migrations, HashPartitionDef hashPartitionDef) {
         super(schemaName, name, DatabaseObjectType.TABLE, version, migrations);
+        this.hashPartitionDef = hashPartitionDef;
         this.tenantColumnName = tenantColumnName;
         this.columns.addAll(columns);
         this.primaryKey = pk;
@@ -111,10 +145,35 @@ public class Table extends BaseObject {
         return this.tenantColumnName;
     }
 
+    /**
+     * Getter for the hash partitioning definition, or null if the table isn't hash partitioned
+     * @return
+     */
+    public HashPartitionDef getHashPartitionDef() {
+        return this.hashPartitionDef;
+    }
+
+    /**
+     * Getter for the list of columns in this table
+     * @return
+     */
+    public List<ColumnBase> getColumns() {
+        return Collections.unmodifiableList(this.columns);
+    }
+
+    /**
+     * Getter for the list of indexes defined for this table
+     * @return
+     */
+    public List<IndexDef> getIndexes() {
+        return Collections.unmodifiableList(this.indexes);
+    }
+
     @Override
     public void apply(IDatabaseAdapter target) {
         final String tsName = this.tablespace == null ? null : this.tablespace.getName();
-        target.createTable(getSchemaName(), getObjectName(), this.tenantColumnName, this.columns, this.primaryKey, this.identity, tsName);
+        target.createTable(getSchemaName(), getObjectName(), this.tenantColumnName, this.columns, this.primaryKey, this.identity, tsName,
+            this.hashPartitionDef);
 
         // Now add any indexes associated with this table
         for (IndexDef idx: this.indexes) {
@@ -212,6 +271,9 @@ public class Table extends BaseObject {
         // Is this table multi-tenant when supported?
         private String tenantColumnName;
 
+        // Hash partitioning of the table when supported
+        private HashPartitionDef hashPartitionDef;
+
         // A map of tags
         private Map<String,String> tags = new HashMap<>();
 
@@ -685,7 +747,8 @@ public class Table extends BaseObject {
             // Our schema objects are immutable by design, so all initialization takes place
             // through the constructor
             return new Table(getSchemaName(), getObjectName(), this.version, this.tenantColumnName, buildColumns(), this.primaryKey, this.identity, this.indexes.values(),
-                    this.fkConstraints.values(), this.accessControlVar, this.tablespace, allDependencies, tags, privileges, migrations);
+                    this.fkConstraints.values(), this.accessControlVar, this.tablespace, allDependencies, tags, privileges, migrations,
+                    this.hashPartitionDef);
 
         }
 
@@ -798,6 +861,20 @@ public class Table extends BaseObject {
             return this;
         }
 
+        /**
+         * Setter to spread the rows of this table over the given number of hash partitions
+         * by the value of the column. Only supported by PostgreSQL; other targets ignore
+         * this and create a regular table. A partition count less than 2 disables hash
+         * partitioning.
+         * @param column
+         * @param partitionCount
+         * @return
+         */
+        public Builder setHashPartitioning(String column, int partitionCount) {
+            this.hashPartitionDef = partitionCount > 1 ? new HashPartitionDef(column, partitionCount) : null;
+            return this;
+        }
+
         @Override
         public Builder addMigration(Migration... migration) {
             super.addMigration(migration);
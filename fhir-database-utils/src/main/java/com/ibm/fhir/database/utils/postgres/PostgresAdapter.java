@@ -10,13 +10,17 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import com.ibm.fhir.database.utils.api.DataAccessException;
 import com.ibm.fhir.database.utils.api.DuplicateNameException;
 import com.ibm.fhir.database.utils.api.DuplicateSchemaException;
 import com.ibm.fhir.database.utils.api.IConnectionProvider;
@@ -28,11 +32,14 @@ import com.ibm.fhir.database.utils.common.CommonDatabaseAdapter;
 import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
 import com.ibm.fhir.database.utils.model.ColumnBase;
 import com.ibm.fhir.database.utils.model.ForeignKeyConstraint;
+import com.ibm.fhir.database.utils.model.HashPartitionDef;
 import com.ibm.fhir.database.utils.model.IdentityDef;
 import com.ibm.fhir.database.utils.model.OrderedColumnDef;
 import com.ibm.fhir.database.utils.model.PrimaryKeyDef;
 import com.ibm.fhir.database.utils.model.Privilege;
 import com.ibm.fhir.database.utils.model.Table;
+import com.ibm.fhir.database.utils.model.View;
+import com.ibm.fhir.database.utils.tenant.DropViewDAO;
 
 /**
  * A PostgreSql database target
@@ -103,6 +110,135 @@ public class PostgresAdapter extends CommonDatabaseAdapter {
         runStatement(ddl);
     }
 
+    @Override
+    public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns, PrimaryKeyDef primaryKey,
+            IdentityDef identity, String tablespaceName, HashPartitionDef hashPartitionDef) {
+        if (hashPartitionDef == null) {
+            createTable(schemaName, name, tenantColumnName, columns, primaryKey, identity, tablespaceName);
+            return;
+        }
+
+        if (tenantColumnName != null) {
+            warnOnce(MessageKey.MULTITENANCY, "PostgreSql does support not multi-tenancy: " + name);
+        }
+
+        // Any primary key or unique index must include the partition column, which is
+        // up to the caller. Indexes added to the partitioned table later are created
+        // on each of the partitions by PostgreSql (11+)
+        final String partitionColumn = DataDefinitionUtil.assertValidName(hashPartitionDef.getPartitionColumn());
+        String ddl = buildCreateTableStatement(schemaName, name, columns, primaryKey, identity, null)
+                + " PARTITION BY HASH (" + partitionColumn + ")";
+        runStatement(ddl);
+
+        final String parentName = DataDefinitionUtil.getQualifiedName(schemaName, name);
+        final int modulus = hashPartitionDef.getPartitionCount();
+        for (int remainder = 0; remainder < modulus; remainder++) {
+            final String partitionName = DataDefinitionUtil.getQualifiedName(schemaName, hashPartitionDef.getPartitionName(name, remainder));
+            runStatement("CREATE TABLE " + partitionName + " PARTITION OF " + parentName
+                + " FOR VALUES WITH (MODULUS " + modulus + ", REMAINDER " + remainder + ")");
+        }
+    }
+
+    /**
+     * Convert an existing regular table to the hash partitioned table described
+     * by the given table definition. The existing table is renamed, the table is
+     * created from its definition, and then the rows are copied across before the
+     * renamed table is dropped. The privileges granted on the existing table are
+     * granted again on the new table (grant options are not carried over). Does
+     * nothing if the table is already partitioned or isn't defined with hash
+     * partitioning.
+     *
+     * <p>PostgreSql binds a view to the table it selects from, not to its name, so
+     * the views which depend on the table would follow it to the renamed table and
+     * stop it from being dropped. These views are dropped before the table is renamed
+     * and created again from their definitions once the rows are copied, along with
+     * the privileges which were granted on them.
+     *
+     * <p>The rows are copied by a single statement, so this is only intended for
+     * new or small schemas and should be called in a transaction of its own. Tables
+     * holding more than maxRows rows are rejected before anything is changed, and
+     * must be migrated offline instead.
+     *
+     * @param table
+     * @param dependentViews the views which select from the table
+     * @param maxRows the largest number of rows which may be copied
+     * @return true if the table was converted
+     * @throws DataAccessException if the table holds more than maxRows rows
+     */
+    public boolean partitionExistingTable(Table table, Collection<View> dependentViews, long maxRows) {
+        final String schemaName = table.getSchemaName();
+        final String tableName = table.getObjectName();
+        if (table.getHashPartitionDef() == null || isTablePartitioned(schemaName, tableName)) {
+            return false;
+        }
+
+        // Count one more than the limit, so we know if it's been exceeded without a full scan
+        final long rows = runStatement(new PostgresCountRows(schemaName, tableName, maxRows + 1));
+        if (rows > maxRows) {
+            throw new DataAccessException("Table " + table.getQualifiedName() + " has more than " + maxRows
+                + " rows, which is too many to convert to hash partitions in a single copy");
+        }
+        final Map<String, Set<String>> grants = runStatement(new PostgresTableGrants(schemaName, tableName));
+        final Map<View, Map<String, Set<String>>> viewGrants = new LinkedHashMap<>();
+        for (View view: dependentViews) {
+            viewGrants.put(view, runStatement(new PostgresTableGrants(view.getSchemaName(), view.getObjectName())));
+        }
+
+        logger.info("Converting table to " + table.getHashPartitionDef().getPartitionCount() + " hash partitions: "
+            + table.getQualifiedName());
+        for (View view: dependentViews) {
+            runStatement(new DropViewDAO(view.getSchemaName(), view.getObjectName(), true));
+        }
+        final String unpartitionedName = tableName + "_UNPART";
+        runStatement("ALTER TABLE " + DataDefinitionUtil.getQualifiedName(schemaName, tableName)
+            + " RENAME TO " + DataDefinitionUtil.assertValidName(unpartitionedName));
+
+        // Index names are unique within the schema, so the indexes of the renamed table
+        // have to go before the new table can be created
+        table.getIndexes().forEach(idx -> idx.drop(schemaName, this));
+        table.apply(this);
+        grantAll(schemaName, tableName, grants);
+
+        final String columns = table.getColumns().stream().map(ColumnBase::getName).collect(Collectors.joining(", "));
+        runStatement("INSERT INTO " + DataDefinitionUtil.getQualifiedName(schemaName, tableName) + " (" + columns + ")"
+            + " SELECT " + columns + " FROM " + DataDefinitionUtil.getQualifiedName(schemaName, unpartitionedName));
+        dropTable(schemaName, unpartitionedName);
+
+        for (Map.Entry<View, Map<String, Set<String>>> entry: viewGrants.entrySet()) {
+            final View view = entry.getKey();
+            view.apply(this);
+            grantAll(view.getSchemaName(), view.getObjectName(), entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Grant the privileges read by {@link PostgresTableGrants} on the given table or view
+     * @param schemaName
+     * @param objectName
+     * @param grants the privileges keyed by grantee
+     */
+    private void grantAll(String schemaName, String objectName, Map<String, Set<String>> grants) {
+        for (Map.Entry<String, Set<String>> grant: grants.entrySet()) {
+            final String grantee = DataDefinitionUtil.assertValidName(grant.getKey());
+            final String ddl = "GRANT " + String.join(", ", grant.getValue()) + " ON "
+                + DataDefinitionUtil.getQualifiedName(schemaName, objectName) + " TO " + grantee;
+            logger.info("Applying: " + ddl);
+            runStatement(ddl);
+        }
+    }
+
+    /**
+     * Is the given table a partitioned table
+     * @param schemaName
+     * @param tableName
+     * @return
+     */
+    public boolean isTablePartitioned(String schemaName, String tableName) {
+        PostgresIsTablePartitioned dao = new PostgresIsTablePartitioned(schemaName, tableName);
+        return runStatement(dao);
+    }
+
     @Override
     public void createUniqueIndex(String schemaName, String tableName, String indexName, String tenantColumnName, List<OrderedColumnDef> indexColumns,
             List<String> includeColumns) {
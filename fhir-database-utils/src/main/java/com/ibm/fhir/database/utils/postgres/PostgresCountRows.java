@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgres;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.ibm.fhir.database.utils.api.IDatabaseSupplier;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
+
+/**
+ * Counts the rows in a table, stopping once the limit has been reached so that
+ * the cost of the check stays bounded for large tables.
+ */
+public class PostgresCountRows implements IDatabaseSupplier<Long> {
+
+    // The schema of the table
+    private final String schemaName;
+
+    // The name of the table
+    private final String tableName;
+
+    // Stop counting after this many rows
+    private final long limit;
+
+    /**
+     * Public constructor
+     * @param schemaName
+     * @param tableName
+     * @param limit
+     */
+    public PostgresCountRows(String schemaName, String tableName, long limit) {
+        this.schemaName = DataDefinitionUtil.assertValidName(schemaName);
+        this.tableName = DataDefinitionUtil.assertValidName(tableName);
+        this.limit = limit;
+    }
+
+    @Override
+    public Long run(IDatabaseTranslator translator, Connection c) {
+        long result = 0;
+        final String sql = "SELECT COUNT(*) FROM ("
+                + "SELECT 1 FROM " + DataDefinitionUtil.getQualifiedName(schemaName, tableName) + " LIMIT ?) sub";
+
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, limit);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                result = rs.getLong(1);
+            }
+        } catch (SQLException x) {
+            throw translator.translate(x);
+        }
+
+        return result;
+    }
+}
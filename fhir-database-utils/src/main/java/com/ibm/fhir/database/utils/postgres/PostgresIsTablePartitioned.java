@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgres;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.ibm.fhir.database.utils.api.IDatabaseSupplier;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
+
+/**
+ * Checks the PostgreSQL catalog to see if the given table is a partitioned
+ * table (created with PARTITION BY)
+ */
+public class PostgresIsTablePartitioned implements IDatabaseSupplier<Boolean> {
+
+    // The schema of the table
+    private final String schemaName;
+
+    // The name of the table
+    private final String tableName;
+
+    /**
+     * Public constructor
+     * @param schemaName
+     * @param tableName
+     */
+    public PostgresIsTablePartitioned(String schemaName, String tableName) {
+        this.schemaName = DataDefinitionUtil.assertValidName(schemaName);
+        this.tableName = DataDefinitionUtil.assertValidName(tableName);
+    }
+
+    @Override
+    public Boolean run(IDatabaseTranslator translator, Connection c) {
+        Boolean result = false;
+        // For PostgreSQL, identifier names are always in lowercase unless they are surround with double quotes.
+        final String sql = "SELECT EXISTS ("
+                + "SELECT 1 FROM pg_catalog.pg_partitioned_table pt "
+                + "JOIN pg_catalog.pg_class c ON c.oid = pt.partrelid "
+                + "JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+                + "WHERE LOWER(n.nspname) = LOWER(?) AND LOWER(c.relname) = LOWER(?))";
+
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, schemaName);
+            ps.setString(2, tableName);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                result = rs.getBoolean(1);
+            }
+        } catch (SQLException x) {
+            throw translator.translate(x);
+        }
+
+        return result;
+    }
+}
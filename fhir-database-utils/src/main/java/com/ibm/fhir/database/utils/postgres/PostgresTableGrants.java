@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgres;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.database.utils.api.IDatabaseSupplier;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
+
+/**
+ * Reads the privileges granted on a table or view, keyed by grantee. Privileges
+ * held by the owner are not included, because they come with ownership.
+ */
+public class PostgresTableGrants implements IDatabaseSupplier<Map<String, Set<String>>> {
+
+    // The schema of the table
+    private final String schemaName;
+
+    // The name of the table or view
+    private final String tableName;
+
+    /**
+     * Public constructor
+     * @param schemaName
+     * @param tableName
+     */
+    public PostgresTableGrants(String schemaName, String tableName) {
+        this.schemaName = DataDefinitionUtil.assertValidName(schemaName);
+        this.tableName = DataDefinitionUtil.assertValidName(tableName);
+    }
+
+    @Override
+    public Map<String, Set<String>> run(IDatabaseTranslator translator, Connection c) {
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        // For PostgreSQL, identifier names are always in lowercase unless they are surround with double quotes.
+        final String sql = "SELECT tp.grantee, tp.privilege_type "
+                + "FROM information_schema.table_privileges tp "
+                + "JOIN pg_catalog.pg_namespace n ON n.nspname = tp.table_schema "
+                + "JOIN pg_catalog.pg_class t ON t.relnamespace = n.oid AND t.relname = tp.table_name "
+                + "WHERE LOWER(tp.table_schema) = LOWER(?) AND LOWER(tp.table_name) = LOWER(?) "
+                + "AND tp.grantee <> pg_catalog.pg_get_userbyid(t.relowner) "
+                + "ORDER BY tp.grantee, tp.privilege_type";
+
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, schemaName);
+            ps.setString(2, tableName);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                result.computeIfAbsent(rs.getString(1), k -> new LinkedHashSet<>()).add(rs.getString(2));
+            }
+        } catch (SQLException x) {
+            throw translator.translate(x);
+        }
+
+        return result;
+    }
+}
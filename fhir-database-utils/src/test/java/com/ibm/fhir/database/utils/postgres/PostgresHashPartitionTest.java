@@ -0,0 +1,273 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgres;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.DataAccessException;
+import com.ibm.fhir.database.utils.api.IDatabaseStatement;
+import com.ibm.fhir.database.utils.api.IDatabaseSupplier;
+import com.ibm.fhir.database.utils.api.IDatabaseTarget;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.model.IDatabaseObject;
+import com.ibm.fhir.database.utils.model.ObjectGroup;
+import com.ibm.fhir.database.utils.model.PhysicalDataModel;
+import com.ibm.fhir.database.utils.model.Table;
+import com.ibm.fhir.database.utils.model.View;
+import com.ibm.fhir.database.utils.tenant.CreateOrReplaceViewDAO;
+import com.ibm.fhir.database.utils.tenant.DropViewDAO;
+
+/**
+ * Tests the DDL generated for hash partitioned tables on PostgreSQL
+ */
+public class PostgresHashPartitionTest {
+    private static final String schemaName = "schema1";
+    private static final String tableName = "table1_values";
+    private static final String viewName = "table1_values_v";
+
+    private static final Pattern RENAME_TABLE = Pattern.compile("ALTER TABLE (\\S+) RENAME TO (\\S+)");
+    private static final Pattern DROP_TABLE = Pattern.compile("DROP TABLE (\\S+)");
+    private static final Pattern DROP_VIEW = Pattern.compile("DROP VIEW (\\S+)");
+    private static final Pattern CREATE_VIEW = Pattern.compile("CREATE OR REPLACE VIEW (\\S+) AS .* FROM (\\w+)\\b.*");
+
+    /**
+     * Collects the DDL instead of running it
+     */
+    private static class CollectingTarget implements IDatabaseTarget {
+        private final List<String> statements = new ArrayList<>();
+
+        // Answers for the catalog queries made when converting an existing table
+        private long rowCount = 0;
+        private Map<String, Set<String>> grants = Collections.emptyMap();
+
+        // The table each view selects from. Like PostgreSql, a view follows its table
+        // when the table is renamed, and stops the table from being dropped
+        private final Map<String, String> viewTables = new LinkedHashMap<>();
+
+        @Override
+        public void runStatement(IDatabaseTranslator translator, String ddl) {
+            statements.add(ddl);
+
+            Matcher m;
+            if ((m = RENAME_TABLE.matcher(ddl)).matches()) {
+                final String from = m.group(1);
+                final String to = schemaName + "." + m.group(2);
+                viewTables.replaceAll((view, table) -> table.equals(from) ? to : table);
+            } else if ((m = DROP_TABLE.matcher(ddl)).matches()) {
+                if (viewTables.containsValue(m.group(1))) {
+                    throw new DataAccessException("cannot drop table " + m.group(1) + " because other objects depend on it");
+                }
+            } else if ((m = DROP_VIEW.matcher(ddl)).matches()) {
+                viewTables.remove(m.group(1));
+            } else if ((m = CREATE_VIEW.matcher(ddl)).matches()) {
+                viewTables.put(m.group(1), schemaName + "." + m.group(2));
+            }
+        }
+
+        @Override
+        public void runStatementWithInt(IDatabaseTranslator translator, String sql, int value) {
+            statements.add(sql);
+        }
+
+        @Override
+        public void runStatement(IDatabaseTranslator translator, IDatabaseStatement statement) {
+            if (statement instanceof DropViewDAO || statement instanceof CreateOrReplaceViewDAO) {
+                // the view DAOs build their DDL when run, so capture it from the connection
+                statement.run(translator, connection());
+            } else {
+                statements.add(statement.toString());
+            }
+        }
+
+        /**
+         * A connection which runs each update against this target
+         */
+        private Connection connection() {
+            final ClassLoader cl = getClass().getClassLoader();
+            final Statement statement = (Statement) Proxy.newProxyInstance(cl, new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "executeUpdate":
+                    runStatement(null, (String) args[0]);
+                    return 0;
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+            return (Connection) Proxy.newProxyInstance(cl, new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                if ("createStatement".equals(method.getName()) && args == null) {
+                    return statement;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T runStatement(IDatabaseTranslator translator, IDatabaseSupplier<T> supplier) {
+            if (supplier instanceof PostgresIsTablePartitioned) {
+                return (T) Boolean.FALSE;
+            } else if (supplier instanceof PostgresCountRows) {
+                return (T) Long.valueOf(rowCount);
+            } else if (supplier instanceof PostgresTableGrants) {
+                return (T) grants;
+            }
+            return null;
+        }
+    }
+
+    private Table.Builder builder() {
+        return Table.builder(schemaName, tableName)
+                .addIntColumn("PARAMETER_NAME_ID", false)
+                .addBigIntColumn("LOGICAL_RESOURCE_ID", false)
+                .addIndex("IDX_" + tableName + "_RP", "LOGICAL_RESOURCE_ID", "PARAMETER_NAME_ID");
+    }
+
+    @Test
+    public void testHashPartitionedTable() {
+        Table table = builder()
+                .setHashPartitioning("LOGICAL_RESOURCE_ID", 4)
+                .build(new PhysicalDataModel());
+        assertEquals(table.getHashPartitionDef().getPartitionCount(), 4);
+
+        CollectingTarget target = new CollectingTarget();
+        table.apply(new PostgresAdapter(target));
+
+        List<String> ddl = target.statements;
+        assertEquals(ddl.size(), 6);
+        assertEquals(ddl.get(0), "CREATE TABLE schema1.table1_values(PARAMETER_NAME_ID INT NOT NULL, LOGICAL_RESOURCE_ID BIGINT NOT NULL)"
+                + " PARTITION BY HASH (LOGICAL_RESOURCE_ID)");
+        for (int i = 0; i < 4; i++) {
+            assertEquals(ddl.get(i + 1), "CREATE TABLE schema1.table1_values_P" + i + " PARTITION OF schema1.table1_values"
+                    + " FOR VALUES WITH (MODULUS 4, REMAINDER " + i + ")");
+        }
+        // the index is created once, on the partitioned table
+        assertTrue(ddl.get(5).startsWith("CREATE INDEX IDX_table1_values_RP ON schema1.table1_values"), ddl.get(5));
+    }
+
+    @Test
+    public void testSinglePartitionIsRegularTable() {
+        Table table = builder()
+                .setHashPartitioning("LOGICAL_RESOURCE_ID", 1)
+                .build(new PhysicalDataModel());
+        assertNull(table.getHashPartitionDef());
+
+        CollectingTarget target = new CollectingTarget();
+        table.apply(new PostgresAdapter(target));
+        assertEquals(target.statements.size(), 2);
+        assertEquals(target.statements.get(0), "CREATE TABLE schema1.table1_values(PARAMETER_NAME_ID INT NOT NULL, LOGICAL_RESOURCE_ID BIGINT NOT NULL)");
+    }
+
+    @Test
+    public void testPartitionExistingTable() {
+        Table table = builder()
+                .setHashPartitioning("LOGICAL_RESOURCE_ID", 2)
+                .build(new PhysicalDataModel());
+
+        CollectingTarget target = new CollectingTarget();
+        target.rowCount = 10;
+        Map<String, Set<String>> grants = new LinkedHashMap<>();
+        grants.put("fhirserver", new LinkedHashSet<>(Arrays.asList("DELETE", "INSERT", "SELECT", "UPDATE")));
+        target.grants = grants;
+        assertTrue(new PostgresAdapter(target).partitionExistingTable(table, Collections.emptyList(), 10));
+
+        List<String> ddl = target.statements;
+        assertEquals(ddl.get(0), "ALTER TABLE schema1.table1_values RENAME TO table1_values_UNPART");
+        // the privileges of the old table are granted on the new one before the rows are copied
+        assertEquals(ddl.get(ddl.size() - 3), "GRANT DELETE, INSERT, SELECT, UPDATE ON schema1.table1_values TO fhirserver");
+        assertEquals(ddl.get(ddl.size() - 2), "INSERT INTO schema1.table1_values (PARAMETER_NAME_ID, LOGICAL_RESOURCE_ID)"
+                + " SELECT PARAMETER_NAME_ID, LOGICAL_RESOURCE_ID FROM schema1.table1_values_UNPART");
+        assertTrue(ddl.get(ddl.size() - 1).startsWith("DROP TABLE schema1.table1_values_UNPART"), ddl.get(ddl.size() - 1));
+    }
+
+    @Test
+    public void testPartitionExistingTableTooLarge() {
+        Table table = builder()
+                .setHashPartitioning("LOGICAL_RESOURCE_ID", 2)
+                .build(new PhysicalDataModel());
+
+        CollectingTarget target = new CollectingTarget();
+        target.rowCount = 11;
+        try {
+            new PostgresAdapter(target).partitionExistingTable(table, Collections.emptyList(), 10);
+            fail("expected the table to be rejected");
+        } catch (DataAccessException x) {
+            // nothing is changed before the table is rejected
+            assertTrue(target.statements.isEmpty());
+        }
+    }
+
+    @Test
+    public void testPartitionExistingTableNotHashPartitioned() {
+        Table table = builder().build(new PhysicalDataModel());
+        CollectingTarget target = new CollectingTarget();
+        assertFalse(new PostgresAdapter(target).partitionExistingTable(table, Collections.emptyList(), 10));
+        assertTrue(target.statements.isEmpty());
+    }
+
+    @Test
+    public void testPartitionExistingTableWithView() {
+        PhysicalDataModel pdm = new PhysicalDataModel();
+        Table table = builder()
+                .setHashPartitioning("LOGICAL_RESOURCE_ID", 2)
+                .build(pdm);
+        pdm.addTable(table);
+        View view = View.builder(schemaName, viewName)
+                .setVersion(1)
+                .setSelectClause("SELECT PARAMETER_NAME_ID, LOGICAL_RESOURCE_ID FROM " + tableName)
+                .addDependency(table)
+                .build();
+        List<IDatabaseObject> group = Arrays.asList(table, view);
+        pdm.addObject(new ObjectGroup(schemaName, "table1_group", group));
+
+        List<View> views = pdm.findDependentViews(table);
+        assertEquals(views, Collections.singletonList(view));
+
+        CollectingTarget target = new CollectingTarget();
+        target.rowCount = 10;
+        Map<String, Set<String>> grants = new LinkedHashMap<>();
+        grants.put("fhirserver", new LinkedHashSet<>(Arrays.asList("SELECT")));
+        target.grants = grants;
+        // the view was created with the existing table, so it's bound to it
+        view.apply(new PostgresAdapter(target));
+        target.statements.clear();
+
+        // the renamed table can only be dropped if the view is no longer bound to it
+        assertTrue(new PostgresAdapter(target).partitionExistingTable(table, views, 10));
+
+        List<String> ddl = target.statements;
+        assertEquals(ddl.get(0), "DROP VIEW schema1.table1_values_v");
+        assertEquals(ddl.get(1), "ALTER TABLE schema1.table1_values RENAME TO table1_values_UNPART");
+        assertTrue(ddl.get(ddl.size() - 3).startsWith("DROP TABLE schema1.table1_values_UNPART"), ddl.get(ddl.size() - 3));
+        // the view is created again on the new table, with its privileges
+        assertEquals(ddl.get(ddl.size() - 2), "CREATE OR REPLACE VIEW schema1.table1_values_v AS"
+                + " SELECT PARAMETER_NAME_ID, LOGICAL_RESOURCE_ID FROM table1_values");
+        assertEquals(ddl.get(ddl.size() - 1), "GRANT SELECT ON schema1.table1_values_v TO fhirserver");
+        assertEquals(target.viewTables.get("schema1.table1_values_v"), "schema1.table1_values");
+    }
+}
@@ -40,6 +40,12 @@ public interface FHIRPersistenceJDBCCache {
      */
     INameIdCache<Integer> getParameterNameCache();
 
+    /**
+     * Tell any caches that the transaction on the current thread will report its
+     * completion through {@link #transactionCommitted()} or {@link #transactionRolledBack()}
+     */
+    public void transactionRegistered();
+
     /**
      * Tell any caches that the transaction on the current thread has just committed
      */
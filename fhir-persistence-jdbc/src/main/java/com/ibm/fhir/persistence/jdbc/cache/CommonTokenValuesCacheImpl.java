@@ -8,9 +8,18 @@ package com.ibm.fhir.persistence.jdbc.cache;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceTokenValueRec;
@@ -20,8 +29,21 @@ import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
 /**
  * Implementation of a cache used for lookups of entities related
  * to local and external resource references
+ *
+ * New token values are also claimed here by the transaction which adds
+ * them, so that concurrent transactions needing the same new values can
+ * wait for that transaction to commit and then use its ids instead of
+ * inserting the same rows again. See {@link #claimTokenValues(Collection, List)}.
+ * A waiting transaction may already hold row locks of its own, so the wait is
+ * kept short. Claims are only kept until commit by transactions which are bound
+ * to the cache (see {@link #bindTransaction()}); any other claims are released
+ * by {@link #finishClaims(boolean)} as soon as the values have been added.
  */
 public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
+    private static final Logger logger = Logger.getLogger(CommonTokenValuesCacheImpl.class.getName());
+
+    // The default time we wait for another transaction to commit token values we need
+    public static final long DEFAULT_CLAIM_WAIT_MS = 50;
 
     // We use LinkedHashMap for the local map because we also need to maintain order
     // of insertion to make sure we have correct LRU behavior when updating the shared cache
@@ -35,16 +57,43 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
     // The lru cache shared at the server level
     private final LRUCache<CommonTokenValue, Long> tokenValuesCache;
 
+    // The token values currently being added by open transactions. Each claim is completed
+    // with the id when the owning transaction commits, or with null if it rolls back
+    private final ConcurrentHashMap<CommonTokenValue, CompletableFuture<Long>> claims = new ConcurrentHashMap<>();
+
+    // The claims owned by the transaction on the current thread
+    private final ThreadLocal<Map<CommonTokenValue, CompletableFuture<Long>>> ownedClaims = new ThreadLocal<>();
+
+    // Set while the transaction on the current thread will tell us when it completes
+    private final ThreadLocal<Boolean> transactionBound = new ThreadLocal<>();
+
+    // How long we wait for another transaction to commit the token values we need
+    private final long claimWaitMs;
+
+    // Metrics
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong claimTimeoutCount = new AtomicLong();
 
     /**
      * Public constructor
      * @param sharedExternalSystemNameCacheSize
      */
     public CommonTokenValuesCacheImpl(int codeSystemCacheSize, int tokenValueCacheSize) {
+        this(codeSystemCacheSize, tokenValueCacheSize, DEFAULT_CLAIM_WAIT_MS);
+    }
+
+    /**
+     * Public constructor
+     * @param codeSystemCacheSize
+     * @param tokenValueCacheSize
+     * @param claimWaitMs the maximum time to wait for another transaction to commit token values we need
+     */
+    public CommonTokenValuesCacheImpl(int codeSystemCacheSize, int tokenValueCacheSize, long claimWaitMs) {
 
         // LRU cache for quick lookup of code-systems and token-values
         codeSystemsCache = new LRUCache<>(codeSystemCacheSize);
         tokenValuesCache = new LRUCache<>(tokenValueCacheSize);
+        this.claimWaitMs = claimWaitMs;
     }
 
     /**
@@ -68,11 +117,148 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             synchronized(this.tokenValuesCache) {
                 tokenValuesCache.update(valMap);
             }
+        }
 
+        // The values we added are now committed, so hand their ids to any waiting transactions
+        releaseClaims(valMap);
+        transactionBound.remove();
+
+        if (valMap != null) {
             // clear the thread-local cache
             valMap.clear();
         }
+    }
+
+    @Override
+    public void claimTokenValues(Collection<ResourceTokenValueRec> misses, List<ResourceTokenValueRec> upserts) {
+        Map<CommonTokenValue, CompletableFuture<Long>> owned = ownedClaims.get();
+        if (owned == null) {
+            owned = new HashMap<>();
+            ownedClaims.set(owned);
+        }
+
+        // Claim the values no other transaction is adding. The rest are claimed by someone else
+        List<ResourceTokenValueRec> waiting = new ArrayList<>();
+        List<CompletableFuture<Long>> waitingClaims = new ArrayList<>();
+        for (ResourceTokenValueRec tv: misses) {
+            if (tv.getTokenValue() == null) {
+                // not stored in common_token_values, so nothing to claim
+                upserts.add(tv);
+                continue;
+            }
+
+            CommonTokenValue key = new CommonTokenValue(tv.getCodeSystemValueId(), tv.getTokenValue());
+            CompletableFuture<Long> claim = owned.get(key);
+            if (claim == null) {
+                CompletableFuture<Long> newClaim = new CompletableFuture<>();
+                claim = claims.putIfAbsent(key, newClaim);
+                if (claim == null) {
+                    owned.put(key, newClaim);
+                    claim = newClaim;
+                }
+            }
+
+            if (owned.get(key) == claim) {
+                upserts.add(tv);
+            } else {
+                waiting.add(tv);
+                waitingClaims.add(claim);
+            }
+        }
+
+        if (waiting.isEmpty()) {
+            return;
+        }
+
+        if (!owned.isEmpty()) {
+            // Another transaction could be waiting for one of our claims, so we can't wait for
+            // theirs. Add the values ourselves and let the database sort out the overlap
+            upserts.addAll(waiting);
+            return;
+        }
+
+        // Wait for the owners to commit. We only ever wait while holding no claims, so two
+        // transactions can't end up waiting for each other here
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(claimWaitMs);
+        for (int i=0; i<waiting.size(); i++) {
+            ResourceTokenValueRec tv = waiting.get(i);
+            CompletableFuture<Long> claim = waitingClaims.get(i);
+            CommonTokenValue key = new CommonTokenValue(tv.getCodeSystemValueId(), tv.getTokenValue());
+            Long id = null;
+            try {
+                id = claim.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException x) {
+                // Drop the claim so that a transaction which is slow to commit (or which never
+                // tells us it has completed) doesn't hold up anyone else
+                claims.remove(key, claim);
+                claimTimeoutCount.incrementAndGet();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException x) {
+                // claims are only ever completed normally
+                throw new IllegalStateException(x);
+            }
+
+            if (id != null) {
+                tv.setCommonTokenValueId(id);
+                addTokenValue(key, id);
+                coalescedCount.incrementAndGet();
+            } else {
+                // the owner rolled back or is taking too long, so add the value ourselves
+                upserts.add(tv);
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Waited for " + waiting.size() + " token values claimed by other transactions: coalesced="
+                    + getCoalescedCount() + ", timeouts=" + getClaimTimeoutCount());
+        }
+    }
+
+    @Override
+    public void finishClaims(boolean added) {
+        if (!added || transactionBound.get() == null) {
+            // Nothing will tell us when the transaction completes, or the values may not
+            // have been added, so waiting transactions have to add the values themselves
+            releaseClaims(null);
+        }
+    }
+
+    @Override
+    public void bindTransaction() {
+        transactionBound.set(Boolean.TRUE);
+    }
+
+    /**
+     * Complete and remove the claims owned by the current thread
+     * @param ids the committed ids of the claimed values, or null if the transaction did not commit
+     */
+    private void releaseClaims(Map<CommonTokenValue, Long> ids) {
+        Map<CommonTokenValue, CompletableFuture<Long>> owned = ownedClaims.get();
+        if (owned != null && !owned.isEmpty()) {
+            for (Map.Entry<CommonTokenValue, CompletableFuture<Long>> entry: owned.entrySet()) {
+                claims.remove(entry.getKey(), entry.getValue());
+                entry.getValue().complete(ids != null ? ids.get(entry.getKey()) : null);
+            }
+            owned.clear();
+        }
+    }
 
+    /**
+     * Get the number of token values whose ids we took from another transaction instead of
+     * adding them again
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Get the number of times we gave up waiting for another transaction to commit token values we need
+     * @return
+     */
+    public long getClaimTimeoutCount() {
+        return claimTimeoutCount.get();
     }
 
     @Override
@@ -229,6 +415,8 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
 
     @Override
     public void reset() {
+        releaseClaims(null);
+        transactionBound.remove();
         codeSystems.remove();
         commonTokenValues.remove();
 
@@ -244,6 +432,10 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
 
     @Override
     public void clearLocalMaps() {
+        // the values we claimed were never committed, so the waiting transactions must add them
+        releaseClaims(null);
+        transactionBound.remove();
+
         // clear the maps, but keep the maps in place because they'll be used again
         // the next time this thread is picked from the pool
         LinkedHashMap<String,Integer> sysMap = codeSystems.get();
@@ -59,6 +59,11 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
         return parameterNameCache;
     }
 
+    @Override
+    public void transactionRegistered() {
+        resourceReferenceCache.bindTransaction();
+    }
+
     @Override
     public void transactionCommitted() {
         logger.fine("Transaction committed - updating cache shared maps");
@@ -24,9 +24,19 @@ public class FHIRPersistenceJDBCCacheUtil {
      * @return
      */
     public static FHIRPersistenceJDBCCache create(int codeSystemCacheSize, int tokenValueCacheSize) {
-        ICommonTokenValuesCache rrc = new CommonTokenValuesCacheImpl(codeSystemCacheSize, tokenValueCacheSize);
+        return create(codeSystemCacheSize, tokenValueCacheSize, CommonTokenValuesCacheImpl.DEFAULT_CLAIM_WAIT_MS);
+    }
+
+    /**
+     * Factory function to create a new cache instance
+     * @param codeSystemCacheSize
+     * @param tokenValueCacheSize
+     * @param claimWaitMs the maximum time to wait for another transaction to commit token values we need
+     * @return
+     */
+    public static FHIRPersistenceJDBCCache create(int codeSystemCacheSize, int tokenValueCacheSize, long claimWaitMs) {
+        ICommonTokenValuesCache rrc = new CommonTokenValuesCacheImpl(codeSystemCacheSize, tokenValueCacheSize, claimWaitMs);
         return new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new NameIdCache<Integer>(), rrc);
-        
     }
     /**
      * Prefill the cache with constants already committed in the database
@@ -73,7 +73,8 @@ public class FHIRPersistenceJDBCTenantCache {
             } else {
                 int externalSystemCacheSize = pg.getIntProperty("externalSystemCacheSize", 1000);
                 int externalValueCacheSize = pg.getIntProperty("externalValueCacheSize", 100000);
-                return FHIRPersistenceJDBCCacheUtil.create(externalSystemCacheSize, externalValueCacheSize);
+                int commonTokenValueClaimWaitMs = pg.getIntProperty("commonTokenValueClaimWaitMs", (int) CommonTokenValuesCacheImpl.DEFAULT_CLAIM_WAIT_MS);
+                return FHIRPersistenceJDBCCacheUtil.create(externalSystemCacheSize, externalValueCacheSize, commonTokenValueClaimWaitMs);
             }
         } catch (IllegalStateException ise) {
             throw ise;
@@ -49,4 +49,14 @@ public interface FHIRDbConnectionStrategy {
      * @param c the connection to be configured
      */
     public void applySearchOptimizerOptions(Connection c);
+
+    /**
+     * Record a write made to the datasource identified by the current {@link FHIRRequestContext}
+     * in the current transaction. Strategies which route reads to read-only replicas use this
+     * to make sure requests still see the data written through this server. The default
+     * implementation does nothing.
+     */
+    default void recordWrite() {
+        // NOP
+    }
 }
\ No newline at end of file
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,6 +7,9 @@
 package com.ibm.fhir.persistence.jdbc.connection;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -14,6 +17,8 @@ import java.util.logging.Logger;
 
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 import javax.transaction.TransactionSynchronizationRegistry;
 
 import com.ibm.fhir.config.FHIRConfigHelper;
@@ -56,6 +61,11 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
     // JNDI prefix  of the (proxy) datasource
     private static final String DATASOURCE_BASE_NAME = "jdbc/fhir";
 
+    // JNDI suffix of the non-transactional datasource used to probe replica currency. Probe
+    // connections aren't enlisted in the caller's global transaction, so the probe never
+    // turns a single-resource transaction into a two-phase commit
+    private static final String PROBE_DATASOURCE_SUFFIX = "_nontx";
+
     // Cache of datasources we've found
     private final Map<String, DataSource> datasourceMap = new ConcurrentHashMap<>();
 
@@ -65,15 +75,60 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
     // Should we use read-only datasources for isReadOnly() requests?
     private final boolean enableReadOnlyReplicas;
 
+    // Minimum time between probes of a replica which may be lagging
+    private final long probeIntervalMs;
+
+    // Used to track the writes made in the current transaction
+    private final TransactionSynchronizationRegistry trxSyncRegistry;
+
+    // Decides if a read-only request can use the replica without missing our own writes
+    private final ReadReplicaRouter router = ReadReplicaRouter.getInstance();
+
+    // Reads the current WAL position of the primary (PostgreSQL only)
+    private static final String PRIMARY_WAL_LSN_SQL = "SELECT pg_current_wal_lsn()";
+
+    // Checks if the replica has replayed the WAL up to the given primary position. Null if
+    // the database isn't a standby, which we treat as not caught up
+    private static final String REPLICA_CAUGHT_UP_SQL = "SELECT pg_last_wal_replay_lsn() >= CAST(? AS pg_lsn)";
+
+    // Key prefix used to find the write marker of the current transaction in the sync registry
+    private static final String WRITE_MARKER_KEY = FHIRDbTenantDatasourceConnectionStrategy.class.getName() + ".writeMarker/";
+
+    // Key prefix used to pin the replica routing decision for the current transaction
+    private static final String ROUTE_KEY = FHIRDbTenantDatasourceConnectionStrategy.class.getName() + ".route/";
+
     /**
      * Public constructor. The proxy datasource must be present (registered in JNDI)
      * at server startup.
      * @throws FHIRPersistenceDBConnectException if the proxy datasource is not configured
      */
     public FHIRDbTenantDatasourceConnectionStrategy(TransactionSynchronizationRegistry trxSyncRegistry, Action newConnectionAction, boolean enableReadOnlyReplicas) throws FHIRException {
+        this(trxSyncRegistry, newConnectionAction, enableReadOnlyReplicas, ReadReplicaRouter.DEFAULT_PROBE_INTERVAL_MS);
+    }
+
+    /**
+     * Public constructor. The proxy datasource must be present (registered in JNDI)
+     * at server startup.
+     * @param trxSyncRegistry
+     * @param newConnectionAction
+     * @param enableReadOnlyReplicas route isReadOnly() requests to the read-only replica when it is current
+     * @param probeIntervalMs minimum time between checks of a lagging replica
+     * @throws FHIRPersistenceDBConnectException if the proxy datasource is not configured
+     */
+    public FHIRDbTenantDatasourceConnectionStrategy(TransactionSynchronizationRegistry trxSyncRegistry, Action newConnectionAction, boolean enableReadOnlyReplicas,
+            long probeIntervalMs) throws FHIRException {
         super(trxSyncRegistry, newConnectionAction);
         this.flavor = createFlavor();
-        this.enableReadOnlyReplicas = enableReadOnlyReplicas;
+
+        // Replica currency is checked by comparing WAL positions, which is PostgreSQL-specific
+        if (enableReadOnlyReplicas && this.flavor.getType() != DbType.POSTGRESQL) {
+            log.warning("Read-only replicas are only supported for PostgreSQL; routing all requests to the primary");
+            this.enableReadOnlyReplicas = false;
+        } else {
+            this.enableReadOnlyReplicas = enableReadOnlyReplicas;
+        }
+        this.probeIntervalMs = probeIntervalMs;
+        this.trxSyncRegistry = trxSyncRegistry;
     }
 
     public static String makeTenantDatasourceJNDIName(String jndiBase, String tenantId, String dsId, boolean readOnly) {
@@ -95,22 +150,105 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
 
     @Override
     public Connection getConnection() throws FHIRPersistenceDBConnectException {
-        Connection connection = null;
         final String METHODNAME = "getConnection";
 
         if (log.isLoggable(Level.FINEST)) {
             log.entering(CLASSNAME, METHODNAME);
         }
 
+        try {
+            // Resources can be routed to different databases using the dsId currently
+            // set on the context.
+            String tenantId = FHIRRequestContext.get().getTenantId();
+            String dsId = FHIRRequestContext.get().getDataStoreId();
+
+            if (this.enableReadOnlyReplicas && FHIRRequestContext.get().isReadOnly()) {
+                // The decision is pinned for the life of the transaction, so a single
+                // transaction never reads from both the replica and the primary
+                final String key = ReadReplicaRouter.makeKey(tenantId, dsId);
+                final String routeKey = ROUTE_KEY + key;
+                Boolean useReplica = (Boolean) trxSyncRegistry.getResource(routeKey);
+                if (useReplica != null) {
+                    if (useReplica) {
+                        return getConnection(tenantId, dsId, true);
+                    }
+                } else {
+                    // Only use the replica if it won't hide any writes we've committed
+                    Connection connection = null;
+                    switch (router.route(key, System.currentTimeMillis(), probeIntervalMs)) {
+                    case REPLICA:
+                        connection = getConnection(tenantId, dsId, true);
+                        break;
+                    case PROBE:
+                        connection = probeReplica(key, tenantId, dsId);
+                        break;
+                    case PRIMARY:
+                        break;
+                    }
+                    trxSyncRegistry.putResource(routeKey, connection != null);
+                    if (connection != null) {
+                        return connection;
+                    }
+                }
+            }
+
+            return getConnection(tenantId, dsId, false);
+        } finally {
+            if (log.isLoggable(Level.FINEST)) {
+                log.exiting(CLASSNAME, METHODNAME);
+            }
+        }
+    }
+
+    /**
+     * Get a connection to the primary or read-only replica datasource for the given tenant and dsId
+     * @param tenantId
+     * @param dsId
+     * @param readOnly
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private Connection getConnection(String tenantId, String dsId, boolean readOnly) throws FHIRPersistenceDBConnectException {
+        Connection connection = null;
+        final String jndiName = getJndiName(tenantId, dsId, readOnly);
+
         // the dsId/tenantId specific datasource we need to locate
-        DataSource datasource;
+        DataSource datasource = getDatasource(jndiName);
 
-        // Resources can be routed to different databases using the dsId currently
-        // set on the context.
-        String tenantId = FHIRRequestContext.get().getTenantId();
-        String dsId = FHIRRequestContext.get().getDataStoreId();
-        boolean readOnly = this.enableReadOnlyReplicas && FHIRRequestContext.get().isReadOnly();
+        long start = System.nanoTime();
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Getting connection for tenantId/dsId: [" + tenantId + "/" + dsId + "] readOnly=" + readOnly + "...");
+        }
 
+        // Now use the dsId/tenantId specific JEE datasource to get a connection
+        try {
+            // The replica connection is a different connection in the same transaction, so
+            // it needs its own key when checking if it has been configured
+            connection = getConnection(datasource, tenantId, readOnly ? dsId + "_ro" : dsId);
+
+            if (log.isLoggable(Level.FINE)) {
+                long deltams = (System.nanoTime() - start) / NANOMS;
+                log.fine("Got the connection for [" + tenantId + "/" + dsId + "]. Took " + deltams + " ms");
+            }
+        } catch (Throwable e) {
+            // Don't emit secrets in case they are returned to a client
+            FHIRPersistenceDBConnectException fx =
+                    new FHIRPersistenceDBConnectException("Failure acquiring connection for datasource");
+            throw FHIRDbHelper.severe(log, fx, "Failure acquiring connection for datasource: " + jndiName, e);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Get the JNDI name of the primary or read-only replica datasource for the given tenant and dsId
+     * @param tenantId
+     * @param dsId
+     * @param readOnly
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private String getJndiName(String tenantId, String dsId, boolean readOnly) throws FHIRPersistenceDBConnectException {
         // The jndiName may be given explicitly in the fhir-server-config
         String jndiName;
 
@@ -119,7 +257,7 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
             PropertyGroup fhirConfig = FHIRConfiguration.getInstance().loadConfigurationForTenant(tenantId);
             jndiName = fhirConfig.getStringProperty(jndiNameProperty, null);
 
-            if (readOnly) {
+            if (readOnly && jndiName != null) {
                 jndiName = jndiName + "_ro";
             }
         } catch (Exception x) {
@@ -131,15 +269,23 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
             // Name wasn't provided, so build the name using a standard pattern: jdbc/fhir_<tenantId>_<dsId>[_ro]
             jndiName = makeTenantDatasourceJNDIName(DATASOURCE_BASE_NAME, tenantId, dsId, readOnly);
         }
+        return jndiName;
+    }
 
-
+    /**
+     * Find the datasource registered in JNDI under the given name
+     * @param jndiName
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private DataSource getDatasource(String jndiName) throws FHIRPersistenceDBConnectException {
         // Note: we don't need any synchronization around ConcurrentHashMap, but that
         // doesn't change the fact that we may look up the datasource and put it into
         // the map more than once. That's fine. There aren't any integrity issues, just
         // the chance of doing more work than necessary a single time, but we avoid the
         // need for any synchronization. We cache locally, because we've found that JNDI
         // lookups can become a bottleneck with high concurrency
-        datasource = datasourceMap.get(jndiName);
+        DataSource datasource = datasourceMap.get(jndiName);
         if (datasource == null) {
             // cache miss
             try {
@@ -151,38 +297,141 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
                 // don't emit secrets in exceptions
                 FHIRPersistenceDBConnectException fx = new FHIRPersistenceDBConnectException("Failure acquiring datasource");
                 throw FHIRDbHelper.severe(log, fx, "Failure acquiring connection for datasource: " + jndiName, e);
-            } finally {
-                if (log.isLoggable(Level.FINEST)) {
-                    log.exiting(CLASSNAME, METHODNAME);
-                }
             }
         }
+        return datasource;
+    }
 
-        long start = System.nanoTime();
-        if (log.isLoggable(Level.FINE)) {
-            log.fine("Getting connection for tenantId/dsId: [" + tenantId + "/" + dsId + "]...");
-        }
+    /**
+     * Get a connection from the non-transactional datasource paired with the primary or
+     * read-only replica datasource. The connection isn't enlisted in the current global
+     * transaction, so it can be used and closed without the transaction ever seeing it.
+     * @param tenantId
+     * @param dsId
+     * @param readOnly
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     * @throws SQLException
+     */
+    private Connection getProbeConnection(String tenantId, String dsId, boolean readOnly) throws FHIRPersistenceDBConnectException, SQLException {
+        return getDatasource(getJndiName(tenantId, dsId, readOnly) + PROBE_DATASOURCE_SUFFIX).getConnection();
+    }
 
-        // Now use the dsId/tenantId specific JEE datasource to get a connection
+    /**
+     * Get a connection to the read-only replica and check if it has caught up with the
+     * writes committed through this server. The write count is sampled before the WAL
+     * position of the primary is read, so every write it covers is at or behind that position.
+     * @param key the router key for the tenant/datasource
+     * @param tenantId
+     * @param dsId
+     * @return the replica connection if the replica is current, otherwise null
+     */
+    private Connection probeReplica(String key, String tenantId, String dsId) {
+        boolean caughtUp = false;
         try {
-            connection = getConnection(datasource, tenantId, dsId);
+            // The probe runs on non-transactional connections, so only the connection we finally
+            // use is enlisted in the transaction, whichever database it comes from
+            final long writeCount = router.getWriteCount(key);
+            final String primaryLsn = readPrimaryWalPosition(tenantId, dsId);
+            try (Connection probe = getProbeConnection(tenantId, dsId, true)) {
+                caughtUp = router.probeResult(key, writeCount, isReplicaCaughtUp(probe, primaryLsn));
+            }
+        } catch (Throwable t) {
+            // Not fatal, because we can still use the primary
+            router.probeFailed(key);
+            log.log(Level.WARNING, "Read-only replica probe failed for [" + tenantId + "/" + dsId + "]; using the primary. Probe failures: "
+                    + router.getProbeFailureCount(), t);
+        }
 
-            if (log.isLoggable(Level.FINE)) {
-                long deltams = (System.nanoTime() - start) / NANOMS;
-                log.fine("Got the connection for [" + tenantId + "/" + dsId + "]. Took " + deltams + " ms");
+        if (caughtUp) {
+            try {
+                return getConnection(tenantId, dsId, true);
+            } catch (Throwable t) {
+                router.probeFailed(key);
+                log.log(Level.WARNING, "Read-only replica connection failed for [" + tenantId + "/" + dsId + "]; using the primary", t);
             }
-        } catch (Throwable e) {
-            // Don't emit secrets in case they are returned to a client
-            FHIRPersistenceDBConnectException fx =
-                    new FHIRPersistenceDBConnectException("Failure acquiring connection for datasource");
-            throw FHIRDbHelper.severe(log, fx, "Failure acquiring connection for datasource: " + jndiName, e);
-        } finally {
-            if (log.isLoggable(Level.FINEST)) {
-                log.exiting(CLASSNAME, METHODNAME);
+        }
+        return null;
+    }
+
+    /**
+     * Read the current WAL position of the primary database
+     * @param tenantId
+     * @param dsId
+     * @return the position as a pg_lsn string, e.g. 16/B374D848
+     * @throws SQLException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private String readPrimaryWalPosition(String tenantId, String dsId) throws SQLException, FHIRPersistenceDBConnectException {
+        try (Connection primary = getProbeConnection(tenantId, dsId, false);
+                PreparedStatement ps = primary.prepareStatement(PRIMARY_WAL_LSN_SQL)) {
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                return rs.getString(1);
             }
+            throw new SQLException("No WAL position returned by the primary");
         }
+    }
 
-        return connection;
+    /**
+     * Check if the given (replica) database has replayed the WAL up to the given position
+     * @param connection
+     * @param primaryLsn
+     * @return
+     * @throws SQLException
+     */
+    private boolean isReplicaCaughtUp(Connection connection, String primaryLsn) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(REPLICA_CAUGHT_UP_SQL)) {
+            ps.setString(1, primaryLsn);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                boolean caughtUp = rs.getBoolean(1);
+                return caughtUp && !rs.wasNull();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void recordWrite() {
+        if (!this.enableReadOnlyReplicas) {
+            return;
+        }
+
+        // The write only becomes visible to other requests (and the replica) when the
+        // transaction commits, so we only count it after commit. A single synchronization
+        // per transaction counts the whole transaction as one write.
+        final String key = ReadReplicaRouter.makeKey(FHIRRequestContext.get().getTenantId(), FHIRRequestContext.get().getDataStoreId());
+        final String resourceKey = WRITE_MARKER_KEY + key;
+        if (trxSyncRegistry.getResource(resourceKey) == null) {
+            WriteMarker marker = new WriteMarker(key);
+            trxSyncRegistry.putResource(resourceKey, marker);
+            trxSyncRegistry.registerInterposedSynchronization(marker);
+        }
+    }
+
+    /**
+     * Passes the writes made in the current transaction to the router once
+     * the transaction has committed
+     */
+    private class WriteMarker implements Synchronization {
+        private final String key;
+
+        WriteMarker(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            // NOP
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+                router.recordWrite(key);
+            }
+        }
     }
 
     @Override
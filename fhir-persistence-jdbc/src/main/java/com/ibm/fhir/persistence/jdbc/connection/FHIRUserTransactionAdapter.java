@@ -84,6 +84,9 @@ public class FHIRUserTransactionAdapter implements FHIRPersistenceTransaction {
                 // the cache is informed when the transaction commits it can promote thread-local
                 // ids to the shared caches.
                 syncRegistry.registerInterposedSynchronization(new CacheTransactionSync(this.syncRegistry, this.cache, this.transactionDataKey));
+                if (cache != null) {
+                    cache.transactionRegistered();
+                }
 
             } catch (Exception x) {
                 log.log(Level.SEVERE, "failed to start transaction", x);
@@ -98,6 +101,9 @@ public class FHIRUserTransactionAdapter implements FHIRPersistenceTransaction {
             // the cache is informed when the transaction commits it can promote thread-local
             // ids to the shared caches.
             syncRegistry.registerInterposedSynchronization(new CacheTransactionSync(this.syncRegistry, this.cache, this.transactionDataKey));
+            if (cache != null) {
+                cache.transactionRegistered();
+            }
 
             // transaction is already active, so this is a nested request
             this.startCount++;
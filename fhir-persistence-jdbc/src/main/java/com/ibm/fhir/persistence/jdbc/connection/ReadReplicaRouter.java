@@ -0,0 +1,211 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.connection;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides whether a read-only request can be served by a read-only replica
+ * without losing read-your-writes consistency.
+ *
+ * <p>For each tenant/datasource we track two counters:
+ * <ul>
+ * <li>the write count: the number of write transactions committed through this server</li>
+ * <li>the replica watermark: the highest write count known to be visible on the replica</li>
+ * </ul>
+ * A probe samples the write count, then reads the current WAL position of the primary
+ * and checks that the replica has replayed at least that far. Every write counted
+ * in the sample committed before the primary position was read, so if the replica has
+ * replayed past it, all those writes are visible on the replica. Comparing log positions
+ * instead of change timestamps means a write is never missed because of a long-running
+ * transaction or clock skew between cluster members.
+ *
+ * <p>If the replica has caught up with the write count, reads are routed to the
+ * replica. Otherwise, the replica is probed again (at most once per probe interval)
+ * and the read falls back to the primary until the replica has caught up.
+ *
+ * <p>Thread-safe. Times are epoch milliseconds.
+ */
+public class ReadReplicaRouter {
+    private static final Logger logger = Logger.getLogger(ReadReplicaRouter.class.getName());
+
+    // The default minimum time between probes of a lagging replica
+    public static final int DEFAULT_PROBE_INTERVAL_MS = 1000;
+
+    /**
+     * The decision made for a read-only request
+     */
+    public enum Route {
+        // the replica is known to be current, so use it
+        REPLICA,
+        // the replica may be lagging, so check its WAL position before using it
+        PROBE,
+        // the replica is lagging, so use the primary
+        PRIMARY
+    }
+
+    private static final ReadReplicaRouter INSTANCE = new ReadReplicaRouter();
+
+    // The write counts for each tenant/datasource
+    private final Map<String, ReplicaState> stateMap = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final AtomicLong routedCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicLong probeCount = new AtomicLong();
+    private final AtomicLong probeFailureCount = new AtomicLong();
+
+    /**
+     * The write count and replica watermark for a single tenant/datasource
+     */
+    private static class ReplicaState {
+        final AtomicLong writeCount = new AtomicLong();
+        final AtomicLong replicaWatermark = new AtomicLong();
+        final AtomicLong lastProbeTime = new AtomicLong(Long.MIN_VALUE / 2);
+    }
+
+    /**
+     * Get the router shared by all the connection strategies. Persistence instances are
+     * created per request, so the write counts must outlive any single strategy instance
+     * @return
+     */
+    public static ReadReplicaRouter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Make the routing key for the given tenant and datasource
+     * @param tenantId
+     * @param dsId
+     * @return
+     */
+    public static String makeKey(String tenantId, String dsId) {
+        return tenantId + "/" + dsId;
+    }
+
+    private ReplicaState getState(String key) {
+        return stateMap.computeIfAbsent(key, k -> new ReplicaState());
+    }
+
+    /**
+     * Decide where to send a read-only request. When {@link Route#PROBE} is returned,
+     * the caller must sample {@link #getWriteCount(String)}, check the replica and report
+     * the outcome with {@link #probeResult(String, long, boolean)} or {@link #probeFailed(String)}.
+     *
+     * @param key the tenant/datasource key
+     * @param nowMs the current time
+     * @param probeIntervalMs the minimum time between probes of a lagging replica
+     * @return
+     */
+    public Route route(String key, long nowMs, long probeIntervalMs) {
+        final ReplicaState state = getState(key);
+        if (state.replicaWatermark.get() >= state.writeCount.get()) {
+            routedCount.incrementAndGet();
+            return Route.REPLICA;
+        }
+
+        // Only one thread gets to probe within each interval. Everyone else
+        // falls back to the primary until the replica is known to have caught up
+        final long lastProbe = state.lastProbeTime.get();
+        if (nowMs - lastProbe >= probeIntervalMs && state.lastProbeTime.compareAndSet(lastProbe, nowMs)) {
+            probeCount.incrementAndGet();
+            return Route.PROBE;
+        }
+
+        fallbackCount.incrementAndGet();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Replica lagging for '" + key + "'; routing read to primary");
+        }
+        return Route.PRIMARY;
+    }
+
+    /**
+     * Get the number of write transactions committed through this server for the given key.
+     * A probe must sample this before it reads the WAL position of the primary
+     * @param key the tenant/datasource key
+     * @return
+     */
+    public long getWriteCount(String key) {
+        return getState(key).writeCount.get();
+    }
+
+    /**
+     * Record the outcome of a replica probe
+     * @param key the tenant/datasource key
+     * @param writeCount the write count sampled before the primary WAL position was read
+     * @param caughtUp true if the replica had replayed the WAL up to the primary position
+     * @return true if the replica has caught up and can be used for the current request
+     */
+    public boolean probeResult(String key, long writeCount, boolean caughtUp) {
+        final ReplicaState state = getState(key);
+        if (caughtUp) {
+            state.replicaWatermark.accumulateAndGet(writeCount, Math::max);
+        }
+
+        final boolean current = state.replicaWatermark.get() >= state.writeCount.get();
+        if (current) {
+            routedCount.incrementAndGet();
+        } else {
+            fallbackCount.incrementAndGet();
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Replica probe for '" + key + "': replicaWatermark=" + state.replicaWatermark.get()
+                + ", writeCount=" + state.writeCount.get() + ", current=" + current);
+        }
+        return current;
+    }
+
+    /**
+     * Record that the probe of the replica failed. The current request falls back to the primary
+     * @param key the tenant/datasource key
+     */
+    public void probeFailed(String key) {
+        probeFailureCount.incrementAndGet();
+        fallbackCount.incrementAndGet();
+    }
+
+    /**
+     * Record a write transaction which has been committed to the primary
+     * @param key the tenant/datasource key
+     */
+    public void recordWrite(String key) {
+        getState(key).writeCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of reads routed to a replica
+     */
+    public long getRoutedCount() {
+        return routedCount.get();
+    }
+
+    /**
+     * @return the number of reads which fell back to the primary
+     */
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    /**
+     * @return the number of times a replica was probed
+     */
+    public long getProbeCount() {
+        return probeCount.get();
+    }
+
+    /**
+     * @return the number of probes which failed
+     */
+    public long getProbeFailureCount() {
+        return probeFailureCount.get();
+    }
+}
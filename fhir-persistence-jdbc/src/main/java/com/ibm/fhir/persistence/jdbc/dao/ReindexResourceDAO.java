@@ -14,7 +14,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -73,6 +76,14 @@ public class ReindexResourceDAO extends ResourceDAOImpl {
             + "OFFSET ? ROWS FETCH FIRST 1 ROWS ONLY "
             ;
 
+    // Optimistic lock used to claim each resource picked by one of the above selects
+    private static final String CLAIM_RESOURCE = ""
+            + " UPDATE logical_resources  "
+            + "    SET reindex_tstamp = ?, "
+            + "        reindex_txid = ? "
+            + "  WHERE logical_resource_id = ? "
+            + "    AND reindex_txid = ? "; // make sure we have the txid we selected above
+
     /**
      * Public constructor
      * @param connection
@@ -179,28 +190,11 @@ public class ReindexResourceDAO extends ResourceDAOImpl {
             if (result != null) {
                 // We have picked a resource...now try and lock it. If this fails, we need
                 // to pick another resource to cover the race condition.
-                final String UPDATE = ""
-                        + " UPDATE logical_resources  "
-                        + "    SET reindex_tstamp = ?, "
-                        + "        reindex_txid = ? "
-                        + "  WHERE logical_resource_id = ? "
-                        + "    AND reindex_txid = ? "; // make sure we have the txid we selected above
-
-                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
-                    stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
-                    stmt.setLong(2, result.getTransactionId() + 1L);
-                    stmt.setLong(3, result.getLogicalResourceId());
-                    stmt.setLong(4, result.getTransactionId());
-                    int rowsAffected = stmt.executeUpdate();
-                    if (rowsAffected == 0) {
-                        // reindex_txid is not the same as when we selected, meaning that this update
-                        // was blocked and the resource was processed by another thread. Forget this
-                        // record and try again
-                        result = null;
-                    }
-                } catch (SQLException x) {
-                    logger.log(Level.SEVERE, UPDATE, x);
-                    throw translator.translate(x);
+                if (!claimResource(reindexTstamp, result)) {
+                    // reindex_txid is not the same as when we selected, meaning that this update
+                    // was blocked and the resource was processed by another thread. Forget this
+                    // record and try again
+                    result = null;
                 }
             } else {
                 // Offset beyond that last available row, so we need to shrink the range
@@ -213,6 +207,181 @@ public class ReindexResourceDAO extends ResourceDAOImpl {
         return result;
     }
 
+    /**
+     * Try to claim the given resource using the optimistic locking pattern. The
+     * claim fails if another thread changed reindex_txid since we selected the row.
+     * @param reindexTstamp
+     * @param rir
+     * @return true if the resource was claimed by this transaction
+     * @throws Exception
+     */
+    protected boolean claimResource(Instant reindexTstamp, ResourceIndexRecord rir) throws Exception {
+        // no need to close
+        Connection connection = getConnection();
+        IDatabaseTranslator translator = getTranslator();
+
+        try (PreparedStatement stmt = connection.prepareStatement(CLAIM_RESOURCE)) {
+            stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
+            stmt.setLong(2, rir.getTransactionId() + 1L);
+            stmt.setLong(3, rir.getLogicalResourceId());
+            stmt.setLong(4, rir.getTransactionId());
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, CLAIM_RESOURCE, x);
+            throw translator.translate(x);
+        }
+    }
+
+    /**
+     * Append the optional resource type and logical_resource_id range filters used to
+     * restrict a batch reindex to one partition of the logical_resources table
+     * @param query
+     * @param resourceTypeId
+     * @param fromLogicalResourceId inclusive lower bound, can be null
+     * @param toLogicalResourceId exclusive upper bound, can be null
+     */
+    protected void addPartitionFilter(StringBuilder query, Integer resourceTypeId, Long fromLogicalResourceId, Long toLogicalResourceId) {
+        if (resourceTypeId != null) {
+            query.append(" AND lr.resource_type_id = ? ");
+        }
+        if (fromLogicalResourceId != null) {
+            query.append(" AND lr.logical_resource_id >= ? ");
+        }
+        if (toLogicalResourceId != null) {
+            query.append(" AND lr.logical_resource_id < ? ");
+        }
+    }
+
+    /**
+     * Bind the values for the filters added by {@link #addPartitionFilter(StringBuilder, Integer, Long, Long)}
+     * @param stmt
+     * @param index the next parameter index to bind
+     * @param resourceTypeId
+     * @param fromLogicalResourceId
+     * @param toLogicalResourceId
+     * @return the next parameter index after the partition filter values
+     * @throws SQLException
+     */
+    protected int bindPartitionFilter(PreparedStatement stmt, int index, Integer resourceTypeId, Long fromLogicalResourceId, Long toLogicalResourceId) throws SQLException {
+        if (resourceTypeId != null) {
+            stmt.setInt(index++, resourceTypeId);
+        }
+        if (fromLogicalResourceId != null) {
+            stmt.setLong(index++, fromLogicalResourceId);
+        }
+        if (toLogicalResourceId != null) {
+            stmt.setLong(index++, toLogicalResourceId);
+        }
+        return index;
+    }
+
+    /**
+     * Pick the next batch of resources to process and lock them. Specializations for different
+     * databases may use different techniques to optimize locking/concurrency control. This
+     * default implementation selects a batch of candidates then claims each one using the
+     * same optimistic locking pattern as {@link #getNextResource(SecureRandom, Instant, Integer, String)}.
+     * Candidates claimed concurrently by another thread are dropped from the batch.
+     * @param random
+     * @param reindexTstamp
+     * @param resourceTypeId
+     * @param fromLogicalResourceId
+     * @param toLogicalResourceId
+     * @param maxCount
+     * @return the list of claimed resources, empty when there is nothing left to do
+     * @throws Exception
+     */
+    protected List<ResourceIndexRecord> getNextResources(SecureRandom random, Instant reindexTstamp, Integer resourceTypeId,
+        Long fromLogicalResourceId, Long toLogicalResourceId, int maxCount) throws Exception {
+        List<ResourceIndexRecord> result = new ArrayList<>(maxCount);
+
+        // no need to close
+        Connection connection = getConnection();
+        IDatabaseTranslator translator = getTranslator();
+
+        StringBuilder query = new StringBuilder();
+        query.append("  SELECT lr.logical_resource_id, lr.resource_type_id, lr.logical_id, lr.reindex_txid ");
+        query.append("    FROM logical_resources lr ");
+        query.append("   WHERE lr.reindex_tstamp < ? ");
+        addPartitionFilter(query, resourceTypeId, fromLogicalResourceId, toLogicalResourceId);
+        query.append("ORDER BY lr.logical_resource_id ");
+        query.append("OFFSET ? ROWS ");
+        query.append(translator.limit(Integer.toString(maxCount)));
+        final String select = query.toString();
+
+        // Same as the single resource pick, we use a random offset to reduce the chance
+        // of concurrent callers working the same partition colliding on the same rows,
+        // shrinking the range as the partition drains
+        int offsetRange = 1024;
+        do {
+            List<ResourceIndexRecord> candidates = new ArrayList<>(maxCount);
+            int offset = random.nextInt(offsetRange);
+            try (PreparedStatement stmt = connection.prepareStatement(select)) {
+                stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
+                int index = bindPartitionFilter(stmt, 2, resourceTypeId, fromLogicalResourceId, toLogicalResourceId);
+                stmt.setInt(index, offset);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    candidates.add(new ResourceIndexRecord(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+                }
+            } catch (SQLException x) {
+                logger.log(Level.SEVERE, select, x);
+                throw translator.translate(x);
+            }
+
+            if (candidates.size() > 0) {
+                for (ResourceIndexRecord candidate: candidates) {
+                    if (claimResource(reindexTstamp, candidate)) {
+                        result.add(candidate);
+                    }
+                }
+            } else {
+                offsetRange /= 2;
+            }
+        } while (offsetRange > 0 && result.isEmpty());
+
+        return result;
+    }
+
+    /**
+     * Claim a batch of up to maxCount resources needing to be reindexed. The batch can be
+     * restricted to a partition of the data (a resource type and/or a logical_resource_id range)
+     * so that multiple callers (possibly on different server nodes) can each work on a disjoint
+     * slice without contending for the same rows. Because each claimed resource is marked with
+     * the reindexTstamp, the process can be resumed at any time by calling again with the same
+     * reindexTstamp.
+     * @param reindexTstamp
+     * @param resourceTypeId optional resource type filter
+     * @param fromLogicalResourceId optional inclusive lower bound of the logical_resource_id range
+     * @param toLogicalResourceId optional exclusive upper bound of the logical_resource_id range
+     * @param maxCount the maximum number of resources to claim
+     * @return the list of claimed resources, empty when there is nothing left to do
+     * @throws Exception
+     */
+    public List<ResourceIndexRecord> getResourcesToReindex(Instant reindexTstamp, Integer resourceTypeId, Long fromLogicalResourceId,
+        Long toLogicalResourceId, int maxCount) throws Exception {
+        List<ResourceIndexRecord> result = getNextResources(RANDOM, reindexTstamp, resourceTypeId, fromLogicalResourceId, toLogicalResourceId, maxCount);
+
+        if (!result.isEmpty()) {
+            // resource_types is tiny, so one read of the whole table is cheaper than
+            // joining it into the claim statement
+            Map<Integer, String> resourceTypeNames = new HashMap<>();
+            for (Map.Entry<String, Integer> entry: readAllResourceTypeNames().entrySet()) {
+                resourceTypeNames.put(entry.getValue(), entry.getKey());
+            }
+
+            for (ResourceIndexRecord rir: result) {
+                String resourceType = resourceTypeNames.get(rir.getResourceTypeId());
+                if (resourceType == null) {
+                    logger.severe("Unknown resource_type_id for logical_resource_id=" + rir.getLogicalResourceId());
+                    throw new FHIRPersistenceResourceNotFoundException("resource type not found");
+                }
+                rir.setResourceType(resourceType);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Get the resource record we want to reindex. This might take a few attempts, because
      * there could be hundreds of threads all trying to do the same thing, and we may see
@@ -52,6 +52,35 @@ public interface ICommonTokenValuesCache {
     void resolveTokenValues(Collection<ResourceTokenValueRec> tokenValues,
         List<ResourceTokenValueRec> system);
 
+    /**
+     * Coordinate with other transactions adding the same new token values. Each of
+     * the given cache misses is either claimed by the current transaction and added
+     * to the upserts list, or resolved using the id committed by the transaction
+     * which claimed it first. Values which can't be resolved in time are also added
+     * to the upserts list. The caller must call {@link #finishClaims(boolean)} once it
+     * has tried to add the values, in a finally block.
+     * @param misses the records not found by resolveTokenValues
+     * @param upserts the records whose token values the caller must add
+     */
+    void claimTokenValues(Collection<ResourceTokenValueRec> misses, List<ResourceTokenValueRec> upserts);
+
+    /**
+     * Called once the values claimed by {@link #claimTokenValues(Collection, List)} have
+     * been added. If they were added and the current transaction is bound (see
+     * {@link #bindTransaction()}), the claims are kept until the transaction completes
+     * (see {@link #updateSharedMaps()} and {@link #clearLocalMaps()}). Otherwise nobody
+     * would complete them, so they are released now without ids and any waiting
+     * transactions add the values themselves.
+     * @param added true if the claimed values were added without error
+     */
+    void finishClaims(boolean added);
+
+    /**
+     * Mark the transaction on the current thread as one which will report its completion
+     * by calling {@link #updateSharedMaps()} or {@link #clearLocalMaps()}
+     */
+    void bindTransaction();
+
      /**
       * Look up the id of the named codeSystem
       * @param codeSystem
@@ -0,0 +1,304 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.impl;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.search.context.SeekKey;
+
+/**
+ * DAO to fetch the payloads of the resources in the compartments of the members of a group,
+ * a page at a time, in (last_updated, logical_resource_id) order.
+ *
+ * <p>The members are never read into memory. The member references of the group are already
+ * indexed in Group_RESOURCE_TOKEN_REFS and the compartment references of each resource in
+ * xx_RESOURCE_TOKEN_REFS; both point at the same common_token_values row for a given patient,
+ * so every patient of the group is matched with a single join, whatever the size of the group:
+ *
+ * <pre>
+ * SELECT lr.logical_id, r.last_updated, r.resource_id, r.data, lr.logical_resource_id
+ *   FROM Observation_RESOURCES r
+ *   JOIN Observation_LOGICAL_RESOURCES lr ON lr.logical_resource_id = r.logical_resource_id
+ *    AND lr.current_resource_id = r.resource_id
+ *  WHERE r.is_deleted = 'N'
+ *    AND lr.logical_resource_id IN (
+ *        SELECT ref.logical_resource_id FROM Observation_RESOURCE_TOKEN_REFS ref
+ *         WHERE ref.parameter_name_id = {ibm-internal-Patient-Compartment}
+ *           AND ref.common_token_value_id IN (
+ *               SELECT gref.common_token_value_id FROM Group_RESOURCE_TOKEN_REFS gref
+ *                 JOIN Group_LOGICAL_RESOURCES glr ON glr.logical_resource_id = gref.logical_resource_id
+ *                WHERE gref.parameter_name_id = {member}
+ *                  AND glr.logical_id IN (?, ...)))
+ *    AND (r.last_updated > ? OR (r.last_updated = ? AND lr.logical_resource_id > ?))
+ *  ORDER BY r.last_updated, lr.logical_resource_id
+ *  FETCH FIRST n ROWS ONLY
+ * </pre>
+ *
+ * Nested groups are expanded by {@link #expandGroups(Connection)} with one query per level of
+ * nesting, also from the indexed member references. An export expands them once and passes the
+ * expanded groups to the DAO which reads each page.
+ */
+public class FetchGroupMemberPayloadsDAO {
+    private static final Logger logger = Logger.getLogger(FetchGroupMemberPayloadsDAO.class.getName());
+
+    private static final Calendar UTC_CALENDAR = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+    private static final String PATIENT = "Patient";
+    private static final String GROUP = "Group";
+
+    // The database translator to help tweak the syntax needed for different DB support
+    private final IDatabaseTranslator translator;
+
+    // The FHIR data schema name
+    private final String schemaName;
+
+    // The name of the resource type to export (e.g. "Observation")
+    private final String resourceType;
+
+    // The logical ids of the group and of the groups nested in it
+    private final Set<String> groupIds = new LinkedHashSet<>();
+
+    // The parameter_name_id of the Group member parameter
+    private final int memberParameterNameId;
+
+    // The parameter_name_id of the Patient compartment parameter, used when the resource type is not Patient
+    private final int compartmentParameterNameId;
+
+    // The code_system_id of the Patient and Group references
+    private final int patientCodeSystemId;
+    private final int groupCodeSystemId;
+
+    /**
+     * Public constructor
+     *
+     * @param translator
+     * @param schemaName the FHIR data schema
+     * @param resourceType the resource type name
+     * @param groupIds the logical ids of the group, and of the groups nested in it once they are expanded
+     * @param memberParameterNameId the parameter_name_id of the Group member parameter
+     * @param compartmentParameterNameId the parameter_name_id of the Patient compartment parameter
+     * @param patientCodeSystemId the code_system_id of the Patient references
+     * @param groupCodeSystemId the code_system_id of the Group references
+     */
+    public FetchGroupMemberPayloadsDAO(IDatabaseTranslator translator, String schemaName, String resourceType, Collection<String> groupIds,
+            int memberParameterNameId, int compartmentParameterNameId, int patientCodeSystemId, int groupCodeSystemId) {
+        this.translator = translator;
+        this.schemaName = schemaName;
+        this.resourceType = resourceType;
+        this.groupIds.addAll(groupIds);
+        this.memberParameterNameId = memberParameterNameId;
+        this.compartmentParameterNameId = compartmentParameterNameId;
+        this.patientCodeSystemId = patientCodeSystemId;
+        this.groupCodeSystemId = groupCodeSystemId;
+    }
+
+    /**
+     * Add the groups nested in the group, at any depth, to the groups whose members are exported.
+     * Each level of nesting is read with one query; cycles are ignored.
+     *
+     * @param c
+     * @throws FHIRPersistenceException
+     */
+    public void expandGroups(Connection c) throws FHIRPersistenceException {
+        Collection<String> level = new ArrayList<>(groupIds);
+        while (!level.isEmpty()) {
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT DISTINCT ctv.token_value FROM ");
+            query.append(schemaName).append(DOT).append(GROUP).append("_resource_token_refs AS gref ");
+            query.append("  JOIN ").append(schemaName).append(DOT).append("common_token_values AS ctv ");
+            query.append("    ON ctv.common_token_value_id = gref.common_token_value_id ");
+            query.append(" WHERE gref.parameter_name_id = ").append(memberParameterNameId);
+            query.append("   AND ctv.code_system_id = ").append(groupCodeSystemId);
+            query.append("   AND gref.logical_resource_id IN (");
+            appendGroupLogicalResourceIds(query, level.size());
+            query.append(")");
+
+            final String select = query.toString();
+            List<String> nested = new ArrayList<>();
+            try (PreparedStatement ps = c.prepareStatement(select)) {
+                int a = 1;
+                for (String groupId : level) {
+                    ps.setString(a++, groupId);
+                }
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    String groupId = rs.getString(1);
+                    if (groupIds.add(groupId)) {
+                        nested.add(groupId);
+                    }
+                }
+            } catch (SQLException x) {
+                logger.log(Level.SEVERE, "query: " + select + " " + level, x);
+                throw new FHIRPersistenceDataAccessException("FetchGroupMemberPayloads expand query failed");
+            }
+            level = nested;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Groups to export: " + groupIds);
+        }
+    }
+
+    /**
+     * @return the logical ids of the groups whose members are exported
+     */
+    public List<String> getGroupIds() {
+        return new ArrayList<>(groupIds);
+    }
+
+    /**
+     * Read a page of payloads, feeding each to the processor
+     *
+     * @param c
+     * @param fromLastUpdated read resources last updated at or after this time, if not null
+     * @param toLastUpdated read resources last updated before this time, if not null
+     * @param seekKey read the resources after this position, or from the beginning if null
+     * @param limit the maximum number of resources to read
+     * @param processor the function to process each payload. The stream must be processed before returning.
+     * @return the position of the last resource processed, or null if there were none
+     * @throws FHIRPersistenceException
+     */
+    public SeekKey run(Connection c, Instant fromLastUpdated, Instant toLastUpdated, SeekKey seekKey, int limit,
+            Function<ResourcePayload,Boolean> processor) throws FHIRPersistenceException {
+        final boolean isPatient = PATIENT.equals(resourceType);
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT lr.logical_id, r.last_updated, r.resource_id, r.data, lr.logical_resource_id FROM ");
+        query.append(schemaName).append(DOT).append(resourceType).append("_resources AS r ");
+        query.append("  JOIN ").append(schemaName).append(DOT).append(resourceType).append("_logical_resources AS lr ");
+        query.append("    ON lr.logical_resource_id = r.logical_resource_id ");
+        query.append("   AND lr.current_resource_id = r.resource_id ");
+        query.append(" WHERE r.is_deleted = 'N' ");
+        if (isPatient) {
+            // The patients are the members themselves
+            query.append("   AND lr.logical_id IN (");
+            query.append("SELECT ctv.token_value FROM ");
+            query.append(schemaName).append(DOT).append(GROUP).append("_resource_token_refs AS gref ");
+            query.append("  JOIN ").append(schemaName).append(DOT).append("common_token_values AS ctv ");
+            query.append("    ON ctv.common_token_value_id = gref.common_token_value_id ");
+            query.append(" WHERE gref.parameter_name_id = ").append(memberParameterNameId);
+            query.append("   AND ctv.code_system_id = ").append(patientCodeSystemId);
+            query.append("   AND gref.logical_resource_id IN (");
+            appendGroupLogicalResourceIds(query, groupIds.size());
+            query.append(")) ");
+        } else {
+            // The resources whose compartment references point at the same common_token_values row as a member reference
+            query.append("   AND lr.logical_resource_id IN (");
+            query.append("SELECT ref.logical_resource_id FROM ");
+            query.append(schemaName).append(DOT).append(resourceType).append("_resource_token_refs AS ref ");
+            query.append(" WHERE ref.parameter_name_id = ").append(compartmentParameterNameId);
+            query.append("   AND ref.common_token_value_id IN (");
+            query.append("SELECT gref.common_token_value_id FROM ");
+            query.append(schemaName).append(DOT).append(GROUP).append("_resource_token_refs AS gref ");
+            query.append(" WHERE gref.parameter_name_id = ").append(memberParameterNameId);
+            query.append("   AND gref.logical_resource_id IN (");
+            appendGroupLogicalResourceIds(query, groupIds.size());
+            query.append("))) ");
+        }
+
+        if (fromLastUpdated != null) {
+            query.append("   AND r.last_updated >= ? ");
+        }
+        if (toLastUpdated != null) {
+            query.append("   AND r.last_updated < ? ");
+        }
+        if (seekKey != null) {
+            query.append("   AND (r.last_updated > ? OR (r.last_updated = ? AND lr.logical_resource_id > ?)) ");
+        }
+        query.append(" ORDER BY r.last_updated, lr.logical_resource_id ");
+        query.append(translator.limit(Integer.toString(limit)));
+
+        final String select = query.toString();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Fetch group member payloads query: " + select);
+        }
+
+        SeekKey last = null;
+        try (PreparedStatement ps = c.prepareStatement(select)) {
+            int a = 1;
+            for (String groupId : groupIds) {
+                ps.setString(a++, groupId);
+            }
+            if (fromLastUpdated != null) {
+                ps.setTimestamp(a++, Timestamp.from(fromLastUpdated), UTC_CALENDAR);
+            }
+            if (toLastUpdated != null) {
+                ps.setTimestamp(a++, Timestamp.from(toLastUpdated), UTC_CALENDAR);
+            }
+            if (seekKey != null) {
+                Timestamp lastUpdated = Timestamp.from(seekKey.getLastUpdated());
+                ps.setTimestamp(a++, lastUpdated, UTC_CALENDAR);
+                ps.setTimestamp(a++, lastUpdated, UTC_CALENDAR);
+                ps.setLong(a++, seekKey.getLogicalResourceId());
+            }
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                // make sure we get the timestamp as a UTC value
+                String logicalId = rs.getString(1);
+                Instant lastUpdated = rs.getTimestamp(2, UTC_CALENDAR).toInstant();
+                long resourceId = rs.getLong(3);
+                last = new SeekKey(lastUpdated, rs.getLong(5));
+                try (InputStream is = new GZIPInputStream(rs.getBinaryStream(4))) {
+                    Boolean cont = processor.apply(new ResourcePayload(logicalId, lastUpdated, resourceId, is));
+                    if (cont == null || !cont) {
+                        // the processor has asked us to stop
+                        break;
+                    }
+                }
+            }
+        } catch (IOException x) {
+            logger.log(Level.SEVERE, "query: " + select + " " + groupIds, x);
+            throw new FHIRPersistenceDataAccessException("FetchGroupMemberPayloads query failed");
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, "query: " + select + " " + groupIds, x);
+            throw new FHIRPersistenceDataAccessException("FetchGroupMemberPayloads query failed");
+        }
+        return last;
+    }
+
+    /**
+     * Append a subquery selecting the logical_resource_id of the current version of each group, given
+     * as a bind variable for its logical id
+     */
+    private void appendGroupLogicalResourceIds(StringBuilder query, int count) {
+        query.append("SELECT glr.logical_resource_id FROM ");
+        query.append(schemaName).append(DOT).append(GROUP).append("_logical_resources AS glr ");
+        query.append("  JOIN ").append(schemaName).append(DOT).append(GROUP).append("_resources AS gr ");
+        query.append("    ON gr.resource_id = glr.current_resource_id ");
+        query.append("   AND gr.is_deleted = 'N' ");
+        query.append(" WHERE glr.logical_id IN (");
+        for (int i = 0; i < count; i++) {
+            query.append(i == 0 ? "?" : ",?");
+        }
+        query.append(")");
+    }
+}
@@ -15,7 +15,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.Calendar;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,6 +31,7 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
  */
 public class FetchPayloadsForIdsDAO {
     private final static Logger logger = Logger.getLogger(FetchPayloadsForIdsDAO.class.getName());
+    private static final Calendar UTC_CALENDAR = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
 
     // The list of resource ids for which we will fetch the payload data
     private final List<Long> resourceIds;
@@ -75,10 +78,11 @@ public class FetchPayloadsForIdsDAO {
         // We already did the deleted check when performing the initial scan for resource-ids
         // so this query does not need to include the deleted check by design - it won't change
         // for this resource version. Ordering is not important (because it is arbitrary anyway)
-        query.append("SELECT lr.logical_id, r.resource_id, r.data FROM ");
+        query.append("SELECT lr.logical_id, r.last_updated, r.resource_id, r.data FROM ");
         query.append(schemaName).append(DOT).append(rTableName).append(" AS r, ");
         query.append(schemaName).append(DOT).append(lrTableName).append(" AS lr ");
         query.append(" WHERE lr.logical_resource_id = r.logical_resource_id "); // join to parent PK
+        query.append("   AND r.data IS NOT NULL "); // skip versions which have been purged
         query.append("   AND r.resource_id IN (");
 
         // Add bind-variable markers for every resourceId value we want to fetch
@@ -107,7 +111,7 @@ public class FetchPayloadsForIdsDAO {
                 // we can save a ton of CPU. The stream is closed by ResultSet (according to the docs). ResultSet
                 // will be closed when the PreparedStatement is closed
                 String logicalId = rs.getString(1);
-                Instant lastUpdated = Instant.ofEpochMilli(rs.getTimestamp(2).getTime());
+                Instant lastUpdated = rs.getTimestamp(2, UTC_CALENDAR).toInstant();
                 long resourceId = rs.getLong(3);
                 InputStream is = new GZIPInputStream(rs.getBinaryStream(4));
                 ResourcePayload rp =  new ResourcePayload(logicalId, lastUpdated, resourceId, is);
@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.persistence.RetentionPolicy;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.jdbc.util.VersionPurgeEngine.Batch;
+
+/**
+ * DAO to purge the payloads of the superseded versions of a batch of logical resources
+ * which fall outside the retention policy for their resource type.
+ *
+ * <p>The xx_RESOURCES row of a purged version is kept with a null DATA column, as a
+ * tombstone, so version ids, the resource change log and the whole-system history are
+ * not affected. Only logical resources with more versions than the policy keeps are
+ * examined, which the current version_id in xx_LOGICAL_RESOURCES tells us without
+ * touching xx_RESOURCES.
+ */
+public class PurgeResourceVersionsDAO {
+    private static final Logger logger = Logger.getLogger(PurgeResourceVersionsDAO.class.getName());
+
+    private static final Calendar UTC_CALENDAR = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+    // The database translator to help tweak the syntax needed for different DB support
+    private final IDatabaseTranslator translator;
+
+    // The FHIR data schema name
+    private final String schemaName;
+
+    // The name of the resource type (e.g. "Patient")
+    private final String resourceType;
+
+    // The number of versions to keep, including the current version
+    private final int keepVersions;
+
+    // Versions last updated at or after this time are kept. Can be null.
+    private final Instant purgeBefore;
+
+    // Examine logical resources after this logical_resource_id
+    private final long afterLogicalResourceId;
+
+    // The maximum number of logical resources to examine
+    private final int batchSize;
+
+    /**
+     * Public constructor
+     *
+     * @param translator
+     * @param schemaName
+     * @param resourceType
+     * @param policy the retention policy for the resource type
+     * @param now the current time, from which the age of a version is measured
+     * @param afterLogicalResourceId
+     * @param batchSize
+     */
+    public PurgeResourceVersionsDAO(IDatabaseTranslator translator, String schemaName, String resourceType, RetentionPolicy policy,
+        Instant now, long afterLogicalResourceId, int batchSize) {
+        this.translator = translator;
+        this.schemaName = schemaName;
+        this.resourceType = resourceType;
+        this.keepVersions = policy.getMaxVersions() != null ? policy.getMaxVersions() : 1;
+        this.purgeBefore = policy.getPurgeBefore(now);
+        this.afterLogicalResourceId = afterLogicalResourceId;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Purge the next batch
+     *
+     * @param c
+     * @return the outcome of the batch
+     * @throws FHIRPersistenceException
+     */
+    public Batch run(Connection c) throws FHIRPersistenceException {
+        final String tablePrefix = schemaName + "." + resourceType;
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT lr.logical_resource_id, lr.version_id ")
+            .append("  FROM ").append(tablePrefix).append("_logical_resources lr ")
+            .append(" WHERE lr.logical_resource_id > ? ")
+            .append("   AND lr.version_id > ? ")
+            .append(" ORDER BY lr.logical_resource_id ")
+            .append(translator.limit(Integer.toString(batchSize)));
+        final String SELECT = query.toString();
+
+        StringBuilder update = new StringBuilder();
+        update.append("UPDATE ").append(tablePrefix).append("_resources ")
+            .append("   SET data = NULL ")
+            .append(" WHERE logical_resource_id = ? ")
+            .append("   AND version_id <= ? ")
+            .append("   AND data IS NOT NULL ");
+        if (purgeBefore != null) {
+            update.append(" AND last_updated < ? ");
+        }
+        final String UPDATE = update.toString();
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("PURGE VERSIONS: " + SELECT + "; [" + afterLogicalResourceId + ", " + keepVersions + "]; " + UPDATE + "; [" + purgeBefore + "]");
+        }
+
+        int resourceCount = 0;
+        long lastLogicalResourceId = afterLogicalResourceId;
+        int purgedCount = 0;
+        try (PreparedStatement select = c.prepareStatement(SELECT);
+                PreparedStatement ps = c.prepareStatement(UPDATE)) {
+            select.setLong(1, afterLogicalResourceId);
+            select.setInt(2, keepVersions);
+            ResultSet rs = select.executeQuery();
+            while (rs.next()) {
+                lastLogicalResourceId = rs.getLong(1);
+                resourceCount++;
+
+                ps.setLong(1, lastLogicalResourceId);
+                ps.setInt(2, rs.getInt(2) - keepVersions);
+                if (purgeBefore != null) {
+                    ps.setTimestamp(3, Timestamp.from(purgeBefore), UTC_CALENDAR);
+                }
+                ps.addBatch();
+            }
+
+            if (resourceCount > 0) {
+                for (int count : ps.executeBatch()) {
+                    // Some drivers report SUCCESS_NO_INFO rather than a row count
+                    if (count > 0) {
+                        purgedCount += count;
+                    }
+                }
+            }
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, "Purge versions failed: " + UPDATE, x);
+            throw new FHIRPersistenceDataAccessException("Purge versions failed for resource type '" + resourceType + "'");
+        }
+
+        return new Batch(resourceCount, lastLogicalResourceId, purgedCount);
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -12,13 +12,16 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.persistence.jdbc.util.IdBlockAllocator;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
 
 /**
  * Handles the acquisition of sequence values from REFERENCES_SEQUENCE. For optimization, the
  * sequence increments by a larger value, allowing us to allocate numbers without having to ask
  * the database each time. This helps, because we assume each persistence operation will need to
- * use a handful of values, and anything we can do to avoid database round-trips is a good thing
+ * use a handful of values, and anything we can do to avoid database round-trips is a good thing.
+ * The values are shared by all DAO instances through the {@link IdBlockAllocator} for the current
+ * tenant/datastore.
  */
 public class ReferencesSequenceDAO {
 
@@ -31,12 +34,6 @@ public class ReferencesSequenceDAO {
     // the translator to help us create the right syntax for the target database
     private final IDatabaseTranslator translator;
 
-    // the number of values we've allocated from the current base
-    private int allocated = 0;
-    
-    // The next value we most recently obtained from the database
-    private long nextValueBase = -1;
-    
     public ReferencesSequenceDAO(Connection c, String schemaName, IDatabaseTranslator tx) {
         this.connection = c;
         this.schemaName = schemaName;
@@ -48,21 +45,31 @@ public class ReferencesSequenceDAO {
      * @return
      */
     public long nextValue() {
+        try {
+            return IdBlockAllocator.getInstance(FhirSchemaConstants.REFERENCES_SEQUENCE).nextValue(this::nextBlock);
+        } catch (SQLException x) {
+            throw translator.translate(x);
+        }
+    }
 
-        if (nextValueBase < 0 || allocated == FhirSchemaConstants.REFERENCES_SEQUENCE_INCREMENT) {
-            // recharge
-            try (Statement s = connection.createStatement()) {
-                ResultSet rs = s.executeQuery(translator.selectSequenceNextValue(schemaName, FhirSchemaConstants.REFERENCES_SEQUENCE));
-                if (rs.next()) {
-                    nextValueBase = rs.getLong(1);
-                    allocated = 0;
-                } else {
-                    throw new IllegalStateException("sequence did not return a value!");
+    /**
+     * Reserve the values from the next base of the sequence up to the next increment
+     * @return
+     * @throws SQLException
+     */
+    private long[] nextBlock() throws SQLException {
+        try (Statement s = connection.createStatement()) {
+            ResultSet rs = s.executeQuery(translator.selectSequenceNextValue(schemaName, FhirSchemaConstants.REFERENCES_SEQUENCE));
+            if (rs.next()) {
+                final long nextValueBase = rs.getLong(1);
+                long[] result = new long[FhirSchemaConstants.REFERENCES_SEQUENCE_INCREMENT];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = nextValueBase + i;
                 }
-            } catch (SQLException x) {
-                throw translator.translate(x);
+                return result;
+            } else {
+                throw new IllegalStateException("sequence did not return a value!");
             }
         }
-        return nextValueBase + allocated++;
     }
 }
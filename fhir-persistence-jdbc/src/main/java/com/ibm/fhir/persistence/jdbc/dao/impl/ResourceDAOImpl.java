@@ -76,6 +76,9 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
     public static final int IDX_DATA = 6;
     public static final int IDX_LOGICAL_ID = 7;
 
+    // optional column used by queries which return resources of more than one type (e.g. combined include queries)
+    public static final int IDX_RESOURCE_TYPE = 8;
+
     // Read the current version of the resource (even if the resource has been deleted)
     private static final String SQL_READ = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
             "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
@@ -94,26 +97,26 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
     // Don't forget that we must account for IN and OUT parameters.
     private static final String SQL_INSERT_WITH_PARAMETERS = "CALL %s.add_any_resource(?,?,?,?,?,?,?,?)";
 
-    // Read version history of the resource identified by its logical-id
+    // Read version history of the resource identified by its logical-id, skipping versions which have been purged
     private static final String SQL_HISTORY =
             "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
                     "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
-                    "LR.LOGICAL_ID = ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
+                    "LR.LOGICAL_ID = ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND R.DATA IS NOT NULL " +
                     "ORDER BY R.VERSION_ID DESC ";
 
     // Count the number of versions we have for the resource identified by its logical-id
     private static final String SQL_HISTORY_COUNT = "SELECT COUNT(R.VERSION_ID) FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE LR.LOGICAL_ID = ? AND " +
-            "R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID";
+            "R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND R.DATA IS NOT NULL";
 
     private static final String SQL_HISTORY_FROM_DATETIME =
             "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
                     "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
-                    "LR.LOGICAL_ID = ? AND R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
+                    "LR.LOGICAL_ID = ? AND R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND R.DATA IS NOT NULL " +
                     "ORDER BY R.VERSION_ID DESC ";
 
     private static final String SQL_HISTORY_FROM_DATETIME_COUNT =
             "SELECT COUNT(R.VERSION_ID) FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE LR.LOGICAL_ID = ? AND " +
-                    "R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID";
+                    "R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND R.DATA IS NOT NULL";
 
     private static final String SQL_READ_ALL_RESOURCE_TYPE_NAMES = "SELECT RESOURCE_TYPE_ID, RESOURCE_TYPE FROM RESOURCE_TYPES";
 
@@ -264,6 +267,9 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
             resource.setLogicalId(resultSet.getString(IDX_LOGICAL_ID));
             resource.setVersionId(resultSet.getInt(IDX_VERSION_ID));
             resource.setDeleted(resultSet.getString(IDX_IS_DELETED).equals("Y") ? true : false);
+            if (resultSet.getMetaData().getColumnCount() >= IDX_RESOURCE_TYPE) {
+                resource.setResourceType(resultSet.getString(IDX_RESOURCE_TYPE));
+            }
         } catch (Throwable e) {
             FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure creating Resource DTO.");
             throw severe(log, fx, e);
@@ -163,7 +163,19 @@ public abstract class ResourceReferenceDAO implements IResourceReferenceDAO, Aut
         // for all the token values, upserting anything new
         List<ResourceTokenValueRec> valueMisses = new ArrayList<>();
         cache.resolveTokenValues(xrefs, valueMisses);
-        upsertCommonTokenValues(valueMisses);
+
+        // Concurrent transactions often add the same new values, so only upsert
+        // the ones which aren't already being added by someone else
+        List<ResourceTokenValueRec> valueUpserts = new ArrayList<>();
+        boolean added = false;
+        try {
+            cache.claimTokenValues(valueMisses, valueUpserts);
+            upsertCommonTokenValues(valueUpserts);
+            added = true;
+        } finally {
+            // Don't leave other transactions waiting on claims nobody will complete
+            cache.finishClaims(added);
+        }
 
         insertResourceTokenRefs(resourceType, xrefs);
     }
@@ -413,7 +425,19 @@ public abstract class ResourceReferenceDAO implements IResourceReferenceDAO, Aut
         // for all the token values, upserting anything new
         List<ResourceTokenValueRec> valueMisses = new ArrayList<>();
         cache.resolveTokenValues(records, valueMisses);
-        upsertCommonTokenValues(valueMisses);
+
+        // Concurrent transactions often add the same new values, so only upsert
+        // the ones which aren't already being added by someone else
+        List<ResourceTokenValueRec> valueUpserts = new ArrayList<>();
+        boolean added = false;
+        try {
+            cache.claimTokenValues(valueMisses, valueUpserts);
+            upsertCommonTokenValues(valueUpserts);
+            added = true;
+        } finally {
+            // Don't leave other transactions waiting on claims nobody will complete
+            cache.finishClaims(added);
+        }
 
         // Now split the records into groups based on resource type.
         Map<String,List<ResourceTokenValueRec>> recordMap = new HashMap<>();
@@ -0,0 +1,285 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.impl;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+
+/**
+ * DAO to split the resources scanned by {@link FetchResourcePayloadsDAO} into ranges of last_updated
+ * holding about the same number of resources, so that the ranges can be exported in parallel.
+ *
+ * <p>The distribution of the last_updated values is sampled: each sample is the first resource at or
+ * after a logical_resource_id picked at regular intervals between the smallest and the largest
+ * logical_resource_id of the type, which is a single index probe. The boundaries are the quantiles of
+ * the samples which fall in the window.
+ *
+ * <p>The number of resources in the window, which decides the number of ranges, is estimated without
+ * scanning the table: the row count of the logical resources table in the catalog statistics, times
+ * the share of the samples which are current resources in the window. Only when the database has no
+ * such statistics, e.g. Derby, or a table which was never analyzed, are the resources counted.
+ */
+public class SplitResourcePayloadsDAO {
+    private static final Logger logger = Logger.getLogger(SplitResourcePayloadsDAO.class.getName());
+
+    private static final Calendar UTC_CALENDAR = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+    // The number of samples taken for each range
+    private static final int SAMPLES_PER_RANGE = 32;
+
+    // The database translator to help tweak the syntax needed for different DB support
+    private final IDatabaseTranslator translator;
+
+    // The FHIR data schema name
+    private final String schemaName;
+
+    // The name of the resource type (e.g. "Patient")
+    private final String resourceType;
+
+    // The window to split. Both can be null.
+    private final Instant fromLastUpdated;
+    private final Instant toLastUpdated;
+
+    /**
+     * Public constructor
+     *
+     * @param translator
+     * @param schemaName
+     * @param resourceType
+     * @param fromLastUpdated the start of the window, inclusive, or null
+     * @param toLastUpdated the end of the window, inclusive, or null
+     */
+    public SplitResourcePayloadsDAO(IDatabaseTranslator translator, String schemaName, String resourceType, Instant fromLastUpdated,
+        Instant toLastUpdated) {
+        this.translator = translator;
+        this.schemaName = schemaName;
+        this.resourceType = resourceType;
+        this.fromLastUpdated = fromLastUpdated;
+        this.toLastUpdated = toLastUpdated;
+    }
+
+    /**
+     * Compute the boundaries between the ranges
+     *
+     * @param c
+     * @param rangeSize the minimum number of resources in a range
+     * @param maxRanges the maximum number of ranges
+     * @return the boundaries, in ascending order; empty if the window holds too few resources to split
+     * @throws FHIRPersistenceException
+     */
+    public List<Instant> run(Connection c, long rangeSize, int maxRanges) throws FHIRPersistenceException {
+        if (rangeSize <= 0 || maxRanges < 2) {
+            return Collections.emptyList();
+        }
+
+        // Too few resources of the type, whatever the window
+        long tableRows = estimateTableRows(c);
+        if (tableRows >= 0 && tableRows / rangeSize < 2) {
+            return Collections.emptyList();
+        }
+
+        List<Instant> samples = new ArrayList<>();
+        int probed = sample(c, maxRanges * SAMPLES_PER_RANGE, samples);
+        long count;
+        if (tableRows >= 0) {
+            count = probed == 0 ? 0 : tableRows * samples.size() / probed;
+        } else {
+            count = count(c);
+        }
+        int ranges = (int) Math.min(maxRanges, count / rangeSize);
+        if (ranges < 2) {
+            return Collections.emptyList();
+        }
+        Collections.sort(samples);
+
+        // Each boundary is truncated to the precision of the stored timestamps, so that the end of the
+        // previous range can be given as the boundary less one microsecond
+        List<Instant> result = new ArrayList<>();
+        for (int i = 1; i < ranges; i++) {
+            int index = i * samples.size() / ranges;
+            if (index >= samples.size()) {
+                break;
+            }
+            Instant boundary = samples.get(index).truncatedTo(ChronoUnit.MICROS);
+            if ((fromLastUpdated == null || boundary.isAfter(fromLastUpdated))
+                    && (toLastUpdated == null || !boundary.isAfter(toLastUpdated))
+                    && (result.isEmpty() || boundary.isAfter(result.get(result.size() - 1)))) {
+                result.add(boundary);
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Split " + count + " " + resourceType + " resources from " + samples.size() + " samples: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Read the number of rows of the logical resources table of the type from the catalog statistics
+     *
+     * @return the number of rows, or -1 if there are no statistics
+     */
+    private long estimateTableRows(Connection c) throws FHIRPersistenceException {
+        final String tableName = resourceType + "_logical_resources";
+        final String select;
+        final String schema;
+        final String table;
+        switch (translator.getType()) {
+        case POSTGRESQL:
+            // reltuples is -1, or 0 before PostgreSQL 14, until the table is first analyzed
+            select = "SELECT c.reltuples FROM pg_catalog.pg_class c JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+                    + "WHERE n.nspname = ? AND c.relname = ?";
+            schema = schemaName.toLowerCase();
+            table = tableName.toLowerCase();
+            break;
+        case DB2:
+            // card is -1 until RUNSTATS is run
+            select = "SELECT card FROM syscat.tables WHERE tabschema = ? AND tabname = ?";
+            schema = schemaName.toUpperCase();
+            table = tableName.toUpperCase();
+            break;
+        default:
+            return -1;
+        }
+
+        try (PreparedStatement ps = c.prepareStatement(select)) {
+            ps.setString(1, schema);
+            ps.setString(2, table);
+            ResultSet rs = ps.executeQuery();
+            long rows = rs.next() ? rs.getLong(1) : -1;
+            return rows > 0 ? rows : -1;
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, "query: " + select + "[" + schema + ", " + table + "]", x);
+            throw new FHIRPersistenceDataAccessException("SplitResourcePayloads statistics query failed");
+        }
+    }
+
+    /**
+     * Count the current resources in the window
+     */
+    private long count(Connection c) throws FHIRPersistenceException {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT count(*) FROM ");
+        query.append(schemaName).append(DOT).append(resourceType).append("_resources AS r, ");
+        query.append(schemaName).append(DOT).append(resourceType).append("_logical_resources AS lr ");
+        query.append(" WHERE r.is_deleted = 'N' ");
+        query.append("   AND lr.current_resource_id = r.resource_id ");
+        appendWindow(query);
+
+        final String select = query.toString();
+        try (PreparedStatement ps = c.prepareStatement(select)) {
+            setWindow(ps, 1);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, "query: " + select + "[fromLastUpdated=" + fromLastUpdated + ", toLastUpdated=" + toLastUpdated + "]", x);
+            throw new FHIRPersistenceDataAccessException("SplitResourcePayloads count query failed");
+        }
+    }
+
+    /**
+     * Sample the last_updated values of the current resources in the window
+     *
+     * @param c
+     * @param samples the number of probes
+     * @param result the last_updated values of the probed resources which are current and in the window
+     * @return the number of probes which found a resource
+     */
+    private int sample(Connection c, int samples, List<Instant> result) throws FHIRPersistenceException {
+        int probed = 0;
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT MIN(lr.logical_resource_id), MAX(lr.logical_resource_id) FROM ");
+        query.append(schemaName).append(DOT).append(resourceType).append("_logical_resources AS lr ");
+        final String minMax = query.toString();
+
+        query = new StringBuilder();
+        query.append("SELECT r.last_updated, r.is_deleted FROM ");
+        query.append(schemaName).append(DOT).append(resourceType).append("_logical_resources AS lr ");
+        query.append("  JOIN ").append(schemaName).append(DOT).append(resourceType).append("_resources AS r ");
+        query.append("    ON r.resource_id = lr.current_resource_id ");
+        query.append(" WHERE lr.logical_resource_id >= ? ");
+        query.append(" ORDER BY lr.logical_resource_id ");
+        query.append(translator.limit("1"));
+        final String probe = query.toString();
+
+        String select = minMax;
+        try {
+            long minId;
+            long maxId;
+            try (PreparedStatement ps = c.prepareStatement(minMax)) {
+                ResultSet rs = ps.executeQuery();
+                if (!rs.next()) {
+                    return probed;
+                }
+                minId = rs.getLong(1);
+                maxId = rs.getLong(2);
+            }
+
+            select = probe;
+            try (PreparedStatement ps = c.prepareStatement(probe)) {
+                for (int i = 0; i < samples; i++) {
+                    ps.setLong(1, minId + (maxId - minId) * i / samples);
+                    ResultSet rs = ps.executeQuery();
+                    if (rs.next()) {
+                        // The resources outside the window are kept as probes, for the share of the table in the window
+                        probed++;
+                        Instant lastUpdated = rs.getTimestamp(1, UTC_CALENDAR).toInstant();
+                        if ("N".equals(rs.getString(2)) && isInWindow(lastUpdated)) {
+                            result.add(lastUpdated);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, "query: " + select + "[fromLastUpdated=" + fromLastUpdated + ", toLastUpdated=" + toLastUpdated + "]", x);
+            throw new FHIRPersistenceDataAccessException("SplitResourcePayloads sample query failed");
+        }
+        return probed;
+    }
+
+    private boolean isInWindow(Instant lastUpdated) {
+        return (fromLastUpdated == null || !lastUpdated.isBefore(fromLastUpdated))
+                && (toLastUpdated == null || !lastUpdated.isAfter(toLastUpdated));
+    }
+
+    private void appendWindow(StringBuilder query) {
+        if (this.fromLastUpdated != null) {
+            query.append("   AND r.last_updated >= ? ");
+        }
+        if (this.toLastUpdated != null) {
+            query.append("   AND r.last_updated <= ? ");
+        }
+    }
+
+    private void setWindow(PreparedStatement ps, int a) throws SQLException {
+        if (this.fromLastUpdated != null) {
+            ps.setTimestamp(a++, Timestamp.from(this.fromLastUpdated), UTC_CALENDAR);
+        }
+        if (this.toLastUpdated != null) {
+            ps.setTimestamp(a++, Timestamp.from(this.toLastUpdated), UTC_CALENDAR);
+        }
+    }
+}
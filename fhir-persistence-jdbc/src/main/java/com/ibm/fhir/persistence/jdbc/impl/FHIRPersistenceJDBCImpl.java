@@ -15,6 +15,7 @@ import static com.ibm.fhir.model.util.ModelSupport.getResourceType;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -26,11 +27,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -86,6 +89,7 @@ import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.MultiResourceResult;
 import com.ibm.fhir.persistence.ResourceChangeLogRecord;
 import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.RetentionPolicy;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -105,6 +109,7 @@ import com.ibm.fhir.persistence.jdbc.connection.FHIRDbTenantDatasourceConnection
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbTestConnectionStrategy;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRTestTransactionAdapter;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRUserTransactionAdapter;
+import com.ibm.fhir.persistence.jdbc.connection.ReadReplicaRouter;
 import com.ibm.fhir.persistence.jdbc.connection.SchemaNameFromProps;
 import com.ibm.fhir.persistence.jdbc.connection.SchemaNameImpl;
 import com.ibm.fhir.persistence.jdbc.connection.SchemaNameSupplier;
@@ -115,12 +120,16 @@ import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceIndexRecord;
+import com.ibm.fhir.persistence.jdbc.dao.impl.FetchGroupMemberPayloadsDAO;
+import com.ibm.fhir.persistence.jdbc.dao.impl.FetchPayloadsForIdsDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.FetchResourceChangesDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.FetchResourcePayloadsDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.JDBCIdentityCacheImpl;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterDAOImpl;
+import com.ibm.fhir.persistence.jdbc.dao.impl.PurgeResourceVersionsDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceReferenceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceTokenValueRec;
+import com.ibm.fhir.persistence.jdbc.dao.impl.SplitResourcePayloadsDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.TransactionDataImpl;
 import com.ibm.fhir.persistence.jdbc.dto.CompositeParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.DateParmVal;
@@ -140,6 +149,7 @@ import com.ibm.fhir.persistence.jdbc.util.ParameterNamesCache;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 import com.ibm.fhir.persistence.jdbc.util.TimestampPrefixedUUID;
+import com.ibm.fhir.persistence.jdbc.util.VersionPurgeEngine;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.persistence.util.InputOutputByteStream;
 import com.ibm.fhir.persistence.util.LogicalIdentityProvider;
@@ -149,6 +159,7 @@ import com.ibm.fhir.search.SummaryValueSet;
 import com.ibm.fhir.search.TotalValueSet;
 import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.SeekKey;
 import com.ibm.fhir.search.date.DateTimeHandler;
 import com.ibm.fhir.search.exception.FHIRSearchException;
 import com.ibm.fhir.search.parameters.InclusionParameter;
@@ -247,7 +258,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         } else {
             //  use separate JNDI datasources for each tenant/dsId (preferred approach)
             boolean enableReadOnlyReplicas = fhirConfig.getBooleanProperty(FHIRConfiguration.PROPERTY_JDBC_ENABLE_READ_ONLY_REPLICAS, Boolean.FALSE);
-            this.connectionStrategy = new FHIRDbTenantDatasourceConnectionStrategy(trxSynchRegistry, buildActionChain(), enableReadOnlyReplicas);
+            int probeIntervalMs = fhirConfig.getIntProperty(FHIRConfiguration.PROPERTY_JDBC_READ_ONLY_REPLICA_PROBE_INTERVAL_MS, ReadReplicaRouter.DEFAULT_PROBE_INTERVAL_MS);
+            this.connectionStrategy = new FHIRDbTenantDatasourceConnectionStrategy(trxSynchRegistry, buildActionChain(), enableReadOnlyReplicas, probeIntervalMs);
         }
 
         this.transactionAdapter = new FHIRUserTransactionAdapter(userTransaction, trxSynchRegistry, cache, TXN_DATA_KEY);
@@ -396,6 +408,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Persist the Resource DTO.
             resourceDao.setPersistenceContext(context);
             resourceDao.insert(resourceDTO, this.extractSearchParameters(updatedResource, resourceDTO), parameterDao);
+            connectionStrategy.recordWrite();
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
                             + ", version=" + resourceDTO.getVersionId());
@@ -582,6 +595,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Persist the Resource DTO.
             resourceDao.setPersistenceContext(context);
             resourceDao.insert(resourceDTO, this.extractSearchParameters(updatedResource, resourceDTO), parameterDao);
+            connectionStrategy.recordWrite();
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
                             + ", version=" + resourceDTO.getVersionId());
@@ -643,8 +657,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             checkModifiers(searchContext, isSystemLevelSearch(resourceType));
             queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints(), identityCache);
 
-            // Skip count query if _total=none
-            if (!TotalValueSet.NONE.equals(searchContext.getTotalParameter())) {
+            // Skip count query if _total=none, or when paging by keyset (which has no notion of a last page)
+            if (!searchContext.isKeysetPaging() && !TotalValueSet.NONE.equals(searchContext.getTotalParameter())) {
                 countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
                 if (countQuery != null) {
                     searchResultCount = resourceDao.searchCount(countQuery);
@@ -702,12 +716,17 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                 // path than other sorted searches. Since _include and _revinclude are not supported
                 // with system-level search, no special logic to handle it differently is needed here.
                 List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList;
-                if (searchContext.hasSortParameters() && !resourceType.equals(Resource.class)) {
+                if (searchContext.hasSortParameters() && !searchContext.isKeysetPaging() && !resourceType.equals(Resource.class)) {
                     resourceDTOList = this.buildSortedResourceDTOList(resourceDao, resourceType, resourceDao.searchForIds(query));
                 } else {
                     resourceDTOList = resourceDao.search(query);
                 }
 
+                // Advance the seek key to the last match so the caller can ask for the next page
+                if (searchContext.isKeysetPaging() && !resourceDTOList.isEmpty()) {
+                    searchContext.setSeekKey(getSeekKey(resourceDTOList.get(resourceDTOList.size() - 1)));
+                }
+
                 resources = this.convertResourceDTOList(resourceDTOList, resourceType, elements);
                 searchContext.setMatchCount(resources.size());
 
@@ -738,8 +757,21 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     }
 
     /**
-     * Process the inclusion parameters. Build and execute a query for each parameter, and
-     * collect the resulting 'include' resources to be returned with the 'match' resources.
+     * Get the keyset paging position of the given resource. The DTO lastUpdated is read
+     * without a calendar, so its local date-time is the UTC value stored in the database.
+     *
+     * @param resourceDTO
+     * @return
+     */
+    private SeekKey getSeekKey(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) {
+        java.time.Instant lastUpdated = resourceDTO.getLastUpdated().toLocalDateTime().toInstant(ZoneOffset.UTC);
+        return new SeekKey(lastUpdated, resourceDTO.getLogicalResourceId());
+    }
+
+    /**
+     * Process the inclusion parameters. Build and execute a single query for all the parameters
+     * of each iteration level, and collect the resulting 'include' resources to be returned with
+     * the 'match' resources.
      *
      * @param searchContext - the current search context
      * @param resourceType - the search resource type
@@ -769,48 +801,28 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                 .map(r -> Long.toString(r.getLogicalResourceId())).collect(Collectors.toSet());
         queryResultMap.put(0, Collections.singletonMap(resourceTypeString, baseLogicalResourceIds));
 
-        // Process non-iterative _include parameters. These are only run against 'match' search
-        // results.
+        // Process non-iterative _include and _revinclude parameters. These are only run against
+        // 'match' search results.
+        Map<InclusionParameter, Set<String>> includeParms = new LinkedHashMap<>();
+        Map<InclusionParameter, Set<String>> revIncludeParms = new LinkedHashMap<>();
         for (InclusionParameter includeParm : searchContext.getIncludeParameters()) {
             if (!includeParm.isIterate()) {
-                // Build and run the query
-                List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeResources =
-                        this.runIncludeQuery(resourceType, searchContext, queryBuilder, includeParm, SearchConstants.INCLUDE,
-                            baseLogicalResourceIds, queryResultMap, resourceDao, 1, allResourceIds);
-
-                // Add new ids to de-dup list
-                allResourceIds.addAll(includeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
-
-                // Add resources to list
-                allIncludeResources.addAll(includeResources);
-
-                // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                if (allIncludeResources.size() > SearchConstants.MAX_PAGE_SIZE) {
-                    return allIncludeResources;
-                }
+                includeParms.put(includeParm, baseLogicalResourceIds);
             }
         }
-
-        // Process non-iterative _revinclude parameters. These are only run against 'match' search
-        // results.
         for (InclusionParameter revincludeParm : searchContext.getRevIncludeParameters()) {
             if (!revincludeParm.isIterate()) {
-                // Build and run the query
-                List<com.ibm.fhir.persistence.jdbc.dto.Resource> revincludeResources =
-                        this.runIncludeQuery(resourceType, searchContext, queryBuilder, revincludeParm, SearchConstants.REVINCLUDE,
-                            baseLogicalResourceIds, queryResultMap, resourceDao, 1, allResourceIds);
-
-                // Add new ids to de-dup list
-                allResourceIds.addAll(revincludeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
+                revIncludeParms.put(revincludeParm, baseLogicalResourceIds);
+            }
+        }
 
-                // Add resources to list
-                allIncludeResources.addAll(revincludeResources);
+        // Build and run the query, then add resources to list
+        allIncludeResources.addAll(this.runIncludeQuery(resourceType, searchContext, queryBuilder, includeParms, revIncludeParms,
+            queryResultMap, resourceDao, 1, allResourceIds));
 
-                // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                if (allIncludeResources.size() > SearchConstants.MAX_PAGE_SIZE) {
-                    return allIncludeResources;
-                }
-            }
+        // Check if max size exceeded. If so, return results and let rest helper throw exception.
+        if (allIncludeResources.size() > SearchConstants.MAX_PAGE_SIZE) {
+            return allIncludeResources;
         }
 
         // Process iterative parameters.
@@ -821,6 +833,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         // - Iteration 2 and above processes only against resources returned by the previous iteration. Note
         //   that we currently have a max of only one iteration (not including special iteration 0).
         //
+        // Each iteration level depends on the results of the previous one, so the levels are processed in order,
+        // but all the parameters of a single level are processed by one query.
         for (int i=0; i<=SearchConstants.MAX_INCLUSION_ITERATIONS; ++i) {
             // Get the map of resourceTypes for current iteration level
             Map<String, Set<String>> resourceTypeMap = queryResultMap.get(i);
@@ -831,57 +845,38 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                     ids.addAll(queryResultMap.get(0).get(resourceTypeString));
                 }
 
-                // Process iterative _include parameters
+                // Collect iterative _include parameters
+                includeParms = new LinkedHashMap<>();
                 for (InclusionParameter includeParm : searchContext.getIncludeParameters()) {
                     if (includeParm.isIterate() && resourceTypeMap.keySet().contains(includeParm.getJoinResourceType())) {
                         // For iteration 0, we only process if target type is same as join type
                         if (i > 0 || includeParm.getJoinResourceType().equals(includeParm.getSearchParameterTargetType())) {
                             // Get ids to query against
-                            Set<String> queryIds = resourceTypeMap.get(includeParm.getJoinResourceType());
-
-                            // Build and run the query
-                            List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeResources =
-                                    this.runIncludeQuery(resourceType, searchContext, queryBuilder, includeParm,
-                                        SearchConstants.INCLUDE, queryIds, queryResultMap, resourceDao, i+1, allResourceIds);
-
-                            // Add new ids to de-dup list
-                            allResourceIds.addAll(includeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
-
-                            // Add resources to list
-                            allIncludeResources.addAll(includeResources);
-
-                            // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                            if (allIncludeResources.size() > SearchConstants.MAX_PAGE_SIZE) {
-                                return allIncludeResources;
-                            }
+                            includeParms.put(includeParm, resourceTypeMap.get(includeParm.getJoinResourceType()));
                         }
                     }
                 }
+
+                // Collect iterative _revinclude parameters
+                revIncludeParms = new LinkedHashMap<>();
                 for (InclusionParameter revincludeParm : searchContext.getRevIncludeParameters()) {
                     if (revincludeParm.isIterate() && resourceTypeMap.keySet().contains(revincludeParm.getSearchParameterTargetType())) {
                         // For iteration 0, we only process if target type is same as join type
                         if (i > 0 || revincludeParm.getJoinResourceType().equals(revincludeParm.getSearchParameterTargetType())) {
                             // Get ids to query against
-                            Set<String> queryIds = resourceTypeMap.get(revincludeParm.getSearchParameterTargetType());
-
-                            // Build and run the query
-                            List<com.ibm.fhir.persistence.jdbc.dto.Resource> revincludeResources =
-                                    this.runIncludeQuery(resourceType, searchContext, queryBuilder, revincludeParm,
-                                        SearchConstants.REVINCLUDE, queryIds, queryResultMap, resourceDao, i+1, allResourceIds);
-
-                            // Add new ids to de-dup list
-                            allResourceIds.addAll(revincludeResources.stream().map(r -> r.getId()).collect(Collectors.toSet()));
-
-                            // Add resources to list
-                            allIncludeResources.addAll(revincludeResources);
-
-                            // Check if max size exceeded. If so, return results and let rest helper throw exception.
-                            if (allIncludeResources.size() > SearchConstants.MAX_PAGE_SIZE) {
-                                return allIncludeResources;
-                            }
+                            revIncludeParms.put(revincludeParm, resourceTypeMap.get(revincludeParm.getSearchParameterTargetType()));
                         }
                     }
                 }
+
+                // Build and run the query, then add resources to list
+                allIncludeResources.addAll(this.runIncludeQuery(resourceType, searchContext, queryBuilder, includeParms, revIncludeParms,
+                    queryResultMap, resourceDao, i+1, allResourceIds));
+
+                // Check if max size exceeded. If so, return results and let rest helper throw exception.
+                if (allIncludeResources.size() > SearchConstants.MAX_PAGE_SIZE) {
+                    return allIncludeResources;
+                }
             }
         }
 
@@ -889,36 +884,45 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     }
 
     /**
-     * Build and execute a single query for a single inclusion parameter.
+     * Build and execute a single query for all the inclusion parameters of one iteration level.
      *
      * @param resourceType - the search resource type
      * @param searchContext - the current search context
      * @param queryBuilder - the query builder
-     * @param inclusionParm - the inclusion parameter for which the query is being
-     *                        built and executed
-     * @param includeType - either INCLUDE or REVINCLUDE
-     * @param queryIds - the list of logical resource IDs of the target resources
-     *                   the query is running against
+     * @param includeParms - the _include parameters mapped to the logical resource IDs of the
+     *                       target resources each parameter is running against
+     * @param revIncludeParms - the _revinclude parameters mapped to the logical resource IDs of the
+     *                          target resources each parameter is running against
      * @param queryResultMap - the map of prior query results
      * @param resourceDao - the resource data access object
      * @param iterationLevel - the current iteration level
      * @param allResourceIds - the list of all resource IDs being returned - used
-     *                         for de-duplication
+     *                         for de-duplication. Updated with the IDs of the returned resources
      * @return the list of resources returned from the query
      * @throws Exception
      */
     private List<com.ibm.fhir.persistence.jdbc.dto.Resource> runIncludeQuery(Class<? extends Resource> resourceType,
-        FHIRSearchContext searchContext, JDBCQueryBuilder queryBuilder, InclusionParameter inclusionParm,
-        String includeType, Set<String> queryIds, Map<Integer, Map<String, Set<String>>> queryResultMap,
+        FHIRSearchContext searchContext, JDBCQueryBuilder queryBuilder, Map<InclusionParameter, Set<String>> includeParms,
+        Map<InclusionParameter, Set<String>> revIncludeParms, Map<Integer, Map<String, Set<String>>> queryResultMap,
         ResourceDAO resourceDao, int iterationLevel, Set<Long> allResourceIds) throws Exception {
 
+        // Parameters with nothing to run against can't return anything
+        includeParms.values().removeIf(Set::isEmpty);
+        revIncludeParms.values().removeIf(Set::isEmpty);
+
         // Build the query
-        SqlQueryData includeQuery = queryBuilder.buildIncludeQuery(resourceType, searchContext, inclusionParm, queryIds, includeType);
+        SqlQueryData includeQuery = queryBuilder.buildIncludeQuery(resourceType, searchContext, includeParms, revIncludeParms);
+        if (includeQuery == null) {
+            return Collections.emptyList();
+        }
 
-        // Execute the query and filter out duplicates
+        // Execute the query and filter out duplicates of resources we already have
         List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeDTOs =
                 resourceDao.search(includeQuery).stream().filter(r -> !allResourceIds.contains(r.getId())).collect(Collectors.toList());
 
+        // Add new ids to de-dup list
+        allResourceIds.addAll(includeDTOs.stream().map(r -> r.getId()).collect(Collectors.toSet()));
+
         // Add query result to map.
         // The logical resource IDs are pulled from the returned DTOs and saved in a
         // map of resource type to logical resource IDs. This map is then saved in a
@@ -926,12 +930,11 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         // On subsequent iterations, _include and _revinclude parameters which target
         // this resource type will use the associated logical resource IDs in their queries.
         if (!includeDTOs.isEmpty()) {
-            Set<String> logicalResourceIds = includeDTOs.stream()
-                    .map(r -> Long.toString(r.getLogicalResourceId())).collect(Collectors.toSet());
             Map<String, Set<String>> resultMap = queryResultMap.computeIfAbsent(iterationLevel, k -> new HashMap<>());
-            Set<String> resultLogicalResourceIds = resultMap.computeIfAbsent(SearchConstants.INCLUDE.equals(includeType) ?
-                    inclusionParm.getSearchParameterTargetType() : inclusionParm.getJoinResourceType(), k -> new HashSet<>());
-            resultLogicalResourceIds.addAll(logicalResourceIds);
+            for (com.ibm.fhir.persistence.jdbc.dto.Resource includeDTO : includeDTOs) {
+                Set<String> resultLogicalResourceIds = resultMap.computeIfAbsent(includeDTO.getResourceType(), k -> new HashSet<>());
+                resultLogicalResourceIds.add(Long.toString(includeDTO.getLogicalResourceId()));
+            }
         }
 
         return includeDTOs;
@@ -1050,6 +1053,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Persist the logically deleted Resource DTO.
             resourceDao.setPersistenceContext(context);
             resourceDao.insert(resourceDTO, null, null);
+            connectionStrategy.recordWrite();
 
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
@@ -1341,6 +1345,11 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                 throw new FHIRPersistenceResourceDeletedException("Resource '" +
                         resourceType.getSimpleName() + "/" + logicalId + "' version " + versionId + " is deleted.");
             }
+            if (resourceDTO != null && resourceDTO.getDataStream() == null) {
+                // The payload of this superseded version was removed by purgeVersions
+                throw new FHIRPersistenceResourceDeletedException("Resource '" +
+                        resourceType.getSimpleName() + "/" + logicalId + "' version " + versionId + " has been purged.");
+            }
             resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
@@ -2125,6 +2134,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         Class<? extends Resource> resourceTypeClass = getResourceType(resourceType);
                         reindexDAO.setPersistenceContext(context);
                         updateParameters(rir, resourceTypeClass, existingResourceDTO, reindexDAO, operationOutcomeResult);
+                        connectionStrategy.recordWrite();
 
                         // result is only 0 if getResourceToReindex doesn't give us anything because this indicates
                         // there's nothing left to do
@@ -2172,6 +2182,127 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         return result;
     }
 
+    @Override
+    public int reindex(FHIRPersistenceContext context, OperationOutcome.Builder operationOutcomeResult, java.time.Instant tstamp, String resourceLogicalId,
+        int resourceCount, Long fromLogicalResourceId, Long toLogicalResourceId) throws FHIRPersistenceException {
+        final String METHODNAME = "reindex(batch)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        if (resourceLogicalId != null && resourceLogicalId.contains("/")) {
+            // a specific resource, so there's nothing to batch
+            if (fromLogicalResourceId != null || toLogicalResourceId != null) {
+                throw new FHIRPersistenceException("Reindex of a specific resource cannot be combined with a logical resource id range");
+            }
+            log.exiting(CLASSNAME, METHODNAME);
+            return reindex(context, operationOutcomeResult, tstamp, resourceLogicalId);
+        }
+
+        int result = 0;
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("reindex tstamp=" + tstamp.toString() + ", resourceCount=" + resourceCount
+                + ", fromLogicalResourceId=" + fromLogicalResourceId + ", toLogicalResourceId=" + toLogicalResourceId);
+        }
+
+        if (tstamp.isAfter(java.time.Instant.now())) {
+            // protect against setting a future timestamp, which could otherwise
+            // disable the ability to reindex anything
+            throw new FHIRPersistenceException("Reindex tstamp cannot be in the future");
+        }
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            ReindexResourceDAO reindexDAO = FHIRResourceDAOFactory.getReindexResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.trxSynchRegistry, this.cache, parameterDao);
+
+            // Optionally restrict the reindex to a resource type
+            Integer resourceTypeId = null;
+            if (resourceLogicalId != null) {
+                resourceTypeId = cache.getResourceTypeCache().getId(resourceLogicalId);
+                if (resourceTypeId == null) {
+                    // we can't reindex resources of a type which has never been stored
+                    return 0;
+                }
+            }
+
+            // Claim the whole batch in one go. The records are locked as part of their
+            // selection, so other callers will skip them
+            long start = System.nanoTime();
+            List<ResourceIndexRecord> batch = reindexDAO.getResourcesToReindex(tstamp, resourceTypeId, fromLogicalResourceId, toLogicalResourceId, resourceCount);
+            long end = System.nanoTime();
+
+            if (log.isLoggable(Level.FINER)) {
+                double elapsed = (end-start)/1e6;
+                log.finer(String.format("Selected %d resources for reindexing in %.3f ms ", batch.size(), elapsed));
+            }
+
+            reindexDAO.setPersistenceContext(context);
+            int skipped = 0;
+            for (ResourceIndexRecord rir: batch) {
+                com.ibm.fhir.persistence.jdbc.dto.Resource existingResourceDTO = resourceDao.read(rir.getLogicalId(), rir.getResourceType());
+                if (existingResourceDTO != null && !existingResourceDTO.isDeleted()) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Reindexing FHIR Resource '" + rir.getResourceType() + "/" + rir.getLogicalId() + "'");
+                    }
+                    rir.setDeleted(false);
+                    Class<? extends Resource> resourceTypeClass = getResourceType(rir.getResourceType());
+                    updateParameters(rir, resourceTypeClass, existingResourceDTO, reindexDAO, operationOutcomeResult);
+                    connectionStrategy.recordWrite();
+                } else {
+                    // Skip this particular resource because it has been deleted. It still counts
+                    // towards the result, because it was claimed from the set of work remaining
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Skipping reindex for deleted FHIR Resource '" + rir.getResourceType() + "/" + rir.getLogicalId() + "'");
+                    }
+                    rir.setDeleted(true);
+                    skipped++;
+                }
+            }
+            result = batch.size();
+
+            // One summary issue rather than one per resource, which would bloat the response for large batches
+            if (skipped > 0) {
+                final String diag = "Skipped " + skipped + " deleted resources";
+                operationOutcomeResult.issue(Issue.builder().code(IssueType.INFORMATIONAL).severity(IssueSeverity.INFORMATION).diagnostics(string(diag)).build());
+            }
+
+            if (log.isLoggable(Level.FINE) && result > 0) {
+                double elapsed = (System.nanoTime()-start)/1e6;
+                log.fine(String.format("Reindexed %d resources in %.3f ms", result, elapsed));
+            }
+        } catch(FHIRPersistenceFKVException e) {
+            getTransaction().setRollbackOnly();
+            throw e;
+        } catch(FHIRPersistenceException e) {
+            getTransaction().setRollbackOnly();
+            throw e;
+        } catch (DataAccessException dax) {
+            getTransaction().setRollbackOnly();
+
+            // It's possible this is a deadlock exception, in which case it could be considered retryable
+            if (dax.isTransactionRetryable()) {
+                log.log(Level.SEVERE, "retryable error", dax);
+                FHIRPersistenceDataAccessException fpx = new FHIRPersistenceDataAccessException("Data access error while performing a reindex operation.");
+                fpx.setTransactionRetryable(true);
+                throw fpx;
+            } else {
+                log.log(Level.SEVERE, "non-retryable error", dax);
+                throw new FHIRPersistenceDataAccessException("Data access error while performing a reindex operation.");
+            }
+        } catch(Throwable e) {
+            getTransaction().setRollbackOnly();
+            // don't chain the exception to avoid leaking secrets
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a reindex operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return result;
+    }
+
     /**
      * Update the parameters for the resource described by the given DTO
      * @param <T>
@@ -2295,6 +2426,220 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public List<java.time.Instant> splitResourcePayloads(Class<? extends Resource> resourceType, java.time.Instant fromLastModified,
+        java.time.Instant toLastModified, long rangeSize, int maxRanges) throws FHIRPersistenceException {
+        try (Connection connection = openConnection()) {
+            IDatabaseTranslator translator = FHIRResourceDAOFactory.getTranslatorForFlavor(connectionStrategy.getFlavor());
+            SplitResourcePayloadsDAO dao = new SplitResourcePayloadsDAO(translator, schemaNameSupplier.getSchemaForRequestContext(connection), resourceType.getSimpleName(), fromLastModified, toLastModified);
+            return dao.run(connection, rangeSize, maxRanges);
+        } catch(FHIRPersistenceException e) {
+            throw e;
+        } catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while splitting resource payloads.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+    }
+
+    @Override
+    public boolean isSearchPayloadsSupported() {
+        return true;
+    }
+
+    @Override
+    public int searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            Function<ResourcePayload, Boolean> process) throws FHIRPersistenceException {
+        final String METHODNAME = "searchPayloads";
+        log.entering(CLASSNAME, METHODNAME);
+
+        FHIRSearchContext searchContext = context.getSearchContext();
+        if (searchContext.getElementsParameters() != null || searchContext.hasSummaryParameter()
+                || searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
+            throw new FHIRPersistenceNotSupportedException("_elements, _summary, _include and _revinclude are not supported when searching for payloads");
+        }
+
+        try (Connection connection = openConnection()) {
+            // For PostgreSQL search queries we need to set some options to ensure better plans
+            connectionStrategy.applySearchOptimizerOptions(connection);
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            ResourceReferenceDAO rrd = makeResourceReferenceDAO(connection);
+            JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao, rrd);
+
+            checkModifiers(searchContext, isSystemLevelSearch(resourceType));
+            JDBCQueryBuilder queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints(), identityCache);
+
+            int processed = 0;
+            if (searchContext.getPageSize() > 0) {
+                SqlQueryData query = queryBuilder.buildQuery(resourceType, searchContext);
+                List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList;
+                if (searchContext.hasSortParameters() && !searchContext.isKeysetPaging() && !resourceType.equals(Resource.class)) {
+                    resourceDTOList = this.buildSortedResourceDTOList(resourceDao, resourceType, resourceDao.searchForIds(query));
+                } else {
+                    resourceDTOList = resourceDao.search(query);
+                }
+
+                com.ibm.fhir.persistence.jdbc.dto.Resource last = null;
+                for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
+                    // A match without a payload still counts toward the page, or a short page would look like the last one
+                    last = resourceDTO;
+                    processed++;
+                    if (resourceDTO.getDataStream() == null) {
+                        continue;
+                    }
+
+                    // Hand back the decompressed stream, bypassing the parse and the later serialization
+                    java.time.Instant lastUpdated = resourceDTO.getLastUpdated().toLocalDateTime().toInstant(ZoneOffset.UTC);
+                    try (InputStream in = new GZIPInputStream(resourceDTO.getDataStream().inputStream())) {
+                        ResourcePayload payload = new ResourcePayload(resourceDTO.getLogicalId(), lastUpdated, resourceDTO.getId(), in);
+                        if (Boolean.FALSE.equals(process.apply(payload))) {
+                            break;
+                        }
+                    }
+                }
+
+                // Advance the seek key to the last match processed so the caller can ask for the next page
+                if (searchContext.isKeysetPaging() && last != null) {
+                    searchContext.setSeekKey(getSeekKey(last));
+                }
+                searchContext.setMatchCount(processed);
+            }
+            return processed;
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (UncheckedIOException e) {
+            // The process function failed to handle a payload; not a failure of the search
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a payload search operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    @Override
+    public boolean isGroupMemberPayloadsSupported() {
+        // Resources are matched to the members through their stored compartment references
+        return SearchUtil.useStoredCompartmentParam();
+    }
+
+    @Override
+    public List<String> expandGroup(String groupId) throws FHIRPersistenceException {
+        final String METHODNAME = "expandGroup";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            FetchGroupMemberPayloadsDAO dao = makeFetchGroupMemberPayloadsDAO(connection, "Patient", Collections.singletonList(groupId));
+            dao.expandGroups(connection);
+            return dao.getGroupIds();
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while expanding a group.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    @Override
+    public SeekKey fetchGroupMemberPayloads(Class<? extends Resource> resourceType, List<String> groupIds,
+            java.time.Instant fromLastModified, java.time.Instant toLastModified, SeekKey seekKey, int limit,
+            Function<ResourcePayload, Boolean> process) throws FHIRPersistenceException {
+        final String METHODNAME = "fetchGroupMemberPayloads";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final String resourceTypeName = resourceType.getSimpleName();
+        final String compartmentName = "Patient";
+        try {
+            if (!compartmentName.equals(resourceTypeName)
+                    && !CompartmentUtil.getCompartmentResourceTypes(compartmentName).contains(resourceTypeName)) {
+                // No resource of this type can be in a patient compartment
+                log.exiting(CLASSNAME, METHODNAME);
+                return null;
+            }
+        } catch (FHIRSearchException e) {
+            throw new FHIRPersistenceException("Unable to get the resource types of compartment: " + compartmentName, e);
+        }
+
+        try (Connection connection = openConnection()) {
+            // The groups were expanded once by expandGroup, not for each page
+            FetchGroupMemberPayloadsDAO dao = makeFetchGroupMemberPayloadsDAO(connection, resourceTypeName, groupIds);
+            return dao.run(connection, fromLastModified, toLastModified, seekKey, limit, process);
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while fetching group member payloads.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Create the DAO which reads the payloads of the resources in the Patient compartments of the members of the groups
+     */
+    private FetchGroupMemberPayloadsDAO makeFetchGroupMemberPayloadsDAO(Connection connection, String resourceTypeName, List<String> groupIds)
+            throws Exception {
+        final String compartmentName = "Patient";
+        ResourceDAO resourceDao = makeResourceDAO(connection);
+        ParameterDAO parameterDao = makeParameterDAO(connection);
+        ResourceReferenceDAO rrd = makeResourceReferenceDAO(connection);
+        JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao, rrd);
+
+        IDatabaseTranslator translator = FHIRResourceDAOFactory.getTranslatorForFlavor(connectionStrategy.getFlavor());
+        return new FetchGroupMemberPayloadsDAO(translator, schemaNameSupplier.getSchemaForRequestContext(connection),
+            resourceTypeName, groupIds, identityCache.getParameterNameId("member"),
+            identityCache.getParameterNameId(CompartmentUtil.makeCompartmentParamName(compartmentName)),
+            identityCache.getCodeSystemId(compartmentName), identityCache.getCodeSystemId("Group"));
+    }
+
+    @Override
+    public boolean isPurgeVersionsSupported() {
+        return true;
+    }
+
+    @Override
+    public int purgeVersions(OperationOutcome.Builder operationOutcomeResult, Map<String, RetentionPolicy> policies, int resourceCount)
+        throws FHIRPersistenceException {
+        final String METHODNAME = "purgeVersions";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            IDatabaseTranslator translator = FHIRResourceDAOFactory.getTranslatorForFlavor(connectionStrategy.getFlavor());
+            final String schemaName = schemaNameSupplier.getSchemaForRequestContext(connection);
+            final java.time.Instant now = java.time.Instant.now();
+
+            VersionPurgeEngine engine = VersionPurgeEngine.getInstance();
+            int purged = engine.purge(policies, resourceCount, (resourceTypeName, policy, afterLogicalResourceId, batchSize) -> {
+                PurgeResourceVersionsDAO dao = new PurgeResourceVersionsDAO(translator, schemaName, resourceTypeName, policy, now,
+                    afterLogicalResourceId, batchSize);
+                return dao.run(connection);
+            });
+            if (purged > 0) {
+                connectionStrategy.recordWrite();
+            }
+
+            String diag = "Purged " + purged + " resource versions; next: " + engine.getPosition() + "; totals: examined=" + engine.getExaminedCount()
+                    + ", purged=" + engine.getPurgedCount() + ", cycles=" + engine.getCycleCount();
+            operationOutcomeResult.issue(Issue.builder().code(IssueType.INFORMATIONAL).severity(IssueSeverity.INFORMATION).diagnostics(string(diag)).build());
+            return purged;
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while purging resource versions.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     @Override
     public List<ResourceChangeLogRecord> changes(int resourceCount, java.time.Instant fromLastModified, Long afterResourceId,
         String resourceTypeName) throws FHIRPersistenceException {
@@ -2312,4 +2657,27 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             throw fx;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void fetchChangePayloads(List<ResourceChangeLogRecord> records, Consumer<ResourcePayload> process) throws FHIRPersistenceException {
+        // One query per resource type, because each type has its own xx_RESOURCES table
+        Map<String, List<Long>> resourceIdsByType = new HashMap<>();
+        for (ResourceChangeLogRecord record : records) {
+            resourceIdsByType.computeIfAbsent(record.getResourceTypeName(), k -> new ArrayList<>()).add(record.getChangeId());
+        }
+
+        try (Connection connection = openConnection()) {
+            final String schemaName = schemaNameSupplier.getSchemaForRequestContext(connection);
+            for (Entry<String, List<Long>> entry : resourceIdsByType.entrySet()) {
+                FetchPayloadsForIdsDAO dao = new FetchPayloadsForIdsDAO(schemaName, entry.getKey(), entry.getValue(), process);
+                dao.run(connection);
+            }
+        } catch(FHIRPersistenceException e) {
+            throw e;
+        } catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while fetching change payloads.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+    }
+}
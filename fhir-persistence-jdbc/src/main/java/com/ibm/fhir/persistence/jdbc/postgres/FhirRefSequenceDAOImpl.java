@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -10,14 +10,22 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import com.ibm.fhir.persistence.jdbc.dao.api.FhirRefSequenceDAO;
+import com.ibm.fhir.persistence.jdbc.util.IdBlockAllocator;
+import com.ibm.fhir.schema.control.FhirSchemaConstants;
 
 /**
- * DAO to obtain the next value from FHIR_REF_SEQUENCE
- *
+ * DAO to obtain the next value from FHIR_REF_SEQUENCE. Values are reserved in blocks
+ * and shared through the {@link IdBlockAllocator} for the current tenant/datastore,
+ * so most calls don't need a database round-trip.
  */
 public class FhirRefSequenceDAOImpl implements FhirRefSequenceDAO {
+    // The number of values reserved per round-trip. The sequence increments by 1, and is
+    // also used by the stored procedures, so the block is fetched as a set of nextval calls
+    public static final int BLOCK_SIZE = 20;
+
     private final Connection conn;
 
     /**
@@ -29,20 +37,32 @@ public class FhirRefSequenceDAOImpl implements FhirRefSequenceDAO {
 
     @Override
     public int nextValue() throws SQLException {
-        int result;
-        final String SEQ = "select nextval('fhir_ref_sequence')";
+        return (int) IdBlockAllocator.getInstance(FhirSchemaConstants.FHIR_REF_SEQUENCE).nextValue(this::nextBlock);
+    }
 
+    /**
+     * Reserve the next block of values from the sequence in a single round-trip
+     * @return
+     * @throws SQLException
+     */
+    private long[] nextBlock() throws SQLException {
+        final String SEQ = "select nextval('fhir_ref_sequence') from generate_series(1, ?)";
+
+        long[] result = new long[BLOCK_SIZE];
+        int count = 0;
         try (PreparedStatement stmt = conn.prepareStatement(SEQ)) {
+            stmt.setInt(1, BLOCK_SIZE);
             ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                result = rs.getInt(1);
-            } else {
-                // not gonna happen
-                throw new IllegalStateException("no value returned from fhir_ref_sequence!");
+            while (rs.next() && count < BLOCK_SIZE) {
+                result[count++] = rs.getLong(1);
             }
         }
 
-        return result;
+        if (count == 0) {
+            // not gonna happen
+            throw new IllegalStateException("no value returned from fhir_ref_sequence!");
+        }
+        return count == BLOCK_SIZE ? result : Arrays.copyOf(result, count);
     }
 
 }
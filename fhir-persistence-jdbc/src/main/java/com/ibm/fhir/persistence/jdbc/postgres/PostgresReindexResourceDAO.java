@@ -13,6 +13,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -166,4 +168,47 @@ public class PostgresReindexResourceDAO extends ReindexResourceDAO {
 
         return result;
     }
-}
\ No newline at end of file
+
+    @Override
+    protected List<ResourceIndexRecord> getNextResources(SecureRandom random, Instant reindexTstamp, Integer resourceTypeId,
+        Long fromLogicalResourceId, Long toLogicalResourceId, int maxCount) throws Exception {
+        List<ResourceIndexRecord> result = new ArrayList<>(maxCount);
+
+        // no need to close
+        Connection connection = getConnection();
+        IDatabaseTranslator translator = getTranslator();
+
+        // Claim the whole batch in one statement. SKIP LOCKED means concurrent callers
+        // working the same partition each get a disjoint set of rows without blocking
+        StringBuilder query = new StringBuilder();
+        query.append("   UPDATE logical_resources ");
+        query.append("      SET reindex_tstamp = ?, ");
+        query.append("          reindex_txid = COALESCE(reindex_txid + 1, 1) ");
+        query.append("    WHERE logical_resource_id IN ( ");
+        query.append("       SELECT lr.logical_resource_id ");
+        query.append("         FROM logical_resources lr ");
+        query.append("        WHERE lr.reindex_tstamp < ? ");
+        addPartitionFilter(query, resourceTypeId, fromLogicalResourceId, toLogicalResourceId);
+        query.append("     ORDER BY lr.reindex_tstamp ");
+        query.append("   FOR UPDATE SKIP LOCKED LIMIT ").append(maxCount).append(") ");
+        query.append("RETURNING logical_resource_id, resource_type_id, logical_id, reindex_txid ");
+        final String update = query.toString();
+
+        try (PreparedStatement stmt = connection.prepareStatement(update)) {
+            stmt.setTimestamp(1, Timestamp.from(reindexTstamp));
+            stmt.setTimestamp(2, Timestamp.from(reindexTstamp));
+            bindPartitionFilter(stmt, 3, resourceTypeId, fromLogicalResourceId, toLogicalResourceId);
+
+            stmt.execute();
+            ResultSet rs = stmt.getResultSet();
+            while (rs.next()) {
+                result.add(new ResourceIndexRecord(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            }
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, update, x);
+            throw translator.translate(x);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands out ids from blocks of values reserved from a database sequence, so that
+ * most ids can be allocated without a round-trip to the database.
+ *
+ * <p>The current block is shared by all threads and values are taken from it
+ * with a compare-and-set, without locking. When a block is used up, the thread
+ * which finds it empty reserves the next block using its own connection. If two
+ * threads do this at the same time, only one block is kept and the unused values
+ * of the other are discarded.
+ *
+ * <p>Ids are unique but not contiguous: values which are never handed out (the rest
+ * of a discarded block, or of the current block when the server stops) are simply
+ * skipped, just as the database itself skips cached sequence values. Values are
+ * also not returned to the block when a transaction rolls back.
+ *
+ * <p>There is one allocator per sequence for each tenant/datastore.
+ */
+public class IdBlockAllocator {
+    private static final Logger logger = Logger.getLogger(IdBlockAllocator.class.getName());
+
+    // Allocators by tenant/datastore and sequence name
+    private static final ConcurrentHashMap<String, IdBlockAllocator> allocators = new ConcurrentHashMap<>();
+
+    private final String sequenceName;
+
+    private final AtomicReference<Block> current = new AtomicReference<>(new Block(new long[0]));
+
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong blocks = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Reserves a block of values from the database
+     */
+    @FunctionalInterface
+    public interface BlockSource {
+        /**
+         * Reserve the next block of values
+         * @return the reserved values, at least one
+         * @throws SQLException
+         */
+        long[] nextBlock() throws SQLException;
+    }
+
+    /**
+     * Public constructor
+     * @param sequenceName the name of the sequence, used for logging
+     */
+    public IdBlockAllocator(String sequenceName) {
+        this.sequenceName = sequenceName;
+    }
+
+    /**
+     * Get the allocator for the given sequence in the current tenant/datastore
+     * @param sequenceName
+     * @return
+     */
+    public static IdBlockAllocator getInstance(String sequenceName) {
+        final String key = ResourceTypesCache.getCacheNameForTenantDatastore() + "/" + sequenceName;
+        return allocators.computeIfAbsent(key, k -> new IdBlockAllocator(sequenceName));
+    }
+
+    /**
+     * Get the next id, reserving a new block from the source if the current block is used up
+     * @param source reserves the next block of values when required
+     * @return
+     * @throws SQLException
+     */
+    public long nextValue(BlockSource source) throws SQLException {
+        Block block = current.get();
+        long value = block.take();
+        if (value < 0) {
+            long[] values = source.nextBlock();
+            if (values.length == 0) {
+                throw new IllegalStateException("sequence did not return a value!");
+            }
+            blocks.incrementAndGet();
+
+            // The first value is ours. The rest are shared if we win the race to replace the
+            // used up block, otherwise they are dropped and we leave a gap
+            Block next = new Block(values);
+            value = next.take();
+            if (!current.compareAndSet(block, next)) {
+                discarded.addAndGet(values.length - 1);
+            }
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Reserved " + values.length + " values from " + sequenceName + ": ids=" + getIdCount()
+                    + ", blocks=" + getBlockCount() + ", discarded=" + getDiscardedCount());
+            }
+        }
+        ids.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Get the number of ids handed out
+     * @return
+     */
+    public long getIdCount() {
+        return ids.get();
+    }
+
+    /**
+     * Get the number of blocks reserved from the database (the number of round-trips)
+     * @return
+     */
+    public long getBlockCount() {
+        return blocks.get();
+    }
+
+    /**
+     * Get the number of reserved values dropped because another thread replaced the block first
+     * @return
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * A block of reserved values, consumed from the front
+     */
+    private static class Block {
+        private final long[] values;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Block(long[] values) {
+            this.values = values;
+        }
+
+        /**
+         * Take the next value from the block
+         * @return the value, or -1 if the block is used up
+         */
+        private long take() {
+            // Once the block is used up, stop incrementing so that the index can't overflow
+            int i;
+            do {
+                i = next.get();
+                if (i >= values.length) {
+                    return -1;
+                }
+            } while (!next.compareAndSet(i, i + 1));
+            return values[i];
+        }
+    }
+}
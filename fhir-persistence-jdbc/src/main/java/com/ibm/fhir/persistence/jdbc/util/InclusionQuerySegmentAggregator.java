@@ -13,12 +13,17 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.JOIN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.ON;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.UNION;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.WHERE;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.connection.QueryHints;
 import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
@@ -84,11 +89,89 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
         //   LOGICAL_RESOURCE_ID ASC OFFSET 0 ROWS FETCH NEXT 1001 ROWS ONLY
         //
         // @formatter:on
+        List<Object> bindVariables = new ArrayList<>();
         queryString.append(DEFAULT_ORDERING);
-        addPaginationClauses(queryString);
+        addPaginationClauses(queryString, bindVariables);
         addOptimizerHint(queryString);
         
-        queryData = new SqlQueryData(queryString.toString(), new ArrayList<>());
+        queryData = new SqlQueryData(queryString.toString(), bindVariables);
+
+        log.exiting(CLASSNAME, METHODNAME, queryData);
+        return queryData;
+    }
+
+    /**
+     * Builds a single query returning the resources for all the given _include and _revinclude
+     * parameters, so that all the parameters of an iteration level can be processed with one
+     * round-trip to the database.
+     *
+     * <p>The subqueries of all parameters which return the same resource type are combined with
+     * UNION, which removes any duplicates before the resource table is joined. Each resource type
+     * then contributes one branch to a UNION ALL. Because resource ids are unique across resource
+     * types, the result does not contain duplicates. Each row carries the resource type name as
+     * an additional RESOURCE_TYPE column.
+     *
+     * <pre>
+     * SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, R1.LOGICAL_ID,
+     *        CAST('<resourceType>' AS VARCHAR(64)) AS RESOURCE_TYPE
+     *   FROM <resourceType>_RESOURCES R
+     *   JOIN (<include subquery> UNION <revinclude subquery> ...) AS R1
+     *     ON R.RESOURCE_ID = R1.RESOURCE_ID AND R.IS_DELETED = 'N'
+     * UNION ALL
+     * SELECT ...
+     * ORDER BY LOGICAL_RESOURCE_ID ASC OFFSET 0 ROWS FETCH NEXT 1001 ROWS ONLY
+     * </pre>
+     *
+     * @param includeParms
+     *              the _include parameters mapped to the logical resource IDs they are run against
+     * @param revIncludeParms
+     *              the _revinclude parameters mapped to the logical resource IDs they are run against
+     * @return the populated inclusion query, or null if there are no parameters to process
+     * @throws Exception
+     */
+    public SqlQueryData buildIncludeQuery(Map<InclusionParameter, Set<String>> includeParms,
+            Map<InclusionParameter, Set<String>> revIncludeParms) throws Exception {
+        final String METHODNAME = "buildIncludeQuery(Map, Map)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        // Build the subqueries, grouped by the resource type they return
+        Map<String, List<String>> subqueries = new LinkedHashMap<>();
+        for (Map.Entry<InclusionParameter, Set<String>> entry : includeParms.entrySet()) {
+            StringBuilder subquery = new StringBuilder();
+            appendIncludeSubquery(subquery, "SELECT R.RESOURCE_ID, LR.LOGICAL_ID", entry.getKey(), entry.getValue());
+            subqueries.computeIfAbsent(entry.getKey().getSearchParameterTargetType(), k -> new ArrayList<>()).add(subquery.toString());
+        }
+        for (Map.Entry<InclusionParameter, Set<String>> entry : revIncludeParms.entrySet()) {
+            StringBuilder subquery = new StringBuilder();
+            appendRevIncludeSubquery(subquery, "SELECT LR.CURRENT_RESOURCE_ID AS RESOURCE_ID, LR.LOGICAL_ID", entry.getKey(), entry.getValue());
+            subqueries.computeIfAbsent(entry.getKey().getJoinResourceType(), k -> new ArrayList<>()).add(subquery.toString());
+        }
+
+        SqlQueryData queryData = null;
+        if (!subqueries.isEmpty()) {
+            StringBuilder queryString = new StringBuilder();
+            for (Map.Entry<String, List<String>> entry : subqueries.entrySet()) {
+                final String resourceTypeName = entry.getKey();
+                DataDefinitionUtil.assertValidName(resourceTypeName);
+                if (queryString.length() > 0) {
+                    queryString.append(UNION);
+                }
+                queryString.append(SELECT_ROOT)
+                    .append(", CAST('").append(resourceTypeName).append("' AS VARCHAR(64)) AS RESOURCE_TYPE")
+                    .append(FROM)
+                    .append(resourceTypeName).append("_RESOURCES R")
+                    .append(JOIN).append(LEFT_PAREN)
+                    .append(String.join(" UNION ", entry.getValue()))
+                    .append(") AS R1 ON R.RESOURCE_ID = R1.RESOURCE_ID AND R.IS_DELETED = 'N'");
+            }
+
+            List<Object> bindVariables = new ArrayList<>();
+            queryString.append(DEFAULT_ORDERING);
+            addPaginationClauses(queryString, bindVariables);
+            addOptimizerHint(queryString);
+
+            queryData = new SqlQueryData(queryString.toString(), bindVariables);
+        }
 
         log.exiting(CLASSNAME, METHODNAME, queryData);
         return queryData;
@@ -126,8 +209,27 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
      */
     protected void processIncludeJoins(StringBuilder queryString, InclusionParameter inclusionParm, Set<String> ids)
             throws FHIRPersistenceException {
-        queryString.append(JOIN).append(LEFT_PAREN)
-            .append("SELECT DISTINCT R.RESOURCE_ID, LR.LOGICAL_ID")
+        queryString.append(JOIN).append(LEFT_PAREN);
+        appendIncludeSubquery(queryString, "SELECT DISTINCT R.RESOURCE_ID, LR.LOGICAL_ID", inclusionParm, ids);
+        queryString.append(") AS R1 ON R.RESOURCE_ID = R1.RESOURCE_ID AND R.IS_DELETED = 'N'");
+    }
+
+    /**
+     * Appends the subquery which finds the resources referenced by the given include parameter.
+     *
+     * @param queryString
+     *              The non-null StringBuilder
+     * @param selectList
+     *              The select list for the subquery, which must select the RESOURCE_ID and LOGICAL_ID
+     * @param inclusionParm
+     *              The inclusion parameter being processed
+     * @param ids
+     *              The list of logical resource IDs
+     * @throws FHIRPersistenceException
+     */
+    private void appendIncludeSubquery(StringBuilder queryString, String selectList, InclusionParameter inclusionParm, Set<String> ids)
+            throws FHIRPersistenceException {
+        queryString.append(selectList)
             .append(FROM)
             .append(inclusionParm.getJoinResourceType()).append("_TOKEN_VALUES_V P1")
             .append(JOIN)
@@ -147,8 +249,7 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
             .append(AND)
             .append("P1.CODE_SYSTEM_ID=").append(getCodeSystemId(inclusionParm.getSearchParameterTargetType()))
             .append(AND)
-            .append("P1.LOGICAL_RESOURCE_ID IN (").append(String.join(",",ids)).append(RIGHT_PAREN)
-            .append(") AS R1 ON R.RESOURCE_ID = R1.RESOURCE_ID AND R.IS_DELETED = 'N'");
+            .append("P1.LOGICAL_RESOURCE_ID IN (").append(String.join(",",ids)).append(RIGHT_PAREN);
     }
 
     /**
@@ -188,8 +289,28 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
      */
     protected void processRevIncludeJoins(StringBuilder queryString, InclusionParameter inclusionParm, Set<String> ids)
             throws FHIRPersistenceException {
-        queryString.append(JOIN).append(LEFT_PAREN)
-            .append("SELECT DISTINCT LR.CURRENT_RESOURCE_ID, LR.LOGICAL_ID")
+        queryString.append(JOIN).append(LEFT_PAREN);
+        appendRevIncludeSubquery(queryString, "SELECT DISTINCT LR.CURRENT_RESOURCE_ID, LR.LOGICAL_ID", inclusionParm, ids);
+        queryString.append(") AS R1 ON R.RESOURCE_ID = R1.CURRENT_RESOURCE_ID");
+    }
+
+    /**
+     * Appends the subquery which finds the resources referencing the target resources of the
+     * given revinclude parameter.
+     *
+     * @param queryString
+     *              The non-null StringBuilder
+     * @param selectList
+     *              The select list for the subquery, which must select the CURRENT_RESOURCE_ID and LOGICAL_ID
+     * @param inclusionParm
+     *              The inclusion parameter being processed
+     * @param ids
+     *              The list of logical resource IDs
+     * @throws FHIRPersistenceException
+     */
+    private void appendRevIncludeSubquery(StringBuilder queryString, String selectList, InclusionParameter inclusionParm, Set<String> ids)
+            throws FHIRPersistenceException {
+        queryString.append(selectList)
             .append(FROM)
             .append(LEFT_PAREN).append("SELECT LOGICAL_ID, VERSION_ID")
             .append(FROM)
@@ -212,8 +333,7 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
             .append(ON)
             .append("P1.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID")
             .append(AND)
-            .append("LR.IS_DELETED = 'N'")
-            .append(") AS R1 ON R.RESOURCE_ID = R1.CURRENT_RESOURCE_ID");
+            .append("LR.IS_DELETED = 'N'");
     }
 
     /**
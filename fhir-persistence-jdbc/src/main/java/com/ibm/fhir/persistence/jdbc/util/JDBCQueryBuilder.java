@@ -1972,6 +1972,35 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return query;
     }
 
+    /**
+     * Builds a single query that returns the included resources for all of the given
+     * _include and _revinclude parameters.
+     *
+     * @param resourceType    - the type of resource being searched for.
+     * @param searchContext   - the search context containing the search parameters.
+     * @param includeParms    - the _include parameters mapped to the set of logical resource IDs each will run against.
+     * @param revIncludeParms - the _revinclude parameters mapped to the set of logical resource IDs each will run against.
+     * @return SqlQueryData the populated inclusion query, or null if there are no parameters
+     * @throws Exception
+     */
+    public SqlQueryData buildIncludeQuery(Class<?> resourceType, FHIRSearchContext searchContext,
+            Map<InclusionParameter, Set<String>> includeParms, Map<InclusionParameter, Set<String>> revIncludeParms) throws Exception {
+        final String METHODNAME = "buildIncludeQuery(Map, Map)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        SqlQueryData query = null;
+        InclusionQuerySegmentAggregator helper =
+                (InclusionQuerySegmentAggregator) QuerySegmentAggregatorFactory.buildQuerySegmentAggregator(resourceType, 0,
+                    SearchConstants.MAX_PAGE_SIZE + 1, this.parameterDao, this.resourceDao, searchContext, true, this.queryHints, this.identityCache);
+
+        if (helper != null) {
+            query = helper.buildIncludeQuery(includeParms, revIncludeParms);
+        }
+
+        log.exiting(CLASSNAME, METHODNAME);
+        return query;
+    }
+
     /**
      * Builds an SQL segment which populates an IN clause with codes for a token search parameter
      * specifying the :in, :not-in, :above, or :below modifier.
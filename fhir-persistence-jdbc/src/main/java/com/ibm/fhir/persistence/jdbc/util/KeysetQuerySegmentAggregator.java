@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.FROM;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.JOIN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.ON;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.OR;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.jdbc.connection.QueryHints;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.search.context.SeekKey;
+
+/**
+ * This class assists the JDBCQueryBuilder. It extends the
+ * QuerySegmentAggregator to build a FHIR Resource query which pages through the
+ * search results by keyset rather than by offset. Results are ordered by
+ * (LAST_UPDATED, LOGICAL_RESOURCE_ID) and each page starts strictly after the
+ * seek key of the last resource read, so the cost of reading a page does not
+ * depend on how far through the result set the reader is.
+ */
+public class KeysetQuerySegmentAggregator extends QuerySegmentAggregator {
+    private static final String CLASSNAME = KeysetQuerySegmentAggregator.class.getName();
+    private static final Logger log = java.util.logging.Logger.getLogger(CLASSNAME);
+
+    private static final String KEYSET_ORDERING = " ORDER BY R.LAST_UPDATED ASC, R.LOGICAL_RESOURCE_ID ASC ";
+
+    // The position to start reading after, or null to start at the beginning
+    private final SeekKey seekKey;
+
+    /**
+     * Constructs a new KeysetQuerySegmentAggregator
+     *
+     * @param resourceType - The type of FHIR Resource to be searched for.
+     * @param pageSize     - The max number of requested search results.
+     * @param parameterDao - A FHIR DB Data Access Object
+     * @param resourceDao  - A FHIR DB Data Access Object
+     * @param seekKey      - The key of the last resource already read, or null
+     */
+    protected KeysetQuerySegmentAggregator(Class<?> resourceType, int pageSize, ParameterDAO parameterDao,
+            ResourceDAO resourceDao, SeekKey seekKey, QueryHints queryHints) {
+        super(resourceType, 0, pageSize, parameterDao, resourceDao, queryHints);
+        this.seekKey = seekKey;
+    }
+
+    /**
+     * Builds a complete SQL Query based upon the encapsulated query segments and
+     * bind variables. The seek predicate is added to the join to the current
+     * resource version inside the distinct set of logical resources, so rows
+     * before the seek key are filtered before the DISTINCT rather than after it:
+     *
+     * <pre>
+     * SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID
+     *   FROM Observation_RESOURCES R
+     *   JOIN (SELECT DISTINCT LR.LOGICAL_RESOURCE_ID, LR.LOGICAL_ID, LR.CURRENT_RESOURCE_ID
+     *           FROM Observation_LOGICAL_RESOURCES LR
+     *           JOIN Observation_RESOURCES R ON R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED = 'N'
+     *            AND (R.LAST_UPDATED > ? OR (R.LAST_UPDATED = ? AND LR.LOGICAL_RESOURCE_ID > ?))
+     *           ...) AS LR
+     *     ON R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID
+     *    AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID
+     *    AND R.IS_DELETED = 'N'
+     *  ORDER BY R.LAST_UPDATED ASC, R.LOGICAL_RESOURCE_ID ASC
+     *  OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY
+     * </pre>
+     *
+     * @return SqlQueryData - contains the complete SQL query string and any
+     *         associated bind variables.
+     * @throws Exception
+     */
+    @Override
+    protected SqlQueryData buildQuery() throws Exception {
+        final String METHODNAME = "buildQuery";
+        log.entering(CLASSNAME, METHODNAME);
+
+        if (this.isSystemLevelSearch()) {
+            throw new FHIRPersistenceNotSupportedException("Keyset paging is not supported for system-level search");
+        }
+
+        StringBuilder queryString = new StringBuilder();
+        queryString.append(NEW_SELECT_ROOT);
+        queryString.append(FROM);
+        queryString.append(resourceType.getSimpleName().toUpperCase() + "_RESOURCES R");
+        queryString.append(JOIN).append(LEFT_PAREN);
+        queryString.append(SELECT_DISTINCT_ROOT);
+        buildFromClause(queryString, resourceType.getSimpleName()); // FROM <resourceType>_LOGICAL_RESOURCES
+
+        // An important step here is to add _id, _lastUpdated, the seek key and then values table bind variables
+        List<Object> allBindVariables = new ArrayList<>();
+        allBindVariables.addAll(idsObjects);
+        allBindVariables.addAll(lastUpdatedObjects);
+
+        // Extend the join to the current resource version with the seek predicate
+        if (seekKey != null) {
+            Timestamp lastUpdated = Timestamp.from(seekKey.getLastUpdated());
+            queryString.append(AND).append(LEFT_PAREN);
+            queryString.append("R.LAST_UPDATED > ").append(BIND_VAR);
+            queryString.append(OR).append(LEFT_PAREN);
+            queryString.append("R.LAST_UPDATED = ").append(BIND_VAR);
+            queryString.append(AND).append("LR.LOGICAL_RESOURCE_ID > ").append(BIND_VAR);
+            queryString.append(RIGHT_PAREN).append(RIGHT_PAREN);
+            allBindVariables.add(lastUpdated);
+            allBindVariables.add(lastUpdated);
+            allBindVariables.add(seekKey.getLogicalResourceId());
+        }
+
+        buildWhereClause(queryString, null); // technically the JOIN clause
+        queryString.append(RIGHT_PAREN).append(" AS LR ");
+        queryString.append(ON);
+        queryString.append("     R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID ");
+        queryString.append(" AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID ");
+        queryString.append(" AND R.IS_DELETED = 'N'");
+
+        for (SqlQueryData querySegment : this.querySegments) {
+            allBindVariables.addAll(querySegment.getBindVariables());
+        }
+
+        queryString.append(KEYSET_ORDERING);
+        this.addPaginationClauses(queryString, allBindVariables);
+        addOptimizerHint(queryString);
+        SqlQueryData queryData = new SqlQueryData(queryString.toString(), allBindVariables);
+
+        log.exiting(CLASSNAME, METHODNAME, queryData);
+        return queryData;
+    }
+}
@@ -9,6 +9,7 @@ package com.ibm.fhir.persistence.jdbc.util;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMBINED_RESULTS;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DEFAULT_ORDERING;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.FETCH_NEXT;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.FROM;
@@ -217,7 +218,7 @@ public class QuerySegmentAggregator {
 
             // Add default ordering
             queryString.append(DEFAULT_ORDERING);
-            this.addPaginationClauses(queryString);
+            this.addPaginationClauses(queryString, allBindVariables);
             addOptimizerHint(queryString);
             queryData = new SqlQueryData(queryString.toString(), allBindVariables);
         }
@@ -388,7 +389,7 @@ public class QuerySegmentAggregator {
         // Add Ordering and Pagination
         if (addFinalClauses) {
             queryString.append(DEFAULT_ORDERING);
-            this.addPaginationClauses(queryString);
+            this.addPaginationClauses(queryString, allBindVariables);
         }
 
         addOptimizerHint(queryString);
@@ -714,19 +715,25 @@ public class QuerySegmentAggregator {
 
     /**
      * Adds the appropriate pagination clauses to the passed query string buffer,
-     * based on the type
-     * of database we're running against.
+     * based on the type of database we're running against. The page size and offset
+     * are passed as bind variables so that the statement text is the same for every
+     * page of a search, which allows the prepared statement to be reused.
      *
      * @param queryString A query string buffer.
+     * @param bindVariables The bind variables of the query, to which the pagination values are added.
      * @throws Exception
      */
-    protected void addPaginationClauses(StringBuilder queryString) throws Exception {
+    protected void addPaginationClauses(StringBuilder queryString, List<Object> bindVariables) throws Exception {
 
         if (this.parameterDao.isDb2Database()) {
-            queryString.append(LIMIT).append(this.pageSize).append(OFFSET).append(this.offset);
+            queryString.append(LIMIT).append(BIND_VAR).append(OFFSET).append(BIND_VAR);
+            bindVariables.add(this.pageSize);
+            bindVariables.add(this.offset);
         } else {
-            queryString.append(OFFSET).append(this.offset).append(ROWS)
-                    .append(FETCH_NEXT).append(this.pageSize).append(ROWS_ONLY);
+            queryString.append(OFFSET).append(BIND_VAR).append(ROWS)
+                    .append(FETCH_NEXT).append(BIND_VAR).append(ROWS_ONLY);
+            bindVariables.add(this.offset);
+            bindVariables.add(this.pageSize);
         }
     }
 }
\ No newline at end of file
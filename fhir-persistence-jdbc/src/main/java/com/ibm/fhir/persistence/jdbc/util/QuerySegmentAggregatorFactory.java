@@ -37,6 +37,9 @@ public class QuerySegmentAggregatorFactory {
         if (includeQuery) {
             qsa = new InclusionQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, queryHints, identityCache);
         }
+        else if (searchContext.isKeysetPaging()) {
+            qsa = new KeysetQuerySegmentAggregator(resourceType, pageSize, parameterDao, resourceDao, searchContext.getSeekKey(), queryHints);
+        }
         else if (searchContext.hasSortParameters()) {
             qsa = new SortedQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, searchContext.getSortParameters(), queryHints);
         }
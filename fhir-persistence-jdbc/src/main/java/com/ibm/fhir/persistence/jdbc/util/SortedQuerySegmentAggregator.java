@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -113,8 +113,9 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             // Add in order-by clause.
             sysLvlQueryString.append(this.buildSysLvlOrderByClause());
             // Add pagination clauses.
-            this.addPaginationClauses(sysLvlQueryString);
-            queryData = new SqlQueryData(sysLvlQueryString.toString(), queryData.getBindVariables());
+            List<Object> allBindVariables = new ArrayList<>(queryData.getBindVariables());
+            this.addPaginationClauses(sysLvlQueryString, allBindVariables);
+            queryData = new SqlQueryData(sysLvlQueryString.toString(), allBindVariables);
         } else {
             StringBuilder sqlSortQuery = new StringBuilder();
             // Build SELECT clause
@@ -145,7 +146,7 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             sqlSortQuery.append(this.buildOrderByClause());
 
             // Add in clauses to support pagination
-            this.addPaginationClauses(sqlSortQuery);
+            this.addPaginationClauses(sqlSortQuery, allBindVariables);
 
             addOptimizerHint(sqlSortQuery);
 
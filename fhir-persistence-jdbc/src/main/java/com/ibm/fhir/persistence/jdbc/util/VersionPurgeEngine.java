@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.persistence.RetentionPolicy;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+
+/**
+ * Tracks the progress of purging superseded resource versions, so that each call to
+ * {@link #purge(Map, int, BatchPurger)} continues from where the previous call stopped.
+ *
+ * <p>The resource types with a retention policy are visited in name order and the logical
+ * resources of each type in logical_resource_id order, in batches of at most {@link #MAX_BATCH_SIZE}.
+ * Once the last type is finished, the cycle is complete and the next call starts again with the
+ * first type. The position is kept in memory only, so after a restart the first cycle starts
+ * from the beginning, which is harmless because purging is idempotent. For the same reason,
+ * batches whose transaction is rolled back are not retried; they are revisited in the next cycle.
+ *
+ * <p>There is one engine for each tenant/datastore. Calls are serialized so that two callers
+ * never purge the same batch.
+ */
+public class VersionPurgeEngine {
+    private static final Logger logger = Logger.getLogger(VersionPurgeEngine.class.getName());
+
+    // The maximum number of logical resources examined by each batch
+    public static final int MAX_BATCH_SIZE = 100;
+
+    // Engines by tenant/datastore
+    private static final ConcurrentHashMap<String, VersionPurgeEngine> engines = new ConcurrentHashMap<>();
+
+    // The resource type being purged, or null to start with the first type
+    private String resourceType;
+
+    // The last logical_resource_id examined in the current resource type
+    private long afterLogicalResourceId;
+
+    private final AtomicLong examined = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong cycles = new AtomicLong();
+
+    /**
+     * Purges the superseded versions of a batch of logical resources of one resource type
+     */
+    @FunctionalInterface
+    public interface BatchPurger {
+        /**
+         * Purge the next batch
+         * @param resourceType the resource type name
+         * @param policy the retention policy for the resource type
+         * @param afterLogicalResourceId examine logical resources with a greater logical_resource_id than this
+         * @param batchSize the maximum number of logical resources to examine
+         * @return the outcome of the batch
+         * @throws FHIRPersistenceException
+         */
+        Batch purge(String resourceType, RetentionPolicy policy, long afterLogicalResourceId, int batchSize) throws FHIRPersistenceException;
+    }
+
+    /**
+     * The outcome of a single batch
+     */
+    public static class Batch {
+        private final int resourceCount;
+        private final long lastLogicalResourceId;
+        private final int purgedCount;
+
+        /**
+         * Public constructor
+         * @param resourceCount the number of logical resources examined
+         * @param lastLogicalResourceId the greatest logical_resource_id examined
+         * @param purgedCount the number of versions purged
+         */
+        public Batch(int resourceCount, long lastLogicalResourceId, int purgedCount) {
+            this.resourceCount = resourceCount;
+            this.lastLogicalResourceId = lastLogicalResourceId;
+            this.purgedCount = purgedCount;
+        }
+
+        /**
+         * @return the number of logical resources examined
+         */
+        public int getResourceCount() {
+            return resourceCount;
+        }
+
+        /**
+         * @return the greatest logical_resource_id examined
+         */
+        public long getLastLogicalResourceId() {
+            return lastLogicalResourceId;
+        }
+
+        /**
+         * @return the number of versions purged
+         */
+        public int getPurgedCount() {
+            return purgedCount;
+        }
+    }
+
+    /**
+     * Get the engine for the current tenant/datastore
+     * @return
+     */
+    public static VersionPurgeEngine getInstance() {
+        return engines.computeIfAbsent(ResourceTypesCache.getCacheNameForTenantDatastore(), k -> new VersionPurgeEngine());
+    }
+
+    /**
+     * Examine up to resourceCount logical resources, continuing from where the last call stopped.
+     * A call stops early when it completes a cycle over all the resource types.
+     * @param policies the retention policy for each resource type, keyed by resource type name
+     * @param resourceCount the maximum number of logical resources to examine
+     * @param purger purges each batch
+     * @return the number of versions purged
+     * @throws FHIRPersistenceException
+     */
+    public synchronized int purge(Map<String, RetentionPolicy> policies, int resourceCount, BatchPurger purger) throws FHIRPersistenceException {
+        final NavigableSet<String> resourceTypes = new TreeSet<>(policies.keySet());
+        int result = 0;
+        int remaining = resourceCount;
+        while (remaining > 0 && !resourceTypes.isEmpty()) {
+            // The policies may have changed since the last call, so pick up from the next type that still has one
+            if (resourceType == null || !resourceTypes.contains(resourceType)) {
+                String next = resourceType == null ? null : resourceTypes.ceiling(resourceType);
+                resourceType = next == null ? resourceTypes.first() : next;
+                afterLogicalResourceId = 0;
+            }
+
+            final int batchSize = Math.min(remaining, MAX_BATCH_SIZE);
+            Batch batch = purger.purge(resourceType, policies.get(resourceType), afterLogicalResourceId, batchSize);
+            remaining -= batch.getResourceCount();
+            result += batch.getPurgedCount();
+            examined.addAndGet(batch.getResourceCount());
+            purged.addAndGet(batch.getPurgedCount());
+            batches.incrementAndGet();
+
+            if (batch.getResourceCount() < batchSize) {
+                // This type is finished, so move on to the next one
+                resourceType = resourceTypes.higher(resourceType);
+                afterLogicalResourceId = 0;
+                if (resourceType == null) {
+                    cycles.incrementAndGet();
+                    break;
+                }
+            } else {
+                afterLogicalResourceId = batch.getLastLogicalResourceId();
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Purged " + result + " versions: position=" + getPosition() + ", examined=" + getExaminedCount()
+                + ", purged=" + getPurgedCount() + ", batches=" + getBatchCount() + ", cycles=" + getCycleCount());
+        }
+        return result;
+    }
+
+    /**
+     * Get a description of where the next call will start
+     * @return
+     */
+    public synchronized String getPosition() {
+        return resourceType == null ? "start" : resourceType + " after logical_resource_id " + afterLogicalResourceId;
+    }
+
+    /**
+     * Get the number of logical resources examined
+     * @return
+     */
+    public long getExaminedCount() {
+        return examined.get();
+    }
+
+    /**
+     * Get the number of versions purged
+     * @return
+     */
+    public long getPurgedCount() {
+        return purged.get();
+    }
+
+    /**
+     * Get the number of batches run
+     * @return
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Get the number of completed cycles over all the resource types
+     * @return
+     */
+    public long getCycleCount() {
+        return cycles.get();
+    }
+}
@@ -7,14 +7,20 @@
 package com.ibm.fhir.persistence.jdbc.cache.test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceTokenValueRec;
+import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
 
 /**
  * unit test for {@link CommonTokenValuesCacheImpl}
@@ -97,4 +103,145 @@ public class ResourceReferenceCacheImplTest {
         assertEquals("sys3", sys3.getCodeSystemValue());
         assertEquals(3, sys3.getCodeSystemValueId());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testClaimTokenValues() throws Exception {
+        CommonTokenValuesCacheImpl impl = new CommonTokenValuesCacheImpl(10, 10, 10000);
+
+        // Claims are owned by the transaction on each thread, so use a second thread to play
+        // the part of another transaction adding the same value
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            List<ResourceTokenValueRec> otherUpserts = other.submit(() -> {
+                List<ResourceTokenValueRec> upserts = new ArrayList<>();
+                impl.claimTokenValues(Collections.singletonList(tokenValue("val1")), upserts);
+                impl.addTokenValue(new CommonTokenValue(1, "val1"), 42L);
+                return upserts;
+            }).get();
+            assertEquals(1, otherUpserts.size());
+
+            // The other transaction commits while we wait, so we use its id instead of adding the value
+            other.submit(() -> {
+                Thread.sleep(100);
+                impl.updateSharedMaps();
+                return null;
+            });
+            ResourceTokenValueRec val1 = tokenValue("val1");
+            List<ResourceTokenValueRec> upserts = new ArrayList<>();
+            impl.claimTokenValues(Collections.singletonList(val1), upserts);
+            assertEquals(0, upserts.size());
+            assertEquals(Long.valueOf(42L), val1.getCommonTokenValueId());
+            assertEquals(1, impl.getCoalescedCount());
+
+            // If the other transaction rolls back, we have to add the value ourselves
+            other.submit(() -> {
+                impl.claimTokenValues(Collections.singletonList(tokenValue("val2")), new ArrayList<>());
+                return null;
+            }).get();
+            other.submit(() -> {
+                Thread.sleep(100);
+                impl.clearLocalMaps();
+                return null;
+            });
+            impl.claimTokenValues(Collections.singletonList(tokenValue("val2")), upserts);
+            assertEquals(1, upserts.size());
+            assertEquals(1, impl.getCoalescedCount());
+        } finally {
+            other.shutdown();
+            assertTrue(other.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFinishClaims() throws Exception {
+        CommonTokenValuesCacheImpl impl = new CommonTokenValuesCacheImpl(10, 10, 10000);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            // A transaction which isn't bound to the cache releases its claims once it has added the
+            // values, so we add the value ourselves without waiting
+            other.submit(() -> {
+                impl.claimTokenValues(Collections.singletonList(tokenValue("val1")), new ArrayList<>());
+                impl.finishClaims(true);
+                return null;
+            }).get();
+            long start = System.nanoTime();
+            List<ResourceTokenValueRec> upserts = new ArrayList<>();
+            impl.claimTokenValues(Collections.singletonList(tokenValue("val1")), upserts);
+            assertEquals(1, upserts.size());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            impl.finishClaims(true);
+
+            // A bound transaction keeps its claims until it commits
+            other.submit(() -> {
+                impl.bindTransaction();
+                impl.claimTokenValues(Collections.singletonList(tokenValue("val2")), new ArrayList<>());
+                impl.addTokenValue(new CommonTokenValue(1, "val2"), 43L);
+                impl.finishClaims(true);
+                return null;
+            }).get();
+            other.submit(() -> {
+                Thread.sleep(100);
+                impl.updateSharedMaps();
+                return null;
+            });
+            ResourceTokenValueRec val2 = tokenValue("val2");
+            upserts.clear();
+            impl.claimTokenValues(Collections.singletonList(val2), upserts);
+            assertEquals(0, upserts.size());
+            assertEquals(Long.valueOf(43L), val2.getCommonTokenValueId());
+
+            // ...unless adding the values failed
+            other.submit(() -> {
+                impl.bindTransaction();
+                impl.claimTokenValues(Collections.singletonList(tokenValue("val3")), new ArrayList<>());
+                impl.finishClaims(false);
+                return null;
+            }).get();
+            start = System.nanoTime();
+            upserts.clear();
+            impl.claimTokenValues(Collections.singletonList(tokenValue("val3")), upserts);
+            assertEquals(1, upserts.size());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(0, impl.getClaimTimeoutCount());
+        } finally {
+            other.shutdown();
+            assertTrue(other.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testClaimTimeout() throws Exception {
+        CommonTokenValuesCacheImpl impl = new CommonTokenValuesCacheImpl(10, 10, 50);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            // The other transaction never completes, so we stop waiting and drop its claim
+            other.submit(() -> {
+                impl.claimTokenValues(Collections.singletonList(tokenValue("val1")), new ArrayList<>());
+                return null;
+            }).get();
+            List<ResourceTokenValueRec> upserts = new ArrayList<>();
+            impl.claimTokenValues(Collections.singletonList(tokenValue("val1")), upserts);
+            assertEquals(1, upserts.size());
+            assertEquals(1, impl.getClaimTimeoutCount());
+
+            // ...so the next transaction claims the value for itself without waiting
+            upserts = other.submit(() -> {
+                List<ResourceTokenValueRec> result = new ArrayList<>();
+                impl.clearLocalMaps();
+                impl.claimTokenValues(Collections.singletonList(tokenValue("val1")), result);
+                return result;
+            }).get();
+            assertEquals(1, upserts.size());
+            assertEquals(1, impl.getClaimTimeoutCount());
+        } finally {
+            other.shutdown();
+            assertTrue(other.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static ResourceTokenValueRec tokenValue(String value) {
+        ResourceTokenValueRec result = new ResourceTokenValueRec(1, "Patient", 1, 1L, "sys1", value, null, false);
+        result.setCodeSystemValueId(1);
+        return result;
+    }
+}
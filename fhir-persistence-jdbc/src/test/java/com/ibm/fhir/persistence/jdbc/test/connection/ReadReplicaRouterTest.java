@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.connection;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.connection.ReadReplicaRouter;
+import com.ibm.fhir.persistence.jdbc.connection.ReadReplicaRouter.Route;
+
+/**
+ * Unit test for the {@link ReadReplicaRouter}
+ */
+public class ReadReplicaRouterTest {
+    private static final String KEY = ReadReplicaRouter.makeKey("default", "default");
+    private static final long INTERVAL = 1000;
+
+    @Test
+    public void testNoWrites() {
+        ReadReplicaRouter router = new ReadReplicaRouter();
+        assertEquals(router.route(KEY, 1000, INTERVAL), Route.REPLICA);
+        assertEquals(router.getRoutedCount(), 1);
+        assertEquals(router.getFallbackCount(), 0);
+    }
+
+    @Test
+    public void testReplicaLagging() {
+        ReadReplicaRouter router = new ReadReplicaRouter();
+        router.recordWrite(KEY);
+
+        // First read after the write probes the replica, which hasn't caught up yet
+        assertEquals(router.route(KEY, 6000, INTERVAL), Route.PROBE);
+        assertFalse(router.probeResult(KEY, router.getWriteCount(KEY), false));
+
+        // Within the probe interval, so go straight to the primary
+        assertEquals(router.route(KEY, 6500, INTERVAL), Route.PRIMARY);
+
+        // Probe again, and this time the replica has caught up
+        assertEquals(router.route(KEY, 7000, INTERVAL), Route.PROBE);
+        assertTrue(router.probeResult(KEY, router.getWriteCount(KEY), true));
+
+        // No need to probe any more until the next write
+        assertEquals(router.route(KEY, 7001, INTERVAL), Route.REPLICA);
+
+        assertEquals(router.getProbeCount(), 2);
+        assertEquals(router.getRoutedCount(), 2);
+        assertEquals(router.getFallbackCount(), 2);
+    }
+
+    @Test
+    public void testWriteDuringProbe() {
+        ReadReplicaRouter router = new ReadReplicaRouter();
+        router.recordWrite(KEY);
+
+        assertEquals(router.route(KEY, 6000, INTERVAL), Route.PROBE);
+        final long writeCount = router.getWriteCount(KEY);
+
+        // A write committed after the sample isn't covered by the primary position the probe read
+        router.recordWrite(KEY);
+        assertFalse(router.probeResult(KEY, writeCount, true));
+        assertEquals(router.route(KEY, 6001, INTERVAL), Route.PRIMARY);
+    }
+
+    @Test
+    public void testWatermarksOnlyAdvance() {
+        ReadReplicaRouter router = new ReadReplicaRouter();
+        router.recordWrite(KEY);
+        router.recordWrite(KEY);
+
+        assertEquals(router.route(KEY, 6000, INTERVAL), Route.PROBE);
+        assertTrue(router.probeResult(KEY, router.getWriteCount(KEY), true));
+
+        // A stale probe result doesn't move the replica watermark backwards
+        assertTrue(router.probeResult(KEY, 1, true));
+        assertEquals(router.route(KEY, 8000, INTERVAL), Route.REPLICA);
+    }
+
+    @Test
+    public void testProbeFailure() {
+        ReadReplicaRouter router = new ReadReplicaRouter();
+        router.recordWrite(KEY);
+        assertEquals(router.route(KEY, 6000, INTERVAL), Route.PROBE);
+        router.probeFailed(KEY);
+        assertEquals(router.getProbeFailureCount(), 1);
+        assertEquals(router.getFallbackCount(), 1);
+        assertEquals(router.route(KEY, 6001, INTERVAL), Route.PRIMARY);
+    }
+
+    @Test
+    public void testKeysAreIndependent() {
+        ReadReplicaRouter router = new ReadReplicaRouter();
+        router.recordWrite(KEY);
+        assertEquals(router.route(ReadReplicaRouter.makeKey("tenant1", "default"), 6000, INTERVAL), Route.REPLICA);
+        assertEquals(router.route(KEY, 6000, INTERVAL), Route.PROBE);
+    }
+}
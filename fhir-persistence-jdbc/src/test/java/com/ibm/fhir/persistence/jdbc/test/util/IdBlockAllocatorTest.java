@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.util.IdBlockAllocator;
+import com.ibm.fhir.persistence.jdbc.util.IdBlockAllocator.BlockSource;
+
+/**
+ * Unit tests for {@link IdBlockAllocator}
+ */
+public class IdBlockAllocatorTest {
+
+    /**
+     * Simulates a sequence which increments by the block size
+     */
+    private static BlockSource sequence(AtomicLong next, int blockSize) {
+        return () -> {
+            long base = next.getAndAdd(blockSize);
+            long[] result = new long[blockSize];
+            for (int i = 0; i < blockSize; i++) {
+                result[i] = base + i;
+            }
+            return result;
+        };
+    }
+
+    @Test
+    public void testNextValue() throws Exception {
+        IdBlockAllocator allocator = new IdBlockAllocator("TEST_SEQUENCE");
+        BlockSource source = sequence(new AtomicLong(1000), 3);
+
+        for (long expected = 1000; expected < 1007; expected++) {
+            assertEquals(allocator.nextValue(source), expected);
+        }
+        assertEquals(allocator.getIdCount(), 7);
+        assertEquals(allocator.getBlockCount(), 3);
+        assertEquals(allocator.getDiscardedCount(), 0);
+    }
+
+    @Test
+    public void testConcurrentValuesAreUnique() throws Exception {
+        IdBlockAllocator allocator = new IdBlockAllocator("TEST_SEQUENCE");
+        BlockSource source = sequence(new AtomicLong(1), 20);
+        Set<Long> values = ConcurrentHashMap.newKeySet();
+
+        final int threads = 8;
+        final int perThread = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        assertTrue(values.add(allocator.nextValue(source)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(values.size(), threads * perThread);
+        assertEquals(allocator.getIdCount(), threads * perThread);
+
+        // every reserved value is either handed out, discarded or still in the current block
+        long reserved = allocator.getBlockCount() * 20;
+        assertTrue(reserved >= allocator.getIdCount() + allocator.getDiscardedCount());
+        assertTrue(reserved - allocator.getIdCount() - allocator.getDiscardedCount() < 20);
+    }
+
+    @Test
+    public void testGetInstance() {
+        assertSame(IdBlockAllocator.getInstance("TEST_SEQUENCE"), IdBlockAllocator.getInstance("TEST_SEQUENCE"));
+        assertTrue(IdBlockAllocator.getInstance("TEST_SEQUENCE") != IdBlockAllocator.getInstance("OTHER_SEQUENCE"));
+    }
+}
@@ -22,6 +22,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -57,6 +58,7 @@ import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.Table;
 import com.ibm.fhir.database.utils.model.Tenant;
 import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.database.utils.postgres.PostgresAdapter;
 import com.ibm.fhir.database.utils.postgres.PostgresTranslator;
 import com.ibm.fhir.database.utils.tenant.AddTenantKeyDAO;
 import com.ibm.fhir.database.utils.tenant.GetTenantDAO;
@@ -156,6 +158,12 @@ public class Main {
     // Optional subset of resource types (for faster schema builds when testing)
     private Set<String> resourceTypeSubset;
 
+    // Number of hash partitions for each of the parameter tables (PostgreSQL only)
+    private int parameterTablePartitions = 0;
+
+    // Largest parameter table which will be converted to hash partitions by copying its rows
+    private long parameterTablePartitionMaxRows = 1000000;
+
     // Tenant management
     private boolean allocateTenant;
     private boolean refreshTenants;
@@ -238,6 +246,10 @@ public class Main {
                 gen = new FhirSchemaGenerator(schema.getAdminSchemaName(), schema.getSchemaName(), isMultitenant(), resourceTypeSubset);
             }
 
+            if (dbType == DbType.POSTGRESQL) {
+                gen.setParameterTablePartitions(parameterTablePartitions);
+            }
+
             gen.buildSchema(pdm);
             switch (dbType) {
             case DB2:
@@ -379,6 +391,11 @@ public class Main {
         applyModel(pdm, adapter, collector, vhs);
         // There is a working data model at this point.
 
+        // Convert any parameter tables created before hash partitioning was requested
+        if (dbType == DbType.POSTGRESQL && parameterTablePartitions > 1) {
+            partitionParameterTables(pdm);
+        }
+
         // If the db is multi-tenant, we populate the resource types and parameter names in allocate-tenant.
         // Otherwise, if its a new schema, populate the resource types and parameters names (codes) now
         if (!MULTITENANT_FEATURE_ENABLED.contains(dbType) && newDb ) {
@@ -401,6 +418,39 @@ public class Main {
         applyDataMigrationForV0010();
     }
 
+    /**
+     * Convert existing parameter tables to the hash partitioned tables described
+     * by the model. Tables which are already partitioned are skipped. Each table
+     * is copied in its own transaction to avoid pressure on the tx log, and the
+     * conversion stops at the first table with more than parameterTablePartitionMaxRows
+     * rows, which has to be migrated offline.
+     *
+     * @param pdm
+     */
+    protected void partitionParameterTables(PhysicalDataModel pdm) {
+        PostgresAdapter adapter = new PostgresAdapter(connectionPool);
+        List<String> converted = new ArrayList<>();
+        pdm.processTablesInSchema(schema.getSchemaName(), table -> {
+            if (table.getHashPartitionDef() != null) {
+                try (ITransaction tx = TransactionFactory.openTransaction(connectionPool)) {
+                    try {
+                        if (adapter.partitionExistingTable(table, pdm.findDependentViews(table), parameterTablePartitionMaxRows)) {
+                            converted.add(table.getObjectName());
+                        }
+                    } catch (DataAccessException x) {
+                        // Something went wrong, so mark the transaction as failed
+                        tx.setRollbackOnly();
+                        throw x;
+                    }
+                }
+            }
+        });
+
+        if (!converted.isEmpty()) {
+            logger.info("Converted " + converted.size() + " tables to " + parameterTablePartitions + " hash partitions");
+        }
+    }
+
     /**
      * populates for the given tenantId the RESOURCE_TYPE table.
      *
@@ -1398,6 +1448,20 @@ public class Main {
                     throw new IllegalArgumentException("Missing value for argument at posn: " + i);
                 }
                 break;
+            case "--pg-hash-partitions":
+                if (++i < args.length) {
+                    this.parameterTablePartitions = Integer.parseInt(args[i]);
+                } else {
+                    throw new IllegalArgumentException("Missing value for argument at posn: " + i);
+                }
+                break;
+            case "--pg-hash-partition-max-rows":
+                if (++i < args.length) {
+                    this.parameterTablePartitionMaxRows = Long.parseLong(args[i]);
+                } else {
+                    throw new IllegalArgumentException("Missing value for argument at posn: " + i);
+                }
+                break;
             case "--prop":
                 if (++i < args.length) {
                     // properties are given as name=value
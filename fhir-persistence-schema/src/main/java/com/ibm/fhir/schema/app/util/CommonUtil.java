@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -110,6 +110,12 @@ public final class CommonUtil {
         ps.println("--pool-size poolSize");
         ps.println(" * poolsize used with the database actions ");
 
+        // Hash partitions for the parameter tables
+        ps.println("--pg-hash-partitions numPartitions");
+        ps.println(" * (PostgreSQL only) the number of hash partitions for each of the parameter tables ");
+        ps.println("--pg-hash-partition-max-rows maxRows");
+        ps.println(" * (PostgreSQL only) the largest parameter table converted to hash partitions by copying ");
+
         // Property used to connect
         ps.println("--prop name=value");
         ps.println(" * name=value that is passed in on the commandline  ");
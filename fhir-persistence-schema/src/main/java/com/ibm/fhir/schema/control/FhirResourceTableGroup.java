@@ -108,6 +108,9 @@ public class FhirResourceTableGroup {
     // Privileges to be granted to each of the resource tables created by this class
     private final Collection<GroupPrivilege> resourceTablePrivileges;
 
+    // Number of hash partitions for the parameter tables, where supported (0 for none)
+    private final int parameterTablePartitions;
+
     private static final String _LOGICAL_RESOURCES = "_LOGICAL_RESOURCES";
     private static final String _RESOURCES = "_RESOURCES";
 
@@ -118,6 +121,18 @@ public class FhirResourceTableGroup {
      */
     public FhirResourceTableGroup(PhysicalDataModel model, String schemaName, boolean multitenant, SessionVariableDef sessionVariable,
             Set<IDatabaseObject> procedureDependencies, Tablespace fhirTablespace, Collection<GroupPrivilege> privileges) {
+        this(model, schemaName, multitenant, sessionVariable, procedureDependencies, fhirTablespace, privileges, 0);
+    }
+
+    /**
+     * Public constructor
+     * @param parameterTablePartitions the number of hash partitions (by logical_resource_id) for each of the
+     *        parameter tables, used only where the database supports hash partitioning. 0 for regular tables.
+     */
+    public FhirResourceTableGroup(PhysicalDataModel model, String schemaName, boolean multitenant, SessionVariableDef sessionVariable,
+            Set<IDatabaseObject> procedureDependencies, Tablespace fhirTablespace, Collection<GroupPrivilege> privileges,
+            int parameterTablePartitions) {
+        this.parameterTablePartitions = parameterTablePartitions;
         this.model = model;
         this.schemaName = schemaName;
         this.multitenant = multitenant;
@@ -374,6 +389,7 @@ ALTER TABLE device_str_values ADD CONSTRAINT fk_device_str_values_rid  FOREIGN K
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .setVersion(FhirSchemaVersion.V0009.vid())
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 // .addBigIntColumn(             ROW_ID,      false) // Removed by issue-1683 - composites refactor
                 .addIntColumn(     PARAMETER_NAME_ID,      false)
                 .addVarcharColumn(         STR_VALUE, msb,  true)
@@ -454,6 +470,7 @@ ALTER TABLE device_str_values ADD CONSTRAINT fk_device_str_values_rid  FOREIGN K
         Table tbl = Table.builder(schemaName, tableName)
                 .setVersion(FhirSchemaVersion.V0009.vid())
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(       PARAMETER_NAME_ID,    false)
                 .addBigIntColumn(COMMON_TOKEN_VALUE_ID,     true)
                 .addBigIntColumn(  LOGICAL_RESOURCE_ID,    false)
@@ -585,6 +602,7 @@ ALTER TABLE device_date_values ADD CONSTRAINT fk_device_date_values_r  FOREIGN K
                 .setVersion(FhirSchemaVersion.V0009.vid())
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(     PARAMETER_NAME_ID,      false)
                 .addTimestampColumn(      DATE_START,      true)
                 .addTimestampColumn(        DATE_END,      true)
@@ -646,6 +664,7 @@ ALTER TABLE device_number_values ADD CONSTRAINT fk_device_number_values_r  FOREI
                 .setVersion(FhirSchemaVersion.V0009.vid())
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(     PARAMETER_NAME_ID,      false)
                 .addDoubleColumn(       NUMBER_VALUE,       true)
                 .addBigIntColumn(LOGICAL_RESOURCE_ID,      false)
@@ -710,6 +729,7 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .setVersion(FhirSchemaVersion.V0009.vid())
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(     PARAMETER_NAME_ID,      false)
                 .addDoubleColumn(     LATITUDE_VALUE,       true)
                 .addDoubleColumn(    LONGITUDE_VALUE,       true)
@@ -774,6 +794,7 @@ ALTER TABLE device_quantity_values ADD CONSTRAINT fk_device_quantity_values_r  F
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .setVersion(FhirSchemaVersion.V0009.vid())
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(     PARAMETER_NAME_ID,      false)
                 .addVarcharColumn(              CODE, 255, false)
                 .addDoubleColumn(     QUANTITY_VALUE,      true)
@@ -181,6 +181,9 @@ public class FhirSchemaGenerator {
     // The default tablespace used for everything not specific to a tenant
     private Tablespace fhirTablespace;
 
+    // The number of hash partitions for each parameter table (PostgreSQL only), 0 for none
+    private int parameterTablePartitions = 0;
+
     /**
      * Generate the IBM FHIR Server Schema for all resourceTypes
      *
@@ -352,6 +355,15 @@ public class FhirSchemaGenerator {
         pdm.addObject(tenantSequence);
     }
 
+    /**
+     * Set the number of hash partitions (by logical_resource_id) to use for each of
+     * the parameter tables. Only supported by PostgreSQL; ignored for other databases.
+     * @param parameterTablePartitions the number of partitions, or 0 for regular tables
+     */
+    public void setParameterTablePartitions(int parameterTablePartitions) {
+        this.parameterTablePartitions = parameterTablePartitions;
+    }
+
     /**
      * Create the schema using the given target
      * @param model
@@ -614,6 +626,7 @@ public class FhirSchemaGenerator {
 
         Table tbl = Table.builder(schemaName, STR_VALUES)
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(     PARAMETER_NAME_ID,      false)
                 .addVarcharColumn(         STR_VALUE, msb,  true)
                 .addVarcharColumn(   STR_VALUE_LCASE, msb,  true)
@@ -649,6 +662,7 @@ public class FhirSchemaGenerator {
         Table tbl = Table.builder(schemaName, tableName)
                 .setVersion(2)
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(     PARAMETER_NAME_ID,      false)
                 .addTimestampColumn(      DATE_START,6,    true)
                 .addTimestampColumn(        DATE_END,6,    true)
@@ -728,7 +742,7 @@ public class FhirSchemaGenerator {
         // The sessionVariable is used to enable access control on every table, so we
         // provide it as a dependency
         FhirResourceTableGroup frg = new FhirResourceTableGroup(model, this.schemaName, this.multitenant, sessionVariable,
-                this.procedureDependencies, this.fhirTablespace, this.resourceTablePrivileges);
+                this.procedureDependencies, this.fhirTablespace, this.resourceTablePrivileges, this.parameterTablePartitions);
         for (String resourceType: this.resourceTypes) {
 
             resourceType = resourceType.toUpperCase().trim();
@@ -887,6 +901,7 @@ public class FhirSchemaGenerator {
         Table tbl = Table.builder(schemaName, tableName)
                 .setVersion(FhirSchemaVersion.V0009.vid())
                 .setTenantColumnName(MT_ID)
+                .setHashPartitioning(LOGICAL_RESOURCE_ID, parameterTablePartitions)
                 .addIntColumn(       PARAMETER_NAME_ID,    false)
                 .addBigIntColumn(COMMON_TOKEN_VALUE_ID,     true) // support for null token value entries
                 .addBigIntColumn(  LOGICAL_RESOURCE_ID,    false)
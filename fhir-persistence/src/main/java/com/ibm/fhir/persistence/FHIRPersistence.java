@@ -7,7 +7,10 @@
 package com.ibm.fhir.persistence;
 
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import com.ibm.fhir.model.resource.OperationOutcome;
@@ -15,6 +18,7 @@ import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.search.context.SeekKey;
 
 /**
  * This interface defines the contract between the FHIR Server's REST API layer and the underlying
@@ -167,6 +171,39 @@ public interface FHIRPersistence {
     int reindex(FHIRPersistenceContext context, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId)
             throws FHIRPersistenceException;
 
+    /**
+     * Reindex a batch of up to resourceCount resources not yet processed, optionally restricted
+     * to a partition of the data identified by a range of logical resource ids. Partitioning
+     * allows multiple callers (for example, several server nodes) to reindex disjoint slices
+     * of the database concurrently. Resources are marked with the given tstamp once processed,
+     * so reindexing can be resumed by calling again with the same tstamp value.
+     * <br>
+     * The default implementation reindexes one resource at a time and does not support partitioning.
+     * @param context the FHIRPersistenceContext instance associated with the current request.
+     * @param operationOutcomeResult accumulate issues in this {@link Builder}
+     * @param tstamp reindex any resources with an index_tstamp less than this.
+     * @param resourceLogicalId optional resourceType/logicalId value to reindex a specific resource
+     * @param resourceCount the maximum number of resources to reindex in this call
+     * @param fromLogicalResourceId optional inclusive lower bound of the logical resource id partition
+     * @param toLogicalResourceId optional exclusive upper bound of the logical resource id partition
+     * @return count of the number of resources selected for reindexing by this call (0 when there is nothing left to do)
+     * @throws FHIRPersistenceException
+     */
+    default int reindex(FHIRPersistenceContext context, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId,
+            int resourceCount, Long fromLogicalResourceId, Long toLogicalResourceId) throws FHIRPersistenceException {
+        if (fromLogicalResourceId != null || toLogicalResourceId != null) {
+            throw new FHIRPersistenceNotSupportedException("Partitioned reindex is not supported by this persistence implementation");
+        }
+
+        int totalProcessed = 0;
+        int processed = 1;
+        for (int i=0; i<resourceCount && processed > 0; i++) {
+            processed = reindex(context, operationOutcomeResult, tstamp, resourceLogicalId);
+            totalProcessed += processed;
+        }
+        return totalProcessed;
+    }
+
     /**
      * Special function for high speed export of resource payloads. The process
      * function must process the InputStream before returning. Result processing
@@ -185,6 +222,134 @@ public interface FHIRPersistence {
         Instant fromLastModified, Instant toLastModified,
         Function<ResourcePayload,Boolean> process) throws FHIRPersistenceException;
 
+    /**
+     * Split the resources which {@link #fetchResourcePayloads(Class, Instant, Instant, Function)} would
+     * return for the given window into ranges of lastUpdated holding about the same number of resources,
+     * so that the ranges can be exported in parallel.
+     *
+     * <p>Range i runs from boundary i-1 (inclusive) to boundary i (exclusive); the first range starts at
+     * fromLastModified and the last range ends at toLastModified. The boundaries are estimates, sampled
+     * from the data as it is when this is called.
+     *
+     * @param resourceType the resource type of the resources to split
+     * @param fromLastModified the start of the window, inclusive, or null
+     * @param toLastModified the end of the window, inclusive, or null
+     * @param rangeSize the minimum number of resources in a range
+     * @param maxRanges the maximum number of ranges
+     * @return the boundaries between the ranges, in ascending order; empty if the resources are not split
+     * @throws FHIRPersistenceException
+     */
+    default List<Instant> splitResourcePayloads(Class<? extends Resource> resourceType, Instant fromLastModified,
+        Instant toLastModified, long rangeSize, int maxRanges) throws FHIRPersistenceException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns true iff the persistence layer implementation supports {@link #searchPayloads(FHIRPersistenceContext, Class, Function)}
+     * @return
+     */
+    default boolean isSearchPayloadsSupported() {
+        return false;
+    }
+
+    /**
+     * Special function for high speed export of the resources matching a search. Runs the search
+     * like {@link #search(FHIRPersistenceContext, Class)}, including keyset paging, but hands the stored
+     * payload of each match to the process function instead of building a Resource from it. The process
+     * function must process the InputStream before returning. Result processing will be stopped if the
+     * process function returns Boolean FALSE.
+     *
+     * <p>The payload is the resource as it was stored, so _elements, _summary, _include and _revinclude
+     * are not supported.
+     *
+     * @param context the FHIRPersistenceContext holding the search context
+     * @param resourceType the resource type which is the target of the search
+     * @param process function to process each payload record
+     * @return the number of matches read from the page, including any without a stored payload, so that fewer
+     *         than the page size means there are no more pages
+     * @throws FHIRPersistenceException
+     * @throws java.io.UncheckedIOException if the process function throws it, e.g. when it fails to write a payload
+     */
+    default int searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+        Function<ResourcePayload,Boolean> process) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("Searching for payloads is not supported by this persistence implementation");
+    }
+
+    /**
+     * Returns true iff the persistence layer implementation supports {@link #expandGroup(String)} and
+     * {@link #fetchGroupMemberPayloads(Class, List, Instant, Instant, SeekKey, int, Function)}
+     * @return
+     */
+    default boolean isGroupMemberPayloadsSupported() {
+        return false;
+    }
+
+    /**
+     * Find the groups nested in a group, at any depth, whose members are also members of the group.
+     * An export expands the group once and passes the result to each
+     * {@link #fetchGroupMemberPayloads(Class, List, Instant, Instant, SeekKey, int, Function)}.
+     *
+     * @param groupId the logical id of the group
+     * @return the logical ids of the group and of the groups nested in it
+     * @throws FHIRPersistenceException
+     */
+    default List<String> expandGroup(String groupId) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("Fetching group member payloads is not supported by this persistence implementation");
+    }
+
+    /**
+     * Special function for high speed export of the resources in the Patient compartments of the members
+     * of a group, including the members of the groups nested in it. The members are matched in the
+     * database rather than by a search per patient, so the cost of a page does not depend on the size of
+     * the group. The payloads are handed to the process function in (lastUpdated, logical resource id)
+     * order, a page at a time. The process function must process the InputStream before returning.
+     * Result processing will be stopped if the process function returns Boolean FALSE.
+     *
+     * @param resourceType the resource type to export; Patient exports the members themselves
+     * @param groupIds the logical ids of the group and of the groups nested in it, from {@link #expandGroup(String)}
+     * @param fromLastModified include resources last updated at or after this time, if not null
+     * @param toLastModified include resources last updated before this time, if not null
+     * @param seekKey the position returned for the previous page, or null for the first page
+     * @param limit the maximum number of payloads in the page
+     * @param process function to process each payload record
+     * @return the position of the last payload processed, to read the next page from, or null if there were none
+     * @throws FHIRPersistenceException
+     */
+    default SeekKey fetchGroupMemberPayloads(Class<? extends Resource> resourceType, List<String> groupIds,
+        Instant fromLastModified, Instant toLastModified, SeekKey seekKey, int limit,
+        Function<ResourcePayload,Boolean> process) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("Fetching group member payloads is not supported by this persistence implementation");
+    }
+
+    /**
+     * Returns true iff the persistence layer implementation supports purging the payloads of
+     * superseded resource versions
+     * @return
+     */
+    default boolean isPurgeVersionsSupported() {
+        return false;
+    }
+
+    /**
+     * Purge the payloads of superseded resource versions which fall outside the retention policy
+     * for their resource type. Each call continues from where the previous call for the current
+     * tenant/datastore stopped, examining at most resourceCount logical resources, and moves on
+     * through the resource types in the policies map, starting over once all of them are done.
+     *
+     * <p>The version itself is kept as a tombstone: version ids are not reused and a vread of a
+     * purged version reports it as gone. Purged versions are no longer returned by history.
+     *
+     * @param operationOutcomeResult accumulate a summary of the progress
+     * @param policies the retention policy for each resource type to purge, keyed by resource type name
+     * @param resourceCount the maximum number of logical resources to examine
+     * @return the number of versions purged
+     * @throws FHIRPersistenceException
+     */
+    default int purgeVersions(OperationOutcome.Builder operationOutcomeResult, Map<String, RetentionPolicy> policies, int resourceCount)
+        throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("Purging resource versions is not supported by this persistence implementation");
+    }
+
     /**
      * Returns true iff the persistence layer implementation supports the "changes" special operation
      * @return
@@ -202,4 +367,15 @@ public interface FHIRPersistence {
      * @return a list containing up to resourceCount elements describing resources which have changed
      */
     List<ResourceChangeLogRecord> changes(int resourceCount, Instant fromLastModified, Long afterResourceId, String resourceTypeName) throws FHIRPersistenceException;
+
+    /**
+     * Fetch the payloads of the resource versions described by the given change records. The order in
+     * which the payloads are processed is arbitrary. Versions whose payload has been purged are skipped.
+     * @param records the change records returned by {@link #changes(int, Instant, Long, String)}
+     * @param process called for each payload. The payload stream must be consumed (and closed) before returning
+     * @throws FHIRPersistenceException
+     */
+    default void fetchChangePayloads(List<ResourceChangeLogRecord> records, Consumer<ResourcePayload> process) throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("Fetching change payloads is not supported by this persistence implementation");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Which of the superseded versions of a resource are retained.
+ *
+ * <p>A version is retained if it is one of the newest maxVersions versions of the resource,
+ * or if it was last updated within maxAge. The current version of a resource is always
+ * retained. Either limit can be null, but not both.
+ */
+public class RetentionPolicy {
+
+    // The number of versions of each resource to keep (including the current version), or null
+    private final Integer maxVersions;
+
+    // Versions newer than this are kept, or null
+    private final Duration maxAge;
+
+    /**
+     * Public constructor
+     * @param maxVersions the number of versions of each resource to keep, including the current version, or null
+     * @param maxAge versions last updated more recently than this are kept, or null
+     */
+    public RetentionPolicy(Integer maxVersions, Duration maxAge) {
+        if (maxVersions == null && maxAge == null) {
+            throw new IllegalArgumentException("maxVersions and maxAge cannot both be null");
+        }
+        if (maxVersions != null && maxVersions < 1) {
+            throw new IllegalArgumentException("Invalid maxVersions: " + maxVersions);
+        }
+        if (maxAge != null && maxAge.isNegative()) {
+            throw new IllegalArgumentException("Invalid maxAge: " + maxAge);
+        }
+        this.maxVersions = maxVersions;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @return the number of versions of each resource to keep, or null
+     */
+    public Integer getMaxVersions() {
+        return maxVersions;
+    }
+
+    /**
+     * @return the age beyond which versions can be purged, or null
+     */
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Get the time before which versions last updated can be purged
+     * @param now
+     * @return the cutoff time, or null if versions of any age can be purged
+     */
+    public Instant getPurgeBefore(Instant now) {
+        return maxAge == null ? null : now.minus(maxAge);
+    }
+
+    @Override
+    public String toString() {
+        return "maxVersions=" + maxVersions + ", maxAge=" + maxAge;
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2019, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -10,9 +10,21 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 
@@ -21,7 +33,12 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.Group;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.test.TestUtil;
 import com.ibm.fhir.model.type.Code;
@@ -30,7 +47,12 @@ import com.ibm.fhir.model.type.Element;
 import com.ibm.fhir.model.type.Extension;
 import com.ibm.fhir.model.type.Integer;
 import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.Reference;
 import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.SeekKey;
+import com.ibm.fhir.search.util.SearchUtil;
 
 /**
  * Tests related to the high-speed export method in FHIRPersistence.
@@ -41,6 +63,16 @@ public abstract class AbstractExportTest extends AbstractPersistenceTest {
     Basic resource3;
     Basic resource4;
 
+    // patient1 is a member of group1 and patient2 of group2, which is nested in group1
+    Patient patient1;
+    Patient patient2;
+    Patient patient3;
+    Group group1;
+    Group group2;
+    Observation observation1;
+    Observation observation2;
+    Observation observation3;
+
     @BeforeClass
     public void createResources() throws Exception {
         FHIRRequestContext.get().setTenantId("all");
@@ -70,16 +102,32 @@ public abstract class AbstractExportTest extends AbstractPersistenceTest {
 
         // delete resource4
         persistence.delete(getDefaultPersistenceContext(), resource4.getClass(), resource4.getId());
+
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        patient1 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        patient2 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        patient3 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+
+        Group group = TestUtil.readExampleResource("json/ibm/minimal/Group-1.json");
+        group2 = persistence.create(getDefaultPersistenceContext(), group.toBuilder().member(member("Patient/" + patient2.getId())).build()).getResource();
+        group1 = persistence.create(getDefaultPersistenceContext(), group.toBuilder()
+                .member(member("Patient/" + patient1.getId()), member("Group/" + group2.getId())).build()).getResource();
+
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        observation1 = persistence.create(getDefaultPersistenceContext(), observation.toBuilder().subject(reference("Patient/" + patient1.getId())).build()).getResource();
+        observation2 = persistence.create(getDefaultPersistenceContext(), observation.toBuilder().subject(reference("Patient/" + patient2.getId())).build()).getResource();
+        observation3 = persistence.create(getDefaultPersistenceContext(), observation.toBuilder().subject(reference("Patient/" + patient3.getId())).build()).getResource();
     }
 
     @AfterClass
     public void removeSavedResourcesAndResetTenant() throws Exception {
-        Resource[] resources = {resource1, resource2, resource3};
+        Resource[] resources = {resource1, resource2, resource3, patient1, patient2, patient3, group1, group2,
+                observation1, observation2, observation3};
         if (persistence.isDeleteSupported()) {
             // as this is AfterClass, we need to manually start/end the transaction
             startTrx();
             for (Resource resource : resources) {
-                persistence.delete(getDefaultPersistenceContext(), Basic.class, resource.getId());
+                persistence.delete(getDefaultPersistenceContext(), resource.getClass(), resource.getId());
             }
             commitTrx();
         }
@@ -118,6 +166,128 @@ public abstract class AbstractExportTest extends AbstractPersistenceTest {
         assertFalse(logicalIds.contains(resource4.getId())); // deleted resource should not be present
     }
 
+    @Test
+    public void testSplitResourcePayloads() throws Exception {
+        Instant fromLastModified = resource1.getMeta().getLastUpdated().getValue().toInstant();
+        List<Instant> boundaries = persistence.splitResourcePayloads(Basic.class, fromLastModified, null, 1, 3);
+        assertTrue(boundaries.size() <= 2);
+
+        // Export each range on its own; together they hold each resource exactly once
+        final List<String> logicalIds = new ArrayList<>();
+        Function<ResourcePayload,Boolean> processor = t -> {
+            logicalIds.add(t.getLogicalId());
+            return true;
+        };
+        Instant from = fromLastModified;
+        for (Instant boundary : boundaries) {
+            assertTrue(boundary.isAfter(from));
+            persistence.fetchResourcePayloads(Basic.class, from, boundary.minus(1, ChronoUnit.MICROS), processor);
+            from = boundary;
+        }
+        persistence.fetchResourcePayloads(Basic.class, from, null, processor);
+
+        assertEquals(logicalIds.size(), 3);
+        assertEquals(new HashSet<>(logicalIds), new HashSet<>(Arrays.asList(resource1.getId(), resource2.getId(), resource3.getId())));
+    }
+
+    @Test
+    public void testSearchPayloads() throws Exception {
+        if (!persistence.isSearchPayloadsSupported()) {
+            return;
+        }
+
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(2);
+        searchContext.setKeysetPaging(true);
+
+        // Read the matches a page at a time, as the compartment export does
+        final List<String> payloads = new ArrayList<>();
+        Function<ResourcePayload,Boolean> processor = t -> {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                t.transferTo(out);
+                payloads.add(new String(out.toByteArray(), StandardCharsets.UTF_8));
+            } catch (java.io.IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        };
+        int processed;
+        do {
+            processed = persistence.searchPayloads(FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext), Basic.class, processor);
+        } while (processed >= searchContext.getPageSize());
+
+        // The payloads are the current versions of the 3 resources which were not deleted
+        Set<String> logicalIds = new HashSet<>();
+        for (String payload : payloads) {
+            Basic basic = FHIRParser.parser(Format.JSON).parse(new StringReader(payload));
+            logicalIds.add(basic.getId());
+            if (basic.getId().equals(resource3.getId())) {
+                assertEquals(basic.getMeta().getVersionId().getValue(), "3");
+            }
+        }
+        assertEquals(payloads.size(), 3);
+        assertTrue(logicalIds.contains(resource1.getId()));
+        assertTrue(logicalIds.contains(resource2.getId()));
+        assertTrue(logicalIds.contains(resource3.getId()));
+    }
+
+    @Test
+    public void testSearchPayloadsProcessorFailure() throws Exception {
+        if (!persistence.isSearchPayloadsSupported()) {
+            return;
+        }
+
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(2);
+
+        // A failure to write a payload reaches the caller as it is, not as a failure of the search
+        java.io.IOException failure = new java.io.IOException("write failed");
+        UncheckedIOException thrown = expectThrows(UncheckedIOException.class, () -> {
+            persistence.searchPayloads(FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext), Basic.class, t -> {
+                throw new UncheckedIOException(failure);
+            });
+        });
+        assertEquals(thrown.getCause(), failure);
+    }
+
+    @Test
+    public void testFetchGroupMemberPayloads() throws Exception {
+        if (!persistence.isGroupMemberPayloadsSupported()) {
+            return;
+        }
+
+        // The group is expanded once for the whole export
+        assertEquals(persistence.expandGroup(group1.getId()), Arrays.asList(group1.getId(), group2.getId()));
+
+        // The members of the nested group are included, the other patients are not
+        assertEquals(fetchGroupMemberIds(Patient.class), Arrays.asList(patient1.getId(), patient2.getId()));
+        assertEquals(fetchGroupMemberIds(Observation.class), Arrays.asList(observation1.getId(), observation2.getId()));
+
+        // Resources which can't be in a patient compartment
+        assertEquals(fetchGroupMemberIds(Basic.class), Collections.emptyList());
+    }
+
+    /**
+     * Read the logical ids of the group1 member resources of the given type a page of 1 at a time
+     */
+    private List<String> fetchGroupMemberIds(Class<? extends Resource> resourceType) throws Exception {
+        final List<String> logicalIds = new ArrayList<>();
+        Function<ResourcePayload,Boolean> processor = t -> {
+            logicalIds.add(t.getLogicalId());
+            return true;
+        };
+        List<String> groupIds = persistence.expandGroup(group1.getId());
+        SeekKey seekKey = null;
+        do {
+            seekKey = persistence.fetchGroupMemberPayloads(resourceType, groupIds, null, null, seekKey, 1, processor);
+        } while (seekKey != null);
+        return logicalIds;
+    }
 
     /**
      * Convenience function to create a Meta tag
@@ -132,6 +302,28 @@ public abstract class AbstractExportTest extends AbstractPersistenceTest {
                    .build();
     }
 
+    /**
+     * Convenience function to create a group member
+     * @param reference
+     * @return
+     */
+    private Group.Member member(String reference) {
+        return Group.Member.builder()
+                           .entity(reference(reference))
+                           .build();
+    }
+
+    /**
+     * Convenience function to create a Reference
+     * @param reference
+     * @return
+     */
+    private Reference reference(String reference) {
+        return Reference.builder()
+                        .reference(com.ibm.fhir.model.type.String.of(reference))
+                        .build();
+    }
+
     /**
      * Convenience function to create an extension
      * @param url
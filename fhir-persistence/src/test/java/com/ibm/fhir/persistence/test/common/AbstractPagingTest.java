@@ -39,6 +39,7 @@ import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.SeekKey;
 import com.ibm.fhir.search.util.SearchUtil;
 
 /**
@@ -120,6 +121,37 @@ public abstract class AbstractPagingTest extends AbstractPersistenceTest {
         assertTrue(isResourceInResponse(resource3, results));
     }
 
+    // keyset paging walks the matches in lastUpdated order, advancing the seek key after each page
+    @Test
+    public void testSearchKeysetPaging() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setKeysetPaging(true);
+
+        List<Resource> results = runQueryTest(searchContext, Basic.class, queryParameters, 2).getResource();
+        assertEquals(results.size(), 2, "expected number of results");
+        assertEquals(results.get(0).getId(), resource1.getId());
+        assertEquals(results.get(1).getId(), resource2.getId());
+        SeekKey seekKey = searchContext.getSeekKey();
+        assertNotNull(seekKey);
+        assertEquals(seekKey.getLastUpdated(), resource2.getMeta().getLastUpdated().getValue().toInstant());
+
+        // resume from a copy of the key, as a reader restarting from a checkpoint would
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setKeysetPaging(true);
+        searchContext.setSeekKey(new SeekKey(seekKey.getLastUpdated(), seekKey.getLogicalResourceId()));
+        results = runQueryTest(searchContext, Basic.class, queryParameters, 2).getResource();
+        assertEquals(results.size(), 1, "expected number of results");
+        assertEquals(results.get(0).getId(), resource3.getId());
+        seekKey = searchContext.getSeekKey();
+
+        // past the end, the key is left where it was
+        results = runQueryTest(searchContext, Basic.class, queryParameters, 2).getResource();
+        assertTrue(results.isEmpty());
+        assertEquals(searchContext.getSeekKey(), seekKey);
+    }
+
     // history results should be sorted with oldest versions last
     @Test
     public void testHistoryPaging() throws Exception {
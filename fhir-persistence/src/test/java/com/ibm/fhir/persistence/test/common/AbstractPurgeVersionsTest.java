@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.RetentionPolicy;
+import com.ibm.fhir.persistence.context.FHIRHistoryContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
+
+/**
+ * Tests related to the purgeVersions method in FHIRPersistence.
+ */
+public abstract class AbstractPurgeVersionsTest extends AbstractPersistenceTest {
+    // The number of logical resources examined by each call; large enough for the whole test database
+    private static final int RESOURCE_COUNT = 1000;
+
+    Basic resource;
+
+    @BeforeClass
+    public void createResources() throws Exception {
+        FHIRRequestContext.get().setTenantId("all");
+
+        // Five versions of the same resource
+        Basic basic = TestUtil.readExampleResource("json/ibm/minimal/Basic-1.json");
+        resource = persistence.create(getDefaultPersistenceContext(), basic).getResource();
+        for (int i = 0; i < 4; i++) {
+            resource = persistence.update(getDefaultPersistenceContext(), resource.getId(), resource).getResource();
+        }
+        assertEquals(resource.getMeta().getVersionId().getValue(), "5");
+    }
+
+    @AfterClass
+    public void removeSavedResourcesAndResetTenant() throws Exception {
+        if (persistence.isDeleteSupported()) {
+            // as this is AfterClass, we need to manually start/end the transaction
+            startTrx();
+            persistence.delete(getDefaultPersistenceContext(), Basic.class, resource.getId());
+            commitTrx();
+        }
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    @Test
+    public void testPurgeKeepsRecentVersions() throws Exception {
+        // Every version is newer than maxAge, so nothing is purged
+        purge(new RetentionPolicy(1, Duration.ofDays(1)));
+        assertNotNull(persistence.vread(getDefaultPersistenceContext(), Basic.class, resource.getId(), "1").getResource());
+        assertEquals(history().size(), 5);
+    }
+
+    @Test(dependsOnMethods = { "testPurgeKeepsRecentVersions" })
+    public void testPurgeVersions() throws Exception {
+        assertTrue(purge(new RetentionPolicy(2, null)) >= 3);
+
+        // The purged versions are gone, but their version ids are not reused
+        for (String versionId : new String[] { "1", "2", "3" }) {
+            try {
+                persistence.vread(getDefaultPersistenceContext(), Basic.class, resource.getId(), versionId);
+                fail("version " + versionId + " was not purged");
+            } catch (FHIRPersistenceResourceDeletedException e) {
+                assertTrue(e.getMessage().contains("purged"));
+            }
+        }
+        assertNotNull(persistence.vread(getDefaultPersistenceContext(), Basic.class, resource.getId(), "4").getResource());
+        assertNotNull(persistence.read(getDefaultPersistenceContext(), Basic.class, resource.getId()).getResource());
+
+        List<Basic> versions = history();
+        assertEquals(versions.size(), 2);
+        assertEquals(versions.get(0).getMeta().getVersionId().getValue(), "5");
+        assertEquals(versions.get(1).getMeta().getVersionId().getValue(), "4");
+
+        // Purging again finds nothing more to do
+        assertEquals(purge(new RetentionPolicy(2, null)), 0);
+    }
+
+    /**
+     * Run enough calls for a complete pass over the Basic resources, wherever the last pass stopped
+     * @param policy
+     * @return the number of versions purged
+     */
+    private int purge(RetentionPolicy policy) throws Exception {
+        Map<String, RetentionPolicy> policies = Collections.singletonMap("Basic", policy);
+        int purged = 0;
+        for (int i = 0; i < 2; i++) {
+            OperationOutcome.Builder result = OperationOutcome.builder();
+            purged += persistence.purgeVersions(result, policies, RESOURCE_COUNT);
+            assertEquals(result.build().getIssue().size(), 1);
+        }
+        return purged;
+    }
+
+    private List<Basic> history() throws Exception {
+        FHIRHistoryContext historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        return persistence.history(getPersistenceContextForHistory(historyContext), Basic.class, resource.getId()).getResource();
+    }
+}
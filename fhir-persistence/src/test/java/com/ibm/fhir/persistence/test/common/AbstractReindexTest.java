@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.OperationOutcome.Issue;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+
+/**
+ * Tests related to the batch reindex method in FHIRPersistence.
+ */
+public abstract class AbstractReindexTest extends AbstractPersistenceTest {
+    // safety net to stop the tests from looping forever if reindex never completes
+    private static final int MAX_CALLS = 1000;
+
+    Basic resource1;
+    Basic resource2;
+    Basic resource3;
+
+    @BeforeClass
+    public void createResources() throws Exception {
+        FHIRRequestContext.get().setTenantId("all");
+
+        Basic resource = TestUtil.readExampleResource("json/ibm/minimal/Basic-1.json");
+        resource1 = persistence.create(getDefaultPersistenceContext(), resource).getResource();
+        resource2 = persistence.create(getDefaultPersistenceContext(), resource).getResource();
+        resource3 = persistence.create(getDefaultPersistenceContext(), resource).getResource();
+    }
+
+    @AfterClass
+    public void removeSavedResourcesAndResetTenant() throws Exception {
+        Resource[] resources = {resource1, resource2, resource3};
+        if (persistence.isDeleteSupported()) {
+            // as this is AfterClass, we need to manually start/end the transaction
+            startTrx();
+            for (Resource resource : resources) {
+                persistence.delete(getDefaultPersistenceContext(), Basic.class, resource.getId());
+            }
+            commitTrx();
+        }
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    @Test
+    public void testReindexBatch() throws Exception {
+        final Instant tstamp = Instant.now();
+        final int resourceCount = 2;
+
+        // Keep reindexing batches until there's nothing left to do
+        Set<String> processed = new HashSet<>();
+        int calls = 0;
+        int count;
+        do {
+            OperationOutcome.Builder result = OperationOutcome.builder();
+            count = persistence.reindex(getDefaultPersistenceContext(), result, tstamp, "Basic", resourceCount, null, null);
+            assertTrue(count <= resourceCount);
+            if (count > 0) {
+                for (Issue issue: result.build().getIssue()) {
+                    processed.add(issue.getDiagnostics().getValue());
+                }
+            }
+        } while (count > 0 && ++calls < MAX_CALLS);
+
+        assertEquals(count, 0);
+        assertTrue(processed.contains("Processed Basic/" + resource1.getId()));
+        assertTrue(processed.contains("Processed Basic/" + resource2.getId()));
+        assertTrue(processed.contains("Processed Basic/" + resource3.getId()));
+    }
+
+    @Test
+    public void testReindexPartition() throws Exception {
+        final Instant tstamp = Instant.now();
+
+        // A partition without any resources
+        OperationOutcome.Builder result = OperationOutcome.builder();
+        int count = persistence.reindex(getDefaultPersistenceContext(), result, tstamp, null, 10, Long.MAX_VALUE - 1, Long.MAX_VALUE);
+        assertEquals(count, 0);
+
+        // A partition covering all resources
+        int total = 0;
+        int calls = 0;
+        do {
+            count = persistence.reindex(getDefaultPersistenceContext(), result, tstamp, null, 10, 0L, Long.MAX_VALUE);
+            total += count;
+        } while (count > 0 && ++calls < MAX_CALLS);
+
+        assertEquals(count, 0);
+        assertTrue(total >= 3);
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,8 +7,10 @@
 package com.ibm.fhir.registry.util;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -162,6 +164,19 @@ public final class FHIRRegistryUtil {
 
     public static List<Entry> readIndex(String indexPath) {
         log.info("Loading index: " + indexPath);
+        IndexSnapshot indexSnapshot = IndexSnapshot.getInstance();
+        if (indexSnapshot.isEnabled()) {
+            try {
+                URL url = FHIRRegistryUtil.class.getClassLoader().getResource(indexPath);
+                if (url != null) {
+                    return indexSnapshot.getIndex(indexPath, url).getEntries();
+                }
+                log.warning("Index not found: " + indexPath);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Unexpected error while loading index '" + indexPath + "'", e);
+            }
+            return Collections.emptyList();
+        }
         try (InputStream in = FHIRRegistryUtil.class.getClassLoader().getResourceAsStream(indexPath)) {
             Index index = new Index();
             index.load(in);
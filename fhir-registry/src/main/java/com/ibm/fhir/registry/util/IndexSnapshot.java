@@ -0,0 +1,339 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.registry.util.Index.Entry;
+
+/**
+ * A directory of binary snapshots of the package indexes (.index.json) that are read by the registry at startup.
+ *
+ * <p>A snapshot is written the first time an index is read and is memory-mapped and decoded in place of the JSON on
+ * later starts, including those of other processes which share the directory. Each snapshot holds a SHA-256
+ * digest which identifies the index it was built from; a snapshot whose digest does not match the current index
+ * (e.g. after an upgrade) is ignored and rewritten. For an index in a jar file or a plain file the digest is taken
+ * of cheap metadata: the path, size and modification time of the file, and for a jar the size and CRC of the
+ * entry, which are read from the central directory of the jar without inflating the index. Otherwise it is the
+ * digest of the content of the index. Snapshots are disabled until a directory is set.
+ *
+ * <p>Only the package indexes are snapshotted. The other structures built at startup are not: the {@code ModelSupport}
+ * maps hold reflective Class, Field and Constructor objects which would have to be looked up again to decode a
+ * snapshot, and the compartment and search parameter maps hold model resources whose only persisted form is the
+ * JSON they are parsed from.
+ */
+public final class IndexSnapshot {
+    private static final Logger log = Logger.getLogger(IndexSnapshot.class.getName());
+
+    private static final IndexSnapshot INSTANCE = new IndexSnapshot();
+
+    static final int MAGIC = 0x46484958;
+    static final int FORMAT_VERSION = 2;
+
+    static final int DIGEST_SIZE = 32;
+    static final int NULL = -1;
+
+    /**
+     * The file extension of index snapshot files
+     */
+    public static final String FILE_EXTENSION = ".snapshot";
+
+    private volatile Path directory;
+
+    private IndexSnapshot() { }
+
+    /**
+     * Get the singleton instance of this class.
+     *
+     * @return
+     *     the singleton instance
+     */
+    public static IndexSnapshot getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the directory of the index snapshot files. The directory must be set before the registry is initialized.
+     *
+     * @param directory
+     *     the directory, or null to disable snapshots
+     * @throws IOException
+     *     if the directory cannot be created
+     */
+    public void setDirectory(Path directory) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Indicates whether snapshots are enabled.
+     *
+     * @return
+     *     true if a directory has been set, false otherwise
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Get the index at the specified URL, from its snapshot if there is a current one. The snapshot is validated
+     * with the metadata of the file or jar entry of the URL, so the index itself is only read when the snapshot
+     * is missing or out of date.
+     *
+     * @param indexPath
+     *     the path of the index
+     * @param url
+     *     the URL of the index
+     * @return
+     *     the index
+     * @throws IOException
+     *     if the index cannot be read
+     */
+    public Index getIndex(String indexPath, URL url) throws IOException {
+        Path directory = this.directory;
+        String metadata = (directory != null) ? metadata(url) : null;
+        if (metadata == null) {
+            try (InputStream in = url.openStream()) {
+                return getIndex(indexPath, readAllBytes(in));
+            }
+        }
+        try {
+            return getIndex(directory, indexPath, digest(metadata.getBytes(StandardCharsets.UTF_8)), () -> {
+                try (InputStream in = url.openStream()) {
+                    Index index = new Index();
+                    index.load(in);
+                    return index;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Get the index with the specified path and content, from its snapshot if there is a current one.
+     *
+     * @param indexPath
+     *     the path of the index
+     * @param content
+     *     the content of the index
+     * @return
+     *     the index
+     */
+    public Index getIndex(String indexPath, byte[] content) {
+        Path directory = this.directory;
+        if (directory == null) {
+            return load(content);
+        }
+        return getIndex(directory, indexPath, digest(content), () -> load(content));
+    }
+
+    private Index getIndex(Path directory, String indexPath, byte[] digest, Supplier<Index> loader) {
+        Path path = directory.resolve(fileName(indexPath));
+        if (Files.exists(path)) {
+            try {
+                Index index = read(path, digest);
+                if (index != null) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Loaded index '" + indexPath + "' from snapshot: " + path);
+                    }
+                    return index;
+                }
+                log.info("Snapshot of index '" + indexPath + "' is out of date: " + path);
+            } catch (IOException | RuntimeException e) {
+                log.log(Level.WARNING, "Unable to read index snapshot: " + path, e);
+            }
+        }
+        Index index = loader.get();
+        try {
+            write(directory, path, digest, index);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to write index snapshot: " + path, e);
+        }
+        return index;
+    }
+
+    /**
+     * Describe the file or jar entry of the given URL by its path, size and modification time (and for a jar entry,
+     * its size and CRC).
+     *
+     * @return
+     *     the metadata, or null if the URL is not a file or an entry of a jar file
+     */
+    static String metadata(URL url) {
+        try {
+            if ("file".equals(url.getProtocol())) {
+                Path path = Paths.get(url.toURI());
+                return path + "|" + Files.size(path) + "|" + Files.getLastModifiedTime(path).toMillis();
+            }
+            URLConnection connection = url.openConnection();
+            if (connection instanceof JarURLConnection) {
+                JarURLConnection jarConnection = (JarURLConnection) connection;
+                URL jarFileURL = jarConnection.getJarFileURL();
+                JarEntry entry = jarConnection.getJarEntry();
+                if ("file".equals(jarFileURL.getProtocol()) && entry != null) {
+                    Path jar = Paths.get(jarFileURL.toURI());
+                    return jar + "|" + Files.size(jar) + "|" + Files.getLastModifiedTime(jar).toMillis() +
+                            "!" + entry.getName() + "|" + entry.getSize() + "|" + entry.getCrc();
+                }
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.log(Level.FINE, "Unable to read the metadata of index: " + url, e);
+        }
+        return null;
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @param path
+     *     the path of the snapshot file
+     * @param digest
+     *     the expected digest of the index
+     * @return
+     *     the index, or null if the snapshot was built from an index with a different digest
+     * @throws IOException
+     *     if the snapshot file cannot be read
+     */
+    static Index read(Path path, byte[] digest) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        byte[] actual = new byte[DIGEST_SIZE];
+        buffer.get(actual);
+        if (!Arrays.equals(actual, digest)) {
+            return null;
+        }
+        Index index = new Index(buffer.getInt());
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            index.add(new Entry(
+                getString(buffer),
+                getString(buffer),
+                getString(buffer),
+                getString(buffer),
+                getString(buffer),
+                getString(buffer),
+                getString(buffer)));
+        }
+        return index;
+    }
+
+    private static void write(Path directory, Path path, byte[] digest, Index index) throws IOException {
+        Path temp = Files.createTempFile(directory, "index", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(digest);
+                out.writeInt(index.getVersion());
+                out.writeInt(index.getEntries().size());
+                for (Entry entry : index.getEntries()) {
+                    putString(out, entry.getFileName());
+                    putString(out, entry.getResourceType());
+                    putString(out, entry.getId());
+                    putString(out, entry.getUrl());
+                    putString(out, entry.getVersion());
+                    putString(out, entry.getKind());
+                    putString(out, entry.getType());
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Wrote index snapshot with " + index.getEntries().size() + " entries: " + path);
+        }
+    }
+
+    private static byte[] readAllBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static Index load(byte[] content) {
+        Index index = new Index();
+        index.load(new ByteArrayInputStream(content));
+        return index;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String fileName(String indexPath) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest(indexPath.getBytes(StandardCharsets.UTF_8))) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.append(FILE_EXTENSION).toString();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.registry.util.Index;
+import com.ibm.fhir.registry.util.Index.Entry;
+import com.ibm.fhir.registry.util.IndexSnapshot;
+
+public class IndexSnapshotTest {
+    private static final String INDEX_PATH = "test/package/.index.json";
+
+    private static final String INDEX_V1 = "{\"index-version\":1,\"files\":["
+            + "{\"filename\":\"CodeSystem-a.json\",\"resourceType\":\"CodeSystem\",\"id\":\"a\",\"url\":\"http://example.com/a\",\"version\":\"1.0.0\"},"
+            + "{\"filename\":\"StructureDefinition-b.json\",\"resourceType\":\"StructureDefinition\",\"id\":\"b\",\"url\":\"http://example.com/b\","
+            + "\"kind\":\"resource\",\"type\":\"Patient\"}]}";
+
+    private static final String INDEX_V2 = "{\"index-version\":1,\"files\":["
+            + "{\"filename\":\"CodeSystem-a.json\",\"resourceType\":\"CodeSystem\",\"id\":\"a\",\"url\":\"http://example.com/a\",\"version\":\"2.0.0\"}]}";
+
+    private Path directory;
+
+    @BeforeMethod
+    public void beforeMethod() throws IOException {
+        directory = Files.createTempDirectory("index-snapshot");
+        IndexSnapshot.getInstance().setDirectory(directory);
+    }
+
+    @AfterMethod
+    public void afterMethod() throws IOException {
+        IndexSnapshot.getInstance().setDirectory(null);
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testGetIndex() throws IOException {
+        List<Entry> expected = load(INDEX_V1).getEntries();
+
+        // the first read parses the JSON and writes the snapshot
+        Index index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, INDEX_V1.getBytes(StandardCharsets.UTF_8));
+        assertEquals(index.getVersion(), 1);
+        assertEquals(index.getEntries(), expected);
+        assertEquals(snapshots().size(), 1);
+
+        // the second read is answered from the snapshot
+        Path snapshot = snapshots().get(0);
+        long lastModified = Files.getLastModifiedTime(snapshot).toMillis();
+        index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, INDEX_V1.getBytes(StandardCharsets.UTF_8));
+        assertEquals(index.getEntries(), expected);
+        assertEquals(Files.getLastModifiedTime(snapshot).toMillis(), lastModified);
+
+        Entry entry = index.getEntries().get(0);
+        assertEquals(entry.getVersion(), "1.0.0");
+        assertNull(entry.getKind());
+        assertEquals(index.getEntries().get(1).getType(), "Patient");
+
+        // a changed index makes the snapshot stale, so it is rebuilt
+        index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, INDEX_V2.getBytes(StandardCharsets.UTF_8));
+        assertEquals(index.getEntries(), load(INDEX_V2).getEntries());
+        assertEquals(snapshots().size(), 1);
+        index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, INDEX_V2.getBytes(StandardCharsets.UTF_8));
+        assertEquals(index.getEntries().get(0).getVersion(), "2.0.0");
+    }
+
+    @Test
+    public void testCorruptSnapshotIsRebuilt() throws IOException {
+        IndexSnapshot.getInstance().getIndex(INDEX_PATH, INDEX_V1.getBytes(StandardCharsets.UTF_8));
+        for (Path path : snapshots()) {
+            Files.write(path, new byte[] { 1, 2, 3 });
+        }
+        Index index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, INDEX_V1.getBytes(StandardCharsets.UTF_8));
+        assertEquals(index.getEntries(), load(INDEX_V1).getEntries());
+        assertTrue(snapshots().stream().allMatch(path -> path.toFile().length() > 3));
+    }
+
+    @Test
+    public void testGetIndexFromFile() throws IOException {
+        Path file = Files.createTempFile("index", ".json");
+        try {
+            Files.write(file, INDEX_V1.getBytes(StandardCharsets.UTF_8));
+            URL url = file.toUri().toURL();
+
+            Index index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, url);
+            assertEquals(index.getEntries(), load(INDEX_V1).getEntries());
+            Path snapshot = snapshots().get(0);
+            long lastModified = Files.getLastModifiedTime(snapshot).toMillis();
+
+            // an unchanged file is answered from the snapshot
+            index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, url);
+            assertEquals(index.getEntries(), load(INDEX_V1).getEntries());
+            assertEquals(Files.getLastModifiedTime(snapshot).toMillis(), lastModified);
+
+            // a changed file has a different size, so the snapshot is rebuilt
+            Files.write(file, INDEX_V2.getBytes(StandardCharsets.UTF_8));
+            index = IndexSnapshot.getInstance().getIndex(INDEX_PATH, url);
+            assertEquals(index.getEntries(), load(INDEX_V2).getEntries());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testGetIndexFromJar() throws IOException {
+        Path jar = Files.createTempFile("index", ".jar");
+        try {
+            writeJar(jar, INDEX_V1);
+            URL url = new URL("jar:" + jar.toUri() + "!/" + INDEX_PATH);
+            assertEquals(IndexSnapshot.getInstance().getIndex(INDEX_PATH, url).getEntries(), load(INDEX_V1).getEntries());
+            Path snapshot = snapshots().get(0);
+            long lastModified = Files.getLastModifiedTime(snapshot).toMillis();
+
+            // an unchanged jar is answered from the snapshot
+            assertEquals(IndexSnapshot.getInstance().getIndex(INDEX_PATH, url).getEntries(), load(INDEX_V1).getEntries());
+            assertEquals(Files.getLastModifiedTime(snapshot).toMillis(), lastModified);
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    private void writeJar(Path jar, String content) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(INDEX_PATH));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+    }
+
+    private Index load(String content) {
+        Index index = new Index();
+        index.load(new StringReader(content));
+        return index;
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.toString().endsWith(IndexSnapshot.FILE_EXTENSION)).collect(Collectors.toList());
+        }
+    }
+}
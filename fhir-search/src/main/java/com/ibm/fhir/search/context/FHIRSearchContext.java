@@ -103,4 +103,30 @@ public interface FHIRSearchContext extends FHIRPagingContext {
      */
     void setTotalParameter(TotalValueSet total);
 
+    /**
+     * @return true if the search should use keyset paging, in which case the page number is
+     *         ignored, sort parameters are not applied, and no count is computed
+     */
+    boolean isKeysetPaging();
+
+    /**
+     * Select keyset paging. Matches are returned in (lastUpdated, logicalResourceId) order,
+     * starting after the current seek key.
+     * @param keysetPaging
+     */
+    void setKeysetPaging(boolean keysetPaging);
+
+    /**
+     * Get the seek key for keyset paging. After a search, this is the key of the last match
+     * returned, or is unchanged if no matches were returned.
+     *
+     * @return the seek key, or null to read from the start
+     */
+    SeekKey getSeekKey();
+
+    /**
+     * Set the seek key for keyset paging. Only resources which come after this key are returned.
+     * @param seekKey the seek key, or null to read from the start
+     */
+    void setSeekKey(SeekKey seekKey);
 }
@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.context;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The position of a resource in the (lastUpdated, logicalResourceId) order used for keyset
+ * paging. A search which is given a seek key only returns resources which come strictly
+ * after that position, so a reader can walk a large result set one page at a time without
+ * an OFFSET, and resume exactly where it left off by saving the key of the last resource it read.
+ */
+public class SeekKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // The last_updated time of the resource
+    private final Instant lastUpdated;
+
+    // The database id of the logical resource, which breaks ties on lastUpdated
+    private final long logicalResourceId;
+
+    /**
+     * Public constructor
+     * @param lastUpdated
+     * @param logicalResourceId
+     */
+    public SeekKey(Instant lastUpdated, long logicalResourceId) {
+        this.lastUpdated = Objects.requireNonNull(lastUpdated, "lastUpdated");
+        this.logicalResourceId = logicalResourceId;
+    }
+
+    /**
+     * @return the lastUpdated
+     */
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /**
+     * @return the logicalResourceId
+     */
+    public long getLogicalResourceId() {
+        return logicalResourceId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SeekKey)) {
+            return false;
+        }
+        SeekKey that = (SeekKey) obj;
+        return this.logicalResourceId == that.logicalResourceId && this.lastUpdated.equals(that.lastUpdated);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lastUpdated, logicalResourceId);
+    }
+
+    @Override
+    public String toString() {
+        return lastUpdated + "/" + logicalResourceId;
+    }
+}
@@ -13,6 +13,7 @@ import com.ibm.fhir.core.context.impl.FHIRPagingContextImpl;
 import com.ibm.fhir.search.SummaryValueSet;
 import com.ibm.fhir.search.TotalValueSet;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.SeekKey;
 import com.ibm.fhir.search.parameters.InclusionParameter;
 import com.ibm.fhir.search.parameters.QueryParameter;
 import com.ibm.fhir.search.parameters.SortParameter;
@@ -27,6 +28,8 @@ public class FHIRSearchContextImpl extends FHIRPagingContextImpl implements FHIR
     private List<String> elementsParameters = null;
     private SummaryValueSet summaryParameter = null;
     private TotalValueSet totalParameter = null;
+    private boolean keysetPaging = false;
+    private SeekKey seekKey = null;
 
     public FHIRSearchContextImpl() {
         searchParameters = new ArrayList<>();
@@ -141,6 +144,26 @@ public class FHIRSearchContextImpl extends FHIRPagingContextImpl implements FHIR
         this.searchResourceTypes = searchResourceTypes;
     }
 
+    @Override
+    public boolean isKeysetPaging() {
+        return this.keysetPaging;
+    }
+
+    @Override
+    public void setKeysetPaging(boolean keysetPaging) {
+        this.keysetPaging = keysetPaging;
+    }
+
+    @Override
+    public SeekKey getSeekKey() {
+        return this.seekKey;
+    }
+
+    @Override
+    public void setSeekKey(SeekKey seekKey) {
+        this.seekKey = seekKey;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -160,6 +183,10 @@ public class FHIRSearchContextImpl extends FHIRPagingContextImpl implements FHIR
         builder.append(summaryParameter);
         builder.append(", totalParameter=");
         builder.append(totalParameter);
+        builder.append(", keysetPaging=");
+        builder.append(keysetPaging);
+        builder.append(", seekKey=");
+        builder.append(seekKey);
         builder.append("]");
         return builder.toString();
     }
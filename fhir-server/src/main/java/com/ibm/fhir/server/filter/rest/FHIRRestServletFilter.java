@@ -41,6 +41,7 @@ import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.server.util.ChangeFeedStream;
 
 /**
  * This class is a servlet filter which is registered with the REST API's servlet. The main purpose of the class is to
@@ -176,6 +177,12 @@ public class FHIRRestServletFilter extends HttpFilter {
             double elapsedSecs = (System.currentTimeMillis() - initialTime) / 1000.0;
             log.info("Completed request[" + elapsedSecs + " secs]: " + encodedRequestDescription + statusMsg.toString());
 
+            // Release the change feed stream of the request, if it wasn't released when it was written.
+            Object changeFeedStream = request.getAttribute(ChangeFeedStream.REQUEST_ATTRIBUTE);
+            if (changeFeedStream instanceof ChangeFeedStream) {
+                ((ChangeFeedStream) changeFeedStream).close();
+            }
+
             // Remove the FHIRRequestContext from the current thread.
             FHIRRequestContext.remove();
 
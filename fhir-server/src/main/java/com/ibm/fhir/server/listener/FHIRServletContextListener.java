@@ -7,7 +7,9 @@
 package com.ibm.fhir.server.listener;
 
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_CHECK_REFERENCE_TYPES;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_EXPANSION_CACHE_PATH;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_CACHE_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_CONFIGURATION;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_TIME_LIMIT;
@@ -24,9 +26,12 @@ import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_SERVERS;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_TLS_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_TRUSTSTORE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_TRUSTSTORE_PW;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_REGISTRY_SNAPSHOT_PATH;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_REGISTRY_TERM_SERVICE_PROVIDER_CONCEPT_STORE_PATH;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_WEBSOCKET_ENABLED;
 
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +48,7 @@ import org.apache.commons.configuration.MapConfiguration;
 import org.owasp.encoder.Encode;
 
 import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.config.PropertyGroup.PropertyEntry;
 import com.ibm.fhir.model.config.FHIRModelConfig;
@@ -54,12 +60,16 @@ import com.ibm.fhir.notifications.nats.impl.FHIRNotificationNATSPublisher;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.registry.util.IndexSnapshot;
 import com.ibm.fhir.search.util.SearchUtil;
 import com.ibm.fhir.server.operation.FHIROperationRegistry;
 import com.ibm.fhir.server.registry.ServerRegistryResourceProvider;
 import com.ibm.fhir.server.util.FHIROperationUtil;
 import com.ibm.fhir.term.graph.provider.GraphTermServiceProvider;
 import com.ibm.fhir.term.service.FHIRTermService;
+import com.ibm.fhir.term.service.provider.CachingTermServiceProvider;
+import com.ibm.fhir.term.store.ConceptStoreRegistry;
+import com.ibm.fhir.term.store.ExpansionCache;
 
 @WebListener("IBM FHIR Server Servlet Context Listener")
 public class FHIRServletContextListener implements ServletContextListener {
@@ -93,6 +103,14 @@ public class FHIRServletContextListener implements ServletContextListener {
 
             log.fine("Current working directory: " + Encode.forHtml(System.getProperty("user.dir")));
 
+            // The registry reads its package indexes while SearchUtil is initialized, so this must be set first.
+            // Only the package indexes are snapshotted; the model, compartment and search parameter maps are built below.
+            String registrySnapshotPath = fhirConfig.getStringProperty(PROPERTY_REGISTRY_SNAPSHOT_PATH);
+            if (registrySnapshotPath != null) {
+                log.info("Using registry index snapshots in: " + registrySnapshotPath);
+                IndexSnapshot.getInstance().setDirectory(Paths.get(registrySnapshotPath));
+            }
+
             /*
              * The following inits are intended to load the FHIRUtil and SearchUtil into the classloader.
              * Subsequently, the code activates the static values (and maps).
@@ -197,6 +215,19 @@ public class FHIRServletContextListener implements ServletContextListener {
                 FHIRPersistenceInterceptorMgr.getInstance().addInterceptor(provider);
             }
 
+            String conceptStorePath = fhirConfig.getStringProperty(PROPERTY_REGISTRY_TERM_SERVICE_PROVIDER_CONCEPT_STORE_PATH);
+            if (conceptStorePath != null) {
+                log.info("Adding concept stores from: " + conceptStorePath);
+                ConceptStoreRegistry.getInstance().addConceptStores(Paths.get(conceptStorePath));
+            }
+
+            String expansionCachePath = fhirConfig.getStringProperty(PROPERTY_EXPANSION_CACHE_PATH);
+            if (expansionCachePath != null) {
+                log.info("Caching value set expansions in: " + expansionCachePath);
+                ExpansionCache.getInstance().setDirectory(Paths.get(expansionCachePath));
+                ExpansionCache.getInstance().setTenantIdSupplier(() -> FHIRRequestContext.get().getTenantId());
+            }
+
             Boolean graphTermServiceProviderEnabled = fhirConfig.getBooleanProperty(PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_ENABLED, Boolean.FALSE);
             if (graphTermServiceProviderEnabled) {
                 log.info("Adding GraphTermServiceProvider...");
@@ -208,7 +239,12 @@ public class FHIRServletContextListener implements ServletContextListener {
                     propertyGroup.getProperties().stream().forEach(entry -> map.put(entry.getName(), entry.getValue()));
                     int timeLimit = fhirConfig.getIntProperty(PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_TIME_LIMIT, GraphTermServiceProvider.DEFAULT_TIME_LIMIT);
                     graphTermServiceProvider = new GraphTermServiceProvider(new MapConfiguration(map), timeLimit);
-                    FHIRTermService.getInstance().addProvider(graphTermServiceProvider);
+                    Boolean cacheEnabled = fhirConfig.getBooleanProperty(PROPERTY_GRAPH_TERM_SERVICE_PROVIDER_CACHE_ENABLED, Boolean.TRUE);
+                    if (cacheEnabled) {
+                        FHIRTermService.getInstance().addProvider(new CachingTermServiceProvider(graphTermServiceProvider));
+                    } else {
+                        FHIRTermService.getInstance().addProvider(graphTermServiceProvider);
+                    }
                 }
             }
 
@@ -282,4 +282,34 @@ public interface FHIRResourceHelpers {
      * @throws Exception
      */
     public int doReindex(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * Invoke the FHIR persistence reindex operation for a batch of up to resourceCount resources
+     * which were last reindexed before the given date, optionally restricted to a partition
+     * of the data identified by a range of logical resource ids. The batch is processed in a
+     * single transaction.
+     * @param operationContext
+     * @param operationOutcomeResult
+     * @param tstamp
+     * @param resourceLogicalId a reference to a resource e.g. "Patient/abc123" or a resource type e.g. "Patient". Can be null
+     * @param resourceCount the maximum number of resources to reindex
+     * @param fromLogicalResourceId inclusive lower bound of the logical resource id partition. Can be null
+     * @param toLogicalResourceId exclusive upper bound of the logical resource id partition. Can be null
+     * @return number of resources selected for reindexing (0 if no resources were found to reindex)
+     * @throws Exception
+     */
+    public int doReindex(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId,
+            int resourceCount, Long fromLogicalResourceId, Long toLogicalResourceId) throws Exception;
+
+    /**
+     * Invoke the FHIR persistence purge operation to remove the payloads of superseded resource versions
+     * which fall outside the configured retention policies, examining up to resourceCount logical resources
+     * from where the previous call stopped. The batch is processed in a single transaction.
+     * @param operationContext
+     * @param operationOutcomeResult
+     * @param resourceCount the maximum number of logical resources to examine
+     * @return number of resource versions purged
+     * @throws Exception
+     */
+    public int doPurgeVersions(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, int resourceCount) throws Exception;
+}
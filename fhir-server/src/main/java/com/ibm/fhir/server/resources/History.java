@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -26,9 +26,11 @@ import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
+import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.server.util.ChangeFeedStream;
 import com.ibm.fhir.server.util.FHIRRestHelper;
 import com.ibm.fhir.server.util.RestAuditLogger;
 
@@ -63,6 +65,9 @@ public class History extends FHIRResource {
         try {
             checkInitComplete();
 
+            // This request only reads, so it may be routed to a read-only replica
+            FHIRRequestContext.get().setReadOnly(true);
+
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
             bundle = helper.doHistory(type, id, uriInfo.getQueryParameters(), getRequestUri(), null);
             status = Status.OK;
@@ -96,6 +101,9 @@ public class History extends FHIRResource {
         try {
             checkInitComplete();
 
+            // This request only reads, so it may be routed to a read-only replica
+            FHIRRequestContext.get().setReadOnly(true);
+
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
             bundle = helper.doHistory(uriInfo.getQueryParameters(), getRequestUri(), null);
             status = Status.OK;
@@ -118,4 +126,40 @@ public class History extends FHIRResource {
         }
     }
 
+    @GET
+    @Path("_history/$stream")
+    @Produces({ ChangeFeedStream.MEDIA_TYPE, FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON })
+    public Response systemHistoryStream() {
+        log.entering(this.getClass().getName(), "systemHistoryStream()");
+        Date startTime = new Date();
+        Response.Status status = null;
+
+        try {
+            checkInitComplete();
+
+            // This request only reads, so it may be routed to a read-only replica
+            FHIRRequestContext.get().setReadOnly(true);
+
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            ChangeFeedStream stream = helper.doHistoryStream(uriInfo.getQueryParameters());
+            // Released by the servlet filter when the request completes, even if the stream is never written
+            httpServletRequest.setAttribute(ChangeFeedStream.REQUEST_ATTRIBUTE, stream);
+            status = Status.OK;
+            return Response.status(status).type(ChangeFeedStream.MEDIA_TYPE).entity(stream).build();
+        } catch (FHIROperationException e) {
+            status = issueListToStatus(e.getIssues());
+            return Response.fromResponse(exceptionResponse(e, status)).type(FHIRMediaType.APPLICATION_FHIR_JSON).build();
+        } catch (Exception e) {
+            status = Status.INTERNAL_SERVER_ERROR;
+            return Response.fromResponse(exceptionResponse(e, status)).type(FHIRMediaType.APPLICATION_FHIR_JSON).build();
+        } finally {
+            try {
+                RestAuditLogger.logHistory(httpServletRequest, null, startTime, new Date(), status);
+            } catch (Exception e) {
+                log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+            }
+
+            log.exiting(this.getClass().getName(), "systemHistoryStream()");
+        }
+    }
 }
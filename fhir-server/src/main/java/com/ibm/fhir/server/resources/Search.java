@@ -28,6 +28,7 @@ import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
+import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.resource.Bundle;
@@ -77,6 +78,9 @@ public class Search extends FHIRResource {
         try {
             checkInitComplete();
 
+            // This request only reads, so it may be routed to a read-only replica
+            FHIRRequestContext.get().setReadOnly(true);
+
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
             bundle = helper.doSearch(type, null, null, queryParameters, getRequestUri(), null, null);
@@ -125,6 +129,9 @@ public class Search extends FHIRResource {
         try {
             checkInitComplete();
 
+            // This request only reads, so it may be routed to a read-only replica
+            FHIRRequestContext.get().setReadOnly(true);
+
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
             bundle = helper.doSearch(type, compartment, compartmentId, queryParameters, getRequestUri(), null, null);
@@ -171,6 +178,9 @@ public class Search extends FHIRResource {
         try {
             checkInitComplete();
 
+            // This request only reads, so it may be routed to a read-only replica
+            FHIRRequestContext.get().setReadOnly(true);
+
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
             bundle = helper.doSearch("Resource", null, null, queryParameters, getRequestUri(), null, null);
@@ -28,6 +28,7 @@ import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
+import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.resource.Resource;
@@ -65,6 +66,9 @@ public class VRead extends FHIRResource {
 
         try {
             checkInitComplete();
+
+            // This request only reads, so it may be routed to a read-only replica
+            FHIRRequestContext.get().setReadOnly(true);
             MultivaluedMap<String, String> queryParameters = uriInfo.getQueryParameters();
 
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
@@ -0,0 +1,311 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord;
+
+/**
+ * A window over the most recent records of the resource change log, shared by all the change feed
+ * streams of a tenant/datastore.
+ *
+ * <p>Streams which have caught up with the tail of the change log all read the same records, so
+ * instead of each of them polling the database, the first stream to find the window exhausted
+ * fetches the next records and the others are served from memory. The window holds every change
+ * with a change id in (start, end] and at most capacity records; older records are dropped from
+ * the front. A stream which has fallen behind the window reads the database directly until it
+ * catches up, and one which is ahead of the window waits for the window to reach it.
+ *
+ * <p>Change ids are allocated before the transaction which writes the change commits, so a change
+ * can become visible after changes with greater ids. To avoid skipping such a change, records are
+ * only handed out once they are older than the settle time, giving in-flight transactions the
+ * chance to commit. The change timestamp is also taken when the write starts, so a transaction
+ * which runs for longer than the settle time still commits behind the end of the window. Each
+ * refresh therefore scans the trailing rescanRange change ids behind the end of the window again,
+ * and adds the changes it didn't have to the window and to the list of late changes, from which
+ * streams which have already moved past them pick them up. The window always keeps the trailing
+ * range, even if that takes it over capacity.
+ */
+public class ChangeFeedBuffer {
+    private static final Logger logger = Logger.getLogger(ChangeFeedBuffer.class.getName());
+
+    // Buffers by tenant/datastore
+    private static final ConcurrentHashMap<String, ChangeFeedBuffer> buffers = new ConcurrentHashMap<>();
+
+    // The maximum number of records held
+    private final int capacity;
+
+    // The number of change ids behind the end of the window which are scanned again for late commits
+    private final long rescanRange;
+
+    // The window, sorted by change id
+    private final List<ResourceChangeLogRecord> window = new ArrayList<>();
+
+    // The window covers the change ids in (start, end]. A negative start means there is no window yet.
+    private long start = -1;
+    private long end = -1;
+
+    // When the window was last extended (System.nanoTime)
+    private long lastRefresh;
+
+    // The most recent changes found behind the end of the window, in the order they were found,
+    // and the total number found
+    private final List<ResourceChangeLogRecord> late = new ArrayList<>();
+    private long lateCount;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * Reads records from the change log
+     */
+    @FunctionalInterface
+    public interface ChangeSource {
+        /**
+         * Fetch the next records in change id order
+         * @param afterChangeId
+         * @param count the maximum number of records to fetch
+         * @return
+         * @throws Exception
+         */
+        List<ResourceChangeLogRecord> fetch(long afterChangeId, int count) throws Exception;
+    }
+
+    /**
+     * Public constructor
+     * @param capacity the maximum number of records held
+     * @param rescanRange the number of change ids behind the end of the window which are scanned again for late commits
+     */
+    public ChangeFeedBuffer(int capacity, long rescanRange) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        if (rescanRange < 0) {
+            throw new IllegalArgumentException("Invalid rescan range: " + rescanRange);
+        }
+        this.capacity = capacity;
+        this.rescanRange = rescanRange;
+    }
+
+    /**
+     * Get the buffer for the current tenant/datastore, creating it with the given capacity and rescan range if needed
+     * @param capacity
+     * @param rescanRange
+     * @return
+     */
+    public static ChangeFeedBuffer getInstance(int capacity, long rescanRange) {
+        final String key = FHIRRequestContext.get().getTenantId() + "~" + FHIRRequestContext.get().getDataStoreId();
+        return buffers.computeIfAbsent(key, k -> new ChangeFeedBuffer(capacity, rescanRange));
+    }
+
+    /**
+     * Get the number of change ids behind the end of the window which are scanned again for late commits
+     * @return
+     */
+    public long getRescanRange() {
+        return rescanRange;
+    }
+
+    /**
+     * Get the next settled records after the given change id.
+     * @param afterChangeId
+     * @param count the maximum number of records to return
+     * @param pollInterval the minimum time between two reads of the tail of the change log
+     * @param settleTime records are returned only once they are this old
+     * @param source reads the change log
+     * @return the records in change id order, empty if there are no new settled changes
+     * @throws Exception
+     */
+    public List<ResourceChangeLogRecord> next(long afterChangeId, int count, Duration pollInterval, Duration settleTime, ChangeSource source)
+        throws Exception {
+        synchronized (this) {
+            if (start < 0) {
+                // Start the window at the tail of the change log as seen by the first reader
+                window.clear();
+                start = afterChangeId;
+                end = afterChangeId;
+                refresh(settleTime, source);
+                return slice(afterChangeId, count);
+            }
+
+            if (afterChangeId >= start) {
+                List<ResourceChangeLogRecord> result = slice(afterChangeId, count);
+                if (result.isEmpty() && System.nanoTime() - lastRefresh >= pollInterval.toNanos()) {
+                    // This reader is at or past the end of the window, e.g. resuming from a change which settled
+                    // after the window last moved, so see if there is anything new. The window is extended from
+                    // its end rather than restarted at the reader, which would lose the rescan range.
+                    refresh(settleTime, source);
+                    result = slice(afterChangeId, count);
+                } else if (!result.isEmpty()) {
+                    hits.incrementAndGet();
+                }
+                return result;
+            }
+        }
+
+        // Behind the window, so read the database without holding the lock
+        reads.incrementAndGet();
+        List<ResourceChangeLogRecord> result = new ArrayList<>();
+        Instant cutoff = Instant.now().minus(settleTime);
+        for (ResourceChangeLogRecord record : source.fetch(afterChangeId, count)) {
+            if (!record.getChangeTstamp().isBefore(cutoff)) {
+                break;
+            }
+            result.add(record);
+        }
+        return result;
+    }
+
+    /**
+     * Extend the window with the settled records following its end, and add any changes in the trailing
+     * rescan range which committed after the window passed them. Records are dropped from the front of
+     * the window if it is full.
+     * @param settleTime
+     * @param source
+     * @throws Exception
+     */
+    private void refresh(Duration settleTime, ChangeSource source) throws Exception {
+        final long rescanFrom = Math.max(start, end - rescanRange);
+        final int known = window.size() - indexAfter(rescanFrom);
+        List<ResourceChangeLogRecord> records = source.fetch(rescanFrom, capacity + known);
+        Instant cutoff = Instant.now().minus(settleTime);
+        for (ResourceChangeLogRecord record : records) {
+            if (record.getChangeId() <= end) {
+                // A change which committed after the window passed it
+                int pos = indexAfter(record.getChangeId() - 1);
+                if (pos == window.size() || window.get(pos).getChangeId() != record.getChangeId()) {
+                    window.add(pos, record);
+                    late.add(record);
+                    lateCount++;
+                    if (late.size() > capacity) {
+                        late.remove(0);
+                    }
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("Late change found behind the change feed window: changeId=" + record.getChangeId());
+                    }
+                }
+                continue;
+            }
+
+            // Stop at the first record which is too recent, so that the window has no gaps
+            if (!record.getChangeTstamp().isBefore(cutoff)) {
+                break;
+            }
+            window.add(record);
+            end = record.getChangeId();
+        }
+
+        // Drop the oldest records, but never those in the trailing range which is scanned again
+        final int excess = window.size() - capacity;
+        int drop = 0;
+        while (drop < excess && window.get(drop).getChangeId() <= end - rescanRange) {
+            drop++;
+        }
+        if (drop > 0) {
+            start = window.get(drop - 1).getChangeId();
+            window.subList(0, drop).clear();
+        }
+        lastRefresh = System.nanoTime();
+        refreshes.incrementAndGet();
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Change feed window: start=" + start + ", end=" + end + ", size=" + window.size()
+                + ", hits=" + getHitCount() + ", reads=" + getReadCount() + ", refreshes=" + getRefreshCount());
+        }
+    }
+
+    /**
+     * Copy up to count records from the window which follow the given change id
+     * @param afterChangeId
+     * @param count
+     * @return
+     */
+    private List<ResourceChangeLogRecord> slice(long afterChangeId, int count) {
+        final int low = indexAfter(afterChangeId);
+        if (low == window.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(window.subList(low, Math.min(window.size(), low + count)));
+    }
+
+    /**
+     * Find the position of the first record in the window after the given change id
+     * @param afterChangeId
+     * @return
+     */
+    private int indexAfter(long afterChangeId) {
+        // binary search for the first record after afterChangeId
+        int low = 0;
+        int high = window.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (window.get(mid).getChangeId() <= afterChangeId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the total number of changes found behind the end of the window
+     * @return
+     */
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Get the changes found behind the end of the window since the late count was the given value.
+     * Only the most recent capacity late changes are kept.
+     * @param afterLateCount a value previously returned by {@link #getLateCount()}
+     * @return the changes in the order they were found
+     */
+    public synchronized List<ResourceChangeLogRecord> getLateChanges(long afterLateCount) {
+        final int n = (int) Math.min(late.size(), lateCount - afterLateCount);
+        if (n <= 0) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(late.subList(late.size() - n, late.size()));
+    }
+
+    /**
+     * Get the number of reads answered from the window
+     * @return
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of reads from behind the window, which went to the database
+     * @return
+     */
+    public long getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * Get the number of times the window was extended from the database
+     * @return
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord;
+import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+
+/**
+ * Writes the resource change log to the response as newline-delimited JSON, one change per line,
+ * following the log as new changes are committed until the maximum stream duration is reached or
+ * the client disconnects.
+ *
+ * <p>Each line holds the changeId, resourceType, logicalId, versionId, changeType and lastModified
+ * of a change and, if requested, the resource itself as stored. The changeId of the last line
+ * received is the resume token: it is the _afterHistoryId value from which a new stream (or
+ * system history) continues. While there are no new changes, an empty line is written every poll
+ * interval to keep the connection alive.
+ *
+ * <p>A change from a transaction which committed after the stream moved past its change id is
+ * written when the {@link ChangeFeedBuffer} finds it in its rescan range, so it arrives out of change
+ * id order and does not move the resume token. The stream remembers the change ids it has written in
+ * the rescan range behind its position and doesn't write those again, but a late change further
+ * behind, or one around a reconnect, may be written twice: delivery is at least once, and clients
+ * should ignore a changeId they have already processed.
+ *
+ * <p>Records are read in batches through the shared {@link ChangeFeedBuffer}, each in its own
+ * transaction, and payloads are copied to memory one batch at a time, so the memory used by a
+ * stream is bounded by the batch size, and no database connection is held while writing to a slow
+ * client.
+ *
+ * <p>The reservation made by {@link #tryOpen(int)} is released by {@link #close()}, which is called
+ * when the stream has been written and also when the request completes, in case the stream is never
+ * written.
+ */
+public class ChangeFeedStream implements StreamingOutput, AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ChangeFeedStream.class.getName());
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    // The request attribute holding the stream of a request, so that it can be closed when the request completes
+    public static final String REQUEST_ATTRIBUTE = ChangeFeedStream.class.getName();
+
+    // The number of streams currently open in this server
+    private static final AtomicInteger openStreams = new AtomicInteger();
+
+    private final FHIRPersistence persistence;
+    private final ChangeFeedBuffer buffer;
+    private final long afterChangeId;
+    private final int batchSize;
+    private final boolean includePayloads;
+    private final Duration pollInterval;
+    private final Duration settleTime;
+    private final Duration maxDuration;
+
+    // The change id of the last change written
+    private volatile long lastChangeId;
+
+    // The change ids written in the rescan range behind lastChangeId, to skip late changes already written
+    private final TreeSet<Long> writtenIds = new TreeSet<>();
+
+    // The late count of the buffer when the late changes were last checked
+    private long lateCount;
+
+    // Set once the reservation has been released
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Public constructor. The stream must have been reserved with {@link #tryOpen(int)}; the
+     * reservation is released by {@link #close()}.
+     * @param persistence
+     * @param buffer the buffer shared by the streams of the current tenant/datastore
+     * @param afterChangeId the resume token; only changes after this change id are written
+     * @param batchSize the maximum number of changes read at a time
+     * @param includePayloads whether to inline the resource payloads
+     * @param pollInterval how often to check for new changes once the stream has caught up
+     * @param settleTime how old a change must be before it is written
+     * @param maxDuration how long the stream stays open
+     */
+    public ChangeFeedStream(FHIRPersistence persistence, ChangeFeedBuffer buffer, long afterChangeId, int batchSize, boolean includePayloads,
+        Duration pollInterval, Duration settleTime, Duration maxDuration) {
+        this.persistence = persistence;
+        this.buffer = buffer;
+        this.afterChangeId = afterChangeId;
+        this.batchSize = batchSize;
+        this.includePayloads = includePayloads;
+        this.pollInterval = pollInterval;
+        this.settleTime = settleTime;
+        this.maxDuration = maxDuration;
+        this.lastChangeId = afterChangeId;
+        this.lateCount = buffer.getLateCount();
+    }
+
+    /**
+     * Reserve a stream, unless maxStreams streams are already open in this server
+     * @param maxStreams
+     * @return true if the stream was reserved
+     */
+    public static boolean tryOpen(int maxStreams) {
+        if (openStreams.incrementAndGet() > maxStreams) {
+            openStreams.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release the reservation of this stream. Only the first call has any effect.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            openStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of streams currently open in this server
+     * @return
+     */
+    public static int getOpenStreamCount() {
+        return openStreams.get();
+    }
+
+    /**
+     * Get the change id of the last change written
+     * @return
+     */
+    public long getLastChangeId() {
+        return lastChangeId;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        final long deadline = System.nanoTime() + maxDuration.toNanos();
+        long written = 0;
+        try {
+            while (System.nanoTime() < deadline) {
+                List<ResourceChangeLogRecord> records = lateChanges();
+                records.addAll(buffer.next(lastChangeId, batchSize, pollInterval, settleTime, this::fetchChanges));
+                if (records.isEmpty()) {
+                    // Nothing new, so keep the connection alive and wait
+                    out.write('\n');
+                    out.flush();
+                    Thread.sleep(pollInterval.toMillis());
+                    continue;
+                }
+
+                Map<Long, byte[]> payloads = includePayloads ? fetchPayloads(records) : Collections.emptyMap();
+                for (ResourceChangeLogRecord record : records) {
+                    writeRecord(out, record, payloads.get(record.getChangeId()));
+                    writtenIds.add(record.getChangeId());
+                    lastChangeId = Math.max(lastChangeId, record.getChangeId());
+                }
+                writtenIds.headSet(lastChangeId - buffer.getRescanRange(), true).clear();
+                out.flush();
+                written += records.size();
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } catch (IOException x) {
+            // The client went away, which is how most streams end
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Change feed client disconnected: " + x.getMessage());
+            }
+        } catch (Exception x) {
+            logger.log(Level.SEVERE, "Change feed stream failed after change id " + lastChangeId, x);
+            throw new IOException("Change feed stream failed", x);
+        } finally {
+            close();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Change feed stream closed: changes=" + written + ", lastChangeId=" + lastChangeId
+                    + ", openStreams=" + getOpenStreamCount());
+            }
+        }
+    }
+
+    /**
+     * Get the late changes found by the buffer since the last check which this stream has already moved
+     * past and hasn't written. Later changes are read in order as usual.
+     */
+    private List<ResourceChangeLogRecord> lateChanges() {
+        List<ResourceChangeLogRecord> result = new ArrayList<>();
+        final long count = buffer.getLateCount();
+        if (count != lateCount) {
+            for (ResourceChangeLogRecord record : buffer.getLateChanges(lateCount)) {
+                if (record.getChangeId() <= lastChangeId && !writtenIds.contains(record.getChangeId())) {
+                    result.add(record);
+                }
+            }
+            lateCount = count;
+        }
+        return result;
+    }
+
+    /**
+     * Read the next batch of changes in its own transaction
+     */
+    private List<ResourceChangeLogRecord> fetchChanges(long afterChangeId, int count) throws Exception {
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(persistence.getTransaction());
+        txn.begin();
+        try {
+            return persistence.changes(count, null, afterChangeId, null);
+        } finally {
+            txn.end();
+        }
+    }
+
+    /**
+     * Copy the payloads of the given changes to memory, keyed by change id
+     */
+    private Map<Long, byte[]> fetchPayloads(List<ResourceChangeLogRecord> records) throws Exception {
+        Map<Long, byte[]> result = new HashMap<>();
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(persistence.getTransaction());
+        txn.begin();
+        try {
+            persistence.fetchChangePayloads(records, payload -> {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try {
+                    payload.transferTo(bytes);
+                } catch (IOException x) {
+                    throw new IllegalStateException("Unable to read payload for change id " + payload.getResourceId(), x);
+                }
+                result.put(payload.getResourceId(), bytes.toByteArray());
+            });
+        } finally {
+            txn.end();
+        }
+        return result;
+    }
+
+    /**
+     * Write a change as a single line of JSON. Resource type names, logical ids and timestamps
+     * don't contain any characters which need to be escaped, and the stored payload is compact
+     * JSON, so the line can be written without a JSON generator.
+     */
+    private void writeRecord(OutputStream out, ResourceChangeLogRecord record, byte[] payload) throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append("{\"changeId\":").append(record.getChangeId())
+            .append(",\"resourceType\":\"").append(record.getResourceTypeName())
+            .append("\",\"logicalId\":\"").append(record.getLogicalId())
+            .append("\",\"versionId\":").append(record.getVersionId())
+            .append(",\"changeType\":\"").append(record.getChangeType())
+            .append("\",\"lastModified\":\"").append(record.getChangeTstamp())
+            .append("\"");
+        if (payload != null) {
+            line.append(",\"resource\":");
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            out.write(payload);
+            out.write('}');
+        } else {
+            out.write(line.append('}').toString().getBytes(StandardCharsets.UTF_8));
+        }
+        out.write('\n');
+    }
+}
@@ -14,10 +14,12 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 import java.net.URI;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -84,6 +86,7 @@ import com.ibm.fhir.path.patch.FHIRPathPatch;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.ResourceChangeLogRecord;
+import com.ibm.fhir.persistence.RetentionPolicy;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -141,6 +144,17 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
     // clamp the number of entries in system history to 1000
     private static final int MAX_HISTORY_ENTRIES = 1000;
 
+    // Change feed defaults
+    private static final int DEFAULT_CHANGE_FEED_MAX_CONSUMERS = 20;
+    private static final int DEFAULT_CHANGE_FEED_BUFFER_SIZE = 1000;
+    private static final int DEFAULT_CHANGE_FEED_POLL_INTERVAL_MS = 1000;
+    private static final int DEFAULT_CHANGE_FEED_SETTLE_TIME_MS = 2000;
+    private static final int DEFAULT_CHANGE_FEED_MAX_STREAM_DURATION_SECS = 300;
+    private static final int DEFAULT_CHANGE_FEED_RESCAN_RANGE = 10000;
+
+    // number of resources reindexed in each transaction of a $reindex request
+    private static final int REINDEX_TX_BATCH_SIZE = 10;
+
     public static final DateTimeFormatter PARSER_FORMATTER = new DateTimeFormatterBuilder()
             .appendPattern("EEE")
             .optionalStart()
@@ -2990,6 +3004,41 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
     @Override
     public int doReindex(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId) throws Exception {
+        return doReindex(operationContext, operationOutcomeResult, tstamp, resourceLogicalId, 1, null, null);
+    }
+
+    @Override
+    public int doReindex(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId,
+            int resourceCount, Long fromLogicalResourceId, Long toLogicalResourceId) throws Exception {
+        if (resourceLogicalId != null && resourceLogicalId.contains("/")) {
+            // a specific resource, so there's nothing to split
+            return doReindexTransaction(operationOutcomeResult, tstamp, resourceLogicalId, resourceCount, fromLogicalResourceId, toLogicalResourceId);
+        }
+
+        // Work through the request in small sub-batches, each in its own transaction, so that
+        // a failure only rolls back the sub-batch it happened in and locks are held briefly
+        int result = 0;
+        while (result < resourceCount) {
+            int subBatchSize = Math.min(REINDEX_TX_BATCH_SIZE, resourceCount - result);
+            int processed = doReindexTransaction(operationOutcomeResult, tstamp, resourceLogicalId, subBatchSize,
+                    fromLogicalResourceId, toLogicalResourceId);
+            result += processed;
+            if (processed < subBatchSize) {
+                // nothing left to claim
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Reindex up to resourceCount resources in a single transaction, retrying the transaction
+     * in case of deadlock exceptions
+     * @return the number of resources processed
+     */
+    private int doReindexTransaction(OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId,
+            int resourceCount, Long fromLogicalResourceId, Long toLogicalResourceId) throws Exception {
         int result = 0;
         // handle some retries in case of deadlock exceptions
         final int TX_ATTEMPTS = 5;
@@ -2999,7 +3048,120 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             txn.begin();
             try {
                 FHIRPersistenceContext persistenceContext = null;
-                result = persistence.reindex(persistenceContext, operationOutcomeResult, tstamp, resourceLogicalId);
+                result = persistence.reindex(persistenceContext, operationOutcomeResult, tstamp, resourceLogicalId, resourceCount,
+                        fromLogicalResourceId, toLogicalResourceId);
+                attempt = TX_ATTEMPTS; // end the retry loop
+            } catch (FHIRPersistenceDataAccessException x) {
+                if (x.isTransactionRetryable() && attempt < TX_ATTEMPTS) {
+                    log.info("attempt #" + attempt + " failed, retrying transaction");
+                } else {
+                    throw x;
+                }
+            } finally {
+                txn.end();
+            }
+        } while (attempt++ < TX_ATTEMPTS);
+
+        return result;
+    }
+
+    /**
+     * Open a stream of the resource change log which follows the log as new changes are committed.
+     *
+     * @param queryParameters _afterHistoryId (the resume token), _count (the batch size) and _payload
+     * @return the stream, which must be written to the response and closed when the request completes
+     * @throws Exception
+     */
+    public ChangeFeedStream doHistoryStream(MultivaluedMap<String, String> queryParameters) throws Exception {
+        log.entering(this.getClass().getName(), "doHistoryStream");
+        try {
+            // The stream is a form of whole-system history
+            validateInteraction(Interaction.HISTORY.value(), "Resource");
+
+            if (!FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_CHANGE_FEED_ENABLED, true)) {
+                throw buildRestException("The change feed is not enabled", IssueType.NOT_SUPPORTED);
+            }
+
+            long afterHistoryId = 0;
+            int count = DEFAULT_HISTORY_ENTRIES;
+            boolean includePayloads = false;
+            for (String name : queryParameters.keySet()) {
+                String first = queryParameters.getFirst(name);
+                try {
+                    if ("_afterHistoryId".equals(name)) {
+                        afterHistoryId = Long.parseLong(first);
+                    } else if ("_count".equals(name)) {
+                        count = Math.min(Integer.parseInt(first), MAX_HISTORY_ENTRIES);
+                    } else if ("_payload".equals(name)) {
+                        includePayloads = Boolean.parseBoolean(first);
+                    } else if (!"_format".equals(name)) {
+                        throw buildRestException("Unrecognized change feed parameter: '" + name + "'", IssueType.INVALID);
+                    }
+                } catch (NumberFormatException x) {
+                    throw buildRestException("Invalid value for change feed parameter '" + name + "': " + first, IssueType.INVALID);
+                }
+            }
+            if (afterHistoryId < 0 || count < 1) {
+                throw buildRestException("Invalid change feed parameters: _afterHistoryId=" + afterHistoryId + ", _count=" + count, IssueType.INVALID);
+            }
+            if (afterHistoryId > 0) {
+                // A resume token is the change id of a change which was written, so it can't be past the head of the change log
+                List<ResourceChangeLogRecord> head;
+                FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+                txn.begin();
+                try {
+                    head = persistence.changes(1, null, afterHistoryId - 1, null);
+                } finally {
+                    txn.end();
+                }
+                if (head == null || head.isEmpty()) {
+                    throw buildRestException("Invalid change feed parameter: _afterHistoryId=" + afterHistoryId
+                            + " is after the last change in the change log", IssueType.INVALID);
+                }
+            }
+
+            int bufferSize = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_CHANGE_FEED_BUFFER_SIZE, DEFAULT_CHANGE_FEED_BUFFER_SIZE);
+            int rescanRange = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_CHANGE_FEED_RESCAN_RANGE, DEFAULT_CHANGE_FEED_RESCAN_RANGE);
+            Duration pollInterval = Duration.ofMillis(FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_CHANGE_FEED_POLL_INTERVAL_MS,
+                    DEFAULT_CHANGE_FEED_POLL_INTERVAL_MS));
+            Duration settleTime = Duration.ofMillis(FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_CHANGE_FEED_SETTLE_TIME_MS,
+                    DEFAULT_CHANGE_FEED_SETTLE_TIME_MS));
+            Duration maxDuration = Duration.ofSeconds(FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_CHANGE_FEED_MAX_STREAM_DURATION_SECS,
+                    DEFAULT_CHANGE_FEED_MAX_STREAM_DURATION_SECS));
+            ChangeFeedBuffer buffer = ChangeFeedBuffer.getInstance(bufferSize, rescanRange);
+
+            // The limit on concurrent streams applies to the whole server, so it comes from the default configuration.
+            // Nothing after the reservation can fail, so the stream always owns it.
+            PropertyGroup fhirConfig = FHIRConfiguration.getInstance().loadConfiguration();
+            int maxConsumers = fhirConfig.getIntProperty(FHIRConfiguration.PROPERTY_CHANGE_FEED_MAX_CONSUMERS, DEFAULT_CHANGE_FEED_MAX_CONSUMERS);
+            if (!ChangeFeedStream.tryOpen(maxConsumers)) {
+                throw buildRestException("Too many change feed streams are open; retry later", IssueType.THROTTLED, IssueSeverity.ERROR);
+            }
+            return new ChangeFeedStream(persistence, buffer, afterHistoryId, count, includePayloads,
+                    pollInterval, settleTime, maxDuration);
+        } finally {
+            log.exiting(this.getClass().getName(), "doHistoryStream");
+        }
+    }
+
+    @Override
+    public int doPurgeVersions(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, int resourceCount) throws Exception {
+        Map<String, RetentionPolicy> policies = getRetentionPolicies();
+        if (policies.isEmpty()) {
+            operationOutcomeResult.issue(buildOperationOutcomeIssue(IssueSeverity.INFORMATION, IssueType.INFORMATIONAL,
+                    "No resource version retention policy is configured"));
+            return 0;
+        }
+
+        int result = 0;
+        // handle some retries in case of deadlock exceptions
+        final int TX_ATTEMPTS = 5;
+        int attempt = 1;
+        do {
+            FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+            txn.begin();
+            try {
+                result = persistence.purgeVersions(operationOutcomeResult, policies, resourceCount);
                 attempt = TX_ATTEMPTS; // end the retry loop
             } catch (FHIRPersistenceDataAccessException x) {
                 if (x.isTransactionRetryable() && attempt < TX_ATTEMPTS) {
@@ -3015,6 +3177,51 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return result;
     }
 
+    /**
+     * Get the configured retention policy of each resource type. A resource type without its own
+     * retention property group uses the policy of the Resource type, if any.
+     *
+     * @return the policies keyed by resource type name; types whose versions are all kept are omitted
+     * @throws FHIROperationException if a policy is invalid
+     */
+    private Map<String, RetentionPolicy> getRetentionPolicies() throws FHIROperationException {
+        Map<String, RetentionPolicy> result = new HashMap<>();
+        RetentionPolicy defaultPolicy = getRetentionPolicy("Resource");
+        for (Class<? extends Resource> resourceType : ModelSupport.getResourceTypes(false)) {
+            String resourceTypeName = resourceType.getSimpleName();
+            String retentionPath = FHIRConfiguration.PROPERTY_RESOURCES + "/" + resourceTypeName + "/"
+                    + FHIRConfiguration.PROPERTY_FIELD_RESOURCES_RETENTION;
+            RetentionPolicy policy = FHIRConfigHelper.getPropertyGroup(retentionPath) != null ? getRetentionPolicy(resourceTypeName) : defaultPolicy;
+            if (policy != null) {
+                result.put(resourceTypeName, policy);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the retention policy configured under fhirServer/resources/[resourceTypeName]/retention
+     *
+     * @param resourceTypeName
+     * @return the policy, or null if neither maxVersions nor maxAge is configured
+     * @throws FHIROperationException if the policy is invalid
+     */
+    private RetentionPolicy getRetentionPolicy(String resourceTypeName) throws FHIROperationException {
+        String retentionPath = FHIRConfiguration.PROPERTY_RESOURCES + "/" + resourceTypeName + "/"
+                + FHIRConfiguration.PROPERTY_FIELD_RESOURCES_RETENTION + "/";
+        Integer maxVersions = FHIRConfigHelper.getIntProperty(retentionPath + FHIRConfiguration.PROPERTY_FIELD_RESOURCES_RETENTION_MAX_VERSIONS, null);
+        String maxAge = FHIRConfigHelper.getStringProperty(retentionPath + FHIRConfiguration.PROPERTY_FIELD_RESOURCES_RETENTION_MAX_AGE, null);
+        if (maxVersions == null && maxAge == null) {
+            return null;
+        }
+        try {
+            return new RetentionPolicy(maxVersions, maxAge != null ? Duration.parse(maxAge) : null);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            String msg = "Invalid retention policy for resource type '" + resourceTypeName + "': " + e.getMessage();
+            throw buildRestException(msg, IssueType.INVALID);
+        }
+    }
+
     /**
      * Validate a resource. First validate profile assertions for the resource if configured to do so,
      * then validate the resource itself.
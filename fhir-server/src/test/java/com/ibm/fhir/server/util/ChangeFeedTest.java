@@ -0,0 +1,268 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.ResourceChangeLogRecord;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord.ChangeType;
+import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.server.test.MockPersistenceImpl;
+
+/**
+ * Tests for the change feed stream and the buffer shared by the streams
+ */
+public class ChangeFeedTest {
+    private static final Duration NO_WAIT = Duration.ZERO;
+    private static final Duration LONG_WAIT = Duration.ofHours(1);
+
+    /**
+     * A change log with ids 1..n, all changed an hour ago
+     */
+    private static class ChangeLog {
+        final List<ResourceChangeLogRecord> records = new ArrayList<>();
+        int fetches;
+
+        ChangeLog(int n) {
+            Instant old = Instant.now().minus(Duration.ofHours(1));
+            for (int i = 1; i <= n; i++) {
+                records.add(new ResourceChangeLogRecord("Patient", "p" + i, 1, i, old, ChangeType.CREATE));
+            }
+        }
+
+        List<ResourceChangeLogRecord> fetch(long afterChangeId, int count) {
+            fetches++;
+            return records.stream().filter(r -> r.getChangeId() > afterChangeId).limit(count).collect(Collectors.toList());
+        }
+    }
+
+    private static List<Long> ids(List<ResourceChangeLogRecord> records) {
+        return records.stream().map(ResourceChangeLogRecord::getChangeId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(long... values) {
+        List<Long> result = new ArrayList<>();
+        for (long value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    @Test
+    public void testBufferWindow() throws Exception {
+        ChangeLog log = new ChangeLog(10);
+        ChangeFeedBuffer buffer = new ChangeFeedBuffer(4, 0);
+
+        // The first read starts the window and fills it
+        assertEquals(ids(buffer.next(0, 3, NO_WAIT, NO_WAIT, log::fetch)), ids(1, 2, 3));
+        assertEquals(log.fetches, 1);
+
+        // Served from the window
+        assertEquals(ids(buffer.next(3, 3, NO_WAIT, NO_WAIT, log::fetch)), ids(4));
+        assertEquals(log.fetches, 1);
+        assertEquals(buffer.getHitCount(), 1);
+
+        // The end of the window, so it is extended and the oldest records dropped
+        assertEquals(ids(buffer.next(4, 3, NO_WAIT, NO_WAIT, log::fetch)), ids(5, 6, 7));
+        assertEquals(log.fetches, 2);
+        assertEquals(buffer.getRefreshCount(), 2);
+
+        // A reader behind the window goes to the change log
+        assertEquals(ids(buffer.next(1, 2, NO_WAIT, NO_WAIT, log::fetch)), ids(2, 3));
+        assertEquals(log.fetches, 3);
+        assertEquals(buffer.getReadCount(), 1);
+    }
+
+    @Test
+    public void testBufferPollInterval() throws Exception {
+        ChangeLog log = new ChangeLog(2);
+        ChangeFeedBuffer buffer = new ChangeFeedBuffer(10, 0);
+        assertEquals(ids(buffer.next(0, 10, LONG_WAIT, NO_WAIT, log::fetch)), ids(1, 2));
+
+        // At the tail, so nothing new is fetched until the poll interval has passed
+        log.records.add(new ResourceChangeLogRecord("Patient", "p3", 1, 3, Instant.now().minus(Duration.ofHours(1)), ChangeType.CREATE));
+        assertTrue(buffer.next(2, 10, LONG_WAIT, NO_WAIT, log::fetch).isEmpty());
+        assertEquals(log.fetches, 1);
+        assertEquals(ids(buffer.next(2, 10, NO_WAIT, NO_WAIT, log::fetch)), ids(3));
+        assertEquals(log.fetches, 2);
+    }
+
+    @Test
+    public void testBufferSettleTime() throws Exception {
+        ChangeLog log = new ChangeLog(3);
+        log.records.add(new ResourceChangeLogRecord("Patient", "p4", 1, 4, Instant.now(), ChangeType.CREATE));
+        log.records.add(new ResourceChangeLogRecord("Patient", "p5", 1, 5, Instant.now().minus(Duration.ofHours(1)), ChangeType.CREATE));
+        ChangeFeedBuffer buffer = new ChangeFeedBuffer(10, 0);
+
+        // Change 4 is too recent, so neither it nor anything after it is returned yet
+        assertEquals(ids(buffer.next(0, 10, NO_WAIT, Duration.ofMinutes(1), log::fetch)), ids(1, 2, 3));
+        assertTrue(buffer.next(3, 10, NO_WAIT, Duration.ofMinutes(1), log::fetch).isEmpty());
+        assertEquals(ids(buffer.next(3, 10, NO_WAIT, NO_WAIT, log::fetch)), ids(4, 5));
+    }
+
+    @Test
+    public void testBufferLateCommit() throws Exception {
+        ChangeLog log = new ChangeLog(5);
+        ResourceChangeLogRecord late = log.records.remove(2);
+        ChangeFeedBuffer buffer = new ChangeFeedBuffer(4, 10);
+        assertEquals(ids(buffer.next(0, 10, NO_WAIT, NO_WAIT, log::fetch)), ids(1, 2, 4, 5));
+        assertEquals(buffer.getLateCount(), 0);
+
+        // Change 3 commits after the window has moved past it, with the timestamp of when its write started
+        log.records.add(2, late);
+        assertTrue(buffer.next(5, 10, NO_WAIT, NO_WAIT, log::fetch).isEmpty());
+        assertEquals(buffer.getLateCount(), 1);
+        assertEquals(ids(buffer.getLateChanges(0)), ids(3));
+        assertTrue(buffer.getLateChanges(1).isEmpty());
+
+        // It is found only once, and a reader which hasn't passed it yet gets it in order. The window
+        // is over capacity, because it keeps the rescan range.
+        assertTrue(buffer.next(5, 10, NO_WAIT, NO_WAIT, log::fetch).isEmpty());
+        assertEquals(buffer.getLateCount(), 1);
+        assertEquals(ids(buffer.next(2, 10, NO_WAIT, NO_WAIT, log::fetch)), ids(3, 4, 5));
+    }
+
+    @Test
+    public void testBufferReaderAhead() throws Exception {
+        ChangeLog log = new ChangeLog(5);
+        ResourceChangeLogRecord late = log.records.remove(1);
+        ChangeFeedBuffer buffer = new ChangeFeedBuffer(10, 10);
+        assertEquals(ids(buffer.next(0, 2, NO_WAIT, NO_WAIT, log::fetch)), ids(1, 3));
+
+        // A reader resuming after the end of the window extends the window instead of restarting it
+        for (int i = 6; i <= 8; i++) {
+            log.records.add(new ResourceChangeLogRecord("Patient", "p" + i, 1, i, Instant.now().minus(Duration.ofHours(1)), ChangeType.CREATE));
+        }
+        assertEquals(ids(buffer.next(6, 10, NO_WAIT, NO_WAIT, log::fetch)), ids(7, 8));
+        assertEquals(buffer.getReadCount(), 0);
+
+        // So the rescan range still covers the change which committed late, and the first reader continues
+        // from the window
+        log.records.add(1, late);
+        assertTrue(buffer.next(8, 10, NO_WAIT, NO_WAIT, log::fetch).isEmpty());
+        assertEquals(ids(buffer.getLateChanges(0)), ids(2));
+        assertEquals(ids(buffer.next(3, 3, NO_WAIT, NO_WAIT, log::fetch)), ids(4, 5, 6));
+        assertEquals(buffer.getReadCount(), 0);
+    }
+
+    @Test
+    public void testBufferRescanRange() throws Exception {
+        ChangeLog log = new ChangeLog(5);
+        ResourceChangeLogRecord late = log.records.remove(1);
+        ChangeFeedBuffer buffer = new ChangeFeedBuffer(4, 2);
+        assertEquals(ids(buffer.next(0, 10, NO_WAIT, NO_WAIT, log::fetch)), ids(1, 3, 4, 5));
+
+        // Change 2 is further behind the end than the rescan range, so it isn't found
+        log.records.add(1, late);
+        assertTrue(buffer.next(5, 10, NO_WAIT, NO_WAIT, log::fetch).isEmpty());
+        assertEquals(buffer.getLateCount(), 0);
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        ChangeLog log = new ChangeLog(5);
+        MockPersistenceImpl persistence = new MockPersistenceImpl() {
+            @Override
+            public List<ResourceChangeLogRecord> changes(int resourceCount, Instant fromLastModified, Long afterResourceId, String resourceTypeName) {
+                return log.fetch(afterResourceId, resourceCount);
+            }
+
+            @Override
+            public void fetchChangePayloads(List<ResourceChangeLogRecord> records, Consumer<ResourcePayload> process) throws FHIRPersistenceException {
+                for (ResourceChangeLogRecord record : records) {
+                    byte[] payload = ("{\"resourceType\":\"Patient\",\"id\":\"" + record.getLogicalId() + "\"}").getBytes(StandardCharsets.UTF_8);
+                    process.accept(new ResourcePayload(record.getLogicalId(), record.getChangeTstamp(), record.getChangeId(),
+                        new ByteArrayInputStream(payload)));
+                }
+            }
+        };
+
+        assertTrue(ChangeFeedStream.tryOpen(1));
+        assertFalse(ChangeFeedStream.tryOpen(1));
+        ChangeFeedStream stream = new ChangeFeedStream(persistence, new ChangeFeedBuffer(10, 0), 2, 2, true,
+            Duration.ofMillis(10), NO_WAIT, Duration.ofMillis(200));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stream.write(out);
+
+        // The stream resumes after change 2 and then keeps the connection alive with empty lines
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        assertEquals(lines.size(), 3);
+        assertTrue(lines.get(0).startsWith("{\"changeId\":3,\"resourceType\":\"Patient\",\"logicalId\":\"p3\",\"versionId\":1,\"changeType\":\"CREATE\""));
+        assertTrue(lines.get(0).endsWith(",\"resource\":{\"resourceType\":\"Patient\",\"id\":\"p3\"}}"));
+        assertEquals(stream.getLastChangeId(), 5);
+
+        // The stream is released when it ends
+        assertEquals(ChangeFeedStream.getOpenStreamCount(), 0);
+    }
+
+    @Test
+    public void testStreamLateCommit() throws Exception {
+        ChangeLog log = new ChangeLog(5);
+        ResourceChangeLogRecord late = log.records.remove(2);
+        MockPersistenceImpl persistence = new MockPersistenceImpl() {
+            @Override
+            public List<ResourceChangeLogRecord> changes(int resourceCount, Instant fromLastModified, Long afterResourceId, String resourceTypeName) {
+                List<ResourceChangeLogRecord> result = log.fetch(afterResourceId, resourceCount);
+                if (log.fetches == 2) {
+                    // Change 3 commits once the stream has moved past it
+                    log.records.add(2, late);
+                }
+                return result;
+            }
+        };
+
+        assertTrue(ChangeFeedStream.tryOpen(1));
+        ChangeFeedStream stream = new ChangeFeedStream(persistence, new ChangeFeedBuffer(10, 10), 0, 10, false,
+            Duration.ofMillis(10), NO_WAIT, Duration.ofMillis(200));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stream.write(out);
+
+        // Change 3 is written once, after the changes which passed it, and doesn't move the resume token
+        List<Long> changeIds = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                changeIds.add(Long.parseLong(line.substring("{\"changeId\":".length(), line.indexOf(','))));
+            }
+        }
+        assertEquals(changeIds, ids(1, 2, 4, 5, 3));
+        assertEquals(stream.getLastChangeId(), 5);
+    }
+
+    @Test
+    public void testStreamClose() throws Exception {
+        assertTrue(ChangeFeedStream.tryOpen(1));
+        ChangeFeedStream stream = new ChangeFeedStream(new MockPersistenceImpl(), new ChangeFeedBuffer(10, 0), 0, 10, false,
+            NO_WAIT, NO_WAIT, NO_WAIT);
+
+        // A stream which is never written is released when the request completes, and only once
+        stream.close();
+        assertEquals(ChangeFeedStream.getOpenStreamCount(), 0);
+        stream.close();
+        stream.write(new ByteArrayOutputStream());
+        assertEquals(ChangeFeedStream.getOpenStreamCount(), 0);
+    }
+}
@@ -20,7 +20,10 @@ public interface FHIRTermGraphLoader {
                 return new Options()
                     .addRequiredOption("config", null, true, "Configuration properties file")
                     .addOption("url", null, true, "CodeSystem url")
-                    .addOption("file", null, true, "CodeSystem file");
+                    .addOption("file", null, true, "CodeSystem file")
+                    .addOption("threads", null, true, "Number of loader threads")
+                    .addOption("batchSize", null, true, "Number of items written per transaction")
+                    .addOption("checkpoint", null, false, "Record the committed batches in the graph so that a restarted load skips them");
             }
         },
         SNOMED {
@@ -33,7 +36,10 @@ public interface FHIRTermGraphLoader {
                     .addRequiredOption("relation", null, true, "SNOMED-CT relationship file")
                     .addRequiredOption("desc", null, true, "SNOMED-CT description file")
                     .addRequiredOption("lang", null, true, "SNOMED-CT language refset file")
-                    .addOption("labels", null, true, "labels");
+                    .addOption("labels", null, true, "labels")
+                    .addOption("threads", null, true, "Number of loader threads")
+                    .addOption("batchSize", null, true, "Number of items written per transaction")
+                    .addOption("checkpoint", null, false, "Record the committed batches in the graph so that a restarted load skips them");
             }
         },
         UMLS {
@@ -42,7 +48,10 @@ public interface FHIRTermGraphLoader {
                 return new Options()
                     .addRequiredOption("config", null, true, "Configuration properties file")
                     .addRequiredOption("base", null, true, "UMLS base directory")
-                    .addOption("labels", null, true, "labels");
+                    .addOption("labels", null, true, "labels")
+                    .addOption("threads", null, true, "Number of loader threads")
+                    .addOption("batchSize", null, true, "Number of items written per transaction")
+                    .addOption("checkpoint", null, false, "Record the committed batches in the graph so that a restarted load skips them");
             }
         };
 
@@ -19,6 +19,7 @@ import com.ibm.fhir.term.graph.FHIRTermGraph;
 import com.ibm.fhir.term.graph.factory.FHIRTermGraphFactory;
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
 import com.ibm.fhir.term.graph.loader.util.LabelFilter;
+import com.ibm.fhir.term.graph.loader.util.ParallelBatchWriter;
 
 public abstract class AbstractTermGraphLoader implements FHIRTermGraphLoader {
     protected final Map<String, String> options;
@@ -80,6 +81,22 @@ public abstract class AbstractTermGraphLoader implements FHIRTermGraphLoader {
         return graph;
     }
 
+    /**
+     * Create a {@link ParallelBatchWriter} using the "threads", "batchSize" and "checkpoint" options of this loader.
+     *
+     * @return
+     *     a new {@link ParallelBatchWriter} instance
+     */
+    protected ParallelBatchWriter createWriter() {
+        int threads = options.containsKey("threads") ?
+                Integer.parseInt(options.get("threads")) :
+                    Runtime.getRuntime().availableProcessors();
+        int batchSize = options.containsKey("batchSize") ?
+                Integer.parseInt(options.get("batchSize")) :
+                    ParallelBatchWriter.DEFAULT_BATCH_SIZE;
+        return new ParallelBatchWriter(janusGraph, threads, batchSize, options.containsKey("checkpoint"));
+    }
+
     protected LabelFilter createLabelFilter(Map<String, String> options) {
         return options.containsKey("labels") ?
                 new LabelFilter(new HashSet<>(Arrays.asList(options.get("labels").split(",")))) :
@@ -15,7 +15,6 @@ import static com.ibm.fhir.term.util.CodeSystemSupport.toObject;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -43,15 +42,13 @@ import com.ibm.fhir.model.type.code.CodeSystemHierarchyMeaning;
 import com.ibm.fhir.registry.FHIRRegistry;
 import com.ibm.fhir.term.graph.FHIRTermGraph;
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
+import com.ibm.fhir.term.graph.loader.util.ParallelBatchWriter;
 
 public class CodeSystemTermGraphLoader extends AbstractTermGraphLoader {
     private static final Logger log = Logger.getLogger(CodeSystemTermGraphLoader.class.getName());
 
     private final CodeSystem codeSystem;
     private final Set<Concept> concepts;
-    private final Map<Concept, Vertex> conceptVertexMap;
-
-    private Vertex codeSystemVertex = null;
 
     public CodeSystemTermGraphLoader(Map<String, String> options) {
         super(options);
@@ -72,7 +69,6 @@ public class CodeSystemTermGraphLoader extends AbstractTermGraphLoader {
 
         this.codeSystem = Objects.requireNonNull(codeSystem, "codeSystem");
         concepts = getConcepts(codeSystem);
-        conceptVertexMap = new HashMap<>();
     }
 
     public CodeSystemTermGraphLoader(Configuration configuration, CodeSystem codeSystem) {
@@ -80,24 +76,28 @@ public class CodeSystemTermGraphLoader extends AbstractTermGraphLoader {
 
         this.codeSystem = Objects.requireNonNull(codeSystem, "codeSystem");
         concepts = getConcepts(codeSystem);
-        conceptVertexMap = new HashMap<>();
     }
 
     public CodeSystemTermGraphLoader(FHIRTermGraph graph, CodeSystem codeSystem) {
-        super(Collections.emptyMap(), graph);
+        this(Collections.emptyMap(), graph, codeSystem);
+    }
+
+    public CodeSystemTermGraphLoader(Map<String, String> options, FHIRTermGraph graph, CodeSystem codeSystem) {
+        super(options, graph);
 
         this.codeSystem = Objects.requireNonNull(codeSystem, "codeSystem");
         concepts = getConcepts(codeSystem);
-        conceptVertexMap = new HashMap<>();
     }
 
     @Override
     public void load() {
-        createCodeSystemVertex();
-        createConceptVertices();
-        if (CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning()) ||
-                codeSystem.getHierarchyMeaning() == null) {
-            createEdges();
+        try (ParallelBatchWriter writer = createWriter()) {
+            long codeSystemVertexId = createCodeSystemVertex(writer);
+            createConceptVertices(writer, codeSystemVertexId);
+            if (CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning()) ||
+                    codeSystem.getHierarchyMeaning() == null) {
+                createEdges(writer);
+            }
         }
     }
 
@@ -105,56 +105,44 @@ public class CodeSystemTermGraphLoader extends AbstractTermGraphLoader {
         return codeSystem;
     }
 
-    private void createCodeSystemVertex() {
+    private long createCodeSystemVertex(ParallelBatchWriter writer) {
         String url = codeSystem.getUrl().getValue();
 
-        codeSystemVertex = g.addV("CodeSystem")
-                .property("url", url)
-                .property("count", concepts.size())
-                .next();
-
-        if (codeSystem.getVersion() != null) {
-            g.V(codeSystemVertex)
-                .property("version", codeSystem.getVersion().getValue())
-                .next();
-        }
-
-        g.tx().commit();
+        return writer.createVertex("CodeSystem", tx -> {
+            Vertex codeSystemVertex = tx.addVertex("CodeSystem");
+            codeSystemVertex.property("url", url);
+            codeSystemVertex.property("count", concepts.size());
+            if (codeSystem.getVersion() != null) {
+                codeSystemVertex.property("version", codeSystem.getVersion().getValue());
+            }
+            return codeSystemVertex;
+        });
     }
 
-    private void createConceptVertices() {
-        for (Concept concept : concepts) {
+    private void createConceptVertices(ParallelBatchWriter writer, long codeSystemVertexId) {
+        try (ParallelBatchWriter.Phase<Concept> phase = writer.phase("concept", (batch, concept) -> {
             String code = concept.getCode().getValue();
-            Vertex conceptVertex = g.addV("Concept")
-                    .property("code", code)
-                    .property("codeLowerCase", normalize(code))
-                    .next();
+            Vertex conceptVertex = batch.tx().addVertex("Concept");
+            conceptVertex.property("code", code);
+            conceptVertex.property("codeLowerCase", normalize(code));
 
             if (concept.getDisplay() != null) {
-                String display = concept.getDisplay().getValue();
-                g.V(conceptVertex)
-                    .property("display", display)
-                    .next();
+                conceptVertex.property("display", concept.getDisplay().getValue());
             }
 
             for (Designation designation : concept.getDesignation()) {
-                Vertex designationVertex = g.addV("Designation")
-                        .property("value", designation.getValue().getValue())
-                        .next();
+                Vertex designationVertex = batch.tx().addVertex("Designation");
+                designationVertex.property("value", designation.getValue().getValue());
 
                 if (designation.getUse() != null) {
-                    g.V(designationVertex)
-                        .property("use", designation.getUse().getCode().getValue())
-                        .next();
+                    designationVertex.property("use", designation.getUse().getCode().getValue());
                 }
 
                 if (designation.getLanguage() != null) {
-                    g.V(designationVertex)
-                        .property("language", designation.getLanguage().getValue())
-                        .next();
+                    designationVertex.property("language", designation.getLanguage().getValue());
                 }
 
-                g.V(conceptVertex).addE("designation").to(designationVertex).next();
+                conceptVertex.addEdge("designation", designationVertex);
             }
 
             for (Property property : concept.getProperty()) {
@@ -162,38 +150,43 @@ public class CodeSystemTermGraphLoader extends AbstractTermGraphLoader {
 
                 String key = "value" + value.getClass().getSimpleName();
 
-                Vertex propertyVertex = g.addV("Property_")
-                        .property("code", property.getCode().getValue())
-                        .property(key, toObject(value))
-                        .next();
+                Vertex propertyVertex = batch.tx().addVertex("Property_");
+                propertyVertex.property("code", property.getCode().getValue());
+                propertyVertex.property(key, toObject(value));
 
                 if (value.is(DateTime.class)) {
-                    g.V(propertyVertex).property("valueDateTimeLong", toLong(value.as(DateTime.class))).next();
+                    propertyVertex.property("valueDateTimeLong", toLong(value.as(DateTime.class)));
                 } else if (value.is(Decimal.class)) {
-                    g.V(propertyVertex).property("valueDecimalString", value.as(Decimal.class).getValue().toPlainString()).next();
+                    propertyVertex.property("valueDecimalString", value.as(Decimal.class).getValue().toPlainString());
                 }
 
-                g.V(conceptVertex).addE("property_").to(propertyVertex).next();
+                conceptVertex.addEdge("property_", propertyVertex);
             }
 
-            g.V(codeSystemVertex).addE("concept").to(conceptVertex).next();
+            batch.getVertex(codeSystemVertexId).addEdge("concept", conceptVertex);
 
-            conceptVertexMap.put(concept, conceptVertex);
+            batch.registerVertex(code, conceptVertex);
+        })) {
+            for (Concept concept : concepts) {
+                phase.add(concept);
+            }
         }
-
-        g.tx().commit();
     }
 
-    private void createEdges() {
-        for (Concept concept : concepts) {
-            Vertex v = conceptVertexMap.get(concept);
+    private void createEdges(ParallelBatchWriter writer) {
+        try (ParallelBatchWriter.Phase<Concept> phase = writer.phase("edge", (batch, concept) -> {
+            Vertex v = batch.getVertex(concept.getCode().getValue());
             for (Concept child : concept.getConcept()) {
-                Vertex w = conceptVertexMap.get(child);
-                g.V(w).addE(FHIRTermGraph.IS_A).to(v).next();
+                Vertex w = batch.getVertex(child.getCode().getValue());
+                w.addEdge(FHIRTermGraph.IS_A, v);
+            }
+        })) {
+            for (Concept concept : concepts) {
+                if (!concept.getConcept().isEmpty()) {
+                    phase.add(concept);
+                }
             }
         }
-
-        g.tx().commit();
     }
 
     public static void main(String[] args) throws Exception {
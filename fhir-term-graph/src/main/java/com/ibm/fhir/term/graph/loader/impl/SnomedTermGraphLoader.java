@@ -16,11 +16,11 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
@@ -33,9 +33,9 @@ import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Options;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
-import org.janusgraph.core.schema.JanusGraphManagement;
 
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
+import com.ibm.fhir.term.graph.loader.util.ParallelBatchWriter;
 
 public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
     private static final Logger log = Logger.getLogger(SnomedTermGraphLoader.class.getName());
@@ -49,8 +49,6 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
     private String languageRefsetFile = null;
 
     private AtomicInteger counter = null;
-    private Map<String, Vertex> vertexMap = null;
-    private Vertex codeSystemVertex = null;
     private Set<String> preferred = null;
 
     public SnomedTermGraphLoader(Map<String, String> options) {
@@ -63,67 +61,60 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
         languageRefsetFile = baseDir + "/../Refset/Language/" + options.get("lang");
 
         counter = new AtomicInteger(0);
-        vertexMap = new HashMap<>(250000);
         preferred = new HashSet<>(500000);
     }
 
     @Override
     public void load() {
-        createCodeSystemVertex();
-        try {
-            processConceptsFile();
+        try (ParallelBatchWriter writer = createWriter()) {
+            long codeSystemVertexId = createCodeSystemVertex(writer);
+            processConceptsFile(writer, codeSystemVertexId);
             processLanguageRefsetFile();
-            processDescriptionFile();
-            processRelationshipFile();
+            processDescriptionFile(writer);
+            processRelationshipFile(writer);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void createCodeSystemVertex() {
-        codeSystemVertex = g.addV("CodeSystem")
-                .property("url", "http://snomed.info/sct")
-                .next();
-        g.tx().commit();
+    private long createCodeSystemVertex(ParallelBatchWriter writer) {
+        return writer.createVertex("CodeSystem", tx -> {
+            Vertex codeSystemVertex = tx.addVertex("CodeSystem");
+            codeSystemVertex.property("url", "http://snomed.info/sct");
+            return codeSystemVertex;
+        });
     }
 
-    private void processConceptsFile() throws IOException, FileNotFoundException {
+    private void processConceptsFile(ParallelBatchWriter writer, long codeSystemVertexId) throws IOException, FileNotFoundException {
         // concept file
         log.info("Processing concepts file...");
-        try (BufferedReader reader = new BufferedReader(new FileReader(conceptFile))) {
+        Set<String> ids = new HashSet<>(500000);
+        try (BufferedReader reader = new BufferedReader(new FileReader(conceptFile));
+                ParallelBatchWriter.Phase<String> phase = writer.phase("concept", (batch, id) -> {
+                    Vertex v = batch.tx().addVertex("Concept");
+                    v.property("code", id);
+                    v.property("codeLowerCase", normalize(id));
+                    batch.getVertex(codeSystemVertexId).addEdge("concept", v);
+                    batch.registerVertex(id, v);
+                })) {
             reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
                 @Override
                 public void processLine(String line) {
-                    String[] tokens = line.split("\\t");
+                    String[] tokens = line.split("\\t", 4);
                     String id = tokens[0];
                     String active = tokens[2];
 
-                    if ("1".equals(active)) {
-                        if (!vertexMap.containsKey(id)) {
-                            Vertex v = g.addV("Concept")
-                                    .property("code", id)
-                                    .property("codeLowerCase", normalize(id))
-                                    .next();
-                            vertexMap.put(id, v);
-                            g.V(codeSystemVertex).addE("concept").to(v).next();
-                        }
-                    }
-
-                    if ((counter.get() % 10000) == 0) {
-                        log.info("counter: " + counter.get());
-                        g.tx().commit();
+                    if ("1".equals(active) && ids.add(id)) {
+                        phase.add(id);
                     }
 
                     counter.getAndIncrement();
                 }
             });
-
-            // commit any uncommitted work
-            g.tx().commit();
         }
 
         int count = counter.get();
-        g.V(codeSystemVertex).property("count", count).next();
+        g.V(codeSystemVertexId).property("count", count).next();
         g.tx().commit();
     }
 
@@ -148,15 +139,11 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
         }
     }
 
-    private void processDescriptionFile() throws IOException, FileNotFoundException {
-        counter.set(0);
-
+    private void processDescriptionFile(ParallelBatchWriter writer) throws IOException, FileNotFoundException {
         // description file
         log.info("Processing description file...");
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptionFile))) {
-            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
-                @Override
-                public void processLine(String line) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(descriptionFile));
+                ParallelBatchWriter.Phase<String> phase = writer.phase("description", (batch, line) -> {
                     String[] tokens = line.split("\\t");
                     String id = tokens[0];
                     String active = tokens[2];
@@ -164,48 +151,40 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
                     String typeId = tokens[6];
                     String term = tokens[7];
 
-                    Vertex v = vertexMap.get(conceptId);
+                    Vertex v = batch.getVertex(conceptId);
 
                     if ("1".equals(active) && v != null) {
                         if (preferred.contains(id) && !FULLY_SPECIFIED_NAME.equals(typeId)) {
                             // preferred term
-                            g.V(v)
-                                .property("display", term)
-                                .next();
+                            v.property("display", term);
                         }
 
-                        Vertex w = g.addV("Designation")
-                                .property("language", "en")
-                                .property("use", typeId)
-                                .property("value", term)
-                                .next();
+                        Vertex w = batch.tx().addVertex("Designation");
+                        w.property("language", "en");
+                        w.property("use", typeId);
+                        w.property("value", term);
 
-                        g.V(v).addE("designation").to(w).next();
+                        v.addEdge("designation", w);
                     }
-
-                    if ((counter.get() % 10000) == 0) {
-                        log.info("counter: " + counter.get());
-                        g.tx().commit();
-                    }
-
-                    counter.getAndIncrement();
+                })) {
+            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
+                @Override
+                public void processLine(String line) {
+                    // the line is parsed by the writer threads
+                    phase.add(line);
                 }
             });
-
-            // commit any uncommitted work
-            g.tx().commit();
         }
     }
 
-    private void processRelationshipFile() throws IOException, FileNotFoundException {
-        counter.set(0);
+    private void processRelationshipFile(ParallelBatchWriter writer) throws IOException, FileNotFoundException {
+        // the edge labels by relationship type id
+        Map<String, String> labelMap = new ConcurrentHashMap<>();
 
         // relationship file
         log.info("Processing relationship file...");
-        try (BufferedReader reader = new BufferedReader(new FileReader(relationshipFile))) {
-            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
-                @Override
-                public void processLine(String line) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(relationshipFile));
+                ParallelBatchWriter.Phase<String> phase = writer.phase("relationship", (batch, line) -> {
                     String[] tokens = line.split("\\t");
                     String active = tokens[2];
                     String sourceId = tokens[4];
@@ -214,42 +193,32 @@ public class SnomedTermGraphLoader extends AbstractTermGraphLoader {
                     String typeId = tokens[7];
 
                     if ("1".equals(active)) {
-                        Vertex u = vertexMap.get(sourceId);
-                        Vertex v = vertexMap.get(destinationId);
-                        Vertex w = vertexMap.get(typeId);
+                        Vertex u = batch.getVertex(sourceId);
+                        Vertex v = batch.getVertex(destinationId);
+                        Vertex w = batch.getVertex(typeId);
 
                         if (u != null && v != null && w != null) {
-                            String display = (String) g.V(w).values("display").next();
-                            String label = toLabel(display);
+                            String label = labelMap.computeIfAbsent(typeId, k -> toLabel((String) w.value("display")));
 
                             if (labelFilter.accept(label)) {
-                                if (janusGraph.getEdgeLabel(label) == null) {
-                                    log.info("Adding label: " + label);
-                                    JanusGraphManagement management = janusGraph.openManagement();
-                                    management.makeEdgeLabel(label).make();
-                                    management.commit();
-                                }
+                                writer.ensureEdgeLabel(label);
 
-                                Edge e = g.V(u).addE(label).to(v).next();
+                                Edge e = u.addEdge(label, v);
 
                                 if (!"0".equals(relationshipGroup)) {
-                                    g.E(e).property("group", relationshipGroup).next();
+                                    e.property("group", relationshipGroup);
                                 }
                             }
                         }
                     }
-
-                    if ((counter.get() % 10000) == 0) {
-                        log.info("counter: " + counter.get());
-                        g.tx().commit();
-                    }
-
-                    counter.getAndIncrement();
+                })) {
+            reader.lines().skip(1).forEach(new SnomedReleaseFileConsumer() {
+                @Override
+                public void processLine(String line) {
+                    // the line is parsed by the writer threads
+                    phase.add(line);
                 }
             });
-
-            // commit any uncommitted work
-            g.tx().commit();
         }
     }
 
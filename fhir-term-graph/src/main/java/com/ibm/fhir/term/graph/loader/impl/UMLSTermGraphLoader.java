@@ -17,14 +17,15 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -34,9 +35,9 @@ import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Options;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
-import org.janusgraph.core.schema.JanusGraphManagement;
 
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
+import com.ibm.fhir.term.graph.loader.util.ParallelBatchWriter;
 
 /*
  * This class will load UMLS concepts and relationships into a JanusGraph.
@@ -56,8 +57,8 @@ public class UMLSTermGraphLoader extends AbstractTermGraphLoader {
     // Map of code system name to preferred label, configured in properties file
     private Properties codeSystemMap = new Properties();
 
-    // Map of code system id to corresponding vertex
-    private Map<String, Vertex> codeSystemVertices = new ConcurrentHashMap<>();
+    // Map of code system id to the id of the corresponding vertex
+    private Map<String, Long> codeSystemVertices = new HashMap<>();
 
     // Name of file containing UMLS concept data
     private String conceptFile = null;
@@ -71,9 +72,6 @@ public class UMLSTermGraphLoader extends AbstractTermGraphLoader {
     // Name of file containing source data
     private String sourceAttributeFile = null;
 
-    // Map of concept name to corresponding vertex
-    private Map<String, Vertex> vertexMap = null;
-
     /**
      * Initialize a UMLSTermGraphLoader
      *
@@ -86,8 +84,6 @@ public class UMLSTermGraphLoader extends AbstractTermGraphLoader {
         conceptFile = baseDir + "/" + UMLS_CONCEPT_NAMES_AND_SOURCES_FILE;
         relationshipFile = baseDir + "/" + UMLS_RELATED_CONCEPTS_FILE;
         sourceAttributeFile = baseDir + "/" + UMLS_SOURCE_INFORMATION_FILE;
-
-        vertexMap = new HashMap<>(250000);
     }
 
     /**
@@ -97,10 +93,11 @@ public class UMLSTermGraphLoader extends AbstractTermGraphLoader {
      */
     @Override
     public void load() {
-        try {
+        try (ParallelBatchWriter writer = createWriter()) {
             loadSourceAttributes();
-            loadConcepts();
-            loadRelations();
+            loadConcepts(writer);
+            loadDesignations(writer);
+            loadRelations(writer);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -109,25 +106,30 @@ public class UMLSTermGraphLoader extends AbstractTermGraphLoader {
     /**
      * Create a code system vertex for the provided abbreviated source name
      *
+     * @param writer
      * @param sab
      * @return
      */
-    private final Vertex createCodeSystemVertex(String sab) {
+    private final long createCodeSystemVertex(ParallelBatchWriter writer, String sab) {
         String version = sabToVersion.get(sab);
         String url = (String) codeSystemMap.getOrDefault(sab, sab);
-        Vertex csv = g.addV("CodeSystem").property("url", url).property("version", version).next();
-        g.tx().commit();
-        return csv;
-
+        return writer.createVertex("CodeSystem|" + sab, tx -> {
+            Vertex csv = tx.addVertex("CodeSystem");
+            csv.property("url", url);
+            if (version != null) {
+                csv.property("version", version);
+            }
+            return csv;
+        });
     }
 
     /**
-     * Loads all UMLS concept data from the provided conceptFile
+     * Loads the UMLS concepts from the provided conceptFile, one vertex per SCUI
      *
      * @throws FileNotFoundException
      * @throws IOException
      */
-    private void loadConcepts() throws FileNotFoundException, IOException {
+    private void loadConcepts(ParallelBatchWriter writer) throws FileNotFoundException, IOException {
         // MRCONSO.RRF
         // CUI, LAT, TS, LUI, STT, SUI, ISPREF, AUI, SAUI, SCUI, SDUI, SAB, TTY, CODE, STR, SRL, SUPPRESS, CVF
         // https://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.concept_names_and_sources_file_mr/
@@ -135,135 +137,141 @@ public class UMLSTermGraphLoader extends AbstractTermGraphLoader {
         LOG.info("Loading concepts.....");
 
         Map<String, AtomicInteger> sabCounterMap = new HashMap<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(conceptFile))) {
+        Set<String> scuis = new HashSet<>(1000000);
+
+        // item: SCUI and code system vertex id
+        try (BufferedReader reader = new BufferedReader(new FileReader(conceptFile));
+                ParallelBatchWriter.Phase<Object[]> phase = writer.phase("concept", (batch, item) -> {
+                    String scui = (String) item[0];
+                    Vertex v = batch.tx().addVertex("Concept");
+                    v.property("code", scui);
+                    v.property("codeLowerCase", normalize(scui));
+                    batch.getVertex((Long) item[1]).addEdge("concept", v);
+                    batch.registerVertex(scui, v);
+                })) {
             reader.lines().forEach(line -> {
                 String[] tokens = line.split(UMLS_DELIMITER);
-                String lat = tokens[1];
                 String aui = tokens[7];
                 String scui = tokens[9];
                 String sab = tokens[11];
-                String tty = tokens[12];
-                String str = tokens[14];
                 String suppress = tokens[16];
 
                 if (!"O".equals(suppress)) {
                     auiToScuiMap.put(aui, scui);
 
-                    Vertex codeSystemVertex = codeSystemVertices.computeIfAbsent(sab, s -> createCodeSystemVertex(s));
-
-                    AtomicInteger counter = sabCounterMap.computeIfAbsent(sab, s -> new AtomicInteger(0));
-                    counter.incrementAndGet();
+                    long codeSystemVertexId = codeSystemVertices.computeIfAbsent(sab, s -> createCodeSystemVertex(writer, s));
 
-                    Vertex v = null;
-                    if (vertexMap.containsKey(scui)) {
-                        v = vertexMap.get(scui);
-                    } else {
-                        String codeLowerCase = normalize(scui);
-                        v = g.addV("Concept").property("code", scui).property("codeLowerCase", codeLowerCase).next();
-                        vertexMap.put(scui, v);
-
-                        g.V(codeSystemVertex).addE("concept").to(v).next();
-                    }
-                    if (v == null) {
-                        LOG.severe("Could not find SCUI in vertexMap");
-                    } else {
-                        if (tty.equals("PT")) { // Preferred entries provide preferred name and language
-                            v.property("display", str);
-                            v.property("language", lat);
-                        }
-                        // add new designation
-                        Vertex w = g.addV("Designation").property("language", lat).property("value", str).next();
-                        g.V(v).addE("designation").to(w).next();
-
-                        if ((sabCounterMap.values().stream().collect(Collectors.summingInt(AtomicInteger::get)) % 10000) == 0) {
-                            String counters = sabCounterMap.entrySet().stream().map(e -> e.getKey() + ":" + e.getValue()).collect(Collectors.joining(","));
-                            LOG.info("counter: " + counters);
-                            g.tx().commit();
-                        }
+                    sabCounterMap.computeIfAbsent(sab, s -> new AtomicInteger(0)).incrementAndGet();
 
+                    if (scuis.add(scui)) {
+                        phase.add(new Object[] { scui, codeSystemVertexId });
                     }
                 }
             });
-
-            for (Entry<String, AtomicInteger> entry : sabCounterMap.entrySet()) {
-                Vertex codeSystemVertex = codeSystemVertices.get(entry.getKey());
-                g.V(codeSystemVertex).property("count", entry.getValue().get()).next();
-            }
-            // commit any uncommitted work
-            g.tx().commit();
         }
 
+        for (Entry<String, AtomicInteger> entry : sabCounterMap.entrySet()) {
+            long codeSystemVertexId = codeSystemVertices.get(entry.getKey());
+            g.V(codeSystemVertexId).property("count", entry.getValue().get()).next();
+        }
         g.tx().commit();
         LOG.info("Done loading concepts.....");
     }
 
+    /**
+     * Loads the UMLS concept names from the provided conceptFile, as designations and preferred names
+     *
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    private void loadDesignations(ParallelBatchWriter writer) throws FileNotFoundException, IOException {
+        LOG.info("Loading designations.....");
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(conceptFile));
+                ParallelBatchWriter.Phase<String> phase = writer.phase("designation", (batch, line) -> {
+                    String[] tokens = line.split(UMLS_DELIMITER);
+                    String lat = tokens[1];
+                    String scui = tokens[9];
+                    String tty = tokens[12];
+                    String str = tokens[14];
+                    String suppress = tokens[16];
+
+                    if (!"O".equals(suppress)) {
+                        Vertex v = batch.getVertex(scui);
+                        if (v == null) {
+                            LOG.severe("Could not find vertex for SCUI: " + scui);
+                        } else {
+                            if (tty.equals("PT")) { // Preferred entries provide preferred name and language
+                                v.property("display", str);
+                                v.property("language", lat);
+                            }
+                            // add new designation
+                            Vertex w = batch.tx().addVertex("Designation");
+                            w.property("language", lat);
+                            w.property("value", str);
+                            v.addEdge("designation", w);
+                        }
+                    }
+                })) {
+            // the lines are parsed by the writer threads
+            reader.lines().forEach(phase::add);
+        }
+
+        LOG.info("Done loading designations.....");
+    }
+
     /**
      * Loads all UMLS relationship data from the provided relationshipFile
      *
      * @throws FileNotFoundException
      * @throws IOException
      */
-    private void loadRelations() throws FileNotFoundException, IOException {
+    private void loadRelations(ParallelBatchWriter writer) throws FileNotFoundException, IOException {
         // MRREL
         // CUI1, AUI1, STYPE1, REL, CUI2, AUI2, STYPE2, RELA, RUI, SRUI, SAB, SL, RG,DIR, SUPPRESS, CVF
         // https://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.related_concepts_file_mrrel_rrf/
         //
         LOG.info("Loading relations.....");
 
-        AtomicInteger counter = new AtomicInteger(0);
+        try (BufferedReader reader = new BufferedReader(new FileReader(relationshipFile));
+                ParallelBatchWriter.Phase<String> phase = writer.phase("relation", (batch, line) -> {
+                    String[] tokens = line.split(UMLS_DELIMITER);
+                    String aui1 = tokens[1];
+                    String rela = tokens[7];
+                    String aui2 = tokens[5];
+                    String rg = tokens[12]; // relationship group
+                    String dir = tokens[13];
+                    String suppress = tokens[14];
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(relationshipFile))) {
-            reader.lines().forEach(line -> {
-                String[] tokens = line.split(UMLS_DELIMITER);
-                String aui1 = tokens[1];
-                String rela = tokens[7];
-                String aui2 = tokens[5];
-                String rg = tokens[12]; // relationship group
-                String dir = tokens[13];
-                String suppress = tokens[14];
-
-                if (!"N".equals(dir) && !"O".equals(suppress)) { // Don't load relations that are not in source order or suppressed
-                    String scui1 = auiToScuiMap.get(aui1);
-                    String scui2 = auiToScuiMap.get(aui2);
-
-                    if (scui1 != null && scui2 != null) {
-                        Vertex v1 = vertexMap.get(scui1);
-                        Vertex v2 = vertexMap.get(scui2);
-
-                        if (v1 != null && v2 != null) {
-                            String label = toLabel(rela);
-
-                            if (labelFilter.accept(label)) {
-                                if (janusGraph.getEdgeLabel(label) == null) {
-                                    LOG.info("Adding label: " + label);
-                                    JanusGraphManagement management = janusGraph.openManagement();
-                                    management.makeEdgeLabel(label).make();
-                                    management.commit();
-                                }
+                    if (!"N".equals(dir) && !"O".equals(suppress)) { // Don't load relations that are not in source order or suppressed
+                        String scui1 = auiToScuiMap.get(aui1);
+                        String scui2 = auiToScuiMap.get(aui2);
 
-                                Edge e = g.V(v2).addE(label).to(v1).next();
+                        if (scui1 != null && scui2 != null) {
+                            Vertex v1 = batch.getVertex(scui1);
+                            Vertex v2 = batch.getVertex(scui2);
 
-                                if (!"".equals(rg)) {
-                                    g.E(e).property("group", rg).next();
+                            if (v1 != null && v2 != null) {
+                                String label = toLabel(rela);
+
+                                if (labelFilter.accept(label)) {
+                                    writer.ensureEdgeLabel(label);
+
+                                    Edge e = v2.addEdge(label, v1);
+
+                                    if (!"".equals(rg)) {
+                                        e.property("group", rg);
+                                    }
                                 }
                             }
                         }
-
-                        if ((counter.get() % 10000) == 0) {
-                            LOG.info("counter: " + counter.get());
-                            g.tx().commit();
-                        }
-
-                        counter.getAndIncrement();
                     }
-                }
-            });
-
-            // commit any uncommitted work
-            g.tx().commit();
-            LOG.info("Done loading relations.....");
+                })) {
+            // the lines are parsed by the writer threads
+            reader.lines().forEach(phase::add);
         }
+
+        LOG.info("Done loading relations.....");
     }
 
     /**
@@ -0,0 +1,446 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.graph.loader.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.schema.JanusGraphManagement;
+
+/**
+ * Writes the elements of a term graph in batches, with one JanusGraph transaction per batch and several batches
+ * written in parallel.
+ *
+ * <p>A loader reads its source files on a single thread and adds the items (e.g. the lines) of each phase of the
+ * load to a {@link Phase}. The items are parsed and written by the worker threads, in batch-loading transactions.
+ * The ids of the vertices which are referred to by later items (e.g. concepts) are kept in a map by key, so
+ * edges are created between vertices retrieved by id, without index queries. The vertices created with
+ * {@link #createVertex(String, Function)} are kept in a separate map, so their keys cannot collide with the keys
+ * registered by the batches.
+ *
+ * <p>If checkpoints are enabled, each batch adds a checkpoint vertex, with the key of the batch and the ids of the
+ * vertices it registered, in the same transaction as its items, so a batch and its checkpoint are committed
+ * together. A loader which is restarted against the same graph with the same source files skips the batches
+ * which have a checkpoint vertex and restores the ids they registered.
+ */
+public class ParallelBatchWriter implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(ParallelBatchWriter.class.getName());
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    // the schema of the checkpoint vertices
+    private static final String CHECKPOINT_LABEL = "Checkpoint_";
+    private static final String CHECKPOINT_KEY = "checkpointKey";
+    private static final String CHECKPOINT_IDS = "checkpointIds";
+    private static final String CHECKPOINT_INDEX = "byCheckpointKey";
+
+    // the namespaces of the checkpoint keys
+    private static final String BATCH = "batch:";
+    private static final String VERTEX = "vertex:";
+
+    private final JanusGraph janusGraph;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final int maxBatchesInFlight;
+    private final Semaphore semaphore;
+    private final boolean checkpoint;
+    private final Map<String, Long> vertexIdMap = new ConcurrentHashMap<>();
+    private final Map<String, Long> createdVertexIdMap = new ConcurrentHashMap<>();
+
+    /**
+     * Create a writer.
+     *
+     * @param janusGraph
+     *     the graph to write to
+     * @param threads
+     *     the number of worker threads
+     * @param batchSize
+     *     the number of items written in each transaction
+     * @param checkpoint
+     *     whether the committed batches are recorded in the graph, so that the load is restartable
+     */
+    public ParallelBatchWriter(JanusGraph janusGraph, int threads, int batchSize, boolean checkpoint) {
+        this.janusGraph = Objects.requireNonNull(janusGraph, "janusGraph");
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("threads and batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        executor = Executors.newFixedThreadPool(threads);
+        // bound the number of batches held in memory
+        maxBatchesInFlight = threads * 2;
+        semaphore = new Semaphore(maxBatchesInFlight);
+        this.checkpoint = checkpoint;
+        if (checkpoint) {
+            ensureCheckpointSchema();
+        }
+    }
+
+    /**
+     * Start a phase of the load. Phases of a load must have distinct names, and the items of a phase must be
+     * added in the same order when the load is restarted.
+     *
+     * @param <T>
+     *     the item type
+     * @param name
+     *     the name of the phase
+     * @param itemWriter
+     *     the writer of a single item, called on a worker thread
+     * @return
+     *     the phase
+     */
+    public <T> Phase<T> phase(String name, ItemWriter<T> itemWriter) {
+        return new Phase<>(name, itemWriter);
+    }
+
+    /**
+     * Create a vertex in its own transaction, unless a vertex was already created with the specified key, by this
+     * writer or, if checkpoints are enabled, by a previous run of the load.
+     *
+     * @param key
+     *     the key of the vertex
+     * @param function
+     *     the function which adds the vertex to the given transaction
+     * @return
+     *     the id of the vertex
+     */
+    public synchronized long createVertex(String key, Function<JanusGraphTransaction, Vertex> function) {
+        Long id = createdVertexIdMap.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (checkpoint) {
+            Map<String, Long> ids = readCheckpoint(VERTEX + key);
+            if (ids != null) {
+                id = ids.get(key);
+                createdVertexIdMap.put(key, id);
+                return id;
+            }
+        }
+        JanusGraphTransaction tx = janusGraph.newTransaction();
+        try {
+            Vertex vertex = function.apply(tx);
+            Map<String, Vertex> created = new HashMap<>();
+            created.put(key, vertex);
+            addCheckpoint(tx, VERTEX + key, created);
+            tx.commit();
+            id = (Long) vertex.id();
+        } finally {
+            if (tx.isOpen()) {
+                tx.rollback();
+            }
+        }
+        createdVertexIdMap.put(key, id);
+        return id;
+    }
+
+    /**
+     * Get the id of the vertex registered with the specified key.
+     *
+     * @param key
+     *     the key of the vertex
+     * @return
+     *     the id of the vertex, or null if no vertex was registered with the key by a committed batch
+     */
+    public Long getVertexId(String key) {
+        return vertexIdMap.get(key);
+    }
+
+    /**
+     * Create the edge label if the graph does not have it yet.
+     *
+     * @param label
+     *     the edge label
+     */
+    public synchronized void ensureEdgeLabel(String label) {
+        if (janusGraph.getEdgeLabel(label) == null) {
+            log.info("Adding label: " + label);
+            JanusGraphManagement management = janusGraph.openManagement();
+            management.makeEdgeLabel(label).make();
+            management.commit();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Create the vertex label, property keys and index of the checkpoint vertices if the graph does not have them yet.
+     */
+    private void ensureCheckpointSchema() {
+        JanusGraphManagement management = janusGraph.openManagement();
+        if (management.containsPropertyKey(CHECKPOINT_KEY)) {
+            management.rollback();
+            return;
+        }
+        log.info("Adding checkpoint schema");
+        PropertyKey checkpointKey = management.makePropertyKey(CHECKPOINT_KEY).dataType(String.class).make();
+        management.makePropertyKey(CHECKPOINT_IDS).dataType(String.class).make();
+        management.makeVertexLabel(CHECKPOINT_LABEL).make();
+        management.buildIndex(CHECKPOINT_INDEX, Vertex.class).addKey(checkpointKey).buildCompositeIndex();
+        management.commit();
+    }
+
+    /**
+     * Add a checkpoint vertex to the given transaction. The vertex ids are assigned when the vertices are added
+     * (ids.flush=true, the JanusGraph default), so they can be recorded before the transaction is committed.
+     */
+    private void addCheckpoint(JanusGraphTransaction tx, String checkpointKey, Map<String, Vertex> vertices) {
+        if (!checkpoint) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Vertex> entry : vertices.entrySet()) {
+            Object id = entry.getValue().id();
+            if (id == null) {
+                throw new IllegalStateException("Checkpoints require vertex ids to be assigned on creation (ids.flush=true)");
+            }
+            sb.append(id).append('\t').append(entry.getKey()).append('\n');
+        }
+        Vertex vertex = tx.addVertex(CHECKPOINT_LABEL);
+        vertex.property(CHECKPOINT_KEY, checkpointKey);
+        vertex.property(CHECKPOINT_IDS, sb.toString());
+    }
+
+    /**
+     * Read a checkpoint vertex.
+     *
+     * @return
+     *     the vertex ids recorded by the checkpoint, or null if the graph has no checkpoint with the given key
+     */
+    private Map<String, Long> readCheckpoint(String checkpointKey) {
+        JanusGraphTransaction tx = janusGraph.newTransaction();
+        try {
+            Iterator<JanusGraphVertex> vertices = tx.query().has(CHECKPOINT_KEY, checkpointKey).vertices().iterator();
+            if (!vertices.hasNext()) {
+                return null;
+            }
+            Map<String, Long> ids = new HashMap<>();
+            String value = vertices.next().value(CHECKPOINT_IDS);
+            for (String line : value.split("\n")) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    ids.put(line.substring(tab + 1), Long.valueOf(line.substring(0, tab)));
+                }
+            }
+            return ids;
+        } finally {
+            tx.rollback();
+        }
+    }
+
+    /**
+     * Writes a single item of a phase.
+     *
+     * @param <T>
+     *     the item type
+     */
+    @FunctionalInterface
+    public interface ItemWriter<T> {
+        void write(Batch batch, T item);
+    }
+
+    /**
+     * The transaction in which a batch of items is written.
+     */
+    public final class Batch {
+        private final JanusGraphTransaction tx;
+        private final Map<String, Vertex> registered = new HashMap<>();
+
+        private Batch(JanusGraphTransaction tx) {
+            this.tx = tx;
+        }
+
+        /**
+         * Get the transaction of this batch.
+         *
+         * @return
+         *     the transaction
+         */
+        public JanusGraphTransaction tx() {
+            return tx;
+        }
+
+        /**
+         * Get a vertex which was registered by a committed batch or by this batch.
+         *
+         * @param key
+         *     the key of the vertex
+         * @return
+         *     the vertex, or null if no vertex was registered with the key
+         */
+        public Vertex getVertex(String key) {
+            Vertex vertex = registered.get(key);
+            if (vertex != null) {
+                return vertex;
+            }
+            Long id = vertexIdMap.get(key);
+            return (id != null) ? getVertex(id) : null;
+        }
+
+        /**
+         * Get a vertex by id.
+         *
+         * @param id
+         *     the id of the vertex
+         * @return
+         *     the vertex
+         */
+        public JanusGraphVertex getVertex(long id) {
+            return tx.getVertex(id);
+        }
+
+        /**
+         * Register a vertex created by this batch, so that later phases can refer to it by key.
+         *
+         * @param key
+         *     the key of the vertex
+         * @param vertex
+         *     the vertex
+         */
+        public void registerVertex(String key, Vertex vertex) {
+            registered.put(key, vertex);
+        }
+    }
+
+    /**
+     * A phase of the load: the items added to the phase are written in batches by the worker threads.
+     *
+     * @param <T>
+     *     the item type
+     */
+    public final class Phase<T> implements AutoCloseable {
+        private final String name;
+        private final ItemWriter<T> itemWriter;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private List<T> items;
+        private int batchIndex = 0;
+        private int submitted = 0;
+        private int skipped = 0;
+
+        private Phase(String name, ItemWriter<T> itemWriter) {
+            this.name = Objects.requireNonNull(name, "name");
+            this.itemWriter = Objects.requireNonNull(itemWriter, "itemWriter");
+            items = new ArrayList<>(batchSize);
+        }
+
+        /**
+         * Add an item to this phase.
+         *
+         * @param item
+         *     the item
+         */
+        public void add(T item) {
+            checkFailure();
+            items.add(item);
+            if (items.size() == batchSize) {
+                submit();
+            }
+        }
+
+        /**
+         * Write the remaining items of this phase and wait for all its batches to be committed.
+         *
+         * @throws RuntimeException
+         *     if a batch of this phase could not be written
+         */
+        @Override
+        public void close() {
+            if (!items.isEmpty()) {
+                submit();
+            }
+            // wait for the batches in flight
+            semaphore.acquireUninterruptibly(maxBatchesInFlight);
+            semaphore.release(maxBatchesInFlight);
+            checkFailure();
+            log.info("Phase '" + name + "' done: " + submitted + " batches written, " + skipped + " batches skipped");
+        }
+
+        private void submit() {
+            String batchKey = name + ":" + (batchIndex++);
+            List<T> batchItems = items;
+            items = new ArrayList<>(batchSize);
+            if (checkpoint) {
+                Map<String, Long> ids = readCheckpoint(BATCH + batchKey);
+                if (ids != null) {
+                    // committed by a previous run of the load
+                    vertexIdMap.putAll(ids);
+                    skipped++;
+                    return;
+                }
+            }
+            semaphore.acquireUninterruptibly();
+            submitted++;
+            executor.execute(() -> {
+                try {
+                    write(batchKey, batchItems);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    semaphore.release();
+                }
+            });
+            if ((submitted % 10) == 0) {
+                log.info("Phase '" + name + "': " + submitted + " batches submitted");
+            }
+        }
+
+        private void write(String batchKey, List<T> batchItems) {
+            if (failure.get() != null) {
+                return;
+            }
+            JanusGraphTransaction tx = janusGraph.buildTransaction()
+                    .enableBatchLoading()
+                    .start();
+            try {
+                Batch batch = new Batch(tx);
+                for (T item : batchItems) {
+                    itemWriter.write(batch, item);
+                }
+                addCheckpoint(tx, BATCH + batchKey, batch.registered);
+                tx.commit();
+                for (Map.Entry<String, Vertex> entry : batch.registered.entrySet()) {
+                    vertexIdMap.put(entry.getKey(), (Long) entry.getValue().id());
+                }
+            } finally {
+                if (tx.isOpen()) {
+                    tx.rollback();
+                }
+            }
+        }
+
+        private void checkFailure() {
+            Throwable t = failure.get();
+            if (t != null) {
+                throw new RuntimeException("Phase '" + name + "' failed", t);
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ import static java.util.Objects.requireNonNull;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -122,6 +124,56 @@ public class GraphTermServiceProvider implements FHIRTermServiceProvider {
         return getConcept(codeSystem, code, true, true);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<Code, Concept> getConcepts(CodeSystem codeSystem, Set<Code> codes) {
+        checkArgument(codeSystem);
+        requireNonNull(codes, "codes");
+
+        Map<Code, Concept> result = new LinkedHashMap<>();
+        if (codes.isEmpty()) {
+            return result;
+        }
+
+        boolean caseSensitive = isCaseSensitive(codeSystem);
+
+        // the requested codes by the value of the vertex property that is matched
+        Map<String, List<Code>> codeMap = new HashMap<>();
+        for (Code code : codes) {
+            checkArgument(code, "Code value is null");
+            codeMap.computeIfAbsent(caseSensitive ? code.getValue() : normalize(code.getValue()), k -> new ArrayList<>()).add(code);
+        }
+
+        // a single traversal for the concepts together with their designations and properties
+        GraphTraversal<Vertex, Vertex> g = whereCodeSystem(vertices().has(caseSensitive ? "code" : "codeLowerCase", P.within(codeMap.keySet())), codeSystem)
+            .timeLimit(timeLimit);
+        TimeLimitStep<?> timeLimitStep = getTimeLimitStep(g);
+
+        g.project("concept", "designation", "property")
+            .by(__.elementMap())
+            .by(__.out("designation").elementMap().fold())
+            .by(__.out("property_").elementMap().fold())
+            .toStream()
+            .forEach(map -> {
+                Map<Object, Object> elementMap = (Map<Object, Object>) map.get("concept");
+                List<Designation> designations = ((List<Map<Object, Object>>) map.get("designation")).stream()
+                    .map(designationMap -> createDesignation(designationMap, codeSystem.getUrl().getValue()))
+                    .collect(Collectors.toList());
+                List<Property> properties = ((List<Map<Object, Object>>) map.get("property")).stream()
+                    .map(this::createProperty)
+                    .collect(Collectors.toList());
+                Concept concept = createConcept(elementMap, designations, properties);
+                String value = concept.getCode().getValue();
+                for (Code code : codeMap.getOrDefault(caseSensitive ? value : normalize(value), Collections.emptyList())) {
+                    result.put(code, concept);
+                }
+            });
+
+        checkTimeLimit(timeLimitStep);
+
+        return result;
+    }
+
     @Override
     public Set<Concept> getConcepts(CodeSystem codeSystem) {
         return getConcepts(codeSystem, Function.identity());
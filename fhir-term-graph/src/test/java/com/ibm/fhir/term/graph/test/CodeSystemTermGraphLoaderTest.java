@@ -6,9 +6,15 @@
 
 package com.ibm.fhir.term.graph.test;
 
+import static com.ibm.fhir.model.type.String.string;
+
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.testng.Assert;
@@ -16,6 +22,7 @@ import org.testng.annotations.Test;
 
 import com.ibm.fhir.model.resource.CodeSystem;
 import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Code;
 import com.ibm.fhir.term.graph.FHIRTermGraph;
 import com.ibm.fhir.term.graph.factory.FHIRTermGraphFactory;
 import com.ibm.fhir.term.graph.loader.FHIRTermGraphLoader;
@@ -52,4 +59,82 @@ public class CodeSystemTermGraphLoaderTest {
 
         graph.close();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCodeSystemTermGraphLoaderParallelWithCheckpoint() throws Exception {
+        FHIRTermGraph graph = FHIRTermGraphFactory.open(new PropertiesConfiguration("conf/janusgraph-berkeleyje-lucene.properties"));
+        graph.dropAllVertices();
+
+        Map<String, String> options = new HashMap<>();
+        options.put("threads", "4");
+        options.put("batchSize", "2");
+        options.put("checkpoint", null);
+
+        CodeSystem codeSystem = CodeSystemSupport.getCodeSystem("http://ibm.com/fhir/CodeSystem/test");
+        new CodeSystemTermGraphLoader(options, graph, codeSystem).load();
+
+        // a restarted load skips the batches recorded in the graph
+        new CodeSystemTermGraphLoader(options, graph, codeSystem).load();
+
+        FHIRTermServiceProvider provider = new GraphTermServiceProvider(graph);
+
+        Set<Concept> actual = new LinkedHashSet<>();
+        for (Concept concept : provider.getConcepts(codeSystem)) {
+            actual.add(provider.getConcept(codeSystem, concept.getCode()));
+        }
+
+        Set<Concept> expected = new LinkedHashSet<>();
+        for (Concept concept : CodeSystemSupport.getConcepts(codeSystem)) {
+            expected.add(concept.toBuilder()
+                .concept(Collections.emptyList())
+                .build());
+        }
+
+        Assert.assertEquals(provider.getConcepts(codeSystem).size(), expected.size());
+        Assert.assertEquals(actual, expected);
+
+        for (Concept concept : CodeSystemSupport.getConcepts(codeSystem)) {
+            Assert.assertEquals(codes(provider.closure(codeSystem, concept.getCode())), codes(CodeSystemSupport.getConcepts(concept)));
+        }
+
+        graph.close();
+    }
+
+    @Test
+    public void testCodeSystemTermGraphLoaderKeyCollision() throws Exception {
+        FHIRTermGraph graph = FHIRTermGraphFactory.open(new PropertiesConfiguration("conf/janusgraph-berkeleyje-lucene.properties"));
+        graph.dropAllVertices();
+
+        Map<String, String> options = new HashMap<>();
+        options.put("batchSize", "2");
+        options.put("checkpoint", null);
+
+        // a concept with the same code as the key of the code system vertex
+        CodeSystem codeSystem = CodeSystemSupport.getCodeSystem("http://ibm.com/fhir/CodeSystem/test");
+        codeSystem = codeSystem.toBuilder()
+                .concept(Concept.builder()
+                    .code(Code.of("CodeSystem"))
+                    .display(string("Code System"))
+                    .concept(Concept.builder()
+                        .code(Code.of("CodeSystemChild"))
+                        .display(string("Code System Child"))
+                        .build())
+                    .build())
+                .build();
+        new CodeSystemTermGraphLoader(options, graph, codeSystem).load();
+        new CodeSystemTermGraphLoader(options, graph, codeSystem).load();
+
+        FHIRTermServiceProvider provider = new GraphTermServiceProvider(graph);
+        Assert.assertEquals(provider.getConcepts(codeSystem).size(), CodeSystemSupport.getConcepts(codeSystem).size());
+        Assert.assertEquals(codes(provider.closure(codeSystem, Code.of("CodeSystem"))),
+            new LinkedHashSet<>(Arrays.asList("CodeSystem", "CodeSystemChild")));
+
+        graph.close();
+    }
+
+    private Set<String> codes(Set<Concept> concepts) {
+        return concepts.stream()
+                .map(concept -> concept.getCode().getValue())
+                .collect(Collectors.toSet());
+    }
+}
@@ -11,6 +11,7 @@ import static com.ibm.fhir.model.util.FHIRUtil.STRING_DATA_ABSENT_REASON_UNKNOWN
 import static com.ibm.fhir.term.util.CodeSystemSupport.normalize;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -43,6 +44,7 @@ import com.ibm.fhir.model.type.code.ConceptSubsumptionOutcome;
 import com.ibm.fhir.term.service.LookupOutcome.Designation;
 import com.ibm.fhir.term.service.LookupOutcome.Property;
 import com.ibm.fhir.term.service.TranslationOutcome.Match;
+import com.ibm.fhir.term.service.provider.CachingTermServiceProvider;
 import com.ibm.fhir.term.service.provider.RegistryTermServiceProvider;
 import com.ibm.fhir.term.spi.FHIRTermServiceProvider;
 import com.ibm.fhir.term.util.CodeSystemSupport;
@@ -103,6 +105,18 @@ public class FHIRTermService {
         providers.add(provider);
     }
 
+    /**
+     * Clear the caches of the {@link CachingTermServiceProvider} instances that have been added to the service,
+     * e.g. after the content behind a provider has been reloaded
+     */
+    public void clearCaches() {
+        for (FHIRTermServiceProvider provider : providers) {
+            if (provider instanceof CachingTermServiceProvider) {
+                ((CachingTermServiceProvider) provider).clear();
+            }
+        }
+    }
+
     /**
      * Get a set containing {@link CodeSystem.Concept} instances where all structural
      * hierarchies have been flattened.
@@ -234,6 +248,9 @@ public class FHIRTermService {
     /**
      * Expand the given value set and expansion parameters
      *
+     * <p>Only the offset and count parameters are supported. When either is specified, the expansion holds
+     * the requested page of the flattened contains.
+     *
      * @param valueSet
      *     the value set to expand
      * @param parameters
@@ -242,10 +259,15 @@ public class FHIRTermService {
      *     the expanded value set, or the original value set if already expanded or unable to expand
      */
     public ValueSet expand(ValueSet valueSet, ExpansionParameters parameters) {
-        if (!ExpansionParameters.EMPTY.equals(parameters)) {
-            throw new UnsupportedOperationException("Expansion parameters are not supported");
+        if (!ExpansionParameters.EMPTY.equals(parameters.toBuilder().offset(null).count(null).build())) {
+            throw new UnsupportedOperationException("Expansion parameters other than offset and count are not supported");
         }
-        return ValueSetSupport.expand(valueSet);
+        if (parameters.getOffset() == null && parameters.getCount() == null) {
+            return ValueSetSupport.expand(valueSet);
+        }
+        int offset = (parameters.getOffset() != null) ? Math.max(0, parameters.getOffset().getValue()) : 0;
+        int count = (parameters.getCount() != null) ? Math.max(0, parameters.getCount().getValue()) : java.lang.Integer.MAX_VALUE;
+        return ValueSetSupport.expand(valueSet, offset, count);
     }
 
     /**
@@ -262,6 +284,20 @@ public class FHIRTermService {
         return findProvider(codeSystem).getConcept(codeSystem, code);
     }
 
+    /**
+     * Get a map containing the concepts in the provided code system with the specified codes.
+     *
+     * @param codeSystem
+     *     the code system to search
+     * @param codes
+     *     the codes to match
+     * @return
+     *     a map containing the code system concept for each of the specified codes that has one
+     */
+    public Map<Code, Concept> getConcepts(CodeSystem codeSystem, Set<Code> codes) {
+        return findProvider(codeSystem).getConcepts(codeSystem, codes);
+    }
+
     /**
      * Get a set containing {@link CodeSystem.Concept} instances where all structural
      * hierarchies have been flattened.
@@ -414,36 +450,65 @@ public class FHIRTermService {
         Uri system = coding.getSystem();
         Code code = coding.getCode();
         if (system != null && code != null) {
-            java.lang.String version = (coding.getVersion() != null) ? coding.getVersion().getValue() : null;
-            java.lang.String url = (version != null) ? system.getValue() + "|" + version : system.getValue();
-            CodeSystem codeSystem = CodeSystemSupport.getCodeSystem(url);
+            CodeSystem codeSystem = CodeSystemSupport.getCodeSystem(getUrl(coding));
             if (codeSystem != null) {
-                Concept concept = findProvider(codeSystem).getConcept(codeSystem, code);
+                Concept concept = findConcepts(codeSystem, Collections.singleton(code)).get(code);
                 if (concept != null) {
-                    return LookupOutcome.builder()
-                            .name((codeSystem.getName() != null) ? codeSystem.getName() : STRING_DATA_ABSENT_REASON_UNKNOWN)
-                            .version(codeSystem.getVersion())
-                            .display((concept.getDisplay() != null) ? concept.getDisplay() : STRING_DATA_ABSENT_REASON_UNKNOWN)
-                            .property(concept.getProperty().stream()
-                                .map(property -> Property.builder()
-                                    .code(property.getCode())
-                                    .value(property.getValue())
-                                    .build())
-                                .collect(Collectors.toList()))
-                            .designation(concept.getDesignation().stream()
-                                .map(designation -> Designation.builder()
-                                    .language(designation.getLanguage())
-                                    .use(designation.getUse())
-                                    .value(designation.getValue())
-                                    .build())
-                                .collect(Collectors.toList()))
-                            .build();
+                    return lookup(codeSystem, concept);
                 }
             }
         }
         return null;
     }
 
+    /**
+     * Lookup the code system concepts for the given codings
+     *
+     * <p>The codings are grouped by code system, and the concepts of each code system are requested from its
+     * provider with a single call.
+     *
+     * @param codings
+     *     the codings to lookup
+     * @return
+     *     a map containing the outcome of the lookup for each of the given codings that has a code system concept
+     */
+    public Map<Coding, LookupOutcome> lookup(Collection<Coding> codings) {
+        Map<java.lang.String, CodeSystem> codeSystemMap = new LinkedHashMap<>();
+        Map<java.lang.String, Set<Code>> codeSetMap = new LinkedHashMap<>();
+
+        for (Coding coding : codings) {
+            if (coding.getSystem() == null || coding.getCode() == null) {
+                continue;
+            }
+            java.lang.String url = getUrl(coding);
+            if (!codeSystemMap.containsKey(url)) {
+                codeSystemMap.put(url, CodeSystemSupport.getCodeSystem(url));
+            }
+            if (codeSystemMap.get(url) != null) {
+                codeSetMap.computeIfAbsent(url, k -> new LinkedHashSet<>()).add(coding.getCode());
+            }
+        }
+
+        Map<java.lang.String, Map<Code, Concept>> conceptMapMap = new LinkedHashMap<>();
+        for (java.lang.String url : codeSetMap.keySet()) {
+            conceptMapMap.put(url, findConcepts(codeSystemMap.get(url), codeSetMap.get(url)));
+        }
+
+        Map<Coding, LookupOutcome> result = new LinkedHashMap<>();
+        for (Coding coding : codings) {
+            if (coding.getSystem() == null || coding.getCode() == null) {
+                continue;
+            }
+            java.lang.String url = getUrl(coding);
+            Concept concept = conceptMapMap.getOrDefault(url, Collections.emptyMap()).get(coding.getCode());
+            if (concept != null) {
+                result.put(coding, lookup(codeSystemMap.get(url), concept));
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Lookup the code system concept for the given system, version, and code
      *
@@ -992,6 +1057,44 @@ public class FHIRTermService {
         return validateCode(valueSet, coding, parameters);
     }
 
+    /**
+     * Validate the given codings using the provided value set
+     *
+     * <p>Membership of each coding is checked against the value set, and the code system concepts of the members
+     * are then looked up with a single provider call per code system (see {@link #lookup(Collection)}).
+     *
+     * @apiNote
+     *     the implementation will expand the provided value set if needed
+     * @param valueSet
+     *     the value set
+     * @param codings
+     *     the codings
+     * @return
+     *     a map containing the outcome of validation for each of the given codings
+     */
+    public Map<Coding, ValidationOutcome> validateCodes(ValueSet valueSet, Collection<Coding> codings) {
+        Set<Coding> members = new LinkedHashSet<>();
+        for (Coding coding : codings) {
+            if (ValueSetSupport.validateCode(valueSet, coding)) {
+                members.add(coding);
+            }
+        }
+        Map<Coding, LookupOutcome> outcomeMap = lookup(members);
+        Map<Coding, ValidationOutcome> result = new LinkedHashMap<>();
+        for (Coding coding : codings) {
+            result.put(coding, validateCode(coding, members.contains(coding), outcomeMap.get(coding)));
+        }
+        return result;
+    }
+
+    /**
+     * Get the concepts for the specified codes from the provider of the code system in a single call. Repeated
+     * lookups are answered from the cache of a {@link CachingTermServiceProvider} in front of the provider.
+     */
+    private Map<Code, Concept> findConcepts(CodeSystem codeSystem, Set<Code> codes) {
+        return findProvider(codeSystem).getConcepts(codeSystem, codes);
+    }
+
     private FHIRTermServiceProvider findProvider(CodeSystem codeSystem) {
         for (FHIRTermServiceProvider provider : providers) {
             if (provider.isSupported(codeSystem)) {
@@ -1001,6 +1104,32 @@ public class FHIRTermService {
         return NULL_TERM_SERVICE_PROVIDER;
     }
 
+    private java.lang.String getUrl(Coding coding) {
+        java.lang.String system = coding.getSystem().getValue();
+        return (coding.getVersion() != null) ? system + "|" + coding.getVersion().getValue() : system;
+    }
+
+    private LookupOutcome lookup(CodeSystem codeSystem, Concept concept) {
+        return LookupOutcome.builder()
+                .name((codeSystem.getName() != null) ? codeSystem.getName() : STRING_DATA_ABSENT_REASON_UNKNOWN)
+                .version(codeSystem.getVersion())
+                .display((concept.getDisplay() != null) ? concept.getDisplay() : STRING_DATA_ABSENT_REASON_UNKNOWN)
+                .property(concept.getProperty().stream()
+                    .map(property -> Property.builder()
+                        .code(property.getCode())
+                        .value(property.getValue())
+                        .build())
+                    .collect(Collectors.toList()))
+                .designation(concept.getDesignation().stream()
+                    .map(designation -> Designation.builder()
+                        .language(designation.getLanguage())
+                        .use(designation.getUse())
+                        .value(designation.getValue())
+                        .build())
+                    .collect(Collectors.toList()))
+                .build();
+    }
+
     private Uri getSource(ConceptMap conceptMap) {
         StringBuilder sb = new StringBuilder(conceptMap.getUrl().getValue());
         if (conceptMap.getVersion() != null) {
@@ -0,0 +1,288 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.service.provider;
+
+import static com.ibm.fhir.core.util.LRUCache.createLRUCache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include.Filter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.term.spi.FHIRTermServiceProvider;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+
+/**
+ * A caching implementation of the {@link FHIRTermServiceProvider} interface that wraps another provider.
+ *
+ * <p>Concept lookups (including lookups of codes that are not in the code system), subsumption tests and
+ * closures of at most {@code maxClosureSize} concepts are held in size-bounded LRU caches. Entries are keyed by
+ * the url and version of the code system, so each version of a code system is cached separately. Calls for code
+ * systems without a url, and calls which return all or a filtered set of the concepts of a code system, are
+ * passed through to the wrapped provider.
+ *
+ * <p>The caches must be cleared with {@link #clear()} when the content behind the wrapped provider changes,
+ * e.g. when a term graph is reloaded.
+ */
+public class CachingTermServiceProvider implements FHIRTermServiceProvider {
+    private static final Logger log = Logger.getLogger(CachingTermServiceProvider.class.getName());
+
+    public static final int DEFAULT_MAX_CONCEPTS = 10000;
+    public static final int DEFAULT_MAX_CLOSURES = 1000;
+    public static final int DEFAULT_MAX_CLOSURE_SIZE = 100;
+
+    // How often (in lookups) we log the cache statistics
+    private static final long LOG_INTERVAL = 1000;
+
+    private final FHIRTermServiceProvider provider;
+    private final int maxClosureSize;
+
+    // absent concepts are cached as Optional.empty()
+    private final Map<String, Optional<Concept>> conceptCache;
+    private final Map<String, Set<Concept>> closureCache;
+    private final Map<String, Boolean> subsumesCache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a caching provider with the default cache sizes.
+     *
+     * @param provider
+     *     the provider to wrap
+     */
+    public CachingTermServiceProvider(FHIRTermServiceProvider provider) {
+        this(provider, DEFAULT_MAX_CONCEPTS, DEFAULT_MAX_CLOSURES, DEFAULT_MAX_CLOSURE_SIZE);
+    }
+
+    /**
+     * Create a caching provider.
+     *
+     * @param provider
+     *     the provider to wrap
+     * @param maxConcepts
+     *     the maximum number of concept lookups (and of subsumption tests) to hold
+     * @param maxClosures
+     *     the maximum number of closures to hold
+     * @param maxClosureSize
+     *     the maximum number of concepts of a closure that is held
+     */
+    public CachingTermServiceProvider(FHIRTermServiceProvider provider, int maxConcepts, int maxClosures, int maxClosureSize) {
+        this.provider = Objects.requireNonNull(provider, "provider");
+        this.maxClosureSize = maxClosureSize;
+        conceptCache = createLRUCache(maxConcepts);
+        closureCache = createLRUCache(maxClosures);
+        subsumesCache = createLRUCache(maxConcepts);
+    }
+
+    /**
+     * Get the wrapped provider.
+     *
+     * @return
+     *     the wrapped provider
+     */
+    public FHIRTermServiceProvider getProvider() {
+        return provider;
+    }
+
+    @Override
+    public Set<Concept> closure(CodeSystem codeSystem, Code code) {
+        if (codeSystem.getUrl() == null) {
+            return provider.closure(codeSystem, code);
+        }
+        String key = key(codeSystem, code);
+        Set<Concept> closure = closureCache.get(key);
+        if (closure != null) {
+            hit();
+            return closure;
+        }
+        miss();
+        closure = provider.closure(codeSystem, code);
+        if (closure.size() <= maxClosureSize) {
+            closure = Collections.unmodifiableSet(new LinkedHashSet<>(closure));
+            closureCache.put(key, closure);
+        }
+        return closure;
+    }
+
+    @Override
+    public Concept getConcept(CodeSystem codeSystem, Code code) {
+        if (codeSystem.getUrl() == null) {
+            return provider.getConcept(codeSystem, code);
+        }
+        String key = key(codeSystem, code);
+        Optional<Concept> optional = conceptCache.get(key);
+        if (optional != null) {
+            hit();
+            return optional.orElse(null);
+        }
+        miss();
+        Concept concept = provider.getConcept(codeSystem, code);
+        conceptCache.put(key, Optional.ofNullable(concept));
+        return concept;
+    }
+
+    @Override
+    public Map<Code, Concept> getConcepts(CodeSystem codeSystem, Set<Code> codes) {
+        if (codeSystem.getUrl() == null) {
+            return provider.getConcepts(codeSystem, codes);
+        }
+        Map<Code, Concept> result = new LinkedHashMap<>();
+        Set<Code> uncached = new LinkedHashSet<>();
+        for (Code code : codes) {
+            Optional<Concept> optional = conceptCache.get(key(codeSystem, code));
+            if (optional != null) {
+                hit();
+                optional.ifPresent(concept -> result.put(code, concept));
+            } else {
+                miss();
+                uncached.add(code);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            Map<Code, Concept> conceptMap = provider.getConcepts(codeSystem, uncached);
+            for (Code code : uncached) {
+                Concept concept = conceptMap.get(code);
+                conceptCache.put(key(codeSystem, code), Optional.ofNullable(concept));
+                if (concept != null) {
+                    result.put(code, concept);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Concept> getConcepts(CodeSystem codeSystem) {
+        return provider.getConcepts(codeSystem);
+    }
+
+    @Override
+    public <R> Set<R> getConcepts(CodeSystem codeSystem, Function<Concept, ? extends R> function) {
+        return provider.getConcepts(codeSystem, function);
+    }
+
+    @Override
+    public Set<Concept> getConcepts(CodeSystem codeSystem, List<Filter> filters) {
+        return provider.getConcepts(codeSystem, filters);
+    }
+
+    @Override
+    public <R> Set<R> getConcepts(CodeSystem codeSystem, List<Filter> filters, Function<Concept, ? extends R> function) {
+        return provider.getConcepts(codeSystem, filters, function);
+    }
+
+    @Override
+    public boolean hasConcept(CodeSystem codeSystem, Code code) {
+        if (codeSystem.getUrl() == null) {
+            return provider.hasConcept(codeSystem, code);
+        }
+        // a concept lookup answers the existence check and is cached for later lookups
+        return getConcept(codeSystem, code) != null;
+    }
+
+    @Override
+    public boolean hasConcepts(CodeSystem codeSystem, Set<Code> codes) {
+        if (codeSystem.getUrl() == null) {
+            return provider.hasConcepts(codeSystem, codes);
+        }
+        return getConcepts(codeSystem, codes).size() == codes.size();
+    }
+
+    @Override
+    public boolean isSupported(CodeSystem codeSystem) {
+        return provider.isSupported(codeSystem);
+    }
+
+    @Override
+    public boolean subsumes(CodeSystem codeSystem, Code codeA, Code codeB) {
+        if (codeSystem.getUrl() == null) {
+            return provider.subsumes(codeSystem, codeA, codeB);
+        }
+        String key = key(codeSystem, codeA) + "#" + code(codeSystem, codeB);
+        Boolean result = subsumesCache.get(key);
+        if (result != null) {
+            hit();
+            return result;
+        }
+        miss();
+        result = provider.subsumes(codeSystem, codeA, codeB);
+        subsumesCache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Get the number of calls answered from the caches.
+     *
+     * @return
+     *     the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of calls passed to the wrapped provider for a value that was not in the caches.
+     *
+     * @return
+     *     the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Empty the caches and reset the statistics.
+     */
+    public void clear() {
+        conceptCache.clear();
+        closureCache.clear();
+        subsumesCache.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private void hit() {
+        log(hits.incrementAndGet() + misses.get());
+    }
+
+    private void miss() {
+        log(misses.incrementAndGet() + hits.get());
+    }
+
+    private void log(long lookups) {
+        if (lookups % LOG_INTERVAL == 0 && log.isLoggable(Level.FINE)) {
+            log.fine("Term service provider cache: hits=" + getHitCount() + ", misses=" + getMissCount() +
+                ", concepts=" + conceptCache.size() + ", closures=" + closureCache.size() + ", subsumes=" + subsumesCache.size());
+        }
+    }
+
+    private String key(CodeSystem codeSystem, Code code) {
+        StringBuilder sb = new StringBuilder(codeSystem.getUrl().getValue());
+        if (codeSystem.getVersion() != null) {
+            sb.append("|").append(codeSystem.getVersion().getValue());
+        }
+        return sb.append("#").append(code(codeSystem, code)).toString();
+    }
+
+    private String code(CodeSystem codeSystem, Code code) {
+        String value = (code.getValue() != null) ? code.getValue() : "";
+        return CodeSystemSupport.isCaseSensitive(codeSystem) ? value : CodeSystemSupport.normalize(value);
+    }
+}
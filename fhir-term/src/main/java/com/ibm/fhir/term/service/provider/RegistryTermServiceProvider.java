@@ -18,20 +18,33 @@ import com.ibm.fhir.model.type.code.CodeSystemContentMode;
 import com.ibm.fhir.term.exception.FHIRTermException;
 import com.ibm.fhir.term.service.exception.FHIRTermServiceException;
 import com.ibm.fhir.term.spi.FHIRTermServiceProvider;
+import com.ibm.fhir.term.store.ConceptStore;
+import com.ibm.fhir.term.store.ConceptStoreRegistry;
 import com.ibm.fhir.term.util.CodeSystemSupport;
 
 /**
  * Registry-based implementation of the {@link FHIRTermServiceProvider} interface using {@link CodeSystemSupport}
+ *
+ * <p>Concepts are looked up in the {@link ConceptStore} of the code system, when one has been added to the
+ * {@link ConceptStoreRegistry}. A code system with a concept store is supported whatever its content mode, and when
+ * the CodeSystem resource has no concepts (e.g. content=not-present) they are all read from the store.
  */
 public class RegistryTermServiceProvider implements FHIRTermServiceProvider {
     @Override
     public Set<Concept> closure(CodeSystem codeSystem, Code code) {
-        Concept concept = CodeSystemSupport.findConcept(codeSystem, code);
-        return CodeSystemSupport.getConcepts(concept);
+        ConceptStore conceptStore = getStoreOnly(codeSystem);
+        if (conceptStore != null) {
+            return conceptStore.getConceptsAndDescendants(code.getValue());
+        }
+        return CodeSystemSupport.getSubsumptionIndex(codeSystem).getConceptsAndDescendants(code.getValue());
     }
 
     @Override
     public Concept getConcept(CodeSystem codeSystem, Code code) {
+        ConceptStore conceptStore = ConceptStoreRegistry.getInstance().getConceptStore(codeSystem);
+        if (conceptStore != null) {
+            return conceptStore.getConcept(code.getValue());
+        }
         Concept concept = CodeSystemSupport.findConcept(codeSystem, code);
         if (concept != null) {
             // child concepts are removed for consistency with the other providers
@@ -47,6 +60,10 @@ public class RegistryTermServiceProvider implements FHIRTermServiceProvider {
 
     @Override
     public <R> Set<R> getConcepts(CodeSystem codeSystem, Function<Concept, ? extends R> function) {
+        ConceptStore conceptStore = getStoreOnly(codeSystem);
+        if (conceptStore != null) {
+            return conceptStore.getConcepts(function);
+        }
         return CodeSystemSupport.getConcepts(codeSystem, function);
     }
 
@@ -58,6 +75,10 @@ public class RegistryTermServiceProvider implements FHIRTermServiceProvider {
     @Override
     public <R> Set<R> getConcepts(CodeSystem codeSystem, List<Filter> filters, Function<Concept, ? extends R> function) {
         try {
+            ConceptStore conceptStore = getStoreOnly(codeSystem);
+            if (conceptStore != null) {
+                return CodeSystemSupport.getConcepts(codeSystem, conceptStore, filters, function);
+            }
             return CodeSystemSupport.getConcepts(codeSystem, filters, function);
         } catch (FHIRTermException e) {
             throw new FHIRTermServiceException(e.getMessage(), e, e.getIssues());
@@ -66,17 +87,32 @@ public class RegistryTermServiceProvider implements FHIRTermServiceProvider {
 
     @Override
     public boolean hasConcept(CodeSystem codeSystem, Code code) {
+        ConceptStore conceptStore = ConceptStoreRegistry.getInstance().getConceptStore(codeSystem);
+        if (conceptStore != null) {
+            return conceptStore.hasConcept(code.getValue());
+        }
         return getConcept(codeSystem, code) != null;
     }
 
     @Override
     public boolean isSupported(CodeSystem codeSystem) {
-        return CodeSystemContentMode.COMPLETE.equals(codeSystem.getContent());
+        return CodeSystemContentMode.COMPLETE.equals(codeSystem.getContent()) ||
+                ConceptStoreRegistry.getInstance().getConceptStore(codeSystem) != null;
     }
 
     @Override
     public boolean subsumes(CodeSystem codeSystem, Code codeA, Code codeB) {
-        Concept concept = CodeSystemSupport.findConcept(codeSystem, codeA);
-        return (CodeSystemSupport.findConcept(codeSystem, concept, codeB) != null);
+        ConceptStore conceptStore = getStoreOnly(codeSystem);
+        if (conceptStore != null) {
+            return conceptStore.subsumes(codeA.getValue(), codeB.getValue());
+        }
+        return CodeSystemSupport.getSubsumptionIndex(codeSystem).subsumes(codeA.getValue(), codeB.getValue());
+    }
+
+    /**
+     * Get the concept store of a code system whose resource has no concepts, so that the store is its only source.
+     */
+    private ConceptStore getStoreOnly(CodeSystem codeSystem) {
+        return codeSystem.getConcept().isEmpty() ? ConceptStoreRegistry.getInstance().getConceptStore(codeSystem) : null;
     }
 }
@@ -67,6 +67,29 @@ public interface FHIRTermServiceProvider {
      */
     Concept getConcept(CodeSystem codeSystem, Code code);
 
+    /**
+     * Get a map containing the concepts in the provided code system with the specified codes.
+     * Consumers should not expect the returned Concept instances to contain child concepts, even where
+     * such concepts exist in the underlying CodeSystem.
+     *
+     * @param codeSystem
+     *     the code system
+     * @param codes
+     *     the codes
+     * @return
+     *     a map containing the code system concept for each of the specified codes that has one
+     */
+    default Map<Code, Concept> getConcepts(CodeSystem codeSystem, Set<Code> codes) {
+        Map<Code, Concept> result = new LinkedHashMap<>();
+        for (Code code : codes) {
+            Concept concept = getConcept(codeSystem, code);
+            if (concept != null) {
+                result.put(code, concept);
+            }
+        }
+        return result;
+    }
+
     /**
      * Get a set containing {@link CodeSystem.Concept} instances where all structural
      * hierarchies have been flattened.
@@ -0,0 +1,586 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.store;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.CodeSystem.Concept.Designation;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Integer;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+
+/**
+ * A read-only, memory-mapped store of the concepts of one version of a code system.
+ *
+ * <p>The store is a file written by {@link ConceptStoreWriter}. It holds an index of the concepts sorted by code,
+ * a record for each concept with its display, definition, designations, properties and the index entries of its
+ * children, and a pool of the strings they refer to. A concept is found with a binary search of the index and is
+ * read straight from the mapped file, so the concepts take no heap space and the pages of the file are shared by
+ * all the processes which map it.
+ *
+ * <p>The header records the SHA-256 digest of the concepts the store was written from (see
+ * {@link ConceptStoreWriter#digest(CodeSystem)}), which is how the
+ * {@link ConceptStoreRegistry} detects a store that is stale for its code system. Instances are thread-safe.
+ */
+public final class ConceptStore {
+    static final int MAGIC = 0x46484353;
+    static final int FORMAT_VERSION = 2;
+
+    static final byte TYPE_CODE = 1;
+    static final byte TYPE_CODING = 2;
+    static final byte TYPE_STRING = 3;
+    static final byte TYPE_INTEGER = 4;
+    static final byte TYPE_BOOLEAN = 5;
+    static final byte TYPE_DATE_TIME = 6;
+    static final byte TYPE_DECIMAL = 7;
+
+    // the size of an index entry: the offset of the key in the string pool and the offset of the record
+    static final int INDEX_ENTRY_SIZE = 8;
+
+    static final int NULL = -1;
+
+    private final ByteBuffer buffer;
+    private final String url;
+    private final String version;
+    private final boolean caseSensitive;
+    private final int count;
+    private final int indexOffset;
+    private final int recordsOffset;
+    private final int stringsOffset;
+    private final byte[] digest;
+
+    // the parents of each index entry, built from the child entries the first time the ancestors of a concept are needed
+    private volatile ParentIndex parentIndex;
+
+    private ConceptStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Not a concept store, or a concept store of an unsupported format version");
+        }
+        caseSensitive = buffer.get(8) != 0;
+        count = buffer.getInt(9);
+        indexOffset = buffer.getInt(13);
+        recordsOffset = buffer.getInt(17);
+        stringsOffset = buffer.getInt(21);
+        if (buffer.getInt(33) != buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated concept store: expected " + buffer.getInt(33) + " bytes but found " + buffer.capacity());
+        }
+        url = getString(buffer.getInt(25));
+        version = getString(buffer.getInt(29));
+        digest = new byte[ConceptStoreWriter.DIGEST_SIZE];
+        for (int i = 0; i < digest.length; i++) {
+            digest[i] = buffer.get(ConceptStoreWriter.DIGEST_OFFSET + i);
+        }
+    }
+
+    /**
+     * Map the concept store in the specified file.
+     *
+     * @param path
+     *     the path of the concept store file
+     * @return
+     *     the concept store
+     * @throws IOException
+     *     if the file cannot be mapped
+     */
+    public static ConceptStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping remains valid after the channel is closed
+            return new ConceptStore(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Get the url of the code system from which this store was written.
+     *
+     * @return
+     *     the url of the code system
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Get the version of the code system from which this store was written.
+     *
+     * @return
+     *     the version of the code system, or null if the code system has no version
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the SHA-256 digest of the concepts from which this store was written.
+     *
+     * @return
+     *     a copy of the digest
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * Determine whether this store was written from the concepts of the provided code system.
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     true if the content digest of the code system matches the digest recorded in this store, false otherwise
+     */
+    public boolean matches(CodeSystem codeSystem) {
+        return Arrays.equals(digest, ConceptStoreWriter.digest(codeSystem));
+    }
+
+    /**
+     * Get the number of concepts in this store.
+     *
+     * @return
+     *     the number of concepts
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Determine whether the specified code is in this store.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     true if the code is in this store, false otherwise
+     */
+    public boolean hasConcept(String code) {
+        return find(code) != NULL;
+    }
+
+    /**
+     * Get the concept for the specified code. The concept has no child concepts.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the concept for the code, or null if the code is not in this store
+     */
+    public Concept getConcept(String code) {
+        int entry = find(code);
+        return (entry != NULL) ? readConcept(recordOffset(entry)) : null;
+    }
+
+    /**
+     * Get the concepts in this store, in the order of their code values, mapped by the provided function.
+     * The concepts have no child concepts.
+     *
+     * @param <R>
+     *     the element type of the result set
+     * @param function
+     *     the function to apply to each concept
+     * @return
+     *     the mapped concepts
+     */
+    public <R> Set<R> getConcepts(Function<Concept, ? extends R> function) {
+        Set<R> result = new LinkedHashSet<>(count);
+        for (int entry = 0; entry < count; entry++) {
+            result.add(function.apply(readConcept(recordOffset(entry))));
+        }
+        return result;
+    }
+
+    /**
+     * Perform the provided action on each concept in this store, in the order of their code values, without holding
+     * the concepts in memory. The concepts have no child concepts.
+     *
+     * @param action
+     *     the action to perform on each concept
+     */
+    public void forEachConcept(Consumer<? super Concept> action) {
+        for (int entry = 0; entry < count; entry++) {
+            action.accept(readConcept(recordOffset(entry)));
+        }
+    }
+
+    /**
+     * Get the code values of the specified code and the codes below it in the hierarchy of the code system. The code
+     * values are normalized when the code system is not case sensitive.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the code values of the code and its descendants, or an empty set if the code is not in this store
+     */
+    public Set<String> getDescendantsAndSelf(String code) {
+        int entry = find(code);
+        return (entry != NULL) ? getKeys(descendantsAndSelf(entry, NULL)) : new LinkedHashSet<>();
+    }
+
+    /**
+     * Get the code values of the specified code and the codes above it in the hierarchy of the code system. The code
+     * values are normalized when the code system is not case sensitive.
+     *
+     * <p>The first call builds an index of the parents of the concepts from their children, which takes two integers
+     * for each concept and each parent-child relationship.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the code values of the code and its ancestors, or an empty set if the code is not in this store
+     */
+    public Set<String> getAncestorsAndSelf(String code) {
+        int entry = find(code);
+        return (entry != NULL) ? getKeys(ancestorsAndSelf(entry)) : new LinkedHashSet<>();
+    }
+
+    /**
+     * Get the concept for the specified code and the concepts below it in the hierarchy of the code system.
+     * The concepts have no child concepts.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the concept and its descendants, or an empty set if the code is not in this store
+     */
+    public Set<Concept> getConceptsAndDescendants(String code) {
+        Set<Concept> result = new LinkedHashSet<>();
+        int entry = find(code);
+        if (entry != NULL) {
+            BitSet visited = descendantsAndSelf(entry, NULL);
+            for (int i = visited.nextSetBit(0); i >= 0; i = visited.nextSetBit(i + 1)) {
+                result.add(readConcept(recordOffset(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determine whether the concept for codeA subsumes the concept for codeB, i.e. codeB is codeA or is below
+     * codeA in the hierarchy of the code system.
+     *
+     * @param codeA
+     *     the subsuming code
+     * @param codeB
+     *     the subsumed code
+     * @return
+     *     true if codeA subsumes codeB, false otherwise
+     */
+    public boolean subsumes(String codeA, String codeB) {
+        int entryA = find(codeA);
+        int entryB = find(codeB);
+        if (entryA == NULL || entryB == NULL) {
+            return false;
+        }
+        return descendantsAndSelf(entryA, entryB).get(entryB);
+    }
+
+    /**
+     * Walk the hierarchy below the given index entry, stopping early once the target entry is reached.
+     */
+    private BitSet descendantsAndSelf(int entry, int target) {
+        BitSet visited = new BitSet(count);
+        Deque<java.lang.Integer> queue = new ArrayDeque<>();
+        visited.set(entry);
+        queue.add(entry);
+        while (!queue.isEmpty() && (target == NULL || !visited.get(target))) {
+            int position = childrenPosition(recordOffset(queue.remove()));
+            int children = buffer.getInt(position);
+            for (int i = 0; i < children; i++) {
+                int child = buffer.getInt(position + 4 + i * 4);
+                if (!visited.get(child)) {
+                    visited.set(child);
+                    queue.add(child);
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Walk the hierarchy above the given index entry.
+     */
+    private BitSet ancestorsAndSelf(int entry) {
+        ParentIndex parents = getParentIndex();
+        BitSet visited = new BitSet(count);
+        Deque<java.lang.Integer> queue = new ArrayDeque<>();
+        visited.set(entry);
+        queue.add(entry);
+        while (!queue.isEmpty()) {
+            int child = queue.remove();
+            for (int i = parents.start[child]; i < parents.start[child + 1]; i++) {
+                int parent = parents.entries[i];
+                if (!visited.get(parent)) {
+                    visited.set(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        return visited;
+    }
+
+    private ParentIndex getParentIndex() {
+        ParentIndex result = parentIndex;
+        if (result == null) {
+            // count the parents of each entry, then fill in each entry's slice of the parent entries
+            int[] start = new int[count + 1];
+            for (int entry = 0; entry < count; entry++) {
+                int position = childrenPosition(recordOffset(entry));
+                int children = buffer.getInt(position);
+                for (int i = 0; i < children; i++) {
+                    start[buffer.getInt(position + 4 + i * 4) + 1]++;
+                }
+            }
+            for (int entry = 0; entry < count; entry++) {
+                start[entry + 1] += start[entry];
+            }
+            int[] entries = new int[start[count]];
+            int[] next = Arrays.copyOf(start, count);
+            for (int entry = 0; entry < count; entry++) {
+                int position = childrenPosition(recordOffset(entry));
+                int children = buffer.getInt(position);
+                for (int i = 0; i < children; i++) {
+                    entries[next[buffer.getInt(position + 4 + i * 4)]++] = entry;
+                }
+            }
+            result = new ParentIndex(start, entries);
+            // concurrent callers may each build the index, but they build the same one
+            parentIndex = result;
+        }
+        return result;
+    }
+
+    private Set<String> getKeys(BitSet entries) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = entries.nextSetBit(0); i >= 0; i = entries.nextSetBit(i + 1)) {
+            result.add(getString(buffer.getInt(indexOffset + i * INDEX_ENTRY_SIZE)));
+        }
+        return result;
+    }
+
+    private int recordOffset(int entry) {
+        return buffer.getInt(indexOffset + entry * INDEX_ENTRY_SIZE + 4);
+    }
+
+    /**
+     * Skip over the fields of a record to the count of its children.
+     */
+    private int childrenPosition(int recordOffset) {
+        int position = recordsOffset + recordOffset + 12;
+        int designations = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < designations; i++) {
+            position += 4;
+            position += (buffer.get(position++) != 0) ? 16 : 0;
+            position += 4;
+        }
+        int properties = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < properties; i++) {
+            byte type = buffer.get(position + 4);
+            position += 5;
+            switch (type) {
+            case TYPE_CODING:
+                position += 16;
+                break;
+            case TYPE_BOOLEAN:
+                position += 1;
+                break;
+            default:
+                position += 4;
+                break;
+            }
+        }
+        return position;
+    }
+
+    private int find(String code) {
+        if (code == null) {
+            return NULL;
+        }
+        byte[] key = (caseSensitive ? code : CodeSystemSupport.normalize(code)).getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(buffer.getInt(indexOffset + mid * INDEX_ENTRY_SIZE), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NULL;
+    }
+
+    /**
+     * Compare the UTF-8 bytes of a pooled string with the given key, as unsigned bytes.
+     */
+    private int compare(int stringOffset, byte[] key) {
+        int position = stringsOffset + stringOffset;
+        int length = buffer.getInt(position);
+        position += 4;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(position + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private Concept readConcept(int recordOffset) {
+        int position = recordsOffset + recordOffset;
+        Concept.Builder builder = Concept.builder()
+                .code(Code.of(getString(buffer.getInt(position))));
+        String display = getString(buffer.getInt(position + 4));
+        if (display != null) {
+            builder.display(string(display));
+        }
+        String definition = getString(buffer.getInt(position + 8));
+        if (definition != null) {
+            builder.definition(string(definition));
+        }
+        position += 12;
+
+        int designations = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < designations; i++) {
+            Designation.Builder designation = Designation.builder();
+            String language = getString(buffer.getInt(position));
+            if (language != null) {
+                designation.language(Code.of(language));
+            }
+            position += 4;
+            if (buffer.get(position++) != 0) {
+                designation.use(readCoding(position));
+                position += 16;
+            }
+            designation.value(string(getString(buffer.getInt(position))));
+            position += 4;
+            builder.designation(designation.build());
+        }
+
+        int properties = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < properties; i++) {
+            Code code = Code.of(getString(buffer.getInt(position)));
+            byte type = buffer.get(position + 4);
+            position += 5;
+            Element value;
+            switch (type) {
+            case TYPE_CODING:
+                value = readCoding(position);
+                position += 16;
+                break;
+            case TYPE_INTEGER:
+                value = Integer.of(buffer.getInt(position));
+                position += 4;
+                break;
+            case TYPE_BOOLEAN:
+                value = Boolean.of(buffer.get(position) != 0);
+                position += 1;
+                break;
+            default:
+                value = readString(type, getString(buffer.getInt(position)));
+                position += 4;
+                break;
+            }
+            builder.property(Concept.Property.builder()
+                .code(code)
+                .value(value)
+                .build());
+        }
+
+        return builder.build();
+    }
+
+    private Coding readCoding(int position) {
+        Coding.Builder builder = Coding.builder();
+        String system = getString(buffer.getInt(position));
+        if (system != null) {
+            builder.system(Uri.of(system));
+        }
+        String version = getString(buffer.getInt(position + 4));
+        if (version != null) {
+            builder.version(string(version));
+        }
+        String code = getString(buffer.getInt(position + 8));
+        if (code != null) {
+            builder.code(Code.of(code));
+        }
+        String display = getString(buffer.getInt(position + 12));
+        if (display != null) {
+            builder.display(string(display));
+        }
+        return builder.build();
+    }
+
+    private Element readString(byte type, String value) {
+        switch (type) {
+        case TYPE_CODE:
+            return Code.of(value);
+        case TYPE_DATE_TIME:
+            return DateTime.of(value);
+        case TYPE_DECIMAL:
+            return Decimal.of(value);
+        case TYPE_STRING:
+            return string(value);
+        default:
+            throw new IllegalStateException("Unknown property type: " + type);
+        }
+    }
+
+    private String getString(int stringOffset) {
+        if (stringOffset == NULL) {
+            return null;
+        }
+        int position = stringsOffset + stringOffset;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        position += 4;
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The parents of each index entry: the parents of entry i are entries[start[i]] to entries[start[i + 1] - 1]
+     */
+    private static final class ParentIndex {
+        private final int[] start;
+        private final int[] entries;
+
+        private ParentIndex(int[] start, int[] entries) {
+            this.start = start;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.store;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+
+/**
+ * The concept stores available to the {@link com.ibm.fhir.term.service.provider.RegistryTermServiceProvider},
+ * keyed by the url and version of their code system.
+ *
+ * <p>When a store is looked up for a code system which has concepts, the content digest recorded in the store is
+ * compared with the digest of those concepts, once for each instance of the code system, and a store which does not
+ * match is removed. A code system without concepts (e.g. content=not-present) cannot be checked, so its store is
+ * trusted by url and version.
+ */
+public final class ConceptStoreRegistry {
+    private static final Logger log = Logger.getLogger(ConceptStoreRegistry.class.getName());
+
+    private static final ConceptStoreRegistry INSTANCE = new ConceptStoreRegistry();
+
+    /**
+     * The file extension of concept store files
+     */
+    public static final String FILE_EXTENSION = ".store";
+
+    private final Map<String, ConceptStore> conceptStores = new ConcurrentHashMap<>();
+
+    // the code system instance each store has been checked against
+    private final Map<String, CodeSystem> verified = new ConcurrentHashMap<>();
+
+    private ConceptStoreRegistry() { }
+
+    /**
+     * Get the singleton instance of this class.
+     *
+     * @return
+     *     the singleton instance
+     */
+    public static ConceptStoreRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Add the given concept store, replacing any concept store for the same code system version.
+     *
+     * @param conceptStore
+     *     the concept store
+     */
+    public void addConceptStore(ConceptStore conceptStore) {
+        String key = key(conceptStore.getUrl(), conceptStore.getVersion());
+        conceptStores.put(key, conceptStore);
+        verified.remove(key);
+    }
+
+    /**
+     * Add the concept stores in the files with the {@value #FILE_EXTENSION} extension in the given directory.
+     * A file which is not a concept store is logged and skipped.
+     *
+     * @param directory
+     *     the directory
+     * @throws IOException
+     *     if the directory cannot be read
+     */
+    public void addConceptStores(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+            for (Path path : stream) {
+                try {
+                    ConceptStore conceptStore = ConceptStore.open(path);
+                    addConceptStore(conceptStore);
+                    log.info("Added concept store for code system '" + key(conceptStore.getUrl(), conceptStore.getVersion()) +
+                        "' with " + conceptStore.size() + " concepts from: " + path);
+                } catch (IOException | RuntimeException e) {
+                    log.log(Level.WARNING, "Unable to add concept store: " + path, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the concept store for the provided code system.
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     the concept store for the url and version of the code system, or null if there is none or the store
+     *     was not written from the concepts of the code system
+     */
+    public ConceptStore getConceptStore(CodeSystem codeSystem) {
+        if (conceptStores.isEmpty() || codeSystem.getUrl() == null) {
+            return null;
+        }
+        String version = (codeSystem.getVersion() != null) ? codeSystem.getVersion().getValue() : null;
+        String key = key(codeSystem.getUrl().getValue(), version);
+        ConceptStore conceptStore = conceptStores.get(key);
+        if (conceptStore == null || codeSystem.getConcept().isEmpty() || verified.get(key) == codeSystem) {
+            return conceptStore;
+        }
+        if (!conceptStore.matches(codeSystem)) {
+            log.warning("Removed concept store for code system '" + key + "': its content digest does not match the concepts of the code system");
+            conceptStores.remove(key, conceptStore);
+            return null;
+        }
+        verified.put(key, codeSystem);
+        return conceptStore;
+    }
+
+    /**
+     * Remove the concept store for the specified code system version.
+     *
+     * @param url
+     *     the url of the code system
+     * @param version
+     *     the version of the code system, or null
+     */
+    public void removeConceptStore(String url, String version) {
+        String key = key(url, version);
+        conceptStores.remove(key);
+        verified.remove(key);
+    }
+
+    private String key(String url, String version) {
+        return (version != null) ? url + "|" + version : url;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.store;
+
+import static com.ibm.fhir.term.store.ConceptStore.FORMAT_VERSION;
+import static com.ibm.fhir.term.store.ConceptStore.MAGIC;
+import static com.ibm.fhir.term.store.ConceptStore.NULL;
+import static com.ibm.fhir.term.store.ConceptStore.TYPE_BOOLEAN;
+import static com.ibm.fhir.term.store.ConceptStore.TYPE_CODE;
+import static com.ibm.fhir.term.store.ConceptStore.TYPE_CODING;
+import static com.ibm.fhir.term.store.ConceptStore.TYPE_DATE_TIME;
+import static com.ibm.fhir.term.store.ConceptStore.TYPE_DECIMAL;
+import static com.ibm.fhir.term.store.ConceptStore.TYPE_INTEGER;
+import static com.ibm.fhir.term.store.ConceptStore.TYPE_STRING;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.CodeSystem.Concept.Designation;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Integer;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+
+/**
+ * Writes the concepts of a code system to a {@link ConceptStore} file.
+ *
+ * <p>Stores are meant to be written offline, e.g. with:
+ * <pre>
+ * java com.ibm.fhir.term.store.ConceptStoreWriter CodeSystem-loinc.json loinc.store
+ * </pre>
+ * Only the code, display, definition, designations, properties and child concepts of each concept are written;
+ * extensions are not.
+ */
+public final class ConceptStoreWriter {
+    static final int HEADER_SIZE = 69;
+    static final int DIGEST_OFFSET = 37;
+    static final int DIGEST_SIZE = 32;
+
+    private final CodeSystem codeSystem;
+    private final boolean caseSensitive;
+
+    // the string pool
+    private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    private final DataOutputStream stringsOut = new DataOutputStream(strings);
+    private final Map<String, java.lang.Integer> stringOffsets = new HashMap<>();
+
+    // the index, records and string pool written by build()
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+    private ConceptStoreWriter(CodeSystem codeSystem) {
+        this.codeSystem = codeSystem;
+        caseSensitive = CodeSystemSupport.isCaseSensitive(codeSystem);
+    }
+
+    /**
+     * Write the concepts of the provided code system to a concept store file.
+     *
+     * @param codeSystem
+     *     the code system, which must have a url
+     * @param path
+     *     the path of the concept store file
+     * @throws IOException
+     *     if the file cannot be written
+     */
+    public static void write(CodeSystem codeSystem, Path path) throws IOException {
+        if (codeSystem.getUrl() == null) {
+            throw new IllegalArgumentException("A concept store can only be written for a code system with a url");
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            new ConceptStoreWriter(codeSystem).write(out);
+        }
+    }
+
+    /**
+     * Compute the content digest of the concepts of the provided code system. This is the digest recorded in the
+     * header of a concept store written from the code system, so it identifies the concepts the store was written from.
+     *
+     * @param codeSystem
+     *     the code system, which must have a url
+     * @return
+     *     the SHA-256 digest of the concepts of the code system
+     */
+    public static byte[] digest(CodeSystem codeSystem) {
+        try {
+            ConceptStoreWriter writer = new ConceptStoreWriter(codeSystem);
+            writer.build();
+            return writer.digest();
+        } catch (IOException e) {
+            // not thrown by the in-memory streams
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void write(OutputStream out) throws IOException {
+        int[] offsets = build();
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT_VERSION);
+        dataOut.writeBoolean(caseSensitive);
+        dataOut.writeInt(index.size() / ConceptStore.INDEX_ENTRY_SIZE);
+        dataOut.writeInt(HEADER_SIZE);
+        dataOut.writeInt(HEADER_SIZE + index.size());
+        dataOut.writeInt(HEADER_SIZE + index.size() + records.size());
+        dataOut.writeInt(offsets[0]);
+        dataOut.writeInt(offsets[1]);
+        dataOut.writeInt(HEADER_SIZE + index.size() + records.size() + strings.size());
+        dataOut.write(digest());
+        index.writeTo(dataOut);
+        records.writeTo(dataOut);
+        strings.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Build the index, records and string pool of the store.
+     *
+     * @return
+     *     the offsets of the url and the version in the string pool
+     */
+    private int[] build() throws IOException {
+        // sort the concepts by the UTF-8 bytes of their code values, which is the order searched by the store
+        List<Entry> entries = new ArrayList<>();
+        for (Concept concept : CodeSystemSupport.getConcepts(codeSystem)) {
+            entries.add(new Entry(key(concept.getCode().getValue()), concept));
+        }
+        entries.sort((a, b) -> compare(a.key, b.key));
+
+        // the first of the concepts with the same code value wins, as in CodeSystemSupport.findConcept
+        List<Entry> unique = new ArrayList<>(entries.size());
+        Map<String, java.lang.Integer> positions = new HashMap<>();
+        for (Entry entry : entries) {
+            if (unique.isEmpty() || compare(unique.get(unique.size() - 1).key, entry.key) != 0) {
+                positions.put(new String(entry.key, StandardCharsets.UTF_8), unique.size());
+                unique.add(entry);
+            }
+        }
+
+        DataOutputStream indexOut = new DataOutputStream(index);
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        for (Entry entry : unique) {
+            indexOut.writeInt(addString(new String(entry.key, StandardCharsets.UTF_8)));
+            indexOut.writeInt(records.size());
+            writeConcept(recordsOut, entry.concept, positions);
+        }
+
+        int urlOffset = addString(codeSystem.getUrl().getValue());
+        int versionOffset = (codeSystem.getVersion() != null) ? addString(codeSystem.getVersion().getValue()) : NULL;
+        return new int[] { urlOffset, versionOffset };
+    }
+
+    private byte[] digest() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(index.toByteArray());
+            digest.update(records.toByteArray());
+            digest.update(strings.toByteArray());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] key(String code) {
+        return (caseSensitive ? code : CodeSystemSupport.normalize(code)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeConcept(DataOutputStream out, Concept concept, Map<String, java.lang.Integer> positions) throws IOException {
+        out.writeInt(addString(concept.getCode().getValue()));
+        out.writeInt(addString(concept.getDisplay()));
+        out.writeInt(addString(concept.getDefinition()));
+
+        out.writeInt(concept.getDesignation().size());
+        for (Designation designation : concept.getDesignation()) {
+            out.writeInt(addString(designation.getLanguage()));
+            out.writeBoolean(designation.getUse() != null);
+            if (designation.getUse() != null) {
+                writeCoding(out, designation.getUse());
+            }
+            out.writeInt(addString(designation.getValue()));
+        }
+
+        out.writeInt(concept.getProperty().size());
+        for (Concept.Property property : concept.getProperty()) {
+            out.writeInt(addString(property.getCode()));
+            Element value = property.getValue();
+            if (value.is(Code.class)) {
+                out.writeByte(TYPE_CODE);
+                out.writeInt(addString(value.as(Code.class).getValue()));
+            } else if (value.is(Coding.class)) {
+                out.writeByte(TYPE_CODING);
+                writeCoding(out, value.as(Coding.class));
+            } else if (value.is(com.ibm.fhir.model.type.String.class)) {
+                out.writeByte(TYPE_STRING);
+                out.writeInt(addString(value.as(com.ibm.fhir.model.type.String.class)));
+            } else if (value.is(Integer.class)) {
+                out.writeByte(TYPE_INTEGER);
+                out.writeInt(value.as(Integer.class).getValue());
+            } else if (value.is(Boolean.class)) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean(value.as(Boolean.class).getValue());
+            } else if (value.is(DateTime.class)) {
+                out.writeByte(TYPE_DATE_TIME);
+                out.writeInt(addString(DateTime.PARSER_FORMATTER.format(value.as(DateTime.class).getValue())));
+            } else if (value.is(Decimal.class)) {
+                out.writeByte(TYPE_DECIMAL);
+                out.writeInt(addString(value.as(Decimal.class).getValue().toString()));
+            } else {
+                throw new IllegalArgumentException("Unsupported property value type: " + value.getClass().getSimpleName());
+            }
+        }
+
+        // the children are written as the positions of their index entries
+        out.writeInt(concept.getConcept().size());
+        for (Concept child : concept.getConcept()) {
+            out.writeInt(positions.get(new String(key(child.getCode().getValue()), StandardCharsets.UTF_8)));
+        }
+    }
+
+    private void writeCoding(DataOutputStream out, Coding coding) throws IOException {
+        out.writeInt((coding.getSystem() != null) ? addString(coding.getSystem().getValue()) : NULL);
+        out.writeInt(addString(coding.getVersion()));
+        out.writeInt((coding.getCode() != null) ? addString(coding.getCode().getValue()) : NULL);
+        out.writeInt(addString(coding.getDisplay()));
+    }
+
+    private int addString(com.ibm.fhir.model.type.String value) throws IOException {
+        return (value != null) ? addString(value.getValue()) : NULL;
+    }
+
+    private int addString(String value) throws IOException {
+        if (value == null) {
+            return NULL;
+        }
+        java.lang.Integer offset = stringOffsets.get(value);
+        if (offset == null) {
+            offset = strings.size();
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            stringsOut.writeInt(bytes.length);
+            stringsOut.write(bytes);
+            stringOffsets.put(value, offset);
+        }
+        return offset;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static class Entry {
+        private final byte[] key;
+        private final Concept concept;
+
+        private Entry(byte[] key, Concept concept) {
+            this.key = key;
+            this.concept = concept;
+        }
+    }
+
+    /**
+     * Write the concept store for the code system in a JSON file.
+     *
+     * @param args
+     *     the path of the JSON code system file and the path of the concept store file
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: ConceptStoreWriter <code-system-json-file> <concept-store-file>");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        CodeSystem codeSystem;
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            codeSystem = FHIRParser.parser(Format.JSON).parse(reader);
+        }
+        write(codeSystem, Paths.get(args[1]));
+        System.out.println("Writing time (milliseconds): " + (System.currentTimeMillis() - start));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.store;
+
+import static com.ibm.fhir.core.util.LRUCache.createLRUCache;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.ValueSet.Expansion;
+
+/**
+ * A durable cache of value set expansions, kept as {@link ExpansionStore} files in a directory.
+ *
+ * <p>An expansion is keyed by the canonical url|version of its value set and a digest of what the expansion was
+ * computed from (see {@link com.ibm.fhir.term.util.ValueSetSupport#expand(com.ibm.fhir.model.resource.ValueSet, int, int)}),
+ * qualified by the current tenant, whose expansions are kept in their own subdirectory. Its file is written once,
+ * to a temporary file which is then moved into place, so the processes which share the directory never see a
+ * partial file and an expansion survives restarts. The cache is disabled until a directory is set. Files are not
+ * removed when their key is superseded; the directory of a tenant may be cleared at any time.
+ */
+public final class ExpansionCache {
+    private static final Logger log = Logger.getLogger(ExpansionCache.class.getName());
+
+    private static final ExpansionCache INSTANCE = new ExpansionCache();
+
+    /**
+     * The file extension of expansion store files
+     */
+    public static final String FILE_EXTENSION = ".expansion";
+
+    /**
+     * The subdirectory of the expansions when no tenant supplier is set, or it supplies no tenant
+     */
+    public static final String DEFAULT_TENANT = "default";
+
+    private final Map<String, ExpansionStore> expansionStores = createLRUCache(1024);
+    private volatile Path directory;
+    private volatile Supplier<String> tenantIdSupplier;
+
+    private ExpansionCache() { }
+
+    /**
+     * Get the singleton instance of this class.
+     *
+     * @return
+     *     the singleton instance
+     */
+    public static ExpansionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the directory of the expansion store files.
+     *
+     * @param directory
+     *     the directory, or null to disable the cache
+     * @throws IOException
+     *     if the directory cannot be created
+     */
+    public void setDirectory(Path directory) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        expansionStores.clear();
+        this.directory = directory;
+    }
+
+    /**
+     * Set the supplier of the id of the tenant of the current request, which qualifies the keys of the expansions.
+     *
+     * @param tenantIdSupplier
+     *     the tenant id supplier, or null for a single tenant
+     */
+    public void setTenantIdSupplier(Supplier<String> tenantIdSupplier) {
+        this.tenantIdSupplier = tenantIdSupplier;
+    }
+
+    /**
+     * Indicates whether the cache is enabled.
+     *
+     * @return
+     *     true if a directory has been set, false otherwise
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Get the expansion store for the specified key.
+     *
+     * @param key
+     *     the key of the expansion
+     * @return
+     *     the expansion store, or null if the cache is disabled or the expansion is not in the cache
+     */
+    public ExpansionStore getExpansionStore(String key) {
+        Path directory = this.directory;
+        if (directory == null) {
+            return null;
+        }
+        String tenantId = getTenantId();
+        String tenantKey = tenantId + "/" + key;
+        ExpansionStore expansionStore = expansionStores.get(tenantKey);
+        if (expansionStore == null) {
+            Path path = directory.resolve(tenantDirectory(tenantId)).resolve(fileName(tenantKey));
+            if (Files.exists(path)) {
+                try {
+                    expansionStore = ExpansionStore.open(path);
+                    if (!tenantKey.equals(expansionStore.getKey())) {
+                        return null;
+                    }
+                    expansionStores.put(tenantKey, expansionStore);
+                } catch (IOException | RuntimeException e) {
+                    log.log(Level.WARNING, "Unable to open expansion store: " + path, e);
+                    return null;
+                }
+            }
+        }
+        return expansionStore;
+    }
+
+    /**
+     * Add an expansion to the cache.
+     *
+     * @param key
+     *     the key of the expansion
+     * @param timestamp
+     *     the time of the expansion
+     * @param contains
+     *     the flattened contains of the expansion, in expansion order
+     * @return
+     *     the expansion store, or null if the cache is disabled
+     * @throws IOException
+     *     if the expansion store cannot be written
+     */
+    public ExpansionStore putExpansionStore(String key, Instant timestamp, List<Expansion.Contains> contains) throws IOException {
+        Path directory = this.directory;
+        if (directory == null) {
+            return null;
+        }
+        String tenantId = getTenantId();
+        String tenantKey = tenantId + "/" + key;
+        Path tenantDirectory = Files.createDirectories(directory.resolve(tenantDirectory(tenantId)));
+        Path path = tenantDirectory.resolve(fileName(tenantKey));
+        Path temp = Files.createTempFile(tenantDirectory, "expansion", ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                ExpansionStore.write(out, tenantKey, timestamp, contains);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        ExpansionStore expansionStore = ExpansionStore.open(path);
+        expansionStores.put(tenantKey, expansionStore);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Cached expansion of '" + tenantKey + "' with " + contains.size() + " contains in: " + path);
+        }
+        return expansionStore;
+    }
+
+    private String getTenantId() {
+        Supplier<String> tenantIdSupplier = this.tenantIdSupplier;
+        String tenantId = (tenantIdSupplier != null) ? tenantIdSupplier.get() : null;
+        return (tenantId != null) ? tenantId : DEFAULT_TENANT;
+    }
+
+    /**
+     * The tenant id is used as the name of its subdirectory when it is a safe file name, otherwise its digest is.
+     */
+    private String tenantDirectory(String tenantId) {
+        return tenantId.matches("[A-Za-z0-9_\\-]+") ? tenantId : hex(tenantId);
+    }
+
+    private String fileName(String key) {
+        return hex(key) + FILE_EXTENSION;
+    }
+
+    private String hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
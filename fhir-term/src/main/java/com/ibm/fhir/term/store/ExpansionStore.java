@@ -0,0 +1,218 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.store;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.fhir.model.resource.ValueSet.Expansion;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Uri;
+
+/**
+ * A read-only, memory-mapped value set expansion.
+ *
+ * <p>The store is a file holding the flattened contains of an expansion, in expansion order, with an index of
+ * the position of each contains in the file. A page of the expansion is read straight from the mapped file
+ * without reading the rest of it. Instances are thread-safe.
+ *
+ * @see ExpansionCache
+ */
+public final class ExpansionStore {
+    private static final int MAGIC = 0x46485653;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int NULL = -1;
+
+    private final ByteBuffer buffer;
+    private final String key;
+    private final Instant timestamp;
+    private final int count;
+    private final int indexOffset;
+    private final int dataOffset;
+
+    private ExpansionStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Not an expansion store, or an expansion store of an unsupported format version");
+        }
+        timestamp = Instant.ofEpochMilli(buffer.getLong(8));
+        count = buffer.getInt(16);
+        indexOffset = buffer.getInt(20);
+        dataOffset = buffer.getInt(24);
+        key = getString(dataOffset + buffer.getInt(28));
+    }
+
+    /**
+     * Map the expansion store in the specified file.
+     *
+     * @param path
+     *     the path of the expansion store file
+     * @return
+     *     the expansion store
+     * @throws IOException
+     *     if the file cannot be mapped
+     */
+    public static ExpansionStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ExpansionStore(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write an expansion store.
+     *
+     * @param out
+     *     the output stream to write to
+     * @param key
+     *     the key of the expansion
+     * @param timestamp
+     *     the time of the expansion
+     * @param contains
+     *     the flattened contains of the expansion, in expansion order
+     * @throws IOException
+     *     if the output stream cannot be written
+     */
+    public static void write(OutputStream out, String key, Instant timestamp, List<Expansion.Contains> contains) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(data);
+        writeString(dataOut, key);
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        for (Expansion.Contains c : contains) {
+            indexOut.writeInt(data.size());
+            writeString(dataOut, (c.getSystem() != null) ? c.getSystem().getValue() : null);
+            writeString(dataOut, (c.getVersion() != null) ? c.getVersion().getValue() : null);
+            writeString(dataOut, (c.getCode() != null) ? c.getCode().getValue() : null);
+            writeString(dataOut, (c.getDisplay() != null) ? c.getDisplay().getValue() : null);
+        }
+
+        DataOutputStream headerOut = new DataOutputStream(out);
+        headerOut.writeInt(MAGIC);
+        headerOut.writeInt(FORMAT_VERSION);
+        headerOut.writeLong(timestamp.toEpochMilli());
+        headerOut.writeInt(contains.size());
+        headerOut.writeInt(HEADER_SIZE);
+        headerOut.writeInt(HEADER_SIZE + index.size());
+        headerOut.writeInt(0);
+        index.writeTo(headerOut);
+        data.writeTo(headerOut);
+        headerOut.flush();
+    }
+
+    /**
+     * Get the key of the expansion in this store.
+     *
+     * @return
+     *     the key of the expansion
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the time of the expansion in this store.
+     *
+     * @return
+     *     the time of the expansion
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the number of contains in the expansion.
+     *
+     * @return
+     *     the number of contains
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get a page of the contains of the expansion.
+     *
+     * @param offset
+     *     the position of the first contains of the page
+     * @param count
+     *     the maximum number of contains in the page
+     * @return
+     *     the contains of the page, in expansion order
+     */
+    public List<Expansion.Contains> getContains(int offset, int count) {
+        int from = Math.max(0, Math.min(offset, this.count));
+        int to = (int) Math.min(this.count, (long) from + Math.max(0, count));
+        List<Expansion.Contains> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int position = dataOffset + buffer.getInt(indexOffset + i * 4);
+            Expansion.Contains.Builder builder = Expansion.Contains.builder();
+            String system = getString(position);
+            position += length(position);
+            if (system != null) {
+                builder.system(Uri.of(system));
+            }
+            String version = getString(position);
+            position += length(position);
+            if (version != null) {
+                builder.version(string(version));
+            }
+            String code = getString(position);
+            position += length(position);
+            if (code != null) {
+                builder.code(Code.of(code));
+            }
+            String display = getString(position);
+            if (display != null) {
+                builder.display(string(display));
+            }
+            result.add(builder.build());
+        }
+        return result;
+    }
+
+    private int length(int position) {
+        int length = buffer.getInt(position);
+        return 4 + ((length != NULL) ? length : 0);
+    }
+
+    private String getString(int position) {
+        int length = buffer.getInt(position);
+        if (length == NULL) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -44,6 +44,7 @@ import com.ibm.fhir.model.type.Decimal;
 import com.ibm.fhir.model.type.Element;
 import com.ibm.fhir.model.type.Integer;
 import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
 import com.ibm.fhir.model.type.code.CodeSystemHierarchyMeaning;
 import com.ibm.fhir.model.type.code.FilterOperator;
 import com.ibm.fhir.model.type.code.IssueSeverity;
@@ -52,6 +53,7 @@ import com.ibm.fhir.model.type.code.PropertyType;
 import com.ibm.fhir.registry.FHIRRegistry;
 import com.ibm.fhir.term.exception.FHIRTermException;
 import com.ibm.fhir.term.service.FHIRTermService;
+import com.ibm.fhir.term.store.ConceptStore;
 
 /**
  * A utility class for working with FHIR code systems
@@ -126,6 +128,7 @@ public final class CodeSystemSupport {
     private static final Pattern IN_COMBINING_DIACRITICAL_MARKS_PATTERN = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
     private static final Map<java.lang.String, Set<java.lang.String>> ANCESTORS_AND_SELF_CACHE = createLRUCache(128);
     private static final Map<java.lang.String, Set<java.lang.String>> DESCENDANTS_AND_SELF_CACHE = createLRUCache(128);
+    private static final Map<java.lang.String, SubsumptionIndex> SUBSUMPTION_INDEX_CACHE = createLRUCache(128);
 
     private CodeSystemSupport() { }
 
@@ -188,8 +191,27 @@ public final class CodeSystemSupport {
         return result;
     }
 
+    /**
+     * Get the code values of the specified code and the codes above it in the hierarchy of the provided code system.
+     *
+     * <p>The subsumption index of the code system is used when the code system is complete; otherwise the
+     * term service is asked for the concepts which generalize the code.
+     *
+     * @param codeSystem
+     *     the code system
+     * @param code
+     *     the code
+     * @return
+     *     the code values of the code and its ancestors
+     */
     public static Set<java.lang.String> getAncestorsAndSelf(CodeSystem codeSystem, Code code) {
-        return ANCESTORS_AND_SELF_CACHE.computeIfAbsent(code.getValue(), k -> computeAncestorsAndSelf(codeSystem, code));
+        if (isIndexable(codeSystem)) {
+            SubsumptionIndex index = getSubsumptionIndex(codeSystem);
+            if (index.contains(code.getValue())) {
+                return index.getAncestorsAndSelf(code.getValue());
+            }
+        }
+        return ANCESTORS_AND_SELF_CACHE.computeIfAbsent(cacheKey(codeSystem, code), k -> computeAncestorsAndSelf(codeSystem, code));
     }
 
     /**
@@ -374,7 +396,7 @@ public final class CodeSystemSupport {
      */
     public static <R> Set<R> getConcepts(CodeSystem codeSystem, List<Include.Filter> filters, Function<Concept, ? extends R> function) {
         Set<R> result = new LinkedHashSet<>();
-        List<ConceptFilter> conceptFilters = buildConceptFilters(codeSystem, filters);
+        List<ConceptFilter> conceptFilters = buildConceptFilters(codeSystem, null, filters);
         for (Concept concept : getConcepts(codeSystem)) {
             if (accept(conceptFilters, concept)) {
                 result.add(function.apply(concept));
@@ -383,6 +405,54 @@ public final class CodeSystemSupport {
         return result;
     }
 
+    /**
+     * Get a set containing {@link R} instances mapped from the concepts in the concept store of a code system which
+     * are accepted by the given set of value set include filters.
+     *
+     * <p>This is used when the code system resource has no concepts. Filters on the hierarchy of the code system are
+     * evaluated against the child entries of the store, and when one of them selects the concepts at or below, or at
+     * or above, a concept, only those concepts are read from the store.
+     *
+     * @param <R>
+     *     the element type of the result set
+     * @param codeSystem
+     *     the code system which defines the properties and filters of the concepts
+     * @param conceptStore
+     *     the concept store of the code system
+     * @param filters
+     *     the value set include filters
+     * @param function
+     *     the function to apply to each element of the result set
+     * @return
+     *     filtered set of {@link R} instances mapped from the concepts in the concept store
+     */
+    public static <R> Set<R> getConcepts(CodeSystem codeSystem, ConceptStore conceptStore, List<Include.Filter> filters, Function<Concept, ? extends R> function) {
+        Set<R> result = new LinkedHashSet<>();
+        List<ConceptFilter> conceptFilters = buildConceptFilters(codeSystem, conceptStore, filters);
+        Set<java.lang.String> candidates = null;
+        for (ConceptFilter conceptFilter : conceptFilters) {
+            if (conceptFilter instanceof HierarchyFilter && !(conceptFilter instanceof IsNotAFilter)) {
+                candidates = ((HierarchyFilter) conceptFilter).codes;
+                break;
+            }
+        }
+        if (candidates != null) {
+            for (java.lang.String code : candidates) {
+                Concept concept = conceptStore.getConcept(code);
+                if (concept != null && accept(conceptFilters, concept)) {
+                    result.add(function.apply(concept));
+                }
+            }
+        } else {
+            conceptStore.forEachConcept(concept -> {
+                if (accept(conceptFilters, concept)) {
+                    result.add(function.apply(concept));
+                }
+            });
+        }
+        return result;
+    }
+
     /**
      * Get a set containing {@link CodeSystem.Concept} instances where all structural
      * hierarchies have been flattened.
@@ -421,8 +491,48 @@ public final class CodeSystemSupport {
         return result;
     }
 
+    /**
+     * Get the code values of the specified code and the codes below it in the hierarchy of the provided code system.
+     *
+     * <p>The subsumption index of the code system is used when the code system is complete; otherwise the
+     * term service is asked for the concepts which are a kind of the code.
+     *
+     * @param codeSystem
+     *     the code system
+     * @param code
+     *     the code
+     * @return
+     *     the code values of the code and its descendants
+     */
     public static Set<java.lang.String> getDescendantsAndSelf(CodeSystem codeSystem, Code code) {
-        return DESCENDANTS_AND_SELF_CACHE.computeIfAbsent(code.getValue(), k -> computeDescendantsAndSelf(codeSystem, code));
+        if (isIndexable(codeSystem)) {
+            SubsumptionIndex index = getSubsumptionIndex(codeSystem);
+            if (index.contains(code.getValue())) {
+                return index.getDescendantsAndSelf(code.getValue());
+            }
+        }
+        return DESCENDANTS_AND_SELF_CACHE.computeIfAbsent(cacheKey(codeSystem, code), k -> computeDescendantsAndSelf(codeSystem, code));
+    }
+
+    /**
+     * Get the subsumption index for the concept hierarchy of the provided code system.
+     *
+     * <p>The index is built once for each version and content of a code system and cached, so that another
+     * instance with the same content, e.g. the code system parsed again, reuses it while a changed code system
+     * gets a new index. A code system without a url is indexed on each call.
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     the subsumption index for the code system
+     */
+    public static SubsumptionIndex getSubsumptionIndex(CodeSystem codeSystem) {
+        if (codeSystem.getUrl() == null) {
+            return new SubsumptionIndex(codeSystem);
+        }
+        // the model computes the hash code of the content once per instance
+        java.lang.String key = cacheKey(codeSystem) + "|" + java.lang.Integer.toHexString(codeSystem.hashCode());
+        return SUBSUMPTION_INDEX_CACHE.computeIfAbsent(key, k -> new SubsumptionIndex(codeSystem));
     }
 
     /**
@@ -654,13 +764,17 @@ public final class CodeSystemSupport {
         return true;
     }
 
-    private static List<ConceptFilter> buildConceptFilters(CodeSystem codeSystem, List<Include.Filter> filters) {
+    /**
+     * Build the concept filters; the hierarchy filters are built from the concept store when it is not null, and from
+     * the subsumption index of the code system otherwise.
+     */
+    private static List<ConceptFilter> buildConceptFilters(CodeSystem codeSystem, ConceptStore conceptStore, List<Include.Filter> filters) {
         List<ConceptFilter> conceptFilters = new ArrayList<>(filters.size());
         for (Include.Filter filter : filters) {
             ConceptFilter conceptFilter = null;
             switch (filter.getOp().getValueAsEnumConstant()) {
             case DESCENDENT_OF:
-                conceptFilter = createDescendentOfFilter(codeSystem, filter);
+                conceptFilter = createDescendentOfFilter(codeSystem, conceptStore, filter);
                 break;
             case EQUALS:
                 conceptFilter = createEqualsFilter(codeSystem, filter);
@@ -669,16 +783,16 @@ public final class CodeSystemSupport {
                 conceptFilter = createExistsFilter(codeSystem, filter);
                 break;
             case GENERALIZES:
-                conceptFilter = createGeneralizesFilter(codeSystem, filter);
+                conceptFilter = createGeneralizesFilter(codeSystem, conceptStore, filter);
                 break;
             case IN:
                 conceptFilter = createInFilter(codeSystem, filter);
                 break;
             case IS_A:
-                conceptFilter = createIsAFilter(codeSystem, filter);
+                conceptFilter = createIsAFilter(codeSystem, conceptStore, filter);
                 break;
             case IS_NOT_A:
-                conceptFilter = createIsNotAFilter(codeSystem, filter);
+                conceptFilter = createIsNotAFilter(codeSystem, conceptStore, filter);
                 break;
             case NOT_IN:
                 conceptFilter = createNotInFilter(codeSystem, filter);
@@ -707,6 +821,18 @@ public final class CodeSystemSupport {
             .build()));
     }
 
+    private static java.lang.String cacheKey(CodeSystem codeSystem) {
+        StringBuilder sb = new StringBuilder(codeSystem.getUrl().getValue());
+        if (codeSystem.getVersion() != null) {
+            sb.append("|").append(codeSystem.getVersion().getValue());
+        }
+        return sb.toString();
+    }
+
+    private static java.lang.String cacheKey(CodeSystem codeSystem, Code code) {
+        return (codeSystem.getUrl() != null) ? cacheKey(codeSystem) + "#" + code.getValue() : code.getValue();
+    }
+
     private static Code code(String value) {
         return Code.of(value.getValue());
     }
@@ -727,11 +853,13 @@ public final class CodeSystemSupport {
             .build()), getCodeValueFunction(codeSystem));
     }
 
-    private static ConceptFilter createDescendentOfFilter(CodeSystem codeSystem, Include.Filter filter) {
+    private static ConceptFilter createDescendentOfFilter(CodeSystem codeSystem, ConceptStore conceptStore, Include.Filter filter) {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
-            Concept concept = findConcept(codeSystem, code(filter.getValue()));
-            if (concept != null) {
-                return new DescendentOfFilter(codeSystem, concept);
+            Set<java.lang.String> codes = getDescendantsAndSelf(codeSystem, conceptStore, filter.getValue().getValue());
+            if (!codes.isEmpty()) {
+                // a concept which is also above the filter concept in the hierarchy is not a descendant of it
+                codes.removeAll(getAncestorsAndSelf(codeSystem, conceptStore, filter.getValue().getValue()));
+                return new DescendentOfFilter(codeSystem, codes);
             }
         }
         throw conceptFilterNotCreated(DescendentOfFilter.class, filter);
@@ -739,7 +867,8 @@ public final class CodeSystemSupport {
 
     private static ConceptFilter createEqualsFilter(CodeSystem codeSystem, Include.Filter filter) {
         Code property = filter.getProperty();
-        if ((("parent".equals(property.getValue()) || "child".equals(property.getValue())) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) ||
+        if ((("parent".equals(property.getValue()) || "child".equals(property.getValue())) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning()) &&
+                !codeSystem.getConcept().isEmpty()) ||
                 (hasCodeSystemProperty(codeSystem, property) && !PropertyType.CODING.equals(getCodeSystemPropertyType(codeSystem, property)))) {
             return new EqualsFilter(codeSystem, property, filter.getValue());
         }
@@ -755,13 +884,13 @@ public final class CodeSystemSupport {
         throw conceptFilterNotCreated(ExistsFilter.class, filter);
     }
 
-    private static ConceptFilter createGeneralizesFilter(CodeSystem codeSystem, Include.Filter filter) {
+    private static ConceptFilter createGeneralizesFilter(CodeSystem codeSystem, ConceptStore conceptStore, Include.Filter filter) {
         if ("concept".equals(filter.getProperty().getValue()) &&
                 (CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning()) ||
                         codeSystem.getHierarchyMeaning() == null)) {
-            Concept concept = findConcept(codeSystem, code(filter.getValue()));
-            if (concept != null) {
-                return new GeneralizesFilter(codeSystem, concept);
+            Set<java.lang.String> codes = getAncestorsAndSelf(codeSystem, conceptStore, filter.getValue().getValue());
+            if (!codes.isEmpty()) {
+                return new GeneralizesFilter(codeSystem, codes);
             }
         }
         throw conceptFilterNotCreated(GeneralizesFilter.class, filter);
@@ -788,25 +917,25 @@ public final class CodeSystemSupport {
         throw conceptFilterNotCreated(InFilter.class, filter);
     }
 
-    private static ConceptFilter createIsAFilter(CodeSystem codeSystem, Include.Filter filter) {
+    private static ConceptFilter createIsAFilter(CodeSystem codeSystem, ConceptStore conceptStore, Include.Filter filter) {
         if ("concept".equals(filter.getProperty().getValue()) &&
                 (CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning()) ||
                         codeSystem.getHierarchyMeaning() == null)) {
-            Concept concept = findConcept(codeSystem, code(filter.getValue()));
-            if (concept != null) {
-                return new IsAFilter(codeSystem, concept);
+            Set<java.lang.String> codes = getDescendantsAndSelf(codeSystem, conceptStore, filter.getValue().getValue());
+            if (!codes.isEmpty()) {
+                return new IsAFilter(codeSystem, codes);
             }
         }
         throw conceptFilterNotCreated(IsAFilter.class, filter);
     }
 
-    private static ConceptFilter createIsNotAFilter(CodeSystem codeSystem, Include.Filter filter) {
+    private static ConceptFilter createIsNotAFilter(CodeSystem codeSystem, ConceptStore conceptStore, Include.Filter filter) {
         if ("concept".equals(filter.getProperty().getValue()) &&
                 (CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning()) ||
                         codeSystem.getHierarchyMeaning() == null)) {
-            Concept concept = findConcept(codeSystem, code(filter.getValue()));
-            if (concept != null) {
-                return new IsNotAFilter(codeSystem, concept);
+            Set<java.lang.String> codes = getDescendantsAndSelf(codeSystem, conceptStore, filter.getValue().getValue());
+            if (!codes.isEmpty()) {
+                return new IsNotAFilter(codeSystem, codes);
             }
         }
         throw conceptFilterNotCreated(IsNotAFilter.class, filter);
@@ -842,6 +971,19 @@ public final class CodeSystemSupport {
         throw conceptFilterNotCreated(RegexFilter.class, filter);
     }
 
+    private static Set<java.lang.String> getAncestorsAndSelf(CodeSystem codeSystem, ConceptStore conceptStore, java.lang.String code) {
+        return (conceptStore != null) ? conceptStore.getAncestorsAndSelf(code) : new LinkedHashSet<>(getSubsumptionIndex(codeSystem).getAncestorsAndSelf(code));
+    }
+
+    private static Set<java.lang.String> getDescendantsAndSelf(CodeSystem codeSystem, ConceptStore conceptStore, java.lang.String code) {
+        return (conceptStore != null) ? conceptStore.getDescendantsAndSelf(code) : new LinkedHashSet<>(getSubsumptionIndex(codeSystem).getDescendantsAndSelf(code));
+    }
+
+    private static boolean isIndexable(CodeSystem codeSystem) {
+        return CodeSystemContentMode.COMPLETE.equals(codeSystem.getContent()) &&
+                (CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning()) || codeSystem.getHierarchyMeaning() == null);
+    }
+
     private static java.lang.String toCodeValue(CodeSystem codeSystem, Concept concept) {
         return getCodeValueFunction(codeSystem).apply(concept);
     }
@@ -850,19 +992,27 @@ public final class CodeSystemSupport {
         boolean accept(Concept concept);
     }
 
-    private static class DescendentOfFilter implements ConceptFilter {
-        private final CodeSystem codeSystem;
-        private final Set<java.lang.String> descendants;
+    /**
+     * Accepts the concepts whose code values are in a set computed from the hierarchy of the code system.
+     */
+    private abstract static class HierarchyFilter implements ConceptFilter {
+        private final Function<Concept, java.lang.String> codeValueFunction;
+        private final Set<java.lang.String> codes;
 
-        public DescendentOfFilter(CodeSystem codeSystem, Concept concept) {
-            this.codeSystem = codeSystem;
-            descendants = getConcepts(concept, getCodeValueFunction(codeSystem));
-            descendants.remove(toCodeValue(codeSystem, concept));
+        public HierarchyFilter(CodeSystem codeSystem, Set<java.lang.String> codes) {
+            codeValueFunction = getCodeValueFunction(codeSystem);
+            this.codes = codes;
         }
 
         @Override
         public boolean accept(Concept concept) {
-            return descendants.contains(toCodeValue(codeSystem, concept));
+            return codes.contains(codeValueFunction.apply(concept));
+        }
+    }
+
+    private static class DescendentOfFilter extends HierarchyFilter {
+        public DescendentOfFilter(CodeSystem codeSystem, Set<java.lang.String> descendants) {
+            super(codeSystem, descendants);
         }
     }
 
@@ -942,18 +1092,9 @@ public final class CodeSystemSupport {
         }
     }
 
-    private static class GeneralizesFilter implements ConceptFilter {
-        private final CodeSystem codeSystem;
-        private final java.lang.String concept;
-
-        public GeneralizesFilter(CodeSystem codeSystem, Concept concept) {
-            this.codeSystem = codeSystem;
-            this.concept = toCodeValue(codeSystem, concept);
-        }
-
-        @Override
-        public boolean accept(Concept concept) {
-            return getConcepts(concept, getCodeValueFunction(codeSystem)).contains(this.concept);
+    private static class GeneralizesFilter extends HierarchyFilter {
+        public GeneralizesFilter(CodeSystem codeSystem, Set<java.lang.String> ancestorsAndSelf) {
+            super(codeSystem, ancestorsAndSelf);
         }
     }
 
@@ -985,24 +1126,15 @@ public final class CodeSystemSupport {
         }
     }
 
-    private static class IsAFilter implements ConceptFilter {
-        private final CodeSystem codeSystem;
-        private final Set<java.lang.String> descendantsAndSelf;
-
-        public IsAFilter(CodeSystem codeSystem, Concept concept) {
-            this.codeSystem = codeSystem;
-            descendantsAndSelf = getConcepts(concept, getCodeValueFunction(codeSystem));
-        }
-
-        @Override
-        public boolean accept(Concept concept) {
-            return descendantsAndSelf.contains(toCodeValue(codeSystem, concept));
+    private static class IsAFilter extends HierarchyFilter {
+        public IsAFilter(CodeSystem codeSystem, Set<java.lang.String> descendantsAndSelf) {
+            super(codeSystem, descendantsAndSelf);
         }
     }
 
     private static class IsNotAFilter extends IsAFilter {
-        public IsNotAFilter(CodeSystem codeSystem, Concept concept) {
-            super(codeSystem, concept);
+        public IsNotAFilter(CodeSystem codeSystem, Set<java.lang.String> descendantsAndSelf) {
+            super(codeSystem, descendantsAndSelf);
         }
 
         @Override
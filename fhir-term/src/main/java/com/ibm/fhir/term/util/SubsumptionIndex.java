@@ -0,0 +1,214 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+
+/**
+ * A precomputed index over the concept hierarchy of a code system.
+ *
+ * <p>The concepts are numbered in the order of a depth-first traversal of the hierarchy, so that the concepts
+ * below a concept occupy the contiguous interval of positions which follows it. A subsumption test is then a
+ * comparison of positions and the descendants of a concept are a slice of the traversal. A code which appears more
+ * than once in the hierarchy has one interval for each of its positions.
+ *
+ * <p>Instances are immutable and are obtained through {@link CodeSystemSupport#getSubsumptionIndex(CodeSystem)}.
+ */
+public final class SubsumptionIndex {
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final CodeSystem codeSystem;
+    private final boolean caseSensitive;
+
+    // the concepts and their code values in traversal order
+    private final Concept[] concepts;
+    private final java.lang.String[] codes;
+
+    // the position of the parent of each concept, or -1 for a root concept
+    private final int[] parent;
+
+    // the end (exclusive) of the interval of positions below each concept
+    private final int[] end;
+
+    // the positions of each code value
+    private final Map<java.lang.String, int[]> positions;
+
+    private int size = 0;
+
+    SubsumptionIndex(CodeSystem codeSystem) {
+        this.codeSystem = codeSystem;
+        caseSensitive = CodeSystemSupport.isCaseSensitive(codeSystem);
+        int count = count(codeSystem.getConcept());
+        concepts = new Concept[count];
+        codes = new java.lang.String[count];
+        parent = new int[count];
+        end = new int[count];
+        positions = new HashMap<>(count);
+        for (Concept concept : codeSystem.getConcept()) {
+            index(concept, -1);
+        }
+    }
+
+    /**
+     * Get the code system from which this index was built.
+     *
+     * @return
+     *     the code system
+     */
+    public CodeSystem getCodeSystem() {
+        return codeSystem;
+    }
+
+    /**
+     * Determine whether the specified code is in the code system.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     true if the code is in the code system, false otherwise
+     */
+    public boolean contains(java.lang.String code) {
+        return positions.containsKey(key(code));
+    }
+
+    /**
+     * Determine whether the concept for code "A" subsumes the concept for code "B", i.e. whether code "B" is
+     * code "A" or is below code "A" in the hierarchy.
+     *
+     * @param codeA
+     *     the code "A"
+     * @param codeB
+     *     the code "B"
+     * @return
+     *     true if the concept for code "A" subsumes the concept for code "B", false otherwise
+     */
+    public boolean subsumes(java.lang.String codeA, java.lang.String codeB) {
+        int[] positionsA = positions(codeA);
+        int[] positionsB = positions(codeB);
+        for (int a : positionsA) {
+            for (int b : positionsB) {
+                if (a <= b && b < end[a]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the code values of the specified code and the codes above it in the hierarchy.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the code values of the code and its ancestors, or an empty set if the code is not in the code system
+     */
+    public Set<java.lang.String> getAncestorsAndSelf(java.lang.String code) {
+        int[] positions = positions(code);
+        if (positions.length == 0) {
+            return Collections.emptySet();
+        }
+        Set<java.lang.String> result = new LinkedHashSet<>();
+        for (int position : positions) {
+            for (int p = position; p != -1; p = parent[p]) {
+                result.add(codes[p]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the code values of the specified code and the codes below it in the hierarchy.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the code values of the code and its descendants, or an empty set if the code is not in the code system
+     */
+    public Set<java.lang.String> getDescendantsAndSelf(java.lang.String code) {
+        int[] positions = positions(code);
+        if (positions.length == 0) {
+            return Collections.emptySet();
+        }
+        Set<java.lang.String> result = new LinkedHashSet<>();
+        for (int position : positions) {
+            result.addAll(Arrays.asList(codes).subList(position, end[position]));
+        }
+        return result;
+    }
+
+    /**
+     * Get the concepts for the specified code and the codes below it in the hierarchy.
+     *
+     * @param code
+     *     the code
+     * @return
+     *     the concepts for the code and its descendants, or an empty set if the code is not in the code system
+     */
+    public Set<Concept> getConceptsAndDescendants(java.lang.String code) {
+        int[] positions = positions(code);
+        if (positions.length == 0) {
+            return Collections.emptySet();
+        }
+        Set<Concept> result = new LinkedHashSet<>();
+        for (int position : positions) {
+            result.addAll(Arrays.asList(concepts).subList(position, end[position]));
+        }
+        return result;
+    }
+
+    private int count(List<Concept> concepts) {
+        int count = concepts.size();
+        for (Concept concept : concepts) {
+            count += count(concept.getConcept());
+        }
+        return count;
+    }
+
+    private void index(Concept concept, int parentPosition) {
+        int position = size++;
+        java.lang.String code = key(concept.getCode().getValue());
+        concepts[position] = concept;
+        codes[position] = code;
+        parent[position] = parentPosition;
+
+        int[] existing = positions.get(code);
+        if (existing == null) {
+            positions.put(code, new int[] { position });
+        } else {
+            int[] updated = Arrays.copyOf(existing, existing.length + 1);
+            updated[existing.length] = position;
+            positions.put(code, updated);
+        }
+
+        for (Concept child : concept.getConcept()) {
+            index(child, position);
+        }
+        end[position] = size;
+    }
+
+    private java.lang.String key(java.lang.String code) {
+        return caseSensitive ? code : CodeSystemSupport.normalize(code);
+    }
+
+    private int[] positions(java.lang.String code) {
+        if (code == null) {
+            return NO_POSITIONS;
+        }
+        int[] result = positions.get(key(code));
+        return (result != null) ? result : NO_POSITIONS;
+    }
+}
@@ -12,10 +12,17 @@ import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
 import static com.ibm.fhir.term.util.CodeSystemSupport.isCaseSensitive;
 import static com.ibm.fhir.term.util.CodeSystemSupport.normalize;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -25,6 +32,9 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.CodeSystem;
 import com.ibm.fhir.model.resource.CodeSystem.Concept;
 import com.ibm.fhir.model.resource.Resource;
@@ -42,6 +52,8 @@ import com.ibm.fhir.model.type.Uri;
 import com.ibm.fhir.registry.FHIRRegistry;
 import com.ibm.fhir.registry.resource.FHIRRegistryResource;
 import com.ibm.fhir.term.service.FHIRTermService;
+import com.ibm.fhir.term.store.ExpansionCache;
+import com.ibm.fhir.term.store.ExpansionStore;
 
 /**
  * A utility class for expanding FHIR value sets
@@ -64,18 +76,58 @@ public final class ValueSetSupport {
      */
     public static ValueSet expand(ValueSet valueSet) {
         if (!isExpanded(valueSet) && isExpandable(valueSet)) {
-            Set<Contains> result = expand(valueSet.getCompose());
             return valueSet.toBuilder()
-                .expansion(Expansion.builder()
-                    .total(Integer.of(result.size()))
-                    .timestamp(DateTime.now(ZoneOffset.UTC))
-                    .contains(unwrap(result))
-                    .build())
+                .expansion(buildExpansion(valueSet, 0, java.lang.Integer.MAX_VALUE).build())
                 .build();
         }
         return valueSet;
     }
 
+    /**
+     * Expand the given value set and keep a page of the flattened contains of its expansion.
+     *
+     * <p>When the {@link ExpansionCache} is enabled, the expansion of a value set with a url and version is
+     * computed once and the page is read from the cached expansion. The expansion is keyed by the url|version of
+     * the value set and a digest of its compose and the versions of the code systems and value sets it pulls in.
+     *
+     * @param valueSet
+     *     the value set to be expanded
+     * @param offset
+     *     the position of the first contains of the page
+     * @param count
+     *     the maximum number of contains in the page, or {@link java.lang.Integer#MAX_VALUE} for all of them
+     * @return
+     *     the value set with the page of its expansion, or the original value set if unable to expand
+     */
+    public static ValueSet expand(ValueSet valueSet, int offset, int count) {
+        Expansion.Builder builder;
+        if (isExpanded(valueSet)) {
+            Expansion expansion = valueSet.getExpansion();
+            List<Expansion.Contains> contains = getContains(expansion);
+            builder = expansion.toBuilder()
+                    .total((expansion.getTotal() != null) ? expansion.getTotal() : Integer.of(contains.size()))
+                    .contains(contains.subList(Math.min(offset, contains.size()), (int) Math.min(contains.size(), (long) offset + count)));
+        } else if (isExpandable(valueSet)) {
+            builder = buildExpansion(valueSet, offset, count);
+        } else {
+            return valueSet;
+        }
+        builder.offset(Integer.of(offset))
+            .parameter(Expansion.Parameter.builder()
+                .name(string("offset"))
+                .value(Integer.of(offset))
+                .build());
+        if (count != java.lang.Integer.MAX_VALUE) {
+            builder.parameter(Expansion.Parameter.builder()
+                .name(string("count"))
+                .value(Integer.of(count))
+                .build());
+        }
+        return valueSet.toBuilder()
+            .expansion(builder.build())
+            .build();
+    }
+
     /**
      * Get a list containing {@link ValueSet.Expansion.Contains} instances where all structural
      * hierarchies have been flattened.
@@ -170,6 +222,35 @@ public final class ValueSetSupport {
         return null;
     }
 
+    private static Expansion.Builder buildExpansion(ValueSet valueSet, int offset, int count) {
+        java.lang.String key = getExpansionKey(valueSet);
+        List<Expansion.Contains> contains = null;
+        if (key != null && ExpansionCache.getInstance().isEnabled()) {
+            ExpansionStore expansionStore = ExpansionCache.getInstance().getExpansionStore(key);
+            if (expansionStore == null) {
+                contains = unwrap(expand(valueSet.getCompose()));
+                try {
+                    expansionStore = ExpansionCache.getInstance().putExpansionStore(key, Instant.now(), contains);
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Unable to cache the expansion of value set: " + key, e);
+                }
+            }
+            if (expansionStore != null) {
+                return Expansion.builder()
+                    .total(Integer.of(expansionStore.size()))
+                    .timestamp(DateTime.of(expansionStore.getTimestamp().atZone(ZoneOffset.UTC)))
+                    .contains(expansionStore.getContains(offset, count));
+            }
+        }
+        if (contains == null) {
+            contains = unwrap(expand(valueSet.getCompose()));
+        }
+        return Expansion.builder()
+            .total(Integer.of(contains.size()))
+            .timestamp(DateTime.now(ZoneOffset.UTC))
+            .contains(contains.subList(Math.min(offset, contains.size()), (int) Math.min(contains.size(), (long) offset + count)));
+    }
+
     private static Map<java.lang.String, Set<java.lang.String>> computeCodeSetMap(ValueSet valueSet) {
         try {
             ValueSet expanded = expand(valueSet);
@@ -318,6 +399,60 @@ public final class ValueSetSupport {
         return result;
     }
 
+    /**
+     * Get the key of the cached expansion of the given value set: its url|version and a digest of its compose and
+     * the versions of the code systems and value sets it pulls in, so that a change to any of them leads to a new key.
+     */
+    private static java.lang.String getExpansionKey(ValueSet valueSet) {
+        if (valueSet.getUrl() == null || valueSet.getVersion() == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            updateExpansionDigest(digest, valueSet, new HashSet<>());
+            StringBuilder sb = new StringBuilder(valueSet.getUrl().getValue())
+                    .append("|").append(valueSet.getVersion().getValue())
+                    .append("#");
+            for (byte b : digest.digest()) {
+                sb.append(java.lang.String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | FHIRGeneratorException e) {
+            log.log(Level.WARNING, "Unable to compute the expansion key of value set: " + valueSet.getUrl().getValue(), e);
+            return null;
+        }
+    }
+
+    private static void updateExpansionDigest(MessageDigest digest, ValueSet valueSet, Set<java.lang.String> visited) throws FHIRGeneratorException {
+        Compose compose = valueSet.getCompose();
+        if (compose == null) {
+            return;
+        }
+        StringWriter writer = new StringWriter();
+        FHIRGenerator.generator(Format.JSON).generate(compose, writer);
+        digest.update(writer.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<Include> includesAndExcludes = new ArrayList<>(compose.getInclude());
+        includesAndExcludes.addAll(compose.getExclude());
+        for (Include includeOrExclude : includesAndExcludes) {
+            if (includeOrExclude.getSystem() != null && includeOrExclude.getVersion() == null) {
+                // the expansion depends on the version resolved for the code system
+                String version = getLatestVersion(includeOrExclude.getSystem());
+                java.lang.String resolved = includeOrExclude.getSystem().getValue() + "|" + ((version != null) ? version.getValue() : "");
+                digest.update(resolved.getBytes(StandardCharsets.UTF_8));
+            }
+            for (Canonical canonical : includeOrExclude.getValueSet()) {
+                java.lang.String url = canonical.getValue();
+                if (url != null && visited.add(url) && hasResource(url, ValueSet.class)) {
+                    ValueSet referenced = getValueSet(url);
+                    java.lang.String resolved = url + "|" + ((referenced.getVersion() != null) ? referenced.getVersion().getValue() : "");
+                    digest.update(resolved.getBytes(StandardCharsets.UTF_8));
+                    updateExpansionDigest(digest, referenced, visited);
+                }
+            }
+        }
+    }
+
     private static String getLatestVersion(Uri system) {
         java.lang.String version = FHIRRegistry.getInstance().getLatestVersion(system.getValue(), CodeSystem.class);
         return (version != null && !FHIRRegistryResource.NO_VERSION.toString().equals(version)) ? string(version) : null;
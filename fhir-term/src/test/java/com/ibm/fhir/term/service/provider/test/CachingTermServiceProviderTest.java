@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.service.provider.test;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.term.service.provider.CachingTermServiceProvider;
+import com.ibm.fhir.term.service.provider.RegistryTermServiceProvider;
+import com.ibm.fhir.term.spi.FHIRTermServiceProvider;
+
+public class CachingTermServiceProviderTest extends FHIRTermServiceProviderTest {
+    @Override
+    public FHIRTermServiceProvider createProvider() throws Exception {
+        return new CachingTermServiceProvider(new RegistryTermServiceProvider());
+    }
+
+    @Test
+    public void testCacheHitsAndMisses() {
+        CachingTermServiceProvider cachingProvider = new CachingTermServiceProvider(new RegistryTermServiceProvider());
+
+        Concept concept = cachingProvider.getConcept(codeSystem, Code.of("a"));
+        Assert.assertNotNull(concept);
+        Assert.assertNull(cachingProvider.getConcept(codeSystem, Code.of("zzz")));
+        Assert.assertEquals(cachingProvider.getHitCount(), 0);
+        Assert.assertEquals(cachingProvider.getMissCount(), 2);
+
+        // found and absent concepts are both answered from the cache
+        Assert.assertSame(cachingProvider.getConcept(codeSystem, Code.of("a")), concept);
+        Assert.assertNull(cachingProvider.getConcept(codeSystem, Code.of("zzz")));
+        Assert.assertTrue(cachingProvider.hasConcept(codeSystem, Code.of("a")));
+        Assert.assertFalse(cachingProvider.hasConcept(codeSystem, Code.of("zzz")));
+        Assert.assertEquals(cachingProvider.getHitCount(), 4);
+        Assert.assertEquals(cachingProvider.getMissCount(), 2);
+
+        Set<Concept> closure = cachingProvider.closure(codeSystem, Code.of("d"));
+        Assert.assertSame(cachingProvider.closure(codeSystem, Code.of("d")), closure);
+        Assert.assertTrue(cachingProvider.subsumes(codeSystem, Code.of("d"), Code.of("s")));
+        Assert.assertTrue(cachingProvider.subsumes(codeSystem, Code.of("d"), Code.of("s")));
+        Assert.assertEquals(cachingProvider.getHitCount(), 6);
+        Assert.assertEquals(cachingProvider.getMissCount(), 4);
+
+        cachingProvider.clear();
+        Assert.assertEquals(cachingProvider.getHitCount(), 0);
+        Assert.assertEquals(cachingProvider.getMissCount(), 0);
+
+        Assert.assertEquals(cachingProvider.getConcept(codeSystem, Code.of("a")), concept);
+        Assert.assertEquals(cachingProvider.getMissCount(), 1);
+    }
+
+    @Test
+    public void testCacheIsVersionAware() {
+        CachingTermServiceProvider cachingProvider = new CachingTermServiceProvider(new RegistryTermServiceProvider());
+
+        cachingProvider.getConcept(codeSystem, Code.of("a"));
+        cachingProvider.getConcept(codeSystem.toBuilder().version(string("2.0.0")).build(), Code.of("a"));
+        Assert.assertEquals(cachingProvider.getHitCount(), 0);
+        Assert.assertEquals(cachingProvider.getMissCount(), 2);
+    }
+}
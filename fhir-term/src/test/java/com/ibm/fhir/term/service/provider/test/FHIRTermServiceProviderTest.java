@@ -65,6 +65,22 @@ public abstract class FHIRTermServiceProviderTest {
         Assert.assertNotNull(provider.getConcept(caseInsensitiveCodeSystem, Code.of("A")));
     }
 
+    @Test
+    public void testGetConceptsForCodes() {
+        Set<Code> codes = new LinkedHashSet<>();
+        for (Concept concept : CodeSystemSupport.getConcepts(codeSystem)) {
+            codes.add(concept.getCode());
+        }
+        codes.add(Code.of("zzz"));
+
+        Map<Code, Concept> actual = provider.getConcepts(codeSystem, codes);
+
+        Assert.assertEquals(actual.size(), codes.size() - 1);
+        for (Code code : codes) {
+            Assert.assertEquals(actual.get(code), provider.getConcept(codeSystem, code));
+        }
+    }
+
     @Test
     public void testGetConcepts() {
         Set<Concept> actual = new LinkedHashSet<>();
@@ -21,7 +21,11 @@ import org.testng.annotations.Test;
 import com.ibm.fhir.model.resource.CodeSystem;
 import com.ibm.fhir.model.resource.CodeSystem.Concept;
 import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
+import com.ibm.fhir.model.type.code.CodeSystemHierarchyMeaning;
+import com.ibm.fhir.model.type.code.PublicationStatus;
 import com.ibm.fhir.term.util.CodeSystemSupport;
+import com.ibm.fhir.term.util.SubsumptionIndex;
 
 public class CodeSystemSupportTest {
     @Test
@@ -74,4 +78,86 @@ public class CodeSystemSupportTest {
 
         Assert.assertEquals(actual, expected);
     }
+
+    @Test
+    public void testSubsumptionIndex1() {
+        CodeSystem codeSystem = CodeSystemSupport.getCodeSystem("http://ibm.com/fhir/CodeSystem/cs5|1.0.0");
+        SubsumptionIndex index = CodeSystemSupport.getSubsumptionIndex(codeSystem);
+        Assert.assertSame(CodeSystemSupport.getSubsumptionIndex(codeSystem), index);
+
+        Assert.assertTrue(index.subsumes("m", "m"));
+        Assert.assertTrue(index.subsumes("m", "r"));
+        Assert.assertTrue(index.subsumes("p", "q"));
+        Assert.assertFalse(index.subsumes("r", "m"));
+        Assert.assertFalse(index.subsumes("q", "r"));
+        Assert.assertFalse(index.subsumes("n", "u"));
+        Assert.assertFalse(index.subsumes("m", "x"));
+
+        Assert.assertEquals(index.getDescendantsAndSelf("p"), new HashSet<>(Arrays.asList("p", "q", "r")));
+        Assert.assertEquals(index.getAncestorsAndSelf("u"), new HashSet<>(Arrays.asList("u", "t")));
+        Assert.assertTrue(index.getDescendantsAndSelf("x").isEmpty());
+    }
+
+    @Test
+    public void testSubsumptionIndex2() {
+        // code "c" appears below both "a" and "b"
+        CodeSystem codeSystem = CodeSystem.builder()
+                .status(PublicationStatus.ACTIVE)
+                .content(CodeSystemContentMode.COMPLETE)
+                .hierarchyMeaning(CodeSystemHierarchyMeaning.IS_A)
+                .concept(Concept.builder()
+                    .code(Code.of("a"))
+                    .concept(Concept.builder()
+                        .code(Code.of("c"))
+                        .concept(Concept.builder()
+                            .code(Code.of("d"))
+                            .build())
+                        .build())
+                    .build())
+                .concept(Concept.builder()
+                    .code(Code.of("b"))
+                    .concept(Concept.builder()
+                        .code(Code.of("C"))
+                        .concept(Concept.builder()
+                            .code(Code.of("d"))
+                            .build())
+                        .build())
+                    .build())
+                .build();
+        SubsumptionIndex index = CodeSystemSupport.getSubsumptionIndex(codeSystem);
+
+        // the code system is not case sensitive
+        Assert.assertTrue(index.subsumes("a", "D"));
+        Assert.assertTrue(index.subsumes("b", "d"));
+        Assert.assertFalse(index.subsumes("a", "b"));
+        Assert.assertEquals(index.getAncestorsAndSelf("d"), new HashSet<>(Arrays.asList("d", "c", "a", "b")));
+        Assert.assertEquals(index.getDescendantsAndSelf("c"), new HashSet<>(Arrays.asList("c", "d")));
+        Assert.assertEquals(CodeSystemSupport.getAncestorsAndSelf(codeSystem, Code.of("d")), new HashSet<>(Arrays.asList("d", "c", "a", "b")));
+    }
+
+    @Test
+    public void testSubsumptionIndex3() {
+        CodeSystem codeSystem = CodeSystemSupport.getCodeSystem("http://ibm.com/fhir/CodeSystem/cs5|1.0.0");
+        SubsumptionIndex index = CodeSystemSupport.getSubsumptionIndex(codeSystem);
+
+        // another instance with the same content reuses the index
+        CodeSystem copy = codeSystem.toBuilder().build();
+        Assert.assertNotSame(copy, codeSystem);
+        Assert.assertSame(CodeSystemSupport.getSubsumptionIndex(copy), index);
+
+        // the same url and version with different content gets its own index
+        CodeSystem changed = codeSystem.toBuilder()
+                .concept(Concept.builder()
+                    .code(Code.of("y"))
+                    .concept(Concept.builder()
+                        .code(Code.of("z"))
+                        .build())
+                    .build())
+                .build();
+        SubsumptionIndex changedIndex = CodeSystemSupport.getSubsumptionIndex(changed);
+        Assert.assertNotSame(changedIndex, index);
+        Assert.assertTrue(changedIndex.subsumes("y", "z"));
+        Assert.assertFalse(index.contains("z"));
+        Assert.assertSame(CodeSystemSupport.getSubsumptionIndex(codeSystem), index);
+    }
 }
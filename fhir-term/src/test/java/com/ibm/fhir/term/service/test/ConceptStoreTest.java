@@ -0,0 +1,222 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.service.test;
+
+import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include.Filter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
+import com.ibm.fhir.model.type.code.FilterOperator;
+import com.ibm.fhir.term.service.FHIRTermService;
+import com.ibm.fhir.term.service.exception.FHIRTermServiceException;
+import com.ibm.fhir.term.store.ConceptStore;
+import com.ibm.fhir.term.store.ConceptStoreRegistry;
+import com.ibm.fhir.term.store.ConceptStoreWriter;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+
+public class ConceptStoreTest {
+    @Test
+    public void testConceptStore1() throws Exception {
+        // concepts with properties of every type
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/test");
+        ConceptStore conceptStore = write(codeSystem);
+
+        Assert.assertEquals(conceptStore.getUrl(), "http://ibm.com/fhir/CodeSystem/test");
+        Assert.assertEquals(conceptStore.getVersion(), "1.0.0");
+        Assert.assertEquals(conceptStore.size(), CodeSystemSupport.getConcepts(codeSystem).size());
+        for (Concept concept : CodeSystemSupport.getConcepts(codeSystem)) {
+            Assert.assertEquals(conceptStore.getConcept(concept.getCode().getValue()), CodeSystemSupport.CONCEPT_NO_CHILDREN_FUNCTION.apply(concept));
+        }
+        Assert.assertFalse(conceptStore.hasConcept("unknown"));
+        Assert.assertNull(conceptStore.getConcept("unknown"));
+    }
+
+    @Test
+    public void testConceptStore2() throws Exception {
+        // the code system is case sensitive
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/cs1");
+        ConceptStore conceptStore = write(codeSystem);
+
+        for (Concept concept : CodeSystemSupport.getConcepts(codeSystem)) {
+            Assert.assertEquals(conceptStore.getConcept(concept.getCode().getValue()), CodeSystemSupport.CONCEPT_NO_CHILDREN_FUNCTION.apply(concept));
+        }
+        Assert.assertTrue(conceptStore.hasConcept("a"));
+        Assert.assertFalse(conceptStore.hasConcept("A"));
+    }
+
+    @Test
+    public void testConceptStore3() throws Exception {
+        // the code system is not case sensitive
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/cs5|1.0.0");
+        ConceptStore conceptStore = write(codeSystem);
+
+        Assert.assertTrue(conceptStore.hasConcept("m"));
+        Assert.assertEquals(conceptStore.getConcept("M").getCode().getValue(), "m");
+    }
+
+    @Test
+    public void testConceptStoreRegistry() throws Exception {
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/cs1");
+        ConceptStore conceptStore = write(codeSystem);
+
+        ConceptStoreRegistry.getInstance().addConceptStore(conceptStore);
+        try {
+            Assert.assertSame(ConceptStoreRegistry.getInstance().getConceptStore(codeSystem), conceptStore);
+
+            Coding coding = Coding.builder()
+                    .system(Uri.of("http://ibm.com/fhir/CodeSystem/cs1"))
+                    .code(Code.of("a"))
+                    .build();
+            Assert.assertTrue(FHIRTermService.getInstance().validateCode(codeSystem, coding).getResult().getValue());
+            Assert.assertTrue(FHIRTermService.getInstance().hasConcept(codeSystem, Code.of("b")));
+            Assert.assertFalse(FHIRTermService.getInstance().hasConcept(codeSystem, Code.of("unknown")));
+        } finally {
+            ConceptStoreRegistry.getInstance().removeConceptStore(conceptStore.getUrl(), conceptStore.getVersion());
+        }
+        Assert.assertNull(ConceptStoreRegistry.getInstance().getConceptStore(codeSystem));
+    }
+
+    @Test
+    public void testConceptStoreOnly() throws Exception {
+        // the code system resource has no concepts, so they are all served from the store
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/cs3");
+        CodeSystem notPresent = codeSystem.toBuilder()
+                .content(CodeSystemContentMode.NOT_PRESENT)
+                .concept(Collections.emptyList())
+                .build();
+        ConceptStore conceptStore = write(codeSystem);
+
+        Assert.assertFalse(FHIRTermService.getInstance().isSupported(notPresent));
+        ConceptStoreRegistry.getInstance().addConceptStore(conceptStore);
+        try {
+            FHIRTermService service = FHIRTermService.getInstance();
+            Assert.assertTrue(service.isSupported(notPresent));
+            Assert.assertTrue(service.hasConcept(notPresent, Code.of("y")));
+            Assert.assertEquals(service.getConcepts(notPresent).size(), 6);
+            Assert.assertEquals(codes(service.closure(notPresent, Code.of("g"))), codes("g", "x", "y", "z"));
+            Assert.assertEquals(codes(service.closure(notPresent, Code.of("h"))), codes("h"));
+            Assert.assertTrue(service.subsumes(notPresent, Code.of("g"), Code.of("z")));
+            Assert.assertTrue(service.subsumes(notPresent, Code.of("x"), Code.of("x")));
+            Assert.assertFalse(service.subsumes(notPresent, Code.of("z"), Code.of("g")));
+            Assert.assertFalse(service.subsumes(notPresent, Code.of("h"), Code.of("y")));
+
+            Filter filter = Filter.builder()
+                    .property(Code.of("concept"))
+                    .op(FilterOperator.IN)
+                    .value(com.ibm.fhir.model.type.String.of("h,y"))
+                    .build();
+            Assert.assertEquals(codes(service.getConcepts(notPresent, Collections.singletonList(filter))), codes("h", "y"));
+        } finally {
+            ConceptStoreRegistry.getInstance().removeConceptStore(conceptStore.getUrl(), conceptStore.getVersion());
+        }
+    }
+
+    @Test
+    public void testConceptStoreOnlyHierarchyFilters() throws Exception {
+        // the hierarchy filters of a code system served from the store are built from the child entries of the store
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/cs3");
+        CodeSystem notPresent = codeSystem.toBuilder()
+                .content(CodeSystemContentMode.NOT_PRESENT)
+                .concept(Collections.emptyList())
+                .build();
+        ConceptStore conceptStore = write(codeSystem);
+
+        Assert.assertEquals(conceptStore.getDescendantsAndSelf("x"), codes("x", "y", "z"));
+        Assert.assertEquals(conceptStore.getAncestorsAndSelf("z"), codes("z", "x", "g"));
+        Assert.assertEquals(conceptStore.getAncestorsAndSelf("h"), codes("h"));
+        Assert.assertTrue(conceptStore.getAncestorsAndSelf("unknown").isEmpty());
+
+        ConceptStoreRegistry.getInstance().addConceptStore(conceptStore);
+        try {
+            FHIRTermService service = FHIRTermService.getInstance();
+            Assert.assertEquals(codes(service.getConcepts(notPresent, Collections.singletonList(filter(FilterOperator.IS_A, "x")))),
+                codes("x", "y", "z"));
+            Assert.assertEquals(codes(service.getConcepts(notPresent, Collections.singletonList(filter(FilterOperator.DESCENDENT_OF, "g")))),
+                codes("x", "y", "z"));
+            Assert.assertEquals(codes(service.getConcepts(notPresent, Collections.singletonList(filter(FilterOperator.GENERALIZES, "y")))),
+                codes("g", "x", "y"));
+            Assert.assertEquals(codes(service.getConcepts(notPresent, Collections.singletonList(filter(FilterOperator.IS_NOT_A, "x")))),
+                codes("g", "h", "i"));
+            Assert.assertEquals(codes(service.getConcepts(notPresent, Arrays.asList(filter(FilterOperator.IS_A, "g"), filter(FilterOperator.IS_NOT_A, "y")))),
+                codes("g", "x", "z"));
+            Assert.expectThrows(FHIRTermServiceException.class,
+                () -> service.getConcepts(notPresent, Collections.singletonList(filter(FilterOperator.GENERALIZES, "unknown"))));
+        } finally {
+            ConceptStoreRegistry.getInstance().removeConceptStore(conceptStore.getUrl(), conceptStore.getVersion());
+        }
+    }
+
+    @Test
+    public void testConceptStoreDigest() throws Exception {
+        // a store for the same url and version, written from different concepts, is rejected
+        CodeSystem codeSystem = getCodeSystem("http://ibm.com/fhir/CodeSystem/cs1");
+        CodeSystem changed = codeSystem.toBuilder()
+                .concept(Concept.builder()
+                    .code(Code.of("added"))
+                    .build())
+                .build();
+        ConceptStore conceptStore = write(changed);
+
+        Assert.assertTrue(conceptStore.matches(changed));
+        Assert.assertFalse(conceptStore.matches(codeSystem));
+        ConceptStoreRegistry.getInstance().addConceptStore(conceptStore);
+        try {
+            Assert.assertNull(ConceptStoreRegistry.getInstance().getConceptStore(codeSystem));
+            Assert.assertFalse(FHIRTermService.getInstance().hasConcept(codeSystem, Code.of("added")));
+        } finally {
+            ConceptStoreRegistry.getInstance().removeConceptStore(conceptStore.getUrl(), conceptStore.getVersion());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testConceptStoreTruncated() throws Exception {
+        Path path = Files.createTempFile("concept", ConceptStoreRegistry.FILE_EXTENSION);
+        path.toFile().deleteOnExit();
+        ConceptStoreWriter.write(getCodeSystem("http://ibm.com/fhir/CodeSystem/cs1"), path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+        ConceptStore.open(path);
+    }
+
+    private Filter filter(FilterOperator op, String value) {
+        return Filter.builder()
+                .property(Code.of("concept"))
+                .op(op)
+                .value(com.ibm.fhir.model.type.String.of(value))
+                .build();
+    }
+
+    private Set<String> codes(Set<Concept> concepts) {
+        return concepts.stream().map(concept -> concept.getCode().getValue()).collect(Collectors.toSet());
+    }
+
+    private Set<String> codes(String... codes) {
+        return Arrays.stream(codes).collect(Collectors.toSet());
+    }
+
+    private ConceptStore write(CodeSystem codeSystem) throws Exception {
+        Path path = Files.createTempFile("concept", ConceptStoreRegistry.FILE_EXTENSION);
+        path.toFile().deleteOnExit();
+        ConceptStoreWriter.write(codeSystem, path);
+        return ConceptStore.open(path);
+    }
+}
@@ -13,9 +13,13 @@ import static com.ibm.fhir.term.util.ConceptMapSupport.getConceptMap;
 import static com.ibm.fhir.term.util.ValueSetSupport.getContains;
 import static com.ibm.fhir.term.util.ValueSetSupport.getValueSet;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -34,14 +38,17 @@ import com.ibm.fhir.model.type.Boolean;
 import com.ibm.fhir.model.type.Code;
 import com.ibm.fhir.model.type.Coding;
 import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Integer;
 import com.ibm.fhir.model.type.Uri;
 import com.ibm.fhir.model.type.code.ConceptMapEquivalence;
 import com.ibm.fhir.model.type.code.ConceptSubsumptionOutcome;
+import com.ibm.fhir.term.service.ExpansionParameters;
 import com.ibm.fhir.term.service.FHIRTermService;
 import com.ibm.fhir.term.service.LookupOutcome;
 import com.ibm.fhir.term.service.TranslationOutcome;
 import com.ibm.fhir.term.service.ValidationOutcome;
 import com.ibm.fhir.term.service.TranslationOutcome.Match;
+import com.ibm.fhir.term.store.ExpansionCache;
 
 public class FHIRTermServiceTest {
     @Test
@@ -99,6 +106,97 @@ public class FHIRTermServiceTest {
         assertEquals(actual, Arrays.asList("m", "p", "q", "s", "o", "t", "u"));
     }
 
+    @Test
+    public void testExpand6() throws Exception {
+        ExpansionParameters parameters = ExpansionParameters.builder()
+                .offset(Integer.of(2))
+                .count(Integer.of(4))
+                .build();
+        ValueSet expanded = FHIRTermService.getInstance().expand(getValueSet("http://ibm.com/fhir/ValueSet/vs4|1.0.0"), parameters);
+
+        List<String> actual = getContains(expanded.getExpansion()).stream()
+            .map(contains -> contains.getCode().getValue())
+            .collect(Collectors.toList());
+
+        assertEquals(actual, Arrays.asList("a", "b", "d", "m"));
+        assertEquals(expanded.getExpansion().getTotal().getValue().intValue(), 12);
+        assertEquals(expanded.getExpansion().getOffset().getValue().intValue(), 2);
+    }
+
+    @Test
+    public void testExpand7() throws Exception {
+        Path directory = Files.createTempDirectory("expansion");
+        ExpansionCache.getInstance().setDirectory(directory);
+        try {
+            ValueSet valueSet = getValueSet("http://ibm.com/fhir/ValueSet/vs4|1.0.0");
+            ExpansionParameters parameters = ExpansionParameters.builder()
+                    .offset(Integer.of(10))
+                    .build();
+
+            // the first page expands the value set and caches its expansion, and that of vs5 which it includes
+            ValueSet expanded = FHIRTermService.getInstance().expand(valueSet, parameters);
+            List<String> actual = getContains(expanded.getExpansion()).stream()
+                .map(contains -> contains.getCode().getValue())
+                .collect(Collectors.toList());
+            assertEquals(actual, Arrays.asList("t", "u"));
+            assertEquals(directory.resolve(ExpansionCache.DEFAULT_TENANT).toFile().list().length, 2);
+
+            // the whole expansion is read from the cache
+            ExpansionCache.getInstance().setDirectory(directory);
+            expanded = FHIRTermService.getInstance().expand(valueSet);
+            actual = getContains(expanded.getExpansion()).stream()
+                .map(contains -> contains.getCode().getValue())
+                .collect(Collectors.toList());
+            assertEquals(actual, Arrays.asList("j", "l", "a", "b", "d", "m", "p", "q", "s", "o", "t", "u"));
+            assertEquals(expanded.getExpansion().getTotal().getValue().intValue(), 12);
+        } finally {
+            ExpansionCache.getInstance().setDirectory(null);
+            delete(directory.toFile());
+        }
+    }
+
+    @Test
+    public void testExpand8() throws Exception {
+        Path directory = Files.createTempDirectory("expansion");
+        ExpansionCache.getInstance().setDirectory(directory);
+        String[] tenantId = { "tenant1" };
+        ExpansionCache.getInstance().setTenantIdSupplier(() -> tenantId[0]);
+        try {
+            // the expansions of each tenant are cached separately
+            ValueSet valueSet = getValueSet("http://ibm.com/fhir/ValueSet/vs1|1.0.0");
+            FHIRTermService.getInstance().expand(valueSet, ExpansionParameters.EMPTY);
+            assertEquals(directory.resolve("tenant1").toFile().list().length, 1);
+            assertFalse(directory.resolve("tenant2").toFile().exists());
+
+            tenantId[0] = "tenant2";
+            FHIRTermService.getInstance().expand(valueSet, ExpansionParameters.EMPTY);
+            assertEquals(directory.resolve("tenant2").toFile().list().length, 1);
+
+            // a change to the compose leads to a new key
+            ValueSet changed = valueSet.toBuilder()
+                    .compose(valueSet.getCompose().toBuilder()
+                        .inactive(com.ibm.fhir.model.type.Boolean.TRUE)
+                        .build())
+                    .build();
+            FHIRTermService.getInstance().expand(changed, ExpansionParameters.EMPTY);
+            assertEquals(directory.resolve("tenant2").toFile().list().length, 2);
+        } finally {
+            ExpansionCache.getInstance().setTenantIdSupplier(null);
+            ExpansionCache.getInstance().setDirectory(null);
+            delete(directory.toFile());
+        }
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
     @Test
     public void testLookup() throws Exception {
         Coding coding = Coding.builder()
@@ -528,6 +626,53 @@ public class FHIRTermServiceTest {
         assertEquals(actual, expected);
     }
 
+    @Test
+    public void testValidateCodes() throws Exception {
+        ValueSet valueSet = getValueSet("http://ibm.com/fhir/ValueSet/vs1|1.0.0");
+
+        List<Coding> codings = Arrays.asList(
+            coding("http://ibm.com/fhir/CodeSystem/cs1", "a", "Concept a"),
+            coding("http://ibm.com/fhir/CodeSystem/cs1", "unknown", null),
+            coding("http://ibm.com/fhir/CodeSystem/cs1", "a", "Incorrect display"),
+            coding("http://ibm.com/fhir/CodeSystem/cs1", "a", "Concept a"));
+
+        Map<Coding, ValidationOutcome> actual = FHIRTermService.getInstance().validateCodes(valueSet, codings);
+
+        assertEquals(actual.size(), 3);
+        for (Coding coding : codings) {
+            assertEquals(actual.get(coding), FHIRTermService.getInstance().validateCode(valueSet, coding));
+        }
+        assertEquals(actual.get(codings.get(0)).getResult(), Boolean.TRUE);
+        assertEquals(actual.get(codings.get(1)).getResult(), Boolean.FALSE);
+        assertEquals(actual.get(codings.get(2)).getResult(), Boolean.FALSE);
+    }
+
+    @Test
+    public void testLookupCodings() throws Exception {
+        List<Coding> codings = Arrays.asList(
+            coding("http://ibm.com/fhir/CodeSystem/cs1", "a", null),
+            coding("http://ibm.com/fhir/CodeSystem/cs1", "b", null),
+            coding("http://ibm.com/fhir/CodeSystem/cs5", "M", null),
+            coding("http://ibm.com/fhir/CodeSystem/cs1", "unknown", null),
+            coding("http://ibm.com/fhir/CodeSystem/unknown", "a", null));
+
+        Map<Coding, LookupOutcome> actual = FHIRTermService.getInstance().lookup(codings);
+
+        assertEquals(actual.keySet(), new HashSet<>(codings.subList(0, 3)));
+        for (Coding coding : codings) {
+            assertEquals(actual.get(coding), FHIRTermService.getInstance().lookup(coding));
+        }
+    }
+
+    private Coding coding(String system, String code, String display) {
+        return Coding.builder()
+                .system(Uri.of(system))
+                .version(string("1.0.0"))
+                .code(Code.of(code))
+                .display((display != null) ? string(display) : null)
+                .build();
+    }
+
     @Test
     public void testTranslate1() throws Exception {
         ConceptMap conceptMap = getConceptMap("http://ibm.com/fhir/ConceptMap/snomed-ucum");
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -19,8 +19,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,10 +34,15 @@ import com.ibm.fhir.model.resource.OperationOutcome.Issue;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.resource.StructureDefinition;
 import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.ElementDefinition;
 import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.code.BindingStrength;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
 import com.ibm.fhir.path.FHIRPathElementNode;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.FHIRPathResourceNode;
@@ -43,6 +52,7 @@ import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.path.visitor.FHIRPathDefaultNodeVisitor;
 import com.ibm.fhir.profile.ProfileSupport;
 import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.term.service.FHIRTermService;
 import com.ibm.fhir.validation.exception.FHIRValidationException;
 
 public class FHIRValidator {
@@ -216,6 +226,15 @@ public class FHIRValidator {
         }
     }
 
+    private static boolean isAbsolute(String url) {
+        try {
+            return new URI(url).isAbsolute();
+        } catch (URISyntaxException e) {
+            log.warning("Invalid URI: " + url);
+        }
+        return false;
+    }
+
     private static Issue issue(IssueSeverity severity, IssueType code, String description, FHIRPathNode node) {
         return Issue.builder()
             .severity(severity)
@@ -227,6 +246,115 @@ public class FHIRValidator {
             .build();
     }
 
+    /**
+     * Collects the codings which the constraints check against a value set: those in an element which is bound in the
+     * model, and those in an element which is bound, or has a memberOf constraint, in a profile or extension definition
+     * which applies to it.
+     */
+    private static class CodingCollector {
+        private final boolean includeResourceAssertedProfiles;
+        private final List<String> profiles;
+        private final Set<Coding> codings = new LinkedHashSet<>();
+
+        private CodingCollector(boolean includeResourceAssertedProfiles, List<String> profiles) {
+            this.includeResourceAssertedProfiles = includeResourceAssertedProfiles;
+            this.profiles = profiles;
+        }
+
+        /**
+         * @param parentType
+         *     the model class of the parent node, or null for the root node
+         * @param parentPath
+         *     the path of the parent node relative to the nearest resource or extension, without indices
+         * @param boundPaths
+         *     the paths which are bound or have a memberOf constraint in the profiles of the nearest resource or extension
+         * @param bound
+         *     whether an ancestor of the node is bound
+         */
+        private void collect(FHIRPathNode node, Class<?> parentType, String parentPath, Set<String> boundPaths, boolean bound) {
+            Class<?> type;
+            String path;
+            if (node.is(FHIRPathResourceNode.class)) {
+                Resource resource = node.as(FHIRPathResourceNode.class).resource();
+                type = resource.getClass();
+                path = ModelSupport.getTypeName(type);
+                List<String> urls = new ArrayList<>();
+                if (includeResourceAssertedProfiles) {
+                    urls.addAll(ProfileSupport.getResourceAssertedProfiles(resource));
+                }
+                if (parentType == null) {
+                    // the profiles passed in apply to the outermost resource only
+                    urls.addAll(profiles);
+                }
+                boundPaths = getBoundPaths(urls);
+                bound = false;
+            } else if (node.is(FHIRPathElementNode.class)) {
+                Element element = node.as(FHIRPathElementNode.class).element();
+                type = element.getClass();
+                path = (parentPath != null) ? parentPath + "." + node.name() : ModelSupport.getTypeName(type);
+                bound = bound || isBound(parentType, node.name());
+                if (element.is(Extension.class) && isAbsolute(element.as(Extension.class).getUrl()) &&
+                        FHIRRegistry.getInstance().hasResource(element.as(Extension.class).getUrl(), StructureDefinition.class)) {
+                    // the extension is checked against its definition, so the paths are those of the definition
+                    path = "Extension";
+                    boundPaths = getBoundPaths(Collections.singletonList(element.as(Extension.class).getUrl()));
+                }
+                bound = bound || boundPaths.contains(path);
+                if (element.is(Coding.class)) {
+                    Coding coding = element.as(Coding.class);
+                    if (bound && coding.getSystem() != null && coding.getCode() != null) {
+                        codings.add(coding);
+                    }
+                    return;
+                }
+            } else {
+                return;
+            }
+            for (FHIRPathNode child : node.children()) {
+                collect(child, type, path, boundPaths, bound);
+            }
+        }
+
+        /**
+         * Determine whether the element with the given name is bound to a value set in the model
+         */
+        private boolean isBound(Class<?> parentType, String name) {
+            if (parentType == null) {
+                return false;
+            }
+            ElementInfo elementInfo = ModelSupport.getElementInfo(parentType, name);
+            return elementInfo != null && elementInfo.hasBinding() &&
+                    !BindingStrength.ValueSet.EXAMPLE.equals(elementInfo.getBinding().strength());
+        }
+
+        /**
+         * Get the element paths, without the choice type suffix, which are bound or have a memberOf constraint in the
+         * given profiles
+         */
+        private Set<String> getBoundPaths(List<String> urls) {
+            if (urls.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Set<String> boundPaths = new HashSet<>();
+            for (String url : urls) {
+                for (Map.Entry<String, ElementDefinition.Binding> entry : ProfileSupport.getBindingMap(url).entrySet()) {
+                    ElementDefinition.Binding binding = entry.getValue();
+                    if (binding.getValueSet() != null && !BindingStrength.EXAMPLE.equals(binding.getStrength())) {
+                        boundPaths.add(entry.getKey().replace("[x]", ""));
+                    }
+                }
+                for (ElementDefinition elementDefinition : ProfileSupport.getElementDefinitionMap(url).values()) {
+                    for (ElementDefinition.Constraint constraint : elementDefinition.getConstraint()) {
+                        if (constraint.getExpression() != null && constraint.getExpression().getValue().contains("memberOf(")) {
+                            boundPaths.add(elementDefinition.getPath().getValue().replace("[x]", ""));
+                        }
+                    }
+                }
+            }
+            return boundPaths;
+        }
+    }
+
     private static class ValidatingNodeVisitor extends FHIRPathDefaultNodeVisitor {
         private FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
         private EvaluationContext evaluationContext;
@@ -241,10 +369,29 @@ public class FHIRValidator {
             this.evaluationContext = evaluationContext;
             this.includeResourceAssertedProfiles = includeResourceAssertedProfiles;
             this.profiles = Arrays.asList(profiles);
+            prefetch(this.evaluationContext.getTree(), includeResourceAssertedProfiles, this.profiles);
             this.evaluationContext.getTree().getRoot().accept(this);
             return issues;
         }
 
+        /**
+         * Look up the code system concepts for the codings in the tree (including the resources in a Bundle) which the
+         * constraints check against a value set, with one term service request per code system, so that the checks
+         * are answered from the cache of a {@link com.ibm.fhir.term.service.provider.CachingTermServiceProvider} in front of the provider.
+         */
+        private void prefetch(FHIRPathTree tree, boolean includeResourceAssertedProfiles, List<String> profiles) {
+            CodingCollector collector = new CodingCollector(includeResourceAssertedProfiles, profiles);
+            collector.collect(tree.getRoot(), null, null, Collections.emptySet(), false);
+            if (!collector.codings.isEmpty()) {
+                try {
+                    FHIRTermService.getInstance().lookup(collector.codings);
+                } catch (Exception e) {
+                    // the constraints will look up the codings one at a time
+                    log.log(Level.FINE, "Unable to prefetch the code system concepts of " + collector.codings.size() + " codings", e);
+                }
+            }
+        }
+
         private void reset() {
             issues.clear();
         }
@@ -279,15 +426,6 @@ public class FHIRValidator {
             validate(elementType, elementNode, constraints);
         }
 
-        private boolean isAbsolute(String url) {
-            try {
-                return new URI(url).isAbsolute();
-            } catch (URISyntaxException e) {
-                log.warning("Invalid URI: " + url);
-            }
-            return false;
-        }
-
         /**
          * @throws RuntimeException if the registered constraints cannot be evaluated for the passed resource node
          */
@@ -685,6 +685,7 @@ public class BulkDataClient {
 
         // Compose outputs for all exported ndjson files from the batch job exit status,
         // e.g, Patient[1000,1000,200]:Observation[1000,1000,200],
+        // or Patient[1000]:Observation_1[1000,200]:Observation_2[1000,300] when the fast export split a resource type into ranges,
         // COMPLETED means no file exported.
         String exitStatus = response.getExitStatus();
         log.fine(response.getJobXMLName() + " " + exitStatus);
@@ -692,13 +693,14 @@ public class BulkDataClient {
             List<String> resourceTypeInfs = Arrays.asList(exitStatus.split("\\s*:\\s*"));
             List<PollingLocationResponse.Output> outputList = new ArrayList<>();
             for (String resourceTypeInf : resourceTypeInfs) {
-                String resourceType = resourceTypeInf.substring(0, resourceTypeInf.indexOf("["));
+                String objectKeyPrefix = resourceTypeInf.substring(0, resourceTypeInf.indexOf("["));
+                String resourceType = objectKeyPrefix.contains("_") ? objectKeyPrefix.substring(0, objectKeyPrefix.indexOf("_")) : objectKeyPrefix;
                 String[] resourceCounts =
                         resourceTypeInf.substring(resourceTypeInf.indexOf("[") + 1, resourceTypeInf.indexOf("]")).split("\\s*,\\s*");
                 for (int i = 0; i < resourceCounts.length; i++) {
                     String region = adapter.getStorageProviderLocation(source);
                     String bucketName = adapter.getStorageProviderBucketName(source);
-                    String objectKey = resourceType + "_" + (i + 1);
+                    String objectKey = objectKeyPrefix + "_" + (i + 1);
                     String accessKey = adapter.getStorageProviderAuthTypeHmacAccessKey(source);
                     String secretKey = adapter.getStorageProviderAuthTypeHmacSecretKey(source);
                     boolean parquet = adapter.isStorageProviderParquetEnabled(source);
@@ -717,7 +719,7 @@ public class BulkDataClient {
                             ext = ".ndjson";
                         }
                         // Originally we set i to resourceCounts[i], however we don't always know the count when create the file.
-                        sUrl = cosBucketPathPrefix + File.separator + resourceType + "_" + (i + 1) + ext;
+                        sUrl = cosBucketPathPrefix + File.separator + objectKeyPrefix + "_" + (i + 1) + ext;
                     }
                     outputList.add(new PollingLocationResponse.Output(resourceType, sUrl, resourceCounts[i]));
                 }
@@ -112,6 +112,16 @@ public interface ConfigurationAdapter {
      */
     int getCoreCosPartUploadTriggerSize();
 
+    /**
+     * The maximum number of parts of a COS multi-part upload that a single export partition
+     * uploads at the same time. Each part in flight holds up to one part of data in memory.
+     *
+     * @implNote System value.
+     *
+     * @return
+     */
+    int getCoreCosMaxConcurrentPartUploads();
+
     /**
      * The size (in bytes) at which to finish writing to a given COS object,
      * or 0 to indicate that there is no object size threshold.
@@ -410,6 +420,58 @@ public interface ConfigurationAdapter {
      */
     int getInputLimit();
 
+    /**
+     * The size, in bytes, of the ranges into which $import splits a large input, each range being
+     * imported by its own partition. 0 indicates that inputs are not split.
+     *
+     * @implNote System value.
+     *
+     * @return
+     */
+    long getImportRangeSize();
+
+    /**
+     * The minimum number of resources in each of the lastUpdated ranges into which the fast system export
+     * splits a large resource type, each range being exported by its own partition. 0 indicates that
+     * resource types are not split.
+     *
+     * @implNote System value.
+     *
+     * @return
+     */
+    long getFastExportRangeSize();
+
+    /**
+     * The structure used to drop duplicate resources from an export with multiple _typeFilters:
+     * 'bloom', the default, keeps a scalable Bloom filter of a few bytes per exported id, sized by
+     * {@link #getDuplicateCheckFalsePositiveRate()}, while 'exact' keeps every exported id in memory.
+     *
+     * @implNote System value.
+     *
+     * @return
+     */
+    String getDuplicateCheckType();
+
+    /**
+     * The probability that the 'bloom' duplicate check wrongly treats a resource as a duplicate
+     * over the whole export of a resource type.
+     *
+     * @implNote System value.
+     *
+     * @return
+     */
+    double getDuplicateCheckFalsePositiveRate();
+
+    /**
+     * The directory in which an export partition saves the ids of the resources it exported, so that a
+     * restarted partition keeps dropping them; the checkpoint only refers to the saved ids.
+     *
+     * @implNote System value.
+     *
+     * @return
+     */
+    String getDuplicateCheckWorkDirectory();
+
     /**
      * gets a tenant in the current context
      *
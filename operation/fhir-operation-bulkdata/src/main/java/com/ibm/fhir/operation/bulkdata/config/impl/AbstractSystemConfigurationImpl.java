@@ -40,6 +40,9 @@ public abstract class AbstractSystemConfigurationImpl implements ConfigurationAd
     // The default size (10MiB) at which to start writing a part for a COS multi-part upload (NDJSON-only).
     private static final int DEFAULT_COS_PART_MIN_SIZE_MB = 10;
 
+    // The default number of parts of a COS multi-part upload to upload at the same time (NDJSON-only).
+    private static final int DEFAULT_COS_MAX_CONCURRENT_PART_UPLOADS = 4;
+
     // The default size (200MiB) at which to finish writing a given COS object (NDJSON-only).
     protected static final int DEFAULT_COS_OBJ_MAX_SIZE_MB = 200;
 
@@ -57,6 +60,16 @@ public abstract class AbstractSystemConfigurationImpl implements ConfigurationAd
     // 200,000 at 1 KB/file would lead to roughly 200 MB files; similar to the DEFAULT_COS_OBJ_MAX_SIZE_MB.
     protected static final int DEFAULT_FILE_MAX_RESOURCE_COUNT = 200000;
 
+    // The default size (256MiB) of the ranges into which an $import input is split.
+    private static final int DEFAULT_IMPORT_RANGE_SIZE_MB = 256;
+
+    // The default minimum number of resources in each range of a resource type split by the fast system export.
+    private static final int DEFAULT_FAST_EXPORT_RANGE_SIZE = 5000000;
+
+    // By default, duplicates are checked with a Bloom filter, which drops about one resource in a billion.
+    private static final String DEFAULT_DUPLICATE_CHECK_TYPE = "bloom";
+    private static final double DEFAULT_DUPLICATE_CHECK_FALSE_POSITIVE_RATE = 1.0E-9;
+
     private static final String FHIR_BULKDATA_ALLOWED_TYPES = "FHIR_BULKDATA_ALLOWED_TYPES";
     private static final Set<String> ALLOWED_STORAGE_TYPES = determineAllowedStorageType();
 
@@ -68,6 +81,7 @@ public abstract class AbstractSystemConfigurationImpl implements ConfigurationAd
     // The following are set on startup:
     private static final int coreCosObjectResourceCountThreshold = defaultCoreCosObjectResourceCountThreshold();
     private static final int coreCosPartUploadTriggerSize = defaultCoreCosPartUploadTriggerSize();
+    private static final int coreCosMaxConcurrentPartUploads = defaultCoreCosMaxConcurrentPartUploads();
     private static final long coreCosObjectSizeThreshold = defaultCoreCosObjectSizeThreshold();
     private static final boolean coreCosUseServerTruststore = defaultCoreCosUseServerTruststore();
     private static final int coreCosRequestTimeout = defaultCoreCosRequestTimeout();
@@ -77,6 +91,11 @@ public abstract class AbstractSystemConfigurationImpl implements ConfigurationAd
     private static final long coreFileSizeThreshold = defaultCoreFileSizeThreshold();
     private static final int coreMaxParititions = defaultCoreMaxParititions();
     private static final int inputLimits = defaultInputLimits();
+    private static final long importRangeSize = defaultImportRangeSize();
+    private static final long fastExportRangeSize = defaultFastExportRangeSize();
+    private static final String duplicateCheckType = defaultDuplicateCheckType();
+    private static final double duplicateCheckFalsePositiveRate = defaultDuplicateCheckFalsePositiveRate();
+    private static final String duplicateCheckWorkDirectory = defaultDuplicateCheckWorkDirectory();
 
     @Override
     public boolean getCoreCosTcpKeepAlive() {
@@ -115,6 +134,58 @@ public abstract class AbstractSystemConfigurationImpl implements ConfigurationAd
         return FHIRConfigHelper.getIntProperty("fhirServer/bulkdata/core/maxInputs", OperationConstants.IMPORT_MAX_DEFAULT_INPUTS);
     }
 
+    @Override
+    public long getImportRangeSize() {
+        return importRangeSize;
+    }
+
+    private static final long defaultImportRangeSize() {
+        final String PATH = "fhirServer/bulkdata/core/import/rangeSizeMB";
+        return 1024l * 1024l * Math.max(0, FHIRConfigHelper.getIntProperty(PATH, DEFAULT_IMPORT_RANGE_SIZE_MB));
+    }
+
+    @Override
+    public long getFastExportRangeSize() {
+        return fastExportRangeSize;
+    }
+
+    private static final long defaultFastExportRangeSize() {
+        final String PATH = "fhirServer/bulkdata/core/fastExport/rangeSize";
+        return Math.max(0, FHIRConfigHelper.getIntProperty(PATH, DEFAULT_FAST_EXPORT_RANGE_SIZE));
+    }
+
+    @Override
+    public String getDuplicateCheckType() {
+        return duplicateCheckType;
+    }
+
+    private static final String defaultDuplicateCheckType() {
+        return FHIRConfigHelper.getStringProperty("fhirServer/bulkdata/core/duplicateCheck/type", DEFAULT_DUPLICATE_CHECK_TYPE);
+    }
+
+    @Override
+    public double getDuplicateCheckFalsePositiveRate() {
+        return duplicateCheckFalsePositiveRate;
+    }
+
+    private static final double defaultDuplicateCheckFalsePositiveRate() {
+        final String PATH = "fhirServer/bulkdata/core/duplicateCheck/falsePositiveRate";
+        double rate = FHIRConfigHelper.getDoubleProperty(PATH, DEFAULT_DUPLICATE_CHECK_FALSE_POSITIVE_RATE);
+        if (rate <= 0 || rate >= 1) {
+            rate = DEFAULT_DUPLICATE_CHECK_FALSE_POSITIVE_RATE;
+        }
+        return rate;
+    }
+
+    @Override
+    public String getDuplicateCheckWorkDirectory() {
+        return duplicateCheckWorkDirectory;
+    }
+
+    private static final String defaultDuplicateCheckWorkDirectory() {
+        return FHIRConfigHelper.getStringProperty("fhirServer/bulkdata/core/duplicateCheck/workDirectory", System.getProperty("java.io.tmpdir"));
+    }
+
     @Override
     public int getCoreCosRequestTimeout() {
         return coreCosRequestTimeout;
@@ -142,6 +213,16 @@ public abstract class AbstractSystemConfigurationImpl implements ConfigurationAd
         return 1024 * 1024 * FHIRConfigHelper.getIntProperty("fhirServer/bulkdata/core/cos/partUploadTriggerSizeMB", DEFAULT_COS_PART_MIN_SIZE_MB);
     }
 
+    @Override
+    public int getCoreCosMaxConcurrentPartUploads() {
+        return coreCosMaxConcurrentPartUploads;
+    }
+
+    private static final int defaultCoreCosMaxConcurrentPartUploads() {
+        final String PATH = "fhirServer/bulkdata/core/cos/maxConcurrentPartUploads";
+        return Math.max(1, FHIRConfigHelper.getIntProperty(PATH, DEFAULT_COS_MAX_CONCURRENT_PART_UPLOADS));
+    }
+
     @Override
     public long getCoreCosObjectSizeThreshold() {
         return coreCosObjectSizeThreshold;
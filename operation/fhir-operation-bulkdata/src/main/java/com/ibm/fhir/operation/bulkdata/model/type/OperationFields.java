@@ -24,6 +24,11 @@ public final class OperationFields {
     // Partition
     public static final String PARTITION_RESOURCETYPE = "partition.resourcetype";
     public static final String PARTITTION_WORKITEM = "partition.workitem";
+    public static final String PARTITION_RANGE_START = "partition.rangestart";
+    public static final String PARTITION_RANGE_END = "partition.rangeend";
+    public static final String PARTITION_RANGE = "partition.range";
+    public static final String PARTITION_FROM_LASTUPDATED = "partition.fromlastupdated";
+    public static final String PARTITION_TO_LASTUPDATED = "partition.tolastupdated";
 
     // Parameters
     public static final String FHIR_SEARCH_FROM_DATE = "fhir.search.fromdate";
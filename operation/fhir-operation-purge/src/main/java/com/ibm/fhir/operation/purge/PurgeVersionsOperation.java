@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.operation.purge;
+
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.OperationDefinition;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.Parameters;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.server.operation.spi.AbstractOperation;
+import com.ibm.fhir.server.operation.spi.FHIROperationContext;
+import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
+import com.ibm.fhir.server.util.FHIROperationUtil;
+
+/**
+ * Custom operation to purge the payloads of superseded resource versions which fall
+ * outside the retention policies configured under fhirServer/resources/[resourceType]/retention.
+ *
+ * <p>Each call examines a bounded number of logical resources, continuing from where the
+ * previous call stopped, so the purge is paced by calling the operation repeatedly
+ * (e.g. from a scheduler) in the same way as $reindex.
+ */
+public class PurgeVersionsOperation extends AbstractOperation {
+    private static final Logger logger = Logger.getLogger(PurgeVersionsOperation.class.getName());
+
+    private static final String PARAM_RESOURCE_COUNT = "resourceCount";
+
+    // The max number of logical resources we allow to be examined by one request
+    private static final int MAX_RESOURCE_COUNT = 1000;
+
+    public PurgeVersionsOperation() {
+        super();
+    }
+
+    @Override
+    protected OperationDefinition buildOperationDefinition() {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("purge-versions.json")) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    @Override
+    protected Parameters doInvoke(FHIROperationContext operationContext, Class<? extends Resource> resourceType,
+            String logicalId, String versionId, Parameters parameters, FHIRResourceHelpers resourceHelper)
+            throws FHIROperationException {
+
+        // Allow only POST because we're changing the state of the database
+        String method = (String) operationContext.getProperty(FHIROperationContext.PROPNAME_METHOD_TYPE);
+        if (!"POST".equalsIgnoreCase(method)) {
+            throw new FHIROperationException("HTTP method not supported: " + method);
+        }
+
+        try {
+            int resourceCount = 100;
+
+            if (parameters != null) {
+                for (Parameters.Parameter parameter : parameters.getParameter()) {
+                    if (parameter.getValue() != null && logger.isLoggable(Level.FINE)) {
+                        logger.fine("purge-versions param: " + parameter.getName().getValue() + " = " + parameter.getValue().toString());
+                    }
+
+                    if (PARAM_RESOURCE_COUNT.equals(parameter.getName().getValue())) {
+                        Integer val = parameter.getValue().as(com.ibm.fhir.model.type.Integer.class).getValue();
+                        if (val != null) {
+                            if (val > MAX_RESOURCE_COUNT) {
+                                logger.info("Clamping resourceCount " + val + " to max allowed: " + MAX_RESOURCE_COUNT);
+                                val = MAX_RESOURCE_COUNT;
+                            }
+                            if (val < 1) {
+                                throw new FHIROperationException("Invalid value for parameter '" + PARAM_RESOURCE_COUNT + "': " + val);
+                            }
+                            resourceCount = val;
+                        }
+                    }
+                }
+            }
+
+            // The helper reports the progress of the purge as an informational issue
+            OperationOutcome.Builder result = OperationOutcome.builder();
+            resourceHelper.doPurgeVersions(operationContext, result, resourceCount);
+            return FHIROperationUtil.getOutputParameters(result.build());
+        } catch (FHIROperationException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new FHIROperationException("Unexpected error occurred while processing request for operation '"
+                    + getName() + "': " + getCausedByMessage(t), t);
+        }
+    }
+
+    private String getCausedByMessage(Throwable throwable) {
+        return throwable.getClass().getName() + ": " + throwable.getMessage();
+    }
+}
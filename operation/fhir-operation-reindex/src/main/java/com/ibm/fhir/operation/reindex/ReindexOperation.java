@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -40,10 +40,16 @@ public class ReindexOperation extends AbstractOperation {
     private static final String PARAM_TSTAMP = "tstamp";
     private static final String PARAM_RESOURCE_COUNT = "resourceCount";
     private static final String PARAM_RESOURCE_LOGICAL_ID = "resourceLogicalId";
+    private static final String PARAM_FROM_LOGICAL_RESOURCE_ID = "fromLogicalResourceId";
+    private static final String PARAM_TO_LOGICAL_RESOURCE_ID = "toLogicalResourceId";
 
     // The max number of resources we allow to be processed by one request
     private static final int MAX_RESOURCE_COUNT = 1000;
 
+    // diagnostics of the summary issue reporting the number of resources processed
+    private static final String REINDEXED_PREFIX = "Reindexed ";
+    private static final String REINDEXED_SUFFIX = " resources";
+
     static final DateTimeFormatter DAY_FORMAT = new DateTimeFormatterBuilder()
             .appendPattern("yyyy-MM-dd")
             .parseDefaulting(ChronoField.NANO_OF_DAY, 0)
@@ -78,6 +84,8 @@ public class ReindexOperation extends AbstractOperation {
             Instant tstamp = Instant.now();
             int resourceCount = 10;
             String resourceLogicalId = null;
+            Long fromLogicalResourceId = null;
+            Long toLogicalResourceId = null;
 
             if (parameters != null) {
                 for (Parameters.Parameter parameter : parameters.getParameter()) {
@@ -109,23 +117,35 @@ public class ReindexOperation extends AbstractOperation {
                     } else if (PARAM_RESOURCE_LOGICAL_ID.equals(parameter.getName().getValue())) {
                         // reindex a specific resource (useful for debug/testing)
                         resourceLogicalId = parameter.getValue().as(com.ibm.fhir.model.type.String.class).getValue();
+                    } else if (PARAM_FROM_LOGICAL_RESOURCE_ID.equals(parameter.getName().getValue())) {
+                        // partition the reindex by logical resource id so that callers can work disjoint slices
+                        fromLogicalResourceId = parseLogicalResourceId(parameter);
+                    } else if (PARAM_TO_LOGICAL_RESOURCE_ID.equals(parameter.getName().getValue())) {
+                        toLogicalResourceId = parseLogicalResourceId(parameter);
                     }
                 }
             }
 
-            // Delegate the heavy lifting to the helper
-            OperationOutcome.Builder result = OperationOutcome.builder();
-            int totalProcessed = 0;
-            int processed = 1;
-            for (int i=0; i<resourceCount && processed > 0; i++) {
-                processed = resourceHelper.doReindex(operationContext, result, tstamp, resourceLogicalId);
-                totalProcessed += processed;
+            if (fromLogicalResourceId != null && toLogicalResourceId != null && fromLogicalResourceId >= toLogicalResourceId) {
+                throw new FHIROperationException("Invalid logical resource id range: "
+                        + fromLogicalResourceId + " >= " + toLogicalResourceId);
             }
 
+            // Delegate the heavy lifting to the helper, which claims and processes the
+            // batch in small sub-batches, each in its own transaction
+            OperationOutcome.Builder result = OperationOutcome.builder();
+            int totalProcessed = resourceHelper.doReindex(operationContext, result, tstamp, resourceLogicalId, resourceCount,
+                    fromLogicalResourceId, toLogicalResourceId);
+
             if (totalProcessed == 0) {
                 // must have at least one issue for a valid OperationOutcome resource
                 final String diag = "Reindex complete";
                 result.issue(Issue.builder().code(IssueType.INFORMATIONAL).severity(IssueSeverity.INFORMATION).diagnostics(com.ibm.fhir.model.type.String.of(diag)).build());
+            } else {
+                // the count is reported explicitly because deleted resources are summarized
+                // rather than reported per resource, so clients can't rely on counting issues
+                final String diag = REINDEXED_PREFIX + totalProcessed + REINDEXED_SUFFIX;
+                result.issue(Issue.builder().code(IssueType.INFORMATIONAL).severity(IssueSeverity.INFORMATION).diagnostics(com.ibm.fhir.model.type.String.of(diag)).build());
             }
 
             OperationOutcome operationOutcome = result.build();
@@ -139,6 +159,21 @@ public class ReindexOperation extends AbstractOperation {
         }
     }
 
+    /**
+     * Parse the logical resource id value from the given parameter
+     * @param parameter
+     * @return
+     * @throws FHIROperationException
+     */
+    private Long parseLogicalResourceId(Parameters.Parameter parameter) throws FHIROperationException {
+        String val = parameter.getValue().as(com.ibm.fhir.model.type.String.class).getValue();
+        try {
+            return Long.parseLong(val);
+        } catch (NumberFormatException x) {
+            throw new FHIROperationException("Invalid value for parameter '" + parameter.getName().getValue() + "': " + val);
+        }
+    }
+
     /**
      * Check the OperationOutcome for any errors
      * @param oo